@@ -0,0 +1,204 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.bench;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.naming.directory.*;
+
+import nl.lxtreme.ldap.*;
+import nl.lxtreme.ldap.extension.*;
+import nl.lxtreme.ldap.protocol.*;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * ClientBenchmarks provides the end-to-end benchmarks of {@link LibLdap} and
+ * {@link PipeliningLdapClient}, which talk to an {@link EmbeddedLdapServer}
+ * over the loopback interface.
+ * <p>
+ * The directory contains a number of typical user objects. With a latency
+ * configured, the benchmarks show how well the client copes with a remote
+ * server, for which the number of round trips dominates the cost. Use
+ * <tt>-p latency=&lt;millis&gt;</tt> to delay each response.
+ * </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS )
+@Measurement( iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS )
+@Fork( 2 )
+public class ClientBenchmarks
+{
+  // CONSTANTS
+
+  private static final String BASE_DN = "dc=example,dc=com";
+  private static final String PEOPLE_DN = "ou=People," + BASE_DN;
+  private static final String ADMIN_DN = "cn=admin," + BASE_DN;
+  private static final String ADMIN_PASSWORD = "secret";
+
+  private static final int USER_COUNT = 1000;
+  private static final int BATCH_SIZE = 100;
+
+  // VARIABLES
+
+  /** the latency to add to each response, in milliseconds. */
+  @Param( { "0" } )
+  public long latency;
+
+  private EmbeddedLdapServer server;
+  private LibLdap ldap;
+  private PipeliningLdapClient client;
+  private Random random;
+  private LdapOperationFuture[] futures;
+
+  // METHODS
+
+  /**
+   * Starts the server and connects to it.
+   *
+   * @throws Exception
+   *           in case starting the server or connecting to it failed.
+   */
+  @Setup
+  public void setUp() throws Exception
+  {
+    this.server = createServer();
+    this.server.setLatency( this.latency, 0L, TimeUnit.MILLISECONDS );
+    this.server.start();
+
+    // JNDI names are relative to the provider URL, so no base DN is used...
+    this.ldap = new LibLdap( this.server.getURL(), "", ADMIN_DN, ADMIN_PASSWORD );
+    this.client = this.ldap.openPipeliningClient( 2 );
+
+    this.random = new Random( 42L );
+    this.futures = new LdapOperationFuture[BATCH_SIZE];
+  }
+
+  /**
+   * Disconnects from the server and stops it.
+   *
+   * @throws Exception
+   *           in case disconnecting failed.
+   */
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    try
+    {
+      this.client.close();
+      this.ldap.close();
+    }
+    finally
+    {
+      this.server.close();
+    }
+  }
+
+  @Benchmark
+  public LibLdap connectAndBind() throws Exception
+  {
+    // Authenticating a user typically uses a new connection...
+    final int user = this.random.nextInt( USER_COUNT );
+    final LibLdap userLdap = new LibLdap( this.server.getURL(), "", getUserDN( user ), getPassword( user ) );
+    userLdap.close();
+    return userLdap;
+  }
+
+  @Benchmark
+  public boolean changePassword() throws Exception
+  {
+    final int user = this.random.nextInt( USER_COUNT );
+    return this.ldap.changePassword( getUserDN( user ), getPassword( user ), getPassword( user ) );
+  }
+
+  @Benchmark
+  public Map<String, List<Object>> getAttributes() throws Exception
+  {
+    return this.ldap.getAttributes( getUserDN( this.random.nextInt( USER_COUNT ) ) );
+  }
+
+  @Benchmark
+  public List<LdapEntry> pipeliningLookup() throws Exception
+  {
+    return this.client.lookup( getUserDN( this.random.nextInt( USER_COUNT ) ) ).getEntries();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( BATCH_SIZE )
+  public int pipeliningLookupBatch() throws Exception
+  {
+    for ( int i = 0; i < this.futures.length; i++ )
+    {
+      this.futures[i] = this.client.lookup( getUserDN( this.random.nextInt( USER_COUNT ) ) );
+    }
+    int count = 0;
+    for ( LdapOperationFuture future : this.futures )
+    {
+      count += future.getEntries().size();
+    }
+    return count;
+  }
+
+  @Benchmark
+  public Collection<SearchResult> query() throws Exception
+  {
+    return this.ldap.query( PEOPLE_DN, "(uid=user" + this.random.nextInt( USER_COUNT ) + ")",
+        SearchControls.SUBTREE_SCOPE );
+  }
+
+  @Benchmark
+  public List<LdapEntry> queryEntriesPaged() throws Exception
+  {
+    return this.ldap.queryEntries( PEOPLE_DN, "(objectClass=person)", SearchControls.ONELEVEL_SCOPE, "uid", "mail" );
+  }
+
+  @Benchmark
+  public String whoAmI() throws Exception
+  {
+    return this.ldap.<IWhoAmI> getExtension( IWhoAmI.OID ).whoAmI();
+  }
+
+  /**
+   * Creates the server and its directory, without starting it.
+   */
+  private static EmbeddedLdapServer createServer()
+  {
+    final EmbeddedLdapServer server = new EmbeddedLdapServer( BASE_DN );
+    server.addEntry( BASE_DN, "objectClass", "top", "objectClass", "domain", "dc", "example" );
+    server.addEntry( ADMIN_DN, "objectClass", "top", "objectClass", "person", "cn", "admin", "sn", "Administrator",
+        "userPassword", ADMIN_PASSWORD );
+    server.addEntry( PEOPLE_DN, "objectClass", "top", "objectClass", "organizationalUnit", "ou", "People" );
+    for ( int i = 0; i < USER_COUNT; i++ )
+    {
+      server.addEntry( getUserDN( i ), "objectClass", "top", "objectClass", "person", "objectClass",
+          "inetOrgPerson", "uid", "user" + i, "cn", "User " + i, "sn", "User", "givenName", "Test",
+          "mail", "user" + i + "@example.com", "telephoneNumber", "+31 20 555 " + ( 1000 + i ), "userPassword",
+          getPassword( i ) );
+    }
+    return server;
+  }
+
+  /**
+   * Returns the password of the user with the given index.
+   */
+  private static String getPassword( final int aIndex )
+  {
+    return "password" + aIndex;
+  }
+
+  /**
+   * Returns the DN of the user with the given index.
+   */
+  private static String getUserDN( final int aIndex )
+  {
+    return "uid=user" + aIndex + "," + PEOPLE_DN;
+  }
+}
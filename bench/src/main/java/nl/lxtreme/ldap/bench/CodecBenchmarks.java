@@ -0,0 +1,472 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.bench;
+
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+import javax.naming.ldap.*;
+
+import nl.lxtreme.ldap.*;
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.protocol.*;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * CodecBenchmarks provides the benchmarks for the BER encoder and decoders,
+ * the LDAP message codec, filters and the hot paths of {@link LibLdap}.
+ * <p>
+ * The payloads mimic what is seen in practice: RFC 3062 password modify
+ * requests and responses, search result entries of a typical user object,
+ * long ASCII and multibyte strings, and deeply nested sequences. All input is
+ * prepared once per fork, such that only the operation itself is measured.
+ * </p>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS )
+@Measurement( iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS )
+@Fork( 2 )
+public class CodecBenchmarks
+{
+  // CONSTANTS
+
+  private static final int SEQUENCE = Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR;
+
+  private static final int GROUP_COUNT = 16;
+  private static final int NESTING_DEPTH = 64;
+
+  private static final String USER_DN = "cn=John Smith,ou=Engineering,ou=People,dc=example,dc=com";
+
+  // INNER TYPES
+
+  /**
+   * Provides access to the protected helpers of {@link LibLdap}.
+   */
+  private static final class LibLdapAccess extends LibLdap
+  {
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new LibLdapAccess object, which never connects.
+     */
+    LibLdapAccess()
+    {
+      super( "ldap://localhost:389", "dc=example,dc=com" );
+    }
+
+    // METHODS
+
+    /**
+     * Delegates to {@link LibLdap#parseControls(Control[])}.
+     */
+    static byte[] callParseControls( final Control[] aControls ) throws NamingException
+    {
+      return parseControls( aControls );
+    }
+
+    /**
+     * Delegates to {@link LibLdap#convertAttributes(Attributes)}.
+     */
+    Map<String, List<Object>> callConvertAttributes( final Attributes aAttributes ) throws NamingException
+    {
+      return convertAttributes( aAttributes );
+    }
+  }
+
+  // VARIABLES
+
+  private BerEncoder encoder;
+
+  private List<String[]> userStringAttributes;
+  private byte[] passwordModifyResponse;
+  private byte[] searchEntry;
+  private LdapMessage searchEntryMessage;
+
+  private String longString;
+  private byte[] longStringData;
+  private String multibyteString;
+  private byte[] multibyteStringData;
+  private byte[] nestedData;
+
+  private String filter;
+  private LdapFilter filterTemplate;
+
+  private Attributes userAttributes;
+  private Control[] controls;
+  private LibLdapAccess libLdap;
+
+  // METHODS
+
+  /**
+   * Prepares the input of all benchmarks.
+   *
+   * @throws Exception
+   *           in case preparing the input failed.
+   */
+  @Setup
+  public void setUp() throws Exception
+  {
+    this.encoder = new BerEncoder();
+
+    final List<PartialAttribute> attributes = createUserAttributes();
+    this.userStringAttributes = new ArrayList<String[]>();
+    this.userAttributes = new BasicAttributes( true /* ignoreCase */);
+    for ( PartialAttribute attribute : attributes )
+    {
+      final List<String> values = new ArrayList<String>( attribute.getStringValues() );
+
+      final Attribute attr = new BasicAttribute( attribute.getType() );
+      for ( String value : values )
+      {
+        attr.add( value );
+      }
+      this.userAttributes.put( attr );
+
+      values.add( 0, attribute.getType() );
+      this.userStringAttributes.add( values.toArray( new String[values.size()] ) );
+    }
+
+    this.encoder.reset();
+    this.encoder.beginSeq( SEQUENCE );
+    this.encoder.encodeString( "Gen3rated-Pa$$w0rd", Ber.ASN_CONTEXT | 0x00, true );
+    this.encoder.endSeq();
+    this.passwordModifyResponse = this.encoder.getTrimmedBuf();
+
+    this.searchEntry = encodeSearchEntry().getTrimmedBuf();
+    this.searchEntryMessage = new LdapMessage( 2, new SearchResultEntry( USER_DN, attributes ) );
+
+    this.longString = createString( 32 * 1024, 'a', 26 );
+    this.longStringData = encodeString( this.longString ).getTrimmedBuf();
+    this.multibyteString = createString( 8 * 1024, '\u4e00', 2048 );
+    this.multibyteStringData = encodeString( this.multibyteString ).getTrimmedBuf();
+    this.nestedData = encodeNested().getTrimmedBuf();
+
+    this.filter = "(&(objectClass=person)(|(uid=jsmith)(mail=jsmith@example.com)(cn=John*Smith)))";
+    this.filterTemplate = LdapFilter.compile( "(&(objectClass=person)(|(uid={0})(mail={1})(cn={2}*{3})))" );
+
+    this.controls = new Control[] { new PagedResultsResponseControl( PagedResultsResponseControl.OID, false,
+        createPagedResultsResponse() ) };
+    this.libLdap = new LibLdapAccess();
+  }
+
+  @Benchmark
+  public String berDecodeLongString() throws Exception
+  {
+    return new BerDecoder( this.longStringData, 0, this.longStringData.length ).parseString( true );
+  }
+
+  @Benchmark
+  public String berDecodeMultibyteString() throws Exception
+  {
+    return new BerDecoder( this.multibyteStringData, 0, this.multibyteStringData.length ).parseString( true );
+  }
+
+  @Benchmark
+  public int berDecodeNested() throws Exception
+  {
+    final BerDecoder decoder = new BerDecoder( this.nestedData, 0, this.nestedData.length );
+    int sum = 0;
+    for ( int i = 0; i < NESTING_DEPTH; i++ )
+    {
+      decoder.parseSeq( null );
+      sum += decoder.parseInt();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public String berDecodePasswordModify() throws Exception
+  {
+    final BerDecoder decoder = new BerDecoder( this.passwordModifyResponse, 0, this.passwordModifyResponse.length );
+    decoder.parseSeq( null );
+    return decoder.parseStringWithTag( Ber.ASN_CONTEXT | 0x00, true, null );
+  }
+
+  @Benchmark
+  public List<String> berDecodeSearchEntry() throws Exception
+  {
+    final BerDecoder decoder = new BerDecoder( this.searchEntry, 0, this.searchEntry.length );
+    final int[] len = new int[1];
+    decoder.parseSeq( null );
+    decoder.parseInt();
+    decoder.parseSeq( null );
+    final String dn = decoder.parseString( true );
+    decoder.parseSeq( len );
+    final int end = decoder.getParsePosition() + len[0];
+    final List<String> values = new ArrayList<String>();
+    while ( decoder.getParsePosition() < end )
+    {
+      decoder.parseSeq( null );
+      values.add( decoder.parseString( true ) );
+      decoder.parseSeq( len );
+      final int valuesEnd = decoder.getParsePosition() + len[0];
+      while ( decoder.getParsePosition() < valuesEnd )
+      {
+        values.add( decoder.parseString( true ) );
+      }
+    }
+    values.add( dn );
+    return values;
+  }
+
+  @Benchmark
+  public List<String> berDecodeSearchEntryBuffer() throws Exception
+  {
+    final BerBufferDecoder decoder = new BerBufferDecoder( ByteBuffer.wrap( this.searchEntry ) );
+    final int[] len = new int[1];
+    decoder.parseSeq( null );
+    decoder.parseInt();
+    decoder.parseSeq( null );
+    final String dn = decoder.parseString( true );
+    decoder.parseSeq( len );
+    final int end = decoder.getParsePosition() + len[0];
+    final List<String> values = new ArrayList<String>();
+    while ( decoder.getParsePosition() < end )
+    {
+      decoder.parseSeq( null );
+      values.add( decoder.parseString( true ) );
+      decoder.parseSeq( len );
+      final int valuesEnd = decoder.getParsePosition() + len[0];
+      while ( decoder.getParsePosition() < valuesEnd )
+      {
+        values.add( decoder.parseString( true ) );
+      }
+    }
+    values.add( dn );
+    return values;
+  }
+
+  @Benchmark
+  public BerEncoder berEncodeLongString() throws Exception
+  {
+    return encodeString( this.longString );
+  }
+
+  @Benchmark
+  public BerEncoder berEncodeMultibyteString() throws Exception
+  {
+    return encodeString( this.multibyteString );
+  }
+
+  @Benchmark
+  public BerEncoder berEncodeNested() throws Exception
+  {
+    return encodeNested();
+  }
+
+  @Benchmark
+  public byte[] berEncodePasswordModify() throws Exception
+  {
+    this.encoder.reset();
+    this.encoder.beginSeq( SEQUENCE );
+    this.encoder.encodeString( USER_DN, Ber.ASN_CONTEXT | 0x00, true );
+    this.encoder.encodeString( "0ld-Pa$$w0rd", Ber.ASN_CONTEXT | 0x01, true );
+    this.encoder.encodeString( "n3w-Pa$$w0rd\u00e9", Ber.ASN_CONTEXT | 0x02, true );
+    this.encoder.endSeq();
+    return this.encoder.getTrimmedBuf();
+  }
+
+  @Benchmark
+  public BerEncoder berEncodeSearchEntry() throws Exception
+  {
+    return encodeSearchEntry();
+  }
+
+  @Benchmark
+  public int berPullNested() throws Exception
+  {
+    final BerPullParser parser = new BerPullParser( this.nestedData, 0, this.nestedData.length );
+    int events = 0;
+    while ( parser.next() != BerPullParser.END_DOCUMENT )
+    {
+      events++;
+    }
+    return events;
+  }
+
+  @Benchmark
+  public LdapMessage codecDecodeSearchEntry() throws Exception
+  {
+    return LdapMessageCodec.decode( this.searchEntry, 0, this.searchEntry.length );
+  }
+
+  @Benchmark
+  public LdapEntry codecDecodeSearchEntryToLdapEntry() throws Exception
+  {
+    return LdapMessageCodec.decode( this.searchEntry, 0, this.searchEntry.length )
+        .getOperation( SearchResultEntry.class ).toLdapEntry();
+  }
+
+  @Benchmark
+  public byte[] codecEncodeSearchEntry() throws Exception
+  {
+    return LdapMessageCodec.encode( this.searchEntryMessage );
+  }
+
+  @Benchmark
+  public BerEncoder filterEncodeTemplate() throws Exception
+  {
+    this.encoder.reset();
+    this.filterTemplate.encode( this.encoder, "jsmith", "jsmith@example.com", "John", "Smith" );
+    return this.encoder;
+  }
+
+  @Benchmark
+  public LdapFilter filterParse() throws Exception
+  {
+    return LdapFilter.parse( this.filter );
+  }
+
+  @Benchmark
+  public BerEncoder filterParseAndEncode() throws Exception
+  {
+    this.encoder.reset();
+    LdapFilter.parse( this.filter ).encode( this.encoder );
+    return this.encoder;
+  }
+
+  @Benchmark
+  public Map<String, List<Object>> libLdapConvertAttributes() throws Exception
+  {
+    return this.libLdap.callConvertAttributes( this.userAttributes );
+  }
+
+  @Benchmark
+  public LdapEntry libLdapLdapEntry() throws Exception
+  {
+    return LdapEntry.valueOf( USER_DN, this.userAttributes );
+  }
+
+  @Benchmark
+  public byte[] libLdapParseControls() throws Exception
+  {
+    return LibLdapAccess.callParseControls( this.controls );
+  }
+
+  /**
+   * Encodes 64-deep nested sequences with the shared encoder.
+   */
+  private BerEncoder encodeNested() throws Exception
+  {
+    this.encoder.reset();
+    for ( int i = 0; i < NESTING_DEPTH; i++ )
+    {
+      this.encoder.beginSeq( SEQUENCE );
+      this.encoder.encodeInt( i );
+    }
+    for ( int i = 0; i < NESTING_DEPTH; i++ )
+    {
+      this.encoder.endSeq();
+    }
+    return this.encoder;
+  }
+
+  /**
+   * Encodes a search result entry of a typical user with the shared encoder.
+   */
+  private BerEncoder encodeSearchEntry() throws Exception
+  {
+    this.encoder.reset();
+    this.encoder.beginSeq( SEQUENCE );
+    this.encoder.encodeInt( 2 );
+    this.encoder.beginSeq( LdapProtocol.SEARCH_RESULT_ENTRY );
+    this.encoder.encodeString( USER_DN, true );
+    this.encoder.beginSeq( SEQUENCE );
+    for ( String[] attribute : this.userStringAttributes )
+    {
+      this.encoder.beginSeq( SEQUENCE );
+      this.encoder.encodeString( attribute[0], true );
+      this.encoder.beginSeq( Ber.ASN_SET | Ber.ASN_CONSTRUCTOR );
+      for ( int i = 1; i < attribute.length; i++ )
+      {
+        this.encoder.encodeString( attribute[i], true );
+      }
+      this.encoder.endSeq();
+      this.encoder.endSeq();
+    }
+    this.encoder.endSeq();
+    this.encoder.endSeq();
+    this.encoder.endSeq();
+    return this.encoder;
+  }
+
+  /**
+   * Encodes the given string with the shared encoder.
+   */
+  private BerEncoder encodeString( final String aValue ) throws Exception
+  {
+    this.encoder.reset();
+    this.encoder.encodeString( aValue, true );
+    return this.encoder;
+  }
+
+  /**
+   * Creates the value of a paged results response control with a typical
+   * cookie.
+   */
+  private static byte[] createPagedResultsResponse() throws Exception
+  {
+    final byte[] cookie = new byte[24];
+    for ( int i = 0; i < cookie.length; i++ )
+    {
+      cookie[i] = ( byte )( i * 31 );
+    }
+
+    final BerEncoder encoder = new BerEncoder();
+    encoder.beginSeq( SEQUENCE );
+    encoder.encodeInt( 0 );
+    encoder.encodeOctetString( cookie, Ber.ASN_OCTET_STR );
+    encoder.endSeq();
+    return encoder.getTrimmedBuf();
+  }
+
+  /**
+   * Creates a string of the given length, consisting of the given range of
+   * characters.
+   */
+  private static String createString( final int aLength, final char aFirst, final int aRange )
+  {
+    final StringBuilder sb = new StringBuilder( aLength );
+    for ( int i = 0; i < aLength; i++ )
+    {
+      sb.append( ( char )( aFirst + ( i % aRange ) ) );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Creates the attributes of a typical user entry.
+   */
+  private static List<PartialAttribute> createUserAttributes()
+  {
+    final List<PartialAttribute> result = new ArrayList<PartialAttribute>();
+    result.add( PartialAttribute.valueOf( "objectClass", "top", "person", "organizationalPerson", "inetOrgPerson" ) );
+    result.add( PartialAttribute.valueOf( "cn", "John Smith" ) );
+    result.add( PartialAttribute.valueOf( "sn", "Smith" ) );
+    result.add( PartialAttribute.valueOf( "givenName", "John" ) );
+    result.add( PartialAttribute.valueOf( "uid", "jsmith" ) );
+    result.add( PartialAttribute.valueOf( "mail", "john.smith@example.com", "jsmith@example.com" ) );
+    result.add( PartialAttribute.valueOf( "telephoneNumber", "+31 20 123 4567" ) );
+    result.add( PartialAttribute.valueOf( "title", "Senior Software Engineer" ) );
+    result.add( PartialAttribute.valueOf( "description", "Works on the directory services of the company, "
+        + "and has done so since the early days of the project." ) );
+    final String[] groups = new String[GROUP_COUNT];
+    for ( int i = 0; i < groups.length; i++ )
+    {
+      groups[i] = "cn=Group " + i + ",ou=Groups,dc=example,dc=com";
+    }
+    result.add( PartialAttribute.valueOf( "memberOf", groups ) );
+    return result;
+  }
+}
@@ -0,0 +1,1216 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.bench;
+
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import nl.lxtreme.ldap.*;
+import nl.lxtreme.ldap.extension.*;
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+import nl.lxtreme.ldap.protocol.*;
+
+
+/**
+ * EmbeddedLdapServer provides a lightweight, in-process LDAPv3 server, which
+ * allows the whole client stack to be exercised without a real directory.
+ * <p>
+ * The server keeps its directory information tree in memory, and supports:
+ * </p>
+ * <ul>
+ * <li>simple binds, verified against the <tt>userPassword</tt> attribute of
+ * entries;</li>
+ * <li>searches with all scopes, filters, attribute selections, size limits
+ * and the paged results control (RFC 2696), including the root DSE;</li>
+ * <li>compare, add, delete and modify operations;</li>
+ * <li>the WhoAmI (RFC 4532) and Password Modify (RFC 3062) extended
+ * operations.</li>
+ * </ul>
+ * <p>
+ * An artificial latency can be added to each response, to mimic a remote
+ * server. Responses are delayed without blocking the processing of other
+ * requests, so pipelined requests are still answered concurrently.
+ * </p>
+ * <p>
+ * The server performs no access control, and is only intended for tests and
+ * benchmarks.
+ * </p>
+ */
+public final class EmbeddedLdapServer implements Closeable
+{
+  // CONSTANTS
+
+  /** the OID of the paged results control, see RFC 2696. */
+  public static final String PAGED_RESULTS_OID = "1.2.840.113556.1.4.319";
+  /** the OID of the ManageDsaIT control, as sent by JNDI. */
+  private static final String MANAGE_DSA_IT_OID = "2.16.840.1.113730.3.4.2";
+
+  private static final String ATTR_USER_PASSWORD = "userPassword";
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  private static final int SEQUENCE = Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR;
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private static final Logger LOG = Logger.getAnonymousLogger();
+
+  // INNER TYPES
+
+  /**
+   * Provides a stored entry, together with its attributes in the form in which
+   * they are returned.
+   */
+  private static final class StoredEntry
+  {
+    // VARIABLES
+
+    final LdapEntry entry;
+    final int depth;
+    final List<PartialAttribute> attributes;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new StoredEntry object.
+     */
+    StoredEntry( final LdapEntry aEntry, final int aDepth )
+    {
+      this.entry = aEntry;
+      this.depth = aDepth;
+
+      final List<PartialAttribute> result = new ArrayList<PartialAttribute>( aEntry.size() );
+      for ( String id : aEntry.getAttributeIDs() )
+      {
+        result.add( toPartialAttribute( id, aEntry.getValues( id ), false ) );
+      }
+      this.attributes = Collections.unmodifiableList( result );
+    }
+  }
+
+  /**
+   * Handles a single client connection.
+   */
+  private final class Connection implements Runnable
+  {
+    // VARIABLES
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final Random random;
+
+    private volatile String boundDN;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Connection object.
+     */
+    Connection( final Socket aSocket ) throws IOException
+    {
+      this.socket = aSocket;
+      this.out = aSocket.getOutputStream();
+      this.random = new Random();
+      this.boundDN = "";
+    }
+
+    // METHODS
+
+    /**
+     * Reads and handles requests until the connection is closed.
+     */
+    @Override
+    public void run()
+    {
+      final BerFrameDecoder frameDecoder = new BerFrameDecoder();
+      final byte[] buf = new byte[READ_BUFFER_SIZE];
+      try
+      {
+        final InputStream in = this.socket.getInputStream();
+
+        int read;
+        while ( ( read = in.read( buf ) ) >= 0 )
+        {
+          final ByteBuffer chunk = ByteBuffer.wrap( buf, 0, read );
+
+          ByteBuffer frame;
+          while ( ( frame = frameDecoder.nextFrame( chunk ) ) != null )
+          {
+            if ( !handle( this, LdapMessageCodec.decode( frame ) ) )
+            {
+              return;
+            }
+          }
+        }
+      }
+      catch ( IOException exception )
+      {
+        if ( !EmbeddedLdapServer.this.closed && !this.socket.isClosed() )
+        {
+          LOG.log( Level.FINE, "Connection failed!", exception );
+        }
+      }
+      finally
+      {
+        close();
+      }
+    }
+
+    /**
+     * Closes this connection.
+     */
+    void close()
+    {
+      EmbeddedLdapServer.this.connections.remove( this );
+      try
+      {
+        this.socket.close();
+      }
+      catch ( IOException exception )
+      {
+        // Ignore...
+      }
+    }
+
+    /**
+     * Sends the given responses, after the configured latency (if any).
+     */
+    void send( final List<LdapMessage> aResponses ) throws IOException
+    {
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      for ( LdapMessage response : aResponses )
+      {
+        final byte[] data = LdapMessageCodec.encode( response );
+        baos.write( data, 0, data.length );
+      }
+      final byte[] data = baos.toByteArray();
+
+      final long latency = EmbeddedLdapServer.this.latency;
+      final long jitter = EmbeddedLdapServer.this.jitter;
+      if ( ( latency <= 0L ) && ( jitter <= 0L ) )
+      {
+        write( data );
+        return;
+      }
+
+      final long delay = latency + ( ( jitter > 0L ) ? ( long )( this.random.nextDouble() * jitter ) : 0L );
+      try
+      {
+        EmbeddedLdapServer.this.scheduler.schedule( new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            try
+            {
+              write( data );
+            }
+            catch ( IOException exception )
+            {
+              close();
+            }
+          }
+        }, delay, TimeUnit.NANOSECONDS );
+      }
+      catch ( RejectedExecutionException exception )
+      {
+        // Server is closed...
+      }
+    }
+
+    /**
+     * Writes the given data to the client.
+     */
+    private void write( final byte[] aData ) throws IOException
+    {
+      synchronized ( this.out )
+      {
+        this.out.write( aData );
+        this.out.flush();
+      }
+    }
+  }
+
+  // VARIABLES
+
+  private final String baseDN;
+  private final ConcurrentNavigableMap<String, StoredEntry> entries;
+  private final Set<Connection> connections;
+  private final AtomicLong requestCount;
+
+  private volatile long latency;
+  private volatile long jitter;
+  private volatile boolean closed;
+
+  private ServerSocket serverSocket;
+  private ScheduledExecutorService scheduler;
+  private Thread acceptor;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new EmbeddedLdapServer object.
+   *
+   * @param aBaseDN
+   *          the DN of the naming context of this server, cannot be
+   *          <code>null</code>. The entry itself is not created.
+   */
+  public EmbeddedLdapServer( final String aBaseDN )
+  {
+    if ( aBaseDN == null )
+    {
+      throw new IllegalArgumentException( "Base DN cannot be null!" );
+    }
+    this.baseDN = aBaseDN;
+    this.entries = new ConcurrentSkipListMap<String, StoredEntry>();
+    this.connections = Collections.newSetFromMap( new ConcurrentHashMap<Connection, Boolean>() );
+    this.requestCount = new AtomicLong();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the number of RDNs of the given normalized key.
+   */
+  private static int getDepth( final String aKey )
+  {
+    if ( aKey.isEmpty() )
+    {
+      return 0;
+    }
+    int result = 1;
+    for ( int i = 0; i < aKey.length(); i++ )
+    {
+      final char c = aKey.charAt( i );
+      if ( c == '\\' )
+      {
+        i++;
+      }
+      else if ( c == ',' )
+      {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether the given attribute should be returned for the given
+   * attribute selection.
+   */
+  private static boolean isSelected( final String aAttribute, final List<String> aSelection )
+  {
+    for ( String selected : aSelection )
+    {
+      if ( "*".equals( selected ) || selected.equalsIgnoreCase( aAttribute ) )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates the key of the given DN, which consists of its normalized RDNs in
+   * reverse order, such that all entries of a subtree share the key of its
+   * root as prefix.
+   */
+  private static String toKey( final String aDN )
+  {
+    final List<String> rdns = new ArrayList<String>();
+
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < aDN.length(); i++ )
+    {
+      final char c = aDN.charAt( i );
+      if ( c == '\\' )
+      {
+        sb.append( c );
+        if ( ++i < aDN.length() )
+        {
+          sb.append( Character.toLowerCase( aDN.charAt( i ) ) );
+        }
+      }
+      else if ( c == ',' )
+      {
+        rdns.add( normalizeRDN( sb.toString() ) );
+        sb.setLength( 0 );
+      }
+      else
+      {
+        sb.append( Character.toLowerCase( c ) );
+      }
+    }
+    if ( ( sb.length() > 0 ) || !rdns.isEmpty() )
+    {
+      rdns.add( normalizeRDN( sb.toString() ) );
+    }
+
+    sb.setLength( 0 );
+    for ( int i = rdns.size() - 1; i >= 0; i-- )
+    {
+      sb.append( rdns.get( i ) );
+      if ( i > 0 )
+      {
+        sb.append( ',' );
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Removes the insignificant spaces of the given (lower case) RDN.
+   */
+  private static String normalizeRDN( final String aRDN )
+  {
+    final int eq = aRDN.indexOf( '=' );
+    if ( eq < 0 )
+    {
+      return aRDN.trim();
+    }
+    return aRDN.substring( 0, eq ).trim() + "=" + aRDN.substring( eq + 1 ).trim();
+  }
+
+  /**
+   * Converts the given attribute values to their LDAP representation.
+   */
+  private static PartialAttribute toPartialAttribute( final String aType, final List<Object> aValues,
+      final boolean aTypesOnly )
+  {
+    final List<byte[]> values = new ArrayList<byte[]>( aTypesOnly ? 0 : aValues.size() );
+    if ( !aTypesOnly )
+    {
+      for ( Object value : aValues )
+      {
+        values.add( ( value instanceof byte[] ) ? ( byte[] )value : String.valueOf( value ).getBytes( UTF8 ) );
+      }
+    }
+    return new PartialAttribute( aType, values );
+  }
+
+  /**
+   * Returns whether the given value equals the given raw value.
+   */
+  private static boolean valueEquals( final Object aValue, final byte[] aRawValue )
+  {
+    if ( aValue instanceof byte[] )
+    {
+      return Arrays.equals( ( byte[] )aValue, aRawValue );
+    }
+    return String.valueOf( aValue ).equals( new String( aRawValue, UTF8 ) );
+  }
+
+  /**
+   * Adds the given entry to the directory, replacing any existing entry with
+   * the same DN.
+   *
+   * @param aEntry
+   *          the entry to add, cannot be <code>null</code>.
+   */
+  public void addEntry( final LdapEntry aEntry )
+  {
+    final String key = toKey( aEntry.getDN() );
+    this.entries.put( key, new StoredEntry( aEntry, getDepth( key ) ) );
+  }
+
+  /**
+   * Adds an entry with the given DN and attributes to the directory, replacing
+   * any existing entry with the same DN.
+   *
+   * @param aDN
+   *          the DN of the entry to add, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attributes of the entry, as map of {ID -&gt; values}. Values
+   *          should be strings or, for binary attributes, byte arrays.
+   */
+  public void addEntry( final String aDN, final Map<String, ? extends Collection<?>> aAttributes )
+  {
+    addEntry( LdapEntry.valueOf( aDN, aAttributes ) );
+  }
+
+  /**
+   * Adds an entry with the given DN and single-valued attributes to the
+   * directory, replacing any existing entry with the same DN.
+   *
+   * @param aDN
+   *          the DN of the entry to add, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs and values, alternating, like
+   *          <tt>"cn", "John", "sn", "Smith"</tt>. IDs can be repeated for
+   *          multi-valued attributes.
+   */
+  public void addEntry( final String aDN, final String... aAttributes )
+  {
+    if ( ( aAttributes.length % 2 ) != 0 )
+    {
+      throw new IllegalArgumentException( "Attributes should be given as ID-value pairs!" );
+    }
+
+    final Map<String, List<Object>> attributes = new LinkedHashMap<String, List<Object>>();
+    for ( int i = 0; i < aAttributes.length; i += 2 )
+    {
+      List<Object> values = attributes.get( aAttributes[i] );
+      if ( values == null )
+      {
+        values = new ArrayList<Object>();
+        attributes.put( aAttributes[i], values );
+      }
+      values.add( aAttributes[i + 1] );
+    }
+    addEntry( aDN, attributes );
+  }
+
+  /**
+   * Stops this server, closing all client connections.
+   */
+  @Override
+  public void close()
+  {
+    if ( this.closed )
+    {
+      return;
+    }
+    this.closed = true;
+
+    try
+    {
+      if ( this.serverSocket != null )
+      {
+        this.serverSocket.close();
+      }
+    }
+    catch ( IOException exception )
+    {
+      // Ignore...
+    }
+    for ( Connection connection : this.connections )
+    {
+      connection.close();
+    }
+    if ( this.scheduler != null )
+    {
+      this.scheduler.shutdownNow();
+    }
+    if ( this.acceptor != null )
+    {
+      try
+      {
+        this.acceptor.join();
+      }
+      catch ( InterruptedException exception )
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the entry with the given DN.
+   *
+   * @param aDN
+   *          the DN of the entry to return, cannot be <code>null</code>.
+   * @return the entry, or <code>null</code> if no such entry exists.
+   */
+  public LdapEntry getEntry( final String aDN )
+  {
+    final StoredEntry stored = this.entries.get( toKey( aDN ) );
+    return ( stored == null ) ? null : stored.entry;
+  }
+
+  /**
+   * Returns the number of entries in the directory.
+   *
+   * @return an entry count, &gt;= 0.
+   */
+  public int getEntryCount()
+  {
+    return this.entries.size();
+  }
+
+  /**
+   * Returns the port this server listens on.
+   *
+   * @return the port number.
+   * @throws IllegalStateException
+   *           in case this server is not started.
+   */
+  public int getPort()
+  {
+    if ( this.serverSocket == null )
+    {
+      throw new IllegalStateException( "Server not started!" );
+    }
+    return this.serverSocket.getLocalPort();
+  }
+
+  /**
+   * Returns the number of requests handled so far.
+   *
+   * @return a request count, &gt;= 0.
+   */
+  public long getRequestCount()
+  {
+    return this.requestCount.get();
+  }
+
+  /**
+   * Returns the URL of this server.
+   *
+   * @return the URL, like "ldap://localhost:12345", never <code>null</code>.
+   * @throws IllegalStateException
+   *           in case this server is not started.
+   */
+  public String getURL()
+  {
+    return "ldap://localhost:" + getPort();
+  }
+
+  /**
+   * Removes the entry with the given DN from the directory.
+   *
+   * @param aDN
+   *          the DN of the entry to remove, cannot be <code>null</code>.
+   * @return <code>true</code> if the entry was removed, <code>false</code> if
+   *         no such entry exists.
+   */
+  public boolean removeEntry( final String aDN )
+  {
+    return this.entries.remove( toKey( aDN ) ) != null;
+  }
+
+  /**
+   * Sets the latency to add to each response.
+   *
+   * @param aLatency
+   *          the fixed latency, &gt;= 0;
+   * @param aJitter
+   *          the maximum random latency to add to the fixed latency, &gt;= 0;
+   * @param aUnit
+   *          the unit of the given latencies, cannot be <code>null</code>.
+   */
+  public void setLatency( final long aLatency, final long aJitter, final TimeUnit aUnit )
+  {
+    if ( ( aLatency < 0L ) || ( aJitter < 0L ) )
+    {
+      throw new IllegalArgumentException( "Latency cannot be negative!" );
+    }
+    this.latency = aUnit.toNanos( aLatency );
+    this.jitter = aUnit.toNanos( aJitter );
+  }
+
+  /**
+   * Starts this server on a free port of the loopback interface.
+   *
+   * @throws IOException
+   *           in case the server socket could not be opened.
+   * @see #getPort()
+   */
+  public void start() throws IOException
+  {
+    start( 0 );
+  }
+
+  /**
+   * Starts this server on the given port of the loopback interface.
+   *
+   * @param aPort
+   *          the port to listen on, or 0 to use a free port.
+   * @throws IOException
+   *           in case the server socket could not be opened.
+   */
+  public void start( final int aPort ) throws IOException
+  {
+    if ( this.serverSocket != null )
+    {
+      throw new IllegalStateException( "Server already started!" );
+    }
+
+    this.serverSocket = new ServerSocket( aPort, 128, InetAddress.getByName( "localhost" ) );
+    this.scheduler = Executors.newScheduledThreadPool( 2, new ThreadFactory()
+    {
+      @Override
+      public Thread newThread( final Runnable aRunnable )
+      {
+        final Thread thread = new Thread( aRunnable, "LibLdap-Server-" + THREAD_COUNTER.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+
+    this.acceptor = new Thread( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        acceptConnections();
+      }
+    }, "LibLdap-Server-" + THREAD_COUNTER.incrementAndGet() );
+    this.acceptor.setDaemon( true );
+    this.acceptor.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "EmbeddedLdapServer(" + this.baseDN + ", " + this.entries.size() + " entries)";
+  }
+
+  /**
+   * Accepts client connections until this server is closed.
+   */
+  private void acceptConnections()
+  {
+    while ( !this.closed )
+    {
+      try
+      {
+        final Socket socket = this.serverSocket.accept();
+        socket.setTcpNoDelay( true );
+
+        final Connection connection = new Connection( socket );
+        this.connections.add( connection );
+
+        final Thread thread = new Thread( connection, "LibLdap-Server-" + THREAD_COUNTER.incrementAndGet() );
+        thread.setDaemon( true );
+        thread.start();
+      }
+      catch ( IOException exception )
+      {
+        if ( !this.closed )
+        {
+          LOG.log( Level.WARNING, "Failed to accept connection!", exception );
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates the root DSE entry.
+   */
+  private StoredEntry createRootDSE()
+  {
+    final Map<String, List<Object>> attributes = new LinkedHashMap<String, List<Object>>();
+    attributes.put( "objectClass", Arrays.<Object> asList( "top", "extensibleObject" ) );
+    attributes.put( "namingContexts", Arrays.<Object> asList( this.baseDN ) );
+    attributes.put( "defaultNamingContext", Arrays.<Object> asList( this.baseDN ) );
+    attributes.put( "supportedLDAPVersion", Arrays.<Object> asList( "3" ) );
+    attributes.put( "supportedControl", Arrays.<Object> asList( PAGED_RESULTS_OID, MANAGE_DSA_IT_OID ) );
+    attributes.put( "supportedExtension", Arrays.<Object> asList( IWhoAmI.OID, IChangePassword.OID ) );
+    attributes.put( "vendorName", Arrays.<Object> asList( "LibLdap" ) );
+    return new StoredEntry( LdapEntry.valueOf( "", attributes ), 0 );
+  }
+
+  /**
+   * Creates a response message for the given request.
+   */
+  private LdapMessage createResponse( final LdapMessage aRequest, final int aType, final int aResultCode,
+      final String aMessage )
+  {
+    return new LdapMessage( aRequest.getMessageId(), new LdapResponse( aType, new LdapResult( aResultCode, "",
+        aMessage ) ) );
+  }
+
+  /**
+   * Handles the given request.
+   *
+   * @return <code>false</code> if the connection should be closed,
+   *         <code>true</code> otherwise.
+   */
+  private boolean handle( final Connection aConnection, final LdapMessage aRequest ) throws IOException
+  {
+    this.requestCount.incrementAndGet();
+
+    final LdapOperation operation = aRequest.getOperation();
+    final int type = operation.getType();
+
+    for ( LdapControl control : aRequest.getControls() )
+    {
+      if ( control.isCritical() && !PAGED_RESULTS_OID.equals( control.getOID() )
+          && !MANAGE_DSA_IT_OID.equals( control.getOID() ) )
+      {
+        final int responseType = ( type == LdapProtocol.SEARCH_REQUEST ) ? LdapProtocol.SEARCH_RESULT_DONE
+            : ( type + 1 );
+        aConnection.send( Collections.singletonList( createResponse( aRequest, responseType,
+            LdapProtocol.UNAVAILABLE_CRITICAL_EXTENSION, "Unsupported control: " + control.getOID() ) ) );
+        return true;
+      }
+    }
+
+    final List<LdapMessage> responses;
+    switch ( type )
+    {
+      case LdapProtocol.BIND_REQUEST:
+        responses = handleBind( aConnection, aRequest, ( BindRequest )operation );
+        break;
+
+      case LdapProtocol.SEARCH_REQUEST:
+        responses = handleSearch( aRequest, ( SearchRequest )operation );
+        break;
+
+      case LdapProtocol.COMPARE_REQUEST:
+        responses = handleCompare( aRequest, ( CompareRequest )operation );
+        break;
+
+      case LdapProtocol.ADD_REQUEST:
+        responses = handleAdd( aRequest, ( AddRequest )operation );
+        break;
+
+      case LdapProtocol.DEL_REQUEST:
+        responses = handleDelete( aRequest, ( DeleteRequest )operation );
+        break;
+
+      case LdapProtocol.MODIFY_REQUEST:
+        responses = handleModify( aRequest, ( ModifyRequest )operation );
+        break;
+
+      case LdapProtocol.EXTENDED_REQUEST:
+        responses = handleExtended( aConnection, aRequest, ( ExtendedOperationRequest )operation );
+        break;
+
+      case LdapProtocol.ABANDON_REQUEST:
+        // All operations complete immediately, nothing to abandon...
+        return true;
+
+      case LdapProtocol.UNBIND_REQUEST:
+        return false;
+
+      default:
+        LOG.warning( "Unsupported operation: " + operation );
+        return false;
+    }
+
+    aConnection.send( responses );
+    return true;
+  }
+
+  /**
+   * Handles an add request.
+   */
+  private List<LdapMessage> handleAdd( final LdapMessage aRequest, final AddRequest aAdd )
+  {
+    final String key = toKey( aAdd.getEntry() );
+    final int comma = key.lastIndexOf( ',' );
+    if ( ( comma > 0 ) && !this.entries.containsKey( key.substring( 0, comma ) ) )
+    {
+      return Collections.singletonList( createResponse( aRequest, LdapProtocol.ADD_RESPONSE,
+          LdapProtocol.NO_SUCH_OBJECT, "Parent entry does not exist" ) );
+    }
+
+    final Map<String, List<Object>> attributes = new LinkedHashMap<String, List<Object>>();
+    for ( PartialAttribute attribute : aAdd.getAttributes() )
+    {
+      attributes.put( attribute.getType(), new ArrayList<Object>( attribute.getStringValues() ) );
+    }
+
+    final LdapEntry entry = LdapEntry.valueOf( aAdd.getEntry(), attributes );
+    if ( this.entries.putIfAbsent( key, new StoredEntry( entry, getDepth( key ) ) ) != null )
+    {
+      return Collections.singletonList( createResponse( aRequest, LdapProtocol.ADD_RESPONSE,
+          LdapProtocol.ENTRY_ALREADY_EXISTS, "Entry already exists" ) );
+    }
+    return Collections.singletonList( createResponse( aRequest, LdapProtocol.ADD_RESPONSE, LdapProtocol.SUCCESS,
+        null ) );
+  }
+
+  /**
+   * Handles a bind request.
+   */
+  private List<LdapMessage> handleBind( final Connection aConnection, final LdapMessage aRequest,
+      final BindRequest aBind )
+  {
+    int resultCode = LdapProtocol.SUCCESS;
+    if ( !aBind.isSimple() )
+    {
+      resultCode = LdapProtocol.AUTH_METHOD_NOT_SUPPORTED;
+    }
+    else if ( !aBind.getName().isEmpty() )
+    {
+      final StoredEntry stored = this.entries.get( toKey( aBind.getName() ) );
+      resultCode = LdapProtocol.INVALID_CREDENTIALS;
+      if ( stored != null )
+      {
+        for ( Object password : stored.entry.getValues( ATTR_USER_PASSWORD ) )
+        {
+          if ( valueEquals( password, aBind.getCredentials() ) )
+          {
+            resultCode = LdapProtocol.SUCCESS;
+            break;
+          }
+        }
+      }
+    }
+
+    aConnection.boundDN = ( resultCode == LdapProtocol.SUCCESS ) ? aBind.getName() : "";
+
+    return Collections.singletonList( new LdapMessage( aRequest.getMessageId(), new BindResponse( new LdapResult(
+        resultCode, "", null ), null ) ) );
+  }
+
+  /**
+   * Handles a compare request.
+   */
+  private List<LdapMessage> handleCompare( final LdapMessage aRequest, final CompareRequest aCompare )
+  {
+    final StoredEntry stored = this.entries.get( toKey( aCompare.getName() ) );
+    if ( stored == null )
+    {
+      return Collections.singletonList( createResponse( aRequest, LdapProtocol.COMPARE_RESPONSE,
+          LdapProtocol.NO_SUCH_OBJECT, null ) );
+    }
+
+    int resultCode = LdapProtocol.COMPARE_FALSE;
+    for ( Object value : stored.entry.getValues( aCompare.getAttributeDesc() ) )
+    {
+      if ( valueEquals( value, aCompare.getAssertionValue() ) )
+      {
+        resultCode = LdapProtocol.COMPARE_TRUE;
+        break;
+      }
+    }
+    return Collections.singletonList( createResponse( aRequest, LdapProtocol.COMPARE_RESPONSE, resultCode, null ) );
+  }
+
+  /**
+   * Handles a delete request.
+   */
+  private List<LdapMessage> handleDelete( final LdapMessage aRequest, final DeleteRequest aDelete )
+  {
+    final String key = toKey( aDelete.getName() );
+    final SortedMap<String, StoredEntry> children = this.entries.subMap( key + ",", key + "-" );
+
+    int resultCode = LdapProtocol.SUCCESS;
+    if ( !children.isEmpty() )
+    {
+      resultCode = LdapProtocol.NOT_ALLOWED_ON_NON_LEAF;
+    }
+    else if ( this.entries.remove( key ) == null )
+    {
+      resultCode = LdapProtocol.NO_SUCH_OBJECT;
+    }
+    return Collections.singletonList( createResponse( aRequest, LdapProtocol.DEL_RESPONSE, resultCode, null ) );
+  }
+
+  /**
+   * Handles an extended request.
+   */
+  private List<LdapMessage> handleExtended( final Connection aConnection, final LdapMessage aRequest,
+      final ExtendedOperationRequest aExtended ) throws IOException
+  {
+    final String name = aExtended.getRequestName();
+    if ( IWhoAmI.OID.equals( name ) )
+    {
+      final String boundDN = aConnection.boundDN;
+      final byte[] authzId = ( boundDN.isEmpty() ? "" : "dn:" + boundDN ).getBytes( UTF8 );
+      return Collections.singletonList( new LdapMessage( aRequest.getMessageId(), new ExtendedOperationResponse(
+          new LdapResult( LdapProtocol.SUCCESS, "", null ), null, authzId ) ) );
+    }
+    else if ( IChangePassword.OID.equals( name ) )
+    {
+      return Collections.singletonList( handlePasswordModify( aConnection, aRequest, aExtended.getRequestValue() ) );
+    }
+
+    return Collections.singletonList( new LdapMessage( aRequest.getMessageId(), new ExtendedOperationResponse(
+        new LdapResult( LdapProtocol.PROTOCOL_ERROR, "", "Unsupported extended operation: " + name ), null, null ) ) );
+  }
+
+  /**
+   * Handles a modify request.
+   */
+  private List<LdapMessage> handleModify( final LdapMessage aRequest, final ModifyRequest aModify )
+  {
+    final String key = toKey( aModify.getObject() );
+
+    synchronized ( this.entries )
+    {
+      final StoredEntry stored = this.entries.get( key );
+      if ( stored == null )
+      {
+        return Collections.singletonList( createResponse( aRequest, LdapProtocol.MODIFY_RESPONSE,
+            LdapProtocol.NO_SUCH_OBJECT, null ) );
+      }
+
+      final Map<String, List<Object>> attributes = new TreeMap<String, List<Object>>( String.CASE_INSENSITIVE_ORDER );
+      attributes.putAll( stored.entry.toMap() );
+
+      for ( ModifyRequest.Change change : aModify.getChanges() )
+      {
+        final PartialAttribute modification = change.getModification();
+        final List<String> values = modification.getStringValues();
+
+        List<Object> current = attributes.get( modification.getType() );
+        switch ( change.getOperation() )
+        {
+          case ModifyRequest.ADD:
+            if ( current == null )
+            {
+              current = new ArrayList<Object>();
+              attributes.put( modification.getType(), current );
+            }
+            current.addAll( values );
+            break;
+
+          case ModifyRequest.DELETE:
+            if ( current == null )
+            {
+              return Collections.singletonList( createResponse( aRequest, LdapProtocol.MODIFY_RESPONSE,
+                  LdapProtocol.NO_SUCH_ATTRIBUTE, modification.getType() ) );
+            }
+            if ( values.isEmpty() )
+            {
+              attributes.remove( modification.getType() );
+            }
+            else
+            {
+              current.removeAll( values );
+            }
+            break;
+
+          default:
+            if ( values.isEmpty() )
+            {
+              attributes.remove( modification.getType() );
+            }
+            else
+            {
+              attributes.put( modification.getType(), new ArrayList<Object>( values ) );
+            }
+            break;
+        }
+      }
+
+      this.entries.put( key, new StoredEntry( LdapEntry.valueOf( stored.entry.getDN(), attributes ), stored.depth ) );
+    }
+
+    return Collections.singletonList( createResponse( aRequest, LdapProtocol.MODIFY_RESPONSE, LdapProtocol.SUCCESS,
+        null ) );
+  }
+
+  /**
+   * Handles a password modify extended request, see RFC 3062.
+   */
+  private LdapMessage handlePasswordModify( final Connection aConnection, final LdapMessage aRequest,
+      final byte[] aValue ) throws IOException
+  {
+    String userIdentity = null;
+    byte[] oldPassword = null;
+    byte[] newPassword = null;
+    if ( ( aValue != null ) && ( aValue.length > 0 ) )
+    {
+      final BerDecoder decoder = new BerDecoder( aValue, 0, aValue.length );
+      final int[] len = new int[1];
+      decoder.parseSeq( len );
+      final int end = decoder.getParsePosition() + len[0];
+      while ( decoder.getParsePosition() < end )
+      {
+        final int tag = decoder.peekByte();
+        if ( tag == ( Ber.ASN_CONTEXT | 0x00 ) )
+        {
+          userIdentity = decoder.parseStringWithTag( tag, true, null );
+        }
+        else if ( tag == ( Ber.ASN_CONTEXT | 0x01 ) )
+        {
+          oldPassword = decoder.parseOctetString( tag, null );
+        }
+        else if ( tag == ( Ber.ASN_CONTEXT | 0x02 ) )
+        {
+          newPassword = decoder.parseOctetString( tag, null );
+        }
+        else
+        {
+          throw new DecodeException( "Invalid password modify request!" );
+        }
+      }
+    }
+
+    final String dn = ( userIdentity != null ) ? userIdentity : aConnection.boundDN;
+
+    int resultCode = LdapProtocol.SUCCESS;
+    byte[] responseValue = null;
+    synchronized ( this.entries )
+    {
+      final String key = toKey( dn );
+      final StoredEntry stored = dn.isEmpty() ? null : this.entries.get( key );
+      if ( stored == null )
+      {
+        resultCode = dn.isEmpty() ? LdapProtocol.UNWILLING_TO_PERFORM : LdapProtocol.NO_SUCH_OBJECT;
+      }
+      else if ( ( oldPassword != null ) && !stored.entry.getValues( ATTR_USER_PASSWORD ).isEmpty()
+          && !valueEquals( stored.entry.getValue( ATTR_USER_PASSWORD ), oldPassword ) )
+      {
+        resultCode = LdapProtocol.UNWILLING_TO_PERFORM;
+      }
+      else
+      {
+        String password = ( newPassword == null ) ? null : new String( newPassword, UTF8 );
+        if ( password == null )
+        {
+          password = Long.toString( Math.abs( aConnection.random.nextLong() ), 36 );
+
+          final BerEncoder encoder = new BerEncoder();
+          encoder.beginSeq( SEQUENCE );
+          encoder.encodeString( password, Ber.ASN_CONTEXT | 0x00, true );
+          encoder.endSeq();
+          responseValue = encoder.getTrimmedBuf();
+        }
+
+        final Map<String, List<Object>> attributes = new TreeMap<String, List<Object>>(
+            String.CASE_INSENSITIVE_ORDER );
+        attributes.putAll( stored.entry.toMap() );
+        attributes.put( ATTR_USER_PASSWORD, Collections.<Object> singletonList( password ) );
+
+        this.entries.put( key, new StoredEntry( LdapEntry.valueOf( stored.entry.getDN(), attributes ), stored.depth ) );
+      }
+    }
+
+    return new LdapMessage( aRequest.getMessageId(), new ExtendedOperationResponse( new LdapResult( resultCode, "",
+        null ), null, responseValue ) );
+  }
+
+  /**
+   * Handles a search request.
+   */
+  private List<LdapMessage> handleSearch( final LdapMessage aRequest, final SearchRequest aSearch )
+      throws IOException
+  {
+    final String key = toKey( aSearch.getBaseObject() );
+    final int scope = aSearch.getScope();
+
+    final List<StoredEntry> candidates = new ArrayList<StoredEntry>();
+    if ( key.isEmpty() && ( scope == SearchRequest.SCOPE_BASE_OBJECT ) )
+    {
+      candidates.add( createRootDSE() );
+    }
+    else
+    {
+      final StoredEntry base = this.entries.get( key );
+      if ( ( base == null ) && !key.isEmpty() )
+      {
+        return Collections.singletonList( createResponse( aRequest, LdapProtocol.SEARCH_RESULT_DONE,
+            LdapProtocol.NO_SUCH_OBJECT, null ) );
+      }
+
+      if ( ( scope == SearchRequest.SCOPE_BASE_OBJECT ) || ( scope == SearchRequest.SCOPE_WHOLE_SUBTREE ) )
+      {
+        if ( base != null )
+        {
+          candidates.add( base );
+        }
+      }
+      if ( scope != SearchRequest.SCOPE_BASE_OBJECT )
+      {
+        final Collection<StoredEntry> subtree = key.isEmpty() ? this.entries.values() : this.entries.subMap(
+            key + ",", key + "-" ).values();
+        final int childDepth = getDepth( key ) + 1;
+        for ( StoredEntry entry : subtree )
+        {
+          if ( ( scope == SearchRequest.SCOPE_WHOLE_SUBTREE ) || ( entry.depth == childDepth ) )
+          {
+            candidates.add( entry );
+          }
+        }
+      }
+    }
+
+    final LdapFilterEvaluator evaluator = new LdapFilterEvaluator( aSearch.getFilter() );
+    final List<StoredEntry> matches = new ArrayList<StoredEntry>();
+    for ( StoredEntry candidate : candidates )
+    {
+      if ( evaluator.matches( candidate.entry ) )
+      {
+        matches.add( candidate );
+      }
+    }
+
+    int first = 0;
+    int last = matches.size();
+    List<LdapControl> responseControls = Collections.emptyList();
+
+    final LdapControl paged = aRequest.getControl( PAGED_RESULTS_OID );
+    if ( paged != null )
+    {
+      final byte[] value = paged.getValue();
+      final BerDecoder decoder = new BerDecoder( value, 0, value.length );
+      decoder.parseSeq( null );
+      final int pageSize = decoder.parseInt();
+      final byte[] cookie = decoder.parseOctetString( Ber.ASN_OCTET_STR, null );
+
+      first = ( cookie.length == 4 ) ? ByteBuffer.wrap( cookie ).getInt() : 0;
+      last = ( pageSize <= 0 ) ? first : Math.min( matches.size(), first + pageSize );
+      if ( pageSize <= 0 )
+      {
+        // Abandons the paged search...
+        first = last = 0;
+      }
+
+      final BerEncoder encoder = new BerEncoder();
+      encoder.beginSeq( SEQUENCE );
+      encoder.encodeInt( matches.size() );
+      encoder.encodeOctetString( ( last < matches.size() ) && ( pageSize > 0 ) ? ByteBuffer.allocate( 4 )
+          .putInt( last ).array() : new byte[0], Ber.ASN_OCTET_STR );
+      encoder.endSeq();
+      responseControls = Collections.singletonList( new LdapControl( PAGED_RESULTS_OID, false, encoder
+          .getTrimmedBuf() ) );
+    }
+
+    int resultCode = LdapProtocol.SUCCESS;
+    final int sizeLimit = aSearch.getSizeLimit();
+    if ( ( sizeLimit > 0 ) && ( ( last - first ) > sizeLimit ) )
+    {
+      last = first + sizeLimit;
+      resultCode = LdapProtocol.SIZE_LIMIT_EXCEEDED;
+    }
+
+    final List<String> selection = aSearch.getAttributes();
+    final boolean all = selection.isEmpty() || selection.contains( "*" );
+    final boolean none = ( selection.size() == 1 ) && "1.1".equals( selection.get( 0 ) );
+
+    final List<LdapMessage> responses = new ArrayList<LdapMessage>( ( last - first ) + 1 );
+    for ( int i = first; i < last; i++ )
+    {
+      final StoredEntry match = matches.get( i );
+
+      final List<PartialAttribute> attributes;
+      if ( none )
+      {
+        attributes = Collections.emptyList();
+      }
+      else if ( all && !aSearch.isTypesOnly() )
+      {
+        attributes = match.attributes;
+      }
+      else
+      {
+        attributes = new ArrayList<PartialAttribute>();
+        for ( String id : match.entry.getAttributeIDs() )
+        {
+          if ( all || isSelected( id, selection ) )
+          {
+            attributes.add( toPartialAttribute( id, match.entry.getValues( id ), aSearch.isTypesOnly() ) );
+          }
+        }
+      }
+
+      responses.add( new LdapMessage( aRequest.getMessageId(), new SearchResultEntry( match.entry.getDN(),
+          attributes ) ) );
+    }
+    responses.add( new LdapMessage( aRequest.getMessageId(), new LdapResponse( LdapProtocol.SEARCH_RESULT_DONE,
+        new LdapResult( resultCode, "", null ) ), responseControls ) );
+
+    return responses;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.concurrent.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+
+
+/**
+ * AdaptivePageSize determines the page size of a paged search from the latency
+ * and size of the previously received pages.
+ * <p>
+ * The page size is doubled as long as pages are received well within the
+ * target latency and size, and halved when a page exceeds either of them. The
+ * page size never exceeds the maximum page size of the server. In case the
+ * server returns fewer entries than requested while more pages are pending,
+ * this is taken as the actual maximum page size of the server.
+ * </p>
+ */
+final class AdaptivePageSize
+{
+  // CONSTANTS
+
+  /** the smallest page size to request. */
+  private static final int MIN_PAGE_SIZE = 10;
+  /** the latency we aim for when receiving a single page. */
+  private static final long TARGET_LATENCY = TimeUnit.MILLISECONDS.toNanos( 500L );
+  /** the (estimated) number of bytes we aim for in a single page. */
+  private static final long TARGET_SIZE = 4L * 1024L * 1024L;
+
+  // VARIABLES
+
+  private int maxPageSize;
+  private int pageSize;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new AdaptivePageSize object.
+   *
+   * @param aInitialPageSize
+   *          the page size to start with, &gt; 0;
+   * @param aMaxPageSize
+   *          the maximum page size the server allows, &gt; 0.
+   */
+  AdaptivePageSize( final int aInitialPageSize, final int aMaxPageSize )
+  {
+    this.maxPageSize = aMaxPageSize;
+    this.pageSize = Math.max( 1, Math.min( aInitialPageSize, aMaxPageSize ) );
+  }
+
+  // METHODS
+
+  /**
+   * Estimates the size of the given attributes, as the number of characters
+   * and bytes of their IDs and values.
+   *
+   * @param aAttributes
+   *          the attributes to estimate the size for, can be <code>null</code>.
+   * @return the estimated size, in bytes.
+   * @throws NamingException
+   *           in case the attributes could not be accessed.
+   */
+  static long estimateSize( final Attributes aAttributes ) throws NamingException
+  {
+    long result = 0L;
+
+    if ( aAttributes != null )
+    {
+      final NamingEnumeration<? extends Attribute> attributes = aAttributes.getAll();
+      while ( attributes.hasMore() )
+      {
+        final Attribute attribute = attributes.next();
+        result += attribute.getID().length();
+
+        for ( int i = 0; i < attribute.size(); i++ )
+        {
+          final Object value = attribute.get( i );
+          if ( value instanceof byte[] )
+          {
+            result += ( ( byte[] )value ).length;
+          }
+          else if ( value != null )
+          {
+            result += String.valueOf( value ).length();
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Estimates the size of the given search result, as the number of characters
+   * and bytes of its name, attribute IDs and attribute values.
+   *
+   * @param aResult
+   *          the search result to estimate the size for, cannot be
+   *          <code>null</code>.
+   * @return the estimated size, in bytes.
+   * @throws NamingException
+   *           in case the attributes of the search result could not be
+   *           accessed.
+   */
+  static long estimateSize( final SearchResult aResult ) throws NamingException
+  {
+    return String.valueOf( aResult.getName() ).length() + estimateSize( aResult.getAttributes() );
+  }
+
+  /**
+   * Returns the page size to request for the next page.
+   *
+   * @return a page size, &gt; 0.
+   */
+  int getPageSize()
+  {
+    return this.pageSize;
+  }
+
+  /**
+   * Adapts the page size to the characteristics of the last received page.
+   *
+   * @param aRequested
+   *          the number of entries that were requested;
+   * @param aReceived
+   *          the number of entries that were received;
+   * @param aLatency
+   *          the time it took to receive the page, in nanoseconds;
+   * @param aSize
+   *          the estimated size of the page, in bytes;
+   * @param aMorePages
+   *          <code>true</code> if the server has more pages,
+   *          <code>false</code> if this was the last page.
+   */
+  void pageReceived( final int aRequested, final int aReceived, final long aLatency, final long aSize,
+      final boolean aMorePages )
+  {
+    if ( aReceived <= 0 )
+    {
+      // Nothing to learn from...
+      return;
+    }
+
+    if ( aMorePages && ( aReceived < aRequested ) )
+    {
+      // The server limits the page size to less than we requested...
+      this.maxPageSize = aReceived;
+    }
+
+    int newPageSize = this.pageSize;
+    if ( ( aLatency > TARGET_LATENCY ) || ( aSize > TARGET_SIZE ) )
+    {
+      newPageSize /= 2;
+    }
+    else if ( ( aLatency < ( TARGET_LATENCY / 2 ) ) && ( aSize < ( TARGET_SIZE / 2 ) ) )
+    {
+      newPageSize = ( newPageSize > ( Integer.MAX_VALUE / 2 ) ) ? Integer.MAX_VALUE : ( newPageSize * 2 );
+    }
+
+    this.pageSize = Math.max( Math.min( MIN_PAGE_SIZE, this.maxPageSize ), Math.min( newPageSize, this.maxPageSize ) );
+  }
+}
@@ -0,0 +1,406 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+import javax.naming.ldap.*;
+
+import nl.lxtreme.ldap.extension.impl.*;
+
+
+/**
+ * AsyncLibLdap provides an asynchronous facade on top of {@link LibLdap}.
+ * <p>
+ * Each operation is submitted to an executor and returns directly with a
+ * {@link LdapFuture} representing its outcome, to which callbacks can be added.
+ * In case an operation fails, the {@link Future#get()} method throws an
+ * {@link ExecutionException} whose cause is the original exception (typically
+ * a {@link javax.naming.NamingException}).
+ * </p>
+ * <p>
+ * By default, a fixed number of daemon threads is used, which is created by and
+ * owned by this facade: as many threads as the maximum size of the
+ * {@link LdapContextPool} of the underlying {@link LibLdap}, or
+ * {@value #DEFAULT_THREAD_COUNT} threads in case it is not pooled. Operations
+ * submitted while all threads are busy are queued. Callers that want another
+ * limit, or share threads with other parts of their application, can supply
+ * their own executor.
+ * </p>
+ * <p>
+ * This facade deliberately offers no way to bind, as binding changes the
+ * environment shared by all operations of the underlying {@link LibLdap}.
+ * Bind with {@link LibLdap#bind(String, String)} before submitting operations,
+ * or use a separate {@link LibLdap} for each identity.
+ * </p>
+ */
+public final class AsyncLibLdap
+{
+  // CONSTANTS
+
+  /** the number of threads of the default executor, if the library is not pooled. */
+  public static final int DEFAULT_THREAD_COUNT = 4;
+
+  /** the time after which idle threads of the default executor are stopped. */
+  private static final long THREAD_KEEP_ALIVE = 60L;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  // INNER TYPES
+
+  /**
+   * Creates the daemon threads for the default executor.
+   */
+  private static final class DaemonThreadFactory implements ThreadFactory
+  {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread( final Runnable aRunnable )
+    {
+      final Thread result = new Thread( aRunnable, "LibLdap-Async-" + THREAD_COUNTER.incrementAndGet() );
+      result.setDaemon( true );
+      return result;
+    }
+  }
+
+  /**
+   * Provides each operation with a context of its own, as a single LDAP
+   * context cannot be used by multiple threads concurrently.
+   */
+  private final class ExclusiveContextProvider implements PooledContextProvider
+  {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LdapContext getContext() throws NamingException
+    {
+      final LibLdap lib = AsyncLibLdap.this.ldap;
+      if ( lib.isPooled() )
+      {
+        // Pooled contexts are already handed out exclusively...
+        return lib.getContext();
+      }
+
+      final LdapContext shared = lib.getContext();
+      try
+      {
+        // Creates a new context on the same connection, for use by this thread
+        // only...
+        return shared.newInstance( null /* requestControls */);
+      }
+      finally
+      {
+        lib.releaseContext( shared );
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPooled()
+    {
+      return AsyncLibLdap.this.ldap.isPooled();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void releaseContext( final LdapContext aContext ) throws NamingException
+    {
+      final LibLdap lib = AsyncLibLdap.this.ldap;
+      if ( lib.isPooled() )
+      {
+        lib.releaseContext( aContext );
+      }
+      else
+      {
+        // Only closes this instance, the shared connection remains open...
+        aContext.close();
+      }
+    }
+  }
+
+  // VARIABLES
+
+  private final LibLdap ldap;
+  private final PooledContextProvider exclusiveContextProvider;
+  private final ExecutorService executor;
+  private final boolean ownsExecutor;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new AsyncLibLdap object using a default executor of daemon
+   * threads, sized to the context pool of the given library.
+   *
+   * @param aLdap
+   *          the LDAP library to perform the operations with, cannot be
+   *          <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given library was <code>null</code>.
+   */
+  public AsyncLibLdap( final LibLdap aLdap ) throws IllegalArgumentException
+  {
+    this( aLdap, createDefaultExecutor( aLdap ), true );
+  }
+
+  /**
+   * Creates a new AsyncLibLdap object using the given executor.
+   * <p>
+   * The given executor is <em>not</em> shut down by {@link #shutdown()}.
+   * </p>
+   *
+   * @param aLdap
+   *          the LDAP library to perform the operations with, cannot be
+   *          <code>null</code>;
+   * @param aExecutor
+   *          the executor to perform the operations on, cannot be
+   *          <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case one of the given arguments was <code>null</code>.
+   */
+  public AsyncLibLdap( final LibLdap aLdap, final ExecutorService aExecutor ) throws IllegalArgumentException
+  {
+    this( aLdap, aExecutor, false );
+  }
+
+  /**
+   * Creates a new AsyncLibLdap object.
+   *
+   * @param aLdap
+   *          the LDAP library to perform the operations with;
+   * @param aExecutor
+   *          the executor to perform the operations on;
+   * @param aOwnsExecutor
+   *          <code>true</code> if the executor should be shut down by this
+   *          object, <code>false</code> otherwise.
+   */
+  private AsyncLibLdap( final LibLdap aLdap, final ExecutorService aExecutor, final boolean aOwnsExecutor )
+  {
+    if ( aLdap == null )
+    {
+      throw new IllegalArgumentException( "LDAP library cannot be null!" );
+    }
+    if ( aExecutor == null )
+    {
+      throw new IllegalArgumentException( "Executor cannot be null!" );
+    }
+    this.ldap = aLdap;
+    this.exclusiveContextProvider = new ExclusiveContextProvider();
+    this.executor = aExecutor;
+    this.ownsExecutor = aOwnsExecutor;
+  }
+
+  // METHODS
+
+  /**
+   * Creates the default executor for the given library, with as many threads
+   * as it can use contexts concurrently.
+   *
+   * @param aLdap
+   *          the LDAP library to create the executor for, can be
+   *          <code>null</code>.
+   * @return a new executor, never <code>null</code>.
+   */
+  private static ExecutorService createDefaultExecutor( final LibLdap aLdap )
+  {
+    final LdapContextPool pool = ( aLdap == null ) ? null : aLdap.getContextPool();
+    final int threads = ( pool == null ) ? DEFAULT_THREAD_COUNT : pool.getMaxSize();
+
+    final ThreadPoolExecutor result = new ThreadPoolExecutor( threads, threads, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory() );
+    result.allowCoreThreadTimeOut( true );
+    return result;
+  }
+
+  /**
+   * Asynchronously changes the password for a user.
+   * <p>
+   * The password is changed on a context of its own.
+   * </p>
+   *
+   * @param aUserDN
+   *          the DN of the user to change the password for;
+   * @param aOldPassword
+   *          the old password of the user to change, may be <code>null</code>;
+   * @param aNewPassword
+   *          the new password of the user to change, may never be
+   *          <code>null</code>.
+   * @return the future outcome of the password change, never <code>null</code>.
+   * @see LibLdap#changePassword(String, String, String)
+   */
+  public LdapFuture<Boolean> changePassword( final String aUserDN, final String aOldPassword,
+      final String aNewPassword )
+  {
+    return submit( new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call() throws Exception
+      {
+        return Boolean.valueOf( AsyncLibLdap.this.ldap.changePassword( AsyncLibLdap.this.exclusiveContextProvider,
+            aUserDN, aOldPassword, aNewPassword ) );
+      }
+    } );
+  }
+
+  /**
+   * Asynchronously performs an LDAPv3 "extended operation".
+   * <p>
+   * The operation is performed on a context of its own, and is reported to the
+   * metrics listener of the underlying library.
+   * </p>
+   *
+   * @param aExtendedRequest
+   *          the extended request to perform, cannot be <code>null</code>.
+   * @return the future extended response, never <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given request was <code>null</code>.
+   */
+  public LdapFuture<ExtendedResponse> extendedOperation( final ExtendedRequest aExtendedRequest )
+      throws IllegalArgumentException
+  {
+    final ExtendedOperation operation = new ExtendedOperation( this.exclusiveContextProvider, this.ldap,
+        aExtendedRequest );
+
+    return submit( new Callable<ExtendedResponse>()
+    {
+      @Override
+      public ExtendedResponse call() throws Exception
+      {
+        return operation.perform();
+      }
+    } );
+  }
+
+  /**
+   * Asynchronously retrieves all attributes for a given distinguished name.
+   * <p>
+   * The attributes are retrieved on a context of their own.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to retrieve the attributes for, cannot be
+   *          <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve.
+   * @return the future attributes of the given DN, never <code>null</code>.
+   * @see LibLdap#getAttributes(String, String...)
+   */
+  public LdapFuture<Map<String, List<Object>>> getAttributes( final String aDN, final String... aAttributes )
+  {
+    return submit( new Callable<Map<String, List<Object>>>()
+    {
+      @Override
+      public Map<String, List<Object>> call() throws Exception
+      {
+        return AsyncLibLdap.this.ldap.getAttributes( AsyncLibLdap.this.exclusiveContextProvider, aDN, aAttributes );
+      }
+    } );
+  }
+
+  /**
+   * Returns the LDAP library this facade performs its operations with.
+   *
+   * @return the LDAP library, never <code>null</code>.
+   */
+  public LibLdap getLibLdap()
+  {
+    return this.ldap;
+  }
+
+  /**
+   * Asynchronously queries the LDAP server.
+   *
+   * @param aDN
+   *          the distinguished name to search under;
+   * @param aFilter
+   *          the LDAP filter to use;
+   * @param aSearchScope
+   *          the search scope to use, should be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE}.
+   * @return the future search results, never <code>null</code>.
+   * @see LibLdap#query(String, String, int)
+   */
+  public LdapFuture<Collection<SearchResult>> query( final String aDN, final String aFilter, final int aSearchScope )
+  {
+    return submit( new Callable<Collection<SearchResult>>()
+    {
+      @Override
+      public Collection<SearchResult> call() throws Exception
+      {
+        return AsyncLibLdap.this.ldap.query( aDN, aFilter, aSearchScope );
+      }
+    } );
+  }
+
+  /**
+   * Asynchronously queries the LDAP server, using a specific page size.
+   *
+   * @param aDN
+   *          the distinguished name to search under;
+   * @param aFilter
+   *          the LDAP filter to use;
+   * @param aSearchScope
+   *          the search scope to use;
+   * @param aPageSize
+   *          the number of entries to request per page, &gt; 0.
+   * @return the future search results, never <code>null</code>.
+   * @see LibLdap#query(String, String, int, int)
+   */
+  public LdapFuture<Collection<SearchResult>> query( final String aDN, final String aFilter, final int aSearchScope,
+      final int aPageSize )
+  {
+    return submit( new Callable<Collection<SearchResult>>()
+    {
+      @Override
+      public Collection<SearchResult> call() throws Exception
+      {
+        return AsyncLibLdap.this.ldap.query( aDN, aFilter, aSearchScope, aPageSize );
+      }
+    } );
+  }
+
+  /**
+   * Shuts down the executor of this facade, in case it was created by this
+   * facade. Operations that are already submitted are still completed.
+   */
+  public void shutdown()
+  {
+    if ( this.ownsExecutor )
+    {
+      this.executor.shutdown();
+    }
+  }
+
+  /**
+   * Submits an arbitrary operation to the executor of this facade, for example
+   * to call an extension asynchronously.
+   *
+   * @param aOperation
+   *          the operation to submit, cannot be <code>null</code>.
+   * @return the future outcome of the operation, never <code>null</code>.
+   * @throws RejectedExecutionException
+   *           in case this facade is shut down.
+   */
+  public <T> LdapFuture<T> submit( final Callable<T> aOperation ) throws RejectedExecutionException
+  {
+    final LdapFuture<T> result = new LdapFuture<T>( aOperation );
+    this.executor.execute( result );
+    return result;
+  }
+}
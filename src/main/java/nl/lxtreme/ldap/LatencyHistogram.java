@@ -0,0 +1,246 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * LatencyHistogram keeps track of the distribution of latencies, in the same
+ * way as HdrHistogram does.
+ * <p>
+ * Latencies are counted in buckets whose width grows with their value, such
+ * that each bucket has a relative error of less than 1%. Latencies are tracked
+ * with a resolution of one microsecond, up to one hour; longer latencies are
+ * counted as one hour. This allows percentiles like the 99.9th to be
+ * determined accurately, using a fixed amount of memory (about 26 KB).
+ * </p>
+ * <p>
+ * Recording a latency does not allocate and does not block, so histograms can
+ * be updated by many threads concurrently. Reading a histogram while it is
+ * being updated gives a result that is not necessarily consistent, which is
+ * acceptable for monitoring purposes.
+ * </p>
+ */
+public final class LatencyHistogram
+{
+  // CONSTANTS
+
+  /** the number of bits used for the sub-buckets, giving 2 significant digits. */
+  private static final int SUB_BUCKET_BITS = 8;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+  /** the highest latency that is tracked, in microseconds. */
+  private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toMicros( 1L );
+
+  private static final int COUNTS_LENGTH = indexOf( HIGHEST_TRACKABLE_VALUE ) + 1;
+
+  // VARIABLES
+
+  private final AtomicLongArray counts;
+  private final AtomicLong totalCount;
+  private final AtomicLong totalDuration;
+  private final AtomicLong minDuration;
+  private final AtomicLong maxDuration;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, empty, LatencyHistogram object.
+   */
+  public LatencyHistogram()
+  {
+    this.counts = new AtomicLongArray( COUNTS_LENGTH );
+    this.totalCount = new AtomicLong();
+    this.totalDuration = new AtomicLong();
+    this.minDuration = new AtomicLong( Long.MAX_VALUE );
+    this.maxDuration = new AtomicLong();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the highest value that is counted in the bucket with the given
+   * index.
+   */
+  private static long highestValueAt( final int aIndex )
+  {
+    if ( aIndex < SUB_BUCKET_COUNT )
+    {
+      return aIndex;
+    }
+    final int offset = aIndex - SUB_BUCKET_COUNT;
+    final int shift = ( offset / SUB_BUCKET_HALF_COUNT ) + 1;
+    final long subBucket = ( offset % SUB_BUCKET_HALF_COUNT ) + SUB_BUCKET_HALF_COUNT;
+    return ( ( subBucket + 1 ) << shift ) - 1;
+  }
+
+  /**
+   * Returns the index of the bucket that counts the given value.
+   */
+  private static int indexOf( final long aValue )
+  {
+    if ( aValue < SUB_BUCKET_COUNT )
+    {
+      return ( int )Math.max( 0L, aValue );
+    }
+    // Shift the value such that it lies within [half count, count)...
+    final int shift = ( 63 - Long.numberOfLeadingZeros( aValue ) ) - ( SUB_BUCKET_BITS - 1 );
+    final int subBucket = ( int )( aValue >>> shift );
+    return SUB_BUCKET_COUNT + ( ( shift - 1 ) * SUB_BUCKET_HALF_COUNT ) + ( subBucket - SUB_BUCKET_HALF_COUNT );
+  }
+
+  /**
+   * Returns the number of recorded latencies.
+   *
+   * @return a count, &gt;= 0.
+   */
+  public long getCount()
+  {
+    return this.totalCount.get();
+  }
+
+  /**
+   * Returns the highest recorded latency.
+   *
+   * @return the exact highest latency, in nanoseconds, or 0 in case no
+   *         latencies are recorded.
+   */
+  public long getMax()
+  {
+    return this.maxDuration.get();
+  }
+
+  /**
+   * Returns the average recorded latency.
+   *
+   * @return the exact average latency, in nanoseconds, or 0.0 in case no
+   *         latencies are recorded.
+   */
+  public double getMean()
+  {
+    final long count = this.totalCount.get();
+    return ( count == 0L ) ? 0.0 : ( this.totalDuration.get() / ( double )count );
+  }
+
+  /**
+   * Returns the lowest recorded latency.
+   *
+   * @return the exact lowest latency, in nanoseconds, or 0 in case no
+   *         latencies are recorded.
+   */
+  public long getMin()
+  {
+    final long result = this.minDuration.get();
+    return ( result == Long.MAX_VALUE ) ? 0L : result;
+  }
+
+  /**
+   * Returns the latency below which the given percentage of the recorded
+   * latencies fall.
+   *
+   * @param aPercentile
+   *          the percentile to return, like 50.0 for the median, or 99.9,
+   *          between 0.0 and 100.0.
+   * @return the latency at the given percentile, in nanoseconds, with a
+   *         relative error of less than 1%, or 0 in case no latencies are
+   *         recorded.
+   * @throws IllegalArgumentException
+   *           in case the given percentile was out of range.
+   */
+  public long getValueAtPercentile( final double aPercentile )
+  {
+    if ( !( aPercentile >= 0.0 ) || ( aPercentile > 100.0 ) )
+    {
+      throw new IllegalArgumentException( "Invalid percentile: should be between 0 and 100!" );
+    }
+
+    // Take a snapshot, as the counts might be updated concurrently...
+    final long[] snapshot = new long[COUNTS_LENGTH];
+    long total = 0L;
+    for ( int i = 0; i < snapshot.length; i++ )
+    {
+      snapshot[i] = this.counts.get( i );
+      total += snapshot[i];
+    }
+    if ( total == 0L )
+    {
+      return 0L;
+    }
+
+    final long target = Math.max( 1L, ( long )Math.ceil( ( aPercentile / 100.0 ) * total ) );
+
+    long count = 0L;
+    for ( int i = 0; i < snapshot.length; i++ )
+    {
+      count += snapshot[i];
+      if ( count >= target )
+      {
+        final long result = TimeUnit.MICROSECONDS.toNanos( highestValueAt( i ) + 1L ) - 1L;
+        return Math.max( getMin(), Math.min( result, getMax() ) );
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Records the given latency.
+   *
+   * @param aDuration
+   *          the latency to record, in nanoseconds. Negative latencies are
+   *          counted as zero.
+   */
+  public void record( final long aDuration )
+  {
+    final long duration = Math.max( 0L, aDuration );
+    final long micros = Math.min( HIGHEST_TRACKABLE_VALUE, TimeUnit.NANOSECONDS.toMicros( duration ) );
+
+    this.counts.incrementAndGet( indexOf( micros ) );
+    this.totalCount.incrementAndGet();
+    this.totalDuration.addAndGet( duration );
+
+    long current;
+    while ( ( duration < ( current = this.minDuration.get() ) )
+        && !this.minDuration.compareAndSet( current, duration ) )
+    {
+      // Retry...
+    }
+    while ( ( duration > ( current = this.maxDuration.get() ) )
+        && !this.maxDuration.compareAndSet( current, duration ) )
+    {
+      // Retry...
+    }
+  }
+
+  /**
+   * Removes all recorded latencies.
+   */
+  public void reset()
+  {
+    for ( int i = 0; i < COUNTS_LENGTH; i++ )
+    {
+      this.counts.set( i, 0L );
+    }
+    this.totalCount.set( 0L );
+    this.totalDuration.set( 0L );
+    this.minDuration.set( Long.MAX_VALUE );
+    this.maxDuration.set( 0L );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return String.format( "count=%d, mean=%.3f ms, p50=%.3f ms, p99=%.3f ms, p99.9=%.3f ms, max=%.3f ms",
+        getCount(), getMean() / 1.0e6, getValueAtPercentile( 50.0 ) / 1.0e6, getValueAtPercentile( 99.0 ) / 1.0e6,
+        getValueAtPercentile( 99.9 ) / 1.0e6, getMax() / 1.0e6 );
+  }
+}
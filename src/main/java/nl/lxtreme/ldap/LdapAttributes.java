@@ -16,6 +16,12 @@ interface LdapAttributes
   /** the attribute name to obtain all supported LDAPv3 extensions. */
   static final String ATTR_SUPPORTED_EXTENSION = "supportedExtension";
 
+  /** the attribute name to obtain all supported LDAPv3 controls. */
+  static final String ATTR_SUPPORTED_CONTROL = "supportedControl";
+
+  /** the attribute name to obtain all supported SASL mechanisms. */
+  static final String ATTR_SUPPORTED_SASL_MECHANISMS = "supportedSASLMechanisms";
+
   /** OpenLDAP base DN attribute */
   static final String ATTR_NAMING_CONTEXT = "namingContexts";
 
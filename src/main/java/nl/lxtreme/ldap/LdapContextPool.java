@@ -0,0 +1,881 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import javax.naming.*;
+import javax.naming.ldap.*;
+import javax.net.ssl.*;
+
+
+/**
+ * LdapContextPool provides a bounded pool of bound LDAP contexts that can be
+ * used concurrently by many threads.
+ * <p>
+ * Each call to {@link #getContext()} checks out a context for exclusive use by
+ * the caller, which <em>must</em> return it to the pool with
+ * {@link #releaseContext(LdapContext)} when done with it. In case all contexts
+ * are checked out, callers wait until one is returned (or the checkout timeout
+ * passes).
+ * </p>
+ * <p>
+ * Idle contexts are validated before they are handed out again, evicted after
+ * being idle for too long, and replaced after their maximum lifetime passed.
+ * A minimum number of idle contexts can be kept ready, see
+ * {@link #setMinIdle(int)} and {@link #prewarm()}.
+ * </p>
+ * <p>
+ * A typical use looks like:
+ * </p>
+ *
+ * <pre>
+ * final Map&lt;String, String&gt; env = new HashMap&lt;String, String&gt;();
+ * env.put( Context.PROVIDER_URL, &quot;ldap://localhost:389/dc=planon,dc=nl&quot; );
+ * env.put( Context.SECURITY_AUTHENTICATION, &quot;simple&quot; );
+ * env.put( Context.SECURITY_PRINCIPAL, &quot;my-ldap-username&quot; );
+ * env.put( Context.SECURITY_CREDENTIALS, &quot;my-password&quot; );
+ *
+ * final LdapContextPool pool = new LdapContextPool( env, 8 );
+ * pool.setMinIdle( 2 );
+ * pool.prewarm();
+ *
+ * final LibLdap ldap = new LibLdap( &quot;ldap://localhost:389&quot;, pool );
+ * </pre>
+ * <p>
+ * To secure the connections with TLS, use {@link #setStartTLS(boolean)}
+ * instead of the StartTLS extension of {@link LibLdap}, as the latter would
+ * only secure a single connection of this pool.
+ * </p>
+ */
+public class LdapContextPool implements PooledContextProvider
+{
+  // CONSTANTS
+
+  private static final long DEFAULT_CHECKOUT_TIMEOUT = TimeUnit.SECONDS.toNanos( 30L );
+  private static final long DEFAULT_MAX_IDLE_TIME = TimeUnit.MINUTES.toNanos( 5L );
+  private static final long DEFAULT_MAX_LIFETIME = TimeUnit.MINUTES.toNanos( 30L );
+  private static final long DEFAULT_VALIDATION_INTERVAL = TimeUnit.SECONDS.toNanos( 30L );
+
+  private static final long EVICTION_INTERVAL = TimeUnit.SECONDS.toMillis( 30L );
+  /** the interval in which callers waiting for an idle context check for free capacity. */
+  private static final long IDLE_WAIT_INTERVAL = TimeUnit.MILLISECONDS.toNanos( 100L );
+
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+  private static final Logger LOG = Logger.getAnonymousLogger();
+
+  // INNER TYPES
+
+  /**
+   * Keeps the bookkeeping of a single pooled context.
+   */
+  private static final class PooledContext
+  {
+    final LdapContext context;
+    final StartTlsResponse tlsResponse;
+    final long created;
+    volatile long lastUsed;
+
+    /**
+     * Creates a new PooledContext object.
+     *
+     * @param aContext
+     *          the pooled context;
+     * @param aTlsResponse
+     *          the TLS session of the pooled context, or <code>null</code> in
+     *          case TLS is not used.
+     */
+    PooledContext( final LdapContext aContext, final StartTlsResponse aTlsResponse )
+    {
+      this.context = aContext;
+      this.tlsResponse = aTlsResponse;
+      this.created = System.nanoTime();
+      this.lastUsed = this.created;
+    }
+  }
+
+  // VARIABLES
+
+  private final Hashtable<String, String> environment;
+  private final int maxSize;
+  private final Semaphore permits;
+  private final LinkedBlockingDeque<PooledContext> idle;
+  private final Map<LdapContext, PooledContext> checkedOut;
+  private final AtomicInteger total;
+  private final Timer evictor;
+
+  private volatile int minIdle;
+  private volatile long checkoutTimeout;
+  private volatile long maxIdleTime;
+  private volatile long maxLifetime;
+  private volatile long validationInterval;
+  private volatile boolean startTLS;
+  private volatile HostnameVerifier hostnameVerifier;
+  private volatile LdapMetricsListener metricsListener;
+  private volatile String metricsServerURL;
+  private volatile boolean closed;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapContextPool object.
+   * <p>
+   * The given environment is used for creating each of the pooled contexts,
+   * see {@link LibLdap#LibLdap(String, Map)} for a description of its content.
+   * </p>
+   *
+   * @param aEnvironment
+   *          the environment to create the contexts with, cannot be
+   *          <code>null</code>;
+   * @param aMaxSize
+   *          the maximum number of contexts in this pool, &gt; 0.
+   * @throws IllegalArgumentException
+   *           in case the given environment was invalid, or the given maximum
+   *           size was not positive.
+   */
+  public LdapContextPool( final Map<String, String> aEnvironment, final int aMaxSize ) throws IllegalArgumentException
+  {
+    if ( aEnvironment == null )
+    {
+      throw new IllegalArgumentException( "Invalid environment: cannot be null!" );
+    }
+    if ( !aEnvironment.containsKey( Context.PROVIDER_URL ) || ( aEnvironment.get( Context.PROVIDER_URL ) == null ) )
+    {
+      throw new IllegalArgumentException( "Invalid environment: No provider URL (Context.PROVIDER_URL) set!" );
+    }
+    if ( aMaxSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid maximum size: should be positive!" );
+    }
+
+    this.environment = new Hashtable<String, String>( aEnvironment );
+    // Make sure the initial context factory is available...
+    if ( !this.environment.containsKey( Context.INITIAL_CONTEXT_FACTORY ) )
+    {
+      this.environment.put( Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory" );
+    }
+
+    this.maxSize = aMaxSize;
+    this.permits = new Semaphore( aMaxSize, true /* fair */);
+    this.idle = new LinkedBlockingDeque<PooledContext>();
+    this.checkedOut = Collections.synchronizedMap( new IdentityHashMap<LdapContext, PooledContext>() );
+    this.total = new AtomicInteger();
+
+    this.checkoutTimeout = DEFAULT_CHECKOUT_TIMEOUT;
+    this.maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+    this.maxLifetime = DEFAULT_MAX_LIFETIME;
+    this.validationInterval = DEFAULT_VALIDATION_INTERVAL;
+    this.metricsListener = LdapMetricsListener.NONE;
+    this.metricsServerURL = this.environment.get( Context.PROVIDER_URL );
+
+    this.evictor = new Timer( "LibLdap-PoolEvictor-" + POOL_COUNTER.incrementAndGet(), true /* isDaemon */);
+    this.evictor.schedule( new TimerTask()
+    {
+      @Override
+      public void run()
+      {
+        evictIdle();
+      }
+    }, EVICTION_INTERVAL, EVICTION_INTERVAL );
+  }
+
+  // METHODS
+
+  /**
+   * Closes this pool and all of its idle contexts. Contexts that are checked
+   * out are closed as soon as they are released.
+   */
+  public void close()
+  {
+    this.closed = true;
+    this.evictor.cancel();
+
+    PooledContext pc;
+    while ( ( pc = this.idle.pollFirst() ) != null )
+    {
+      destroy( pc );
+    }
+  }
+
+  /**
+   * Evicts all idle contexts that are idle for too long or passed their
+   * maximum lifetime, and creates new contexts in case less than the minimum
+   * number of idle contexts remain.
+   * <p>
+   * This method is called periodically by this pool itself.
+   * </p>
+   */
+  public void evictIdle()
+  {
+    if ( this.closed )
+    {
+      return;
+    }
+
+    final long now = System.nanoTime();
+
+    final Iterator<PooledContext> iter = this.idle.descendingIterator();
+    while ( iter.hasNext() && ( this.idle.size() > this.minIdle ) )
+    {
+      final PooledContext pc = iter.next();
+      if ( ( ( now - pc.lastUsed ) > this.maxIdleTime ) || isExpired( pc, now ) )
+      {
+        // Only destroy it if no-one checked it out in the meantime...
+        if ( this.idle.removeLastOccurrence( pc ) )
+        {
+          destroy( pc );
+        }
+      }
+    }
+
+    try
+    {
+      prewarm();
+    }
+    catch ( NamingException exception )
+    {
+      LOG.log( Level.FINE, "Failed to create idle LDAP context!", exception );
+    }
+  }
+
+  /**
+   * Returns the number of contexts that are currently checked out.
+   *
+   * @return the number of active contexts, &gt;= 0.
+   */
+  public int getActiveCount()
+  {
+    return this.checkedOut.size();
+  }
+
+  /**
+   * Checks out a context from this pool, creating a new context if no idle
+   * context is available, but the maximum size is not yet reached.
+   * <p>
+   * The returned context is for exclusive use by the caller until it is
+   * returned to this pool with {@link #releaseContext(LdapContext)}.
+   * </p>
+   *
+   * @return a bound LDAP context, never <code>null</code>.
+   * @throws NamingException
+   *           in case no context became available within the checkout timeout,
+   *           or the connection to the LDAP server failed;
+   * @throws IllegalStateException
+   *           in case this pool is closed.
+   */
+  @Override
+  public LdapContext getContext() throws NamingException, IllegalStateException
+  {
+    if ( this.closed )
+    {
+      throw new IllegalStateException( "Cannot obtain context from closed pool!" );
+    }
+
+    final long deadline = System.nanoTime() + this.checkoutTimeout;
+    try
+    {
+      if ( !this.permits.tryAcquire( this.checkoutTimeout, TimeUnit.NANOSECONDS ) )
+      {
+        throw new NamingException( "Timeout waiting for a pooled LDAP context!" );
+      }
+    }
+    catch ( InterruptedException exception )
+    {
+      throw interrupted( exception );
+    }
+
+    try
+    {
+      PooledContext pc = null;
+      while ( pc == null )
+      {
+        pc = this.idle.pollFirst();
+        if ( ( pc == null ) && !reserve() )
+        {
+          // All other contexts are idle, or are being created by prewarm()...
+          pc = awaitIdle( deadline );
+        }
+
+        final long now = System.nanoTime();
+        if ( pc == null )
+        {
+          pc = createContext();
+        }
+        else if ( isExpired( pc, now ) || !isValid( pc, now ) )
+        {
+          destroy( pc );
+          pc = null;
+        }
+      }
+
+      pc.lastUsed = System.nanoTime();
+      this.checkedOut.put( pc.context, pc );
+
+      return pc.context;
+    }
+    catch ( NamingException exception )
+    {
+      this.permits.release();
+      throw exception;
+    }
+    catch ( RuntimeException exception )
+    {
+      this.permits.release();
+      throw exception;
+    }
+  }
+
+  /**
+   * Returns the environment used to create the contexts of this pool.
+   *
+   * @return the environment, as unmodifiable map, never <code>null</code>.
+   */
+  public Map<String, String> getEnvironment()
+  {
+    return Collections.unmodifiableMap( this.environment );
+  }
+
+  /**
+   * Returns the number of idle contexts in this pool.
+   *
+   * @return the number of idle contexts, &gt;= 0.
+   */
+  public int getIdleCount()
+  {
+    return this.idle.size();
+  }
+
+  /**
+   * Returns the number of contexts in this pool, either idle or checked out.
+   *
+   * @return the number of contexts, &gt;= 0.
+   */
+  public int getTotalCount()
+  {
+    return this.total.get();
+  }
+
+  /**
+   * Returns the maximum number of contexts in this pool.
+   *
+   * @return the maximum size, &gt; 0.
+   */
+  public int getMaxSize()
+  {
+    return this.maxSize;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isPooled()
+  {
+    return true;
+  }
+
+  /**
+   * Returns whether the contexts of this pool are secured with TLS.
+   *
+   * @return <code>true</code> if TLS is started on each new context,
+   *         <code>false</code> otherwise.
+   * @see #setStartTLS(boolean)
+   */
+  public boolean isStartTLS()
+  {
+    return this.startTLS;
+  }
+
+  /**
+   * Creates new idle contexts until the minimum number of idle contexts is
+   * reached, or the pool reached its maximum size.
+   *
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  public void prewarm() throws NamingException
+  {
+    while ( !this.closed && ( this.idle.size() < this.minIdle ) )
+    {
+      if ( !reserve() )
+      {
+        // Pool is full...
+        return;
+      }
+      this.idle.offerLast( createContext() );
+    }
+  }
+
+  /**
+   * Returns a context to this pool, making it available for other callers.
+   * <p>
+   * The request controls of the context are cleared. In case the context
+   * passed its maximum lifetime, or this pool is closed, it is closed instead.
+   * </p>
+   *
+   * @param aContext
+   *          the context to return, as obtained by {@link #getContext()},
+   *          cannot be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given context was not checked out from this pool.
+   */
+  @Override
+  public void releaseContext( final LdapContext aContext ) throws IllegalArgumentException
+  {
+    final PooledContext pc = this.checkedOut.remove( aContext );
+    if ( pc == null )
+    {
+      throw new IllegalArgumentException( "Context not checked out from this pool!" );
+    }
+
+    try
+    {
+      final long now = System.nanoTime();
+      if ( this.closed || isExpired( pc, now ) )
+      {
+        destroy( pc );
+        return;
+      }
+
+      try
+      {
+        aContext.setRequestControls( null );
+      }
+      catch ( NamingException exception )
+      {
+        destroy( pc );
+        return;
+      }
+
+      pc.lastUsed = now;
+      // Most recently used contexts are handed out first...
+      this.idle.offerFirst( pc );
+    }
+    finally
+    {
+      this.permits.release();
+    }
+  }
+
+  /**
+   * Sets the maximum time to wait for a context to become available.
+   *
+   * @param aTimeout
+   *          the timeout, &gt;= 0;
+   * @param aUnit
+   *          the unit of the timeout, cannot be <code>null</code>.
+   */
+  public void setCheckoutTimeout( final long aTimeout, final TimeUnit aUnit )
+  {
+    this.checkoutTimeout = aUnit.toNanos( aTimeout );
+  }
+
+  /**
+   * Sets the hostname verifier to use when TLS is started.
+   *
+   * @param aHostnameVerifier
+   *          the hostname verifier to use, or <code>null</code> to use the
+   *          default verification of the server certificate.
+   * @see #setStartTLS(boolean)
+   */
+  public void setHostnameVerifier( final HostnameVerifier aHostnameVerifier )
+  {
+    this.hostnameVerifier = aHostnameVerifier;
+  }
+
+  /**
+   * Sets the maximum time a context can remain idle in this pool before it is
+   * closed, defaults to 5 minutes.
+   *
+   * @param aTime
+   *          the maximum idle time, &gt;= 0;
+   * @param aUnit
+   *          the unit of the idle time, cannot be <code>null</code>.
+   */
+  public void setMaxIdleTime( final long aTime, final TimeUnit aUnit )
+  {
+    this.maxIdleTime = aUnit.toNanos( aTime );
+  }
+
+  /**
+   * Sets the maximum lifetime of a context, after which it is closed and
+   * replaced by a new one, defaults to 30 minutes.
+   *
+   * @param aTime
+   *          the maximum lifetime, &gt;= 0;
+   * @param aUnit
+   *          the unit of the lifetime, cannot be <code>null</code>.
+   */
+  public void setMaxLifetime( final long aTime, final TimeUnit aUnit )
+  {
+    this.maxLifetime = aUnit.toNanos( aTime );
+  }
+
+  /**
+   * Sets the listener that is told about each context created (and bound) by
+   * this pool, as {@link LdapOperationType#BIND}.
+   *
+   * @param aServerURL
+   *          the server URL to report the binds for, cannot be
+   *          <code>null</code>;
+   * @param aListener
+   *          the metrics listener to use, cannot be <code>null</code>.
+   * @see LibLdap#setMetricsListener(LdapMetricsListener)
+   */
+  final void setMetricsListener( final String aServerURL, final LdapMetricsListener aListener )
+  {
+    this.metricsServerURL = aServerURL;
+    this.metricsListener = aListener;
+  }
+
+  /**
+   * Sets the minimum number of idle contexts to keep ready in this pool.
+   *
+   * @param aMinIdle
+   *          the minimum number of idle contexts, &gt;= 0 and &lt;= the maximum
+   *          size of this pool.
+   * @throws IllegalArgumentException
+   *           in case the given number was out of range.
+   * @see #prewarm()
+   */
+  public void setMinIdle( final int aMinIdle ) throws IllegalArgumentException
+  {
+    if ( ( aMinIdle < 0 ) || ( aMinIdle > this.maxSize ) )
+    {
+      throw new IllegalArgumentException( "Invalid minimum idle count: should be between 0 and " + this.maxSize );
+    }
+    this.minIdle = aMinIdle;
+  }
+
+  /**
+   * Sets whether the contexts of this pool are secured with TLS, as defined in
+   * RFC 4513.
+   * <p>
+   * When set, TLS is started on each new context <em>before</em> it is bound,
+   * so credentials are never sent in cleartext. In case TLS cannot be started,
+   * creating the context fails. Contexts that are already created are not
+   * affected, so this should be set before the pool is used.
+   * </p>
+   *
+   * @param aStartTLS
+   *          <code>true</code> to start TLS on each new context,
+   *          <code>false</code> to use plain connections (the default).
+   * @see #setHostnameVerifier(HostnameVerifier)
+   */
+  public void setStartTLS( final boolean aStartTLS )
+  {
+    this.startTLS = aStartTLS;
+  }
+
+  /**
+   * Sets the time after which an idle context is validated before it is handed
+   * out again, defaults to 30 seconds.
+   *
+   * @param aInterval
+   *          the validation interval, &gt;= 0. Use 0 to always validate;
+   * @param aUnit
+   *          the unit of the interval, cannot be <code>null</code>.
+   */
+  public void setValidationInterval( final long aInterval, final TimeUnit aUnit )
+  {
+    this.validationInterval = aUnit.toNanos( aInterval );
+  }
+
+  /**
+   * Waits until an idle context becomes available, or room is made for a new
+   * context.
+   *
+   * @param aDeadline
+   *          the time after which to stop waiting, in nanoseconds.
+   * @return an idle context, or <code>null</code> in case room for a new
+   *         context is reserved.
+   * @throws NamingException
+   *           in case the deadline passed, or the calling thread was
+   *           interrupted.
+   */
+  private PooledContext awaitIdle( final long aDeadline ) throws NamingException
+  {
+    try
+    {
+      PooledContext pc = null;
+      while ( pc == null )
+      {
+        final long remaining = aDeadline - System.nanoTime();
+        if ( remaining <= 0L )
+        {
+          throw new NamingException( "Timeout waiting for a pooled LDAP context!" );
+        }
+        pc = this.idle.pollFirst( Math.min( remaining, IDLE_WAIT_INTERVAL ), TimeUnit.NANOSECONDS );
+        if ( ( pc == null ) && reserve() )
+        {
+          // A context was destroyed in the meantime...
+          return null;
+        }
+      }
+      return pc;
+    }
+    catch ( InterruptedException exception )
+    {
+      throw interrupted( exception );
+    }
+  }
+
+  /**
+   * Reports the creation of a new bound context to the metrics listener.
+   *
+   * @param aStart
+   *          the start time of the creation, as returned by
+   *          {@link System#nanoTime()};
+   * @param aError
+   *          the exception the creation failed with, can be <code>null</code>.
+   */
+  private void bindCompleted( final long aStart, final NamingException aError )
+  {
+    final LdapMetricsListener listener = this.metricsListener;
+    if ( listener != LdapMetricsListener.NONE )
+    {
+      listener.operationCompleted( this.metricsServerURL, LdapOperationType.BIND, System.nanoTime() - aStart, 0, 0L,
+          aError );
+    }
+  }
+
+  /**
+   * Creates a new bound LDAP context, which should already be counted in the
+   * total number of contexts.
+   *
+   * @return a new pooled LDAP context, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed, or TLS could
+   *           not be started.
+   */
+  private PooledContext createContext() throws NamingException
+  {
+    final long start = System.nanoTime();
+    try
+    {
+      final PooledContext result;
+      if ( !this.startTLS )
+      {
+        result = new PooledContext( new InitialLdapContext( this.environment, null /* connCtls */), null );
+      }
+      else
+      {
+        result = createTlsContext();
+      }
+      bindCompleted( start, null );
+      return result;
+    }
+    catch ( NamingException exception )
+    {
+      this.total.decrementAndGet();
+      bindCompleted( start, exception );
+      throw exception;
+    }
+    catch ( RuntimeException exception )
+    {
+      this.total.decrementAndGet();
+      throw exception;
+    }
+  }
+
+  /**
+   * Creates a new LDAP context, starts TLS on its connection and only then
+   * binds it with the credentials of this pool.
+   *
+   * @return a new pooled LDAP context, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed, or TLS could
+   *           not be started.
+   */
+  private PooledContext createTlsContext() throws NamingException
+  {
+    // Connect anonymously, as the credentials should not be sent in cleartext...
+    final Hashtable<String, String> env = new Hashtable<String, String>( this.environment );
+    env.remove( Context.SECURITY_PRINCIPAL );
+    env.remove( Context.SECURITY_CREDENTIALS );
+    env.put( Context.SECURITY_AUTHENTICATION, "none" );
+
+    final LdapContext ctx = new InitialLdapContext( env, null /* connCtls */);
+
+    StartTlsResponse tlsResponse = null;
+    try
+    {
+      tlsResponse = ( StartTlsResponse )ctx.extendedOperation( new StartTlsRequest() );
+
+      final HostnameVerifier verifier = this.hostnameVerifier;
+      if ( verifier != null )
+      {
+        tlsResponse.setHostnameVerifier( verifier );
+      }
+      tlsResponse.negotiate();
+
+      // Bind over the secured connection...
+      for ( String key : new String[] { Context.SECURITY_AUTHENTICATION, Context.SECURITY_PRINCIPAL,
+          Context.SECURITY_CREDENTIALS } )
+      {
+        final String value = this.environment.get( key );
+        if ( value != null )
+        {
+          ctx.addToEnvironment( key, value );
+        }
+        else
+        {
+          ctx.removeFromEnvironment( key );
+        }
+      }
+      ctx.reconnect( null /* connCtls */);
+
+      return new PooledContext( ctx, tlsResponse );
+    }
+    catch ( IOException exception )
+    {
+      destroyQuietly( ctx, tlsResponse );
+
+      final CommunicationException ne = new CommunicationException( "Failed to start TLS!" );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+    catch ( NamingException exception )
+    {
+      destroyQuietly( ctx, tlsResponse );
+      throw exception;
+    }
+    catch ( RuntimeException exception )
+    {
+      destroyQuietly( ctx, tlsResponse );
+      throw exception;
+    }
+  }
+
+  /**
+   * Closes the given pooled context, ignoring all errors.
+   *
+   * @param aContext
+   *          the pooled context to close.
+   */
+  private void destroy( final PooledContext aContext )
+  {
+    this.total.decrementAndGet();
+    destroyQuietly( aContext.context, aContext.tlsResponse );
+  }
+
+  /**
+   * Closes the given TLS session and context, ignoring all errors.
+   *
+   * @param aContext
+   *          the context to close;
+   * @param aTlsResponse
+   *          the TLS session to close, can be <code>null</code>.
+   */
+  private static void destroyQuietly( final LdapContext aContext, final StartTlsResponse aTlsResponse )
+  {
+    if ( aTlsResponse != null )
+    {
+      try
+      {
+        aTlsResponse.close();
+      }
+      catch ( IOException exception )
+      {
+        LOG.log( Level.FINE, "Failed to close TLS session of pooled LDAP context!", exception );
+      }
+    }
+    try
+    {
+      aContext.close();
+    }
+    catch ( NamingException exception )
+    {
+      LOG.log( Level.FINE, "Failed to close pooled LDAP context!", exception );
+    }
+  }
+
+  /**
+   * Restores the interrupted status of the calling thread, and creates the
+   * exception to throw for the given interruption.
+   */
+  private static InterruptedNamingException interrupted( final InterruptedException aCause )
+  {
+    Thread.currentThread().interrupt();
+
+    final InterruptedNamingException ne = new InterruptedNamingException( "Interrupted waiting for LDAP context!" );
+    ne.setRootCause( aCause );
+    return ne;
+  }
+
+  /**
+   * Returns whether the given pooled context passed its maximum lifetime.
+   *
+   * @param aContext
+   *          the pooled context to test;
+   * @param aNow
+   *          the current time, in nanoseconds.
+   * @return <code>true</code> if the context is expired, <code>false</code>
+   *         otherwise.
+   */
+  private boolean isExpired( final PooledContext aContext, final long aNow )
+  {
+    return ( aNow - aContext.created ) > this.maxLifetime;
+  }
+
+  /**
+   * Returns whether the given pooled context is still usable, by reading the
+   * entry of its base DN in case it has been idle for a while.
+   *
+   * @param aContext
+   *          the pooled context to test;
+   * @param aNow
+   *          the current time, in nanoseconds.
+   * @return <code>true</code> if the context is valid, <code>false</code>
+   *         otherwise.
+   */
+  private boolean isValid( final PooledContext aContext, final long aNow )
+  {
+    if ( ( aNow - aContext.lastUsed ) < this.validationInterval )
+    {
+      return true;
+    }
+
+    try
+    {
+      // "1.1" requests no attributes at all...
+      aContext.context.getAttributes( "", new String[] { "1.1" } );
+      return true;
+    }
+    catch ( NamingException exception )
+    {
+      LOG.log( Level.FINE, "Pooled LDAP context no longer valid!", exception );
+      return false;
+    }
+  }
+
+  /**
+   * Reserves room for a new context, without exceeding the maximum size of
+   * this pool.
+   *
+   * @return <code>true</code> if room is reserved, which should be released
+   *         in case creating the context fails, <code>false</code> in case the
+   *         pool is full.
+   */
+  private boolean reserve()
+  {
+    int count;
+    while ( ( count = this.total.get() ) < this.maxSize )
+    {
+      if ( this.total.compareAndSet( count, count + 1 ) )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
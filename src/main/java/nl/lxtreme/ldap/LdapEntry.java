@@ -0,0 +1,402 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+
+
+/**
+ * LdapEntry provides a compact, immutable representation of a LDAP entry.
+ * <p>
+ * In contrast to JNDI's {@link SearchResult}, an entry consists of only four
+ * objects: its DN, an array of attribute IDs, an array of all values and an
+ * array of offsets denoting where the values of each attribute start. The
+ * attribute IDs are interned, and entries having the same attributes share a
+ * single array of attribute IDs, as is typically the case for the results of a
+ * single query.
+ * </p>
+ * <p>
+ * Attribute IDs are, as in LDAP, matched case-insensitively. Values are either
+ * strings or, for binary attributes, byte arrays, which should not be
+ * modified.
+ * </p>
+ */
+public final class LdapEntry
+{
+  // CONSTANTS
+
+  /** the maximum number of distinct attribute IDs (and arrays thereof) to share. */
+  private static final int MAX_SHARED_IDS = 4096;
+
+  private static final ConcurrentMap<String, String> ATTRIBUTE_IDS = new ConcurrentHashMap<String, String>();
+  private static final ConcurrentMap<List<String>, String[]> SHARED_IDS = new ConcurrentHashMap<List<String>, String[]>();
+
+  private static final String[] NO_IDS = new String[0];
+  private static final Object[] NO_VALUES = new Object[0];
+
+  // VARIABLES
+
+  private final String dn;
+  private final String[] ids;
+  private final int[] offsets;
+  private final Object[] values;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapEntry object.
+   *
+   * @param aDN
+   *          the DN of this entry;
+   * @param aIDs
+   *          the (shared) attribute IDs;
+   * @param aOffsets
+   *          the offsets of the values of each attribute, with one additional
+   *          element denoting the end of the values of the last attribute;
+   * @param aValues
+   *          the values of all attributes.
+   */
+  private LdapEntry( final String aDN, final String[] aIDs, final int[] aOffsets, final Object[] aValues )
+  {
+    this.dn = aDN;
+    this.ids = aIDs;
+    this.offsets = aOffsets;
+    this.values = aValues;
+  }
+
+  // METHODS
+
+  /**
+   * Creates a new entry for the given DN and attributes.
+   *
+   * @param aDN
+   *          the DN of the entry, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attributes of the entry, may be <code>null</code>.
+   * @return a new entry, never <code>null</code>.
+   * @throws NamingException
+   *           in case the attribute values could not be obtained.
+   */
+  public static LdapEntry valueOf( final String aDN, final Attributes aAttributes ) throws NamingException
+  {
+    if ( aDN == null )
+    {
+      throw new IllegalArgumentException( "DN cannot be null!" );
+    }
+    if ( ( aAttributes == null ) || ( aAttributes.size() == 0 ) )
+    {
+      return new LdapEntry( aDN, NO_IDS, new int[1], NO_VALUES );
+    }
+
+    final List<String> ids = new ArrayList<String>( aAttributes.size() );
+    final int[] offsets = new int[aAttributes.size() + 1];
+
+    int count = 0;
+    NamingEnumeration<? extends Attribute> attributes = aAttributes.getAll();
+    while ( attributes.hasMore() )
+    {
+      final Attribute attribute = attributes.next();
+      ids.add( attribute.getID() );
+      count += attribute.size();
+      offsets[ids.size()] = count;
+    }
+
+    final Object[] values = new Object[count];
+
+    int i = 0;
+    attributes = aAttributes.getAll();
+    while ( attributes.hasMore() )
+    {
+      final Attribute attribute = attributes.next();
+      for ( int j = 0; j < attribute.size(); j++ )
+      {
+        values[i++] = attribute.get( j );
+      }
+    }
+
+    return new LdapEntry( aDN, share( ids ), offsets, values );
+  }
+
+  /**
+   * Creates a new entry for the given DN and attributes.
+   *
+   * @param aDN
+   *          the DN of the entry, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attributes of the entry as map of {ID -&gt; values}, may be
+   *          <code>null</code>.
+   * @return a new entry, never <code>null</code>.
+   */
+  public static LdapEntry valueOf( final String aDN, final Map<String, ? extends Collection<?>> aAttributes )
+  {
+    if ( aDN == null )
+    {
+      throw new IllegalArgumentException( "DN cannot be null!" );
+    }
+    if ( ( aAttributes == null ) || aAttributes.isEmpty() )
+    {
+      return new LdapEntry( aDN, NO_IDS, new int[1], NO_VALUES );
+    }
+
+    final List<String> ids = new ArrayList<String>( aAttributes.size() );
+    final int[] offsets = new int[aAttributes.size() + 1];
+
+    int count = 0;
+    for ( Map.Entry<String, ? extends Collection<?>> entry : aAttributes.entrySet() )
+    {
+      ids.add( entry.getKey() );
+      count += entry.getValue().size();
+      offsets[ids.size()] = count;
+    }
+
+    final Object[] values = new Object[count];
+
+    int i = 0;
+    for ( Collection<?> attrValues : aAttributes.values() )
+    {
+      for ( Object value : attrValues )
+      {
+        values[i++] = value;
+      }
+    }
+
+    return new LdapEntry( aDN, share( ids ), offsets, values );
+  }
+
+  /**
+   * Creates a new entry for the given search result.
+   *
+   * @param aResult
+   *          the search result to create an entry for, cannot be
+   *          <code>null</code>.
+   * @return a new entry, never <code>null</code>.
+   * @throws NamingException
+   *           in case the attribute values could not be obtained.
+   */
+  public static LdapEntry valueOf( final SearchResult aResult ) throws NamingException
+  {
+    return valueOf( aResult.getNameInNamespace(), aResult.getAttributes() );
+  }
+
+  /**
+   * Returns the interned attribute IDs for the given IDs, shared with all other
+   * entries having the same attribute IDs.
+   *
+   * @param aIDs
+   *          the attribute IDs to share, cannot be <code>null</code>.
+   * @return the shared attribute IDs, never <code>null</code>.
+   */
+  private static String[] share( final List<String> aIDs )
+  {
+    String[] result = SHARED_IDS.get( aIDs );
+    if ( result == null )
+    {
+      result = new String[aIDs.size()];
+      for ( int i = 0; i < result.length; i++ )
+      {
+        final String id = aIDs.get( i );
+        final String interned = ATTRIBUTE_IDS.get( id );
+        if ( ( interned == null ) && ( ATTRIBUTE_IDS.size() < MAX_SHARED_IDS ) )
+        {
+          ATTRIBUTE_IDS.putIfAbsent( id, id );
+        }
+        result[i] = ( interned == null ) ? id : interned;
+      }
+
+      if ( SHARED_IDS.size() < MAX_SHARED_IDS )
+      {
+        final String[] existing = SHARED_IDS.putIfAbsent( Arrays.asList( result ), result );
+        if ( existing != null )
+        {
+          result = existing;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether this entry contains the given attribute.
+   *
+   * @param aAttributeID
+   *          the ID of the attribute to test, cannot be <code>null</code>.
+   * @return <code>true</code> if this entry contains the given attribute,
+   *         <code>false</code> otherwise.
+   */
+  public boolean contains( final String aAttributeID )
+  {
+    return indexOf( aAttributeID ) >= 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals( final Object aObject )
+  {
+    if ( this == aObject )
+    {
+      return true;
+    }
+    if ( ( aObject == null ) || ( getClass() != aObject.getClass() ) )
+    {
+      return false;
+    }
+
+    final LdapEntry other = ( LdapEntry )aObject;
+    return this.dn.equals( other.dn ) && Arrays.equals( this.ids, other.ids )
+        && Arrays.equals( this.offsets, other.offsets ) && Arrays.deepEquals( this.values, other.values );
+  }
+
+  /**
+   * Returns the IDs of all attributes of this entry.
+   *
+   * @return the attribute IDs, never <code>null</code>.
+   */
+  public List<String> getAttributeIDs()
+  {
+    return Collections.unmodifiableList( Arrays.asList( this.ids ) );
+  }
+
+  /**
+   * Returns the distinguished name of this entry.
+   *
+   * @return the DN, never <code>null</code>.
+   */
+  public String getDN()
+  {
+    return this.dn;
+  }
+
+  /**
+   * Returns the first value of the given attribute.
+   *
+   * @param aAttributeID
+   *          the ID of the attribute to return the value for, cannot be
+   *          <code>null</code>.
+   * @return the first attribute value, or <code>null</code> if this entry does
+   *         not contain the given attribute.
+   */
+  public Object getValue( final String aAttributeID )
+  {
+    final int idx = indexOf( aAttributeID );
+    if ( ( idx < 0 ) || ( this.offsets[idx] == this.offsets[idx + 1] ) )
+    {
+      return null;
+    }
+    return this.values[this.offsets[idx]];
+  }
+
+  /**
+   * Returns all values of the given attribute.
+   *
+   * @param aAttributeID
+   *          the ID of the attribute to return the values for, cannot be
+   *          <code>null</code>.
+   * @return the attribute values, never <code>null</code>, but empty if this
+   *         entry does not contain the given attribute.
+   */
+  public List<Object> getValues( final String aAttributeID )
+  {
+    final int idx = indexOf( aAttributeID );
+    if ( idx < 0 )
+    {
+      return Collections.emptyList();
+    }
+    return getValues( idx );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode()
+  {
+    return ( 31 * this.dn.hashCode() ) + Arrays.hashCode( this.ids );
+  }
+
+  /**
+   * Returns the number of attributes of this entry.
+   *
+   * @return an attribute count, &gt;= 0.
+   */
+  public int size()
+  {
+    return this.ids.length;
+  }
+
+  /**
+   * Returns the attributes of this entry in the same form as
+   * {@link LibLdap#getAttributes(String, String...)}.
+   *
+   * @return the attributes as map of {ID -&gt; values}, never
+   *         <code>null</code>.
+   */
+  public Map<String, List<Object>> toMap()
+  {
+    final Map<String, List<Object>> result = new HashMap<String, List<Object>>();
+    for ( int i = 0; i < this.ids.length; i++ )
+    {
+      result.put( this.ids[i], new ArrayList<Object>( getValues( i ) ) );
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder( this.dn ).append( " {" );
+    for ( int i = 0; i < this.ids.length; i++ )
+    {
+      if ( i > 0 )
+      {
+        sb.append( ", " );
+      }
+      sb.append( this.ids[i] ).append( '=' ).append( getValues( i ) );
+    }
+    return sb.append( '}' ).toString();
+  }
+
+  /**
+   * Returns the values of the attribute at the given index.
+   *
+   * @param aIndex
+   *          the index of the attribute.
+   * @return the attribute values, never <code>null</code>.
+   */
+  private List<Object> getValues( final int aIndex )
+  {
+    return Collections.unmodifiableList( Arrays.asList( this.values ).subList( this.offsets[aIndex],
+        this.offsets[aIndex + 1] ) );
+  }
+
+  /**
+   * Returns the index of the given attribute.
+   *
+   * @param aAttributeID
+   *          the ID of the attribute to find.
+   * @return the index of the attribute, or -1 if not found.
+   */
+  private int indexOf( final String aAttributeID )
+  {
+    for ( int i = 0; i < this.ids.length; i++ )
+    {
+      if ( this.ids[i].equalsIgnoreCase( aAttributeID ) )
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
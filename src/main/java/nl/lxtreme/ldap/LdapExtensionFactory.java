@@ -0,0 +1,30 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+/**
+ * Creates instances of a LDAPv3 extension.
+ *
+ * @param <T>
+ *          the type of extension created by this factory.
+ */
+public interface LdapExtensionFactory<T extends LdapExtension>
+{
+  // METHODS
+
+  /**
+   * Creates a new instance of the extension.
+   *
+   * @param aContextProvider
+   *          the LDAP context provider the extension should use, never
+   *          <code>null</code>.
+   * @return a new extension instance, never <code>null</code>.
+   * @throws UnsupportedOperationException
+   *           in case the extension could not be created.
+   */
+  public abstract T createExtension( LdapContextProvider aContextProvider ) throws UnsupportedOperationException;
+}
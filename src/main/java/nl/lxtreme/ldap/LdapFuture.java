@@ -0,0 +1,159 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+
+/**
+ * LdapFuture denotes the pending outcome of an operation of
+ * {@link AsyncLibLdap}, to which callbacks can be added.
+ * <p>
+ * Callbacks are called by the thread that completes the operation, in the
+ * order they were added. Callbacks added after the operation is completed are
+ * called directly by the adding thread. Hence, callbacks should be fast and
+ * should not block.
+ * </p>
+ *
+ * @param <T>
+ *          the type of the outcome.
+ */
+public final class LdapFuture<T> extends FutureTask<T>
+{
+  // CONSTANTS
+
+  private static final Logger LOG = Logger.getAnonymousLogger();
+
+  // VARIABLES
+
+  private final List<LdapFutureCallback<? super T>> callbacks;
+  private boolean completed;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapFuture object.
+   *
+   * @param aOperation
+   *          the operation to perform, cannot be <code>null</code>.
+   */
+  LdapFuture( final Callable<T> aOperation )
+  {
+    super( aOperation );
+    this.callbacks = new ArrayList<LdapFutureCallback<? super T>>( 1 );
+  }
+
+  // METHODS
+
+  /**
+   * Adds a callback that is told about the outcome of the operation.
+   *
+   * @param aCallback
+   *          the callback to add, cannot be <code>null</code>.
+   * @return this future, never <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given callback was <code>null</code>.
+   */
+  public LdapFuture<T> addCallback( final LdapFutureCallback<? super T> aCallback ) throws IllegalArgumentException
+  {
+    if ( aCallback == null )
+    {
+      throw new IllegalArgumentException( "Callback cannot be null!" );
+    }
+
+    synchronized ( this.callbacks )
+    {
+      if ( !this.completed )
+      {
+        this.callbacks.add( aCallback );
+        return this;
+      }
+    }
+
+    // Already completed; call it directly...
+    notifyCallback( aCallback );
+    return this;
+  }
+
+  /**
+   * Calls all added callbacks, once the operation is completed.
+   */
+  @Override
+  protected void done()
+  {
+    final List<LdapFutureCallback<? super T>> toNotify;
+    synchronized ( this.callbacks )
+    {
+      this.completed = true;
+      toNotify = new ArrayList<LdapFutureCallback<? super T>>( this.callbacks );
+      this.callbacks.clear();
+    }
+
+    for ( LdapFutureCallback<? super T> callback : toNotify )
+    {
+      notifyCallback( callback );
+    }
+  }
+
+  /**
+   * Tells the given callback about the outcome of the (completed) operation.
+   *
+   * @param aCallback
+   *          the callback to notify, cannot be <code>null</code>.
+   */
+  private void notifyCallback( final LdapFutureCallback<? super T> aCallback )
+  {
+    final T result;
+    try
+    {
+      result = get();
+    }
+    catch ( ExecutionException exception )
+    {
+      failed( aCallback, exception.getCause() );
+      return;
+    }
+    catch ( CancellationException exception )
+    {
+      failed( aCallback, exception );
+      return;
+    }
+    catch ( InterruptedException exception )
+    {
+      // Cannot happen, as the operation is already completed...
+      Thread.currentThread().interrupt();
+      failed( aCallback, exception );
+      return;
+    }
+
+    try
+    {
+      aCallback.completed( result );
+    }
+    catch ( RuntimeException exception )
+    {
+      LOG.log( Level.WARNING, "Callback of LDAP operation failed!", exception );
+    }
+  }
+
+  /**
+   * Tells the given callback that the operation failed.
+   */
+  private static void failed( final LdapFutureCallback<?> aCallback, final Throwable aFailure )
+  {
+    try
+    {
+      aCallback.failed( aFailure );
+    }
+    catch ( RuntimeException exception )
+    {
+      LOG.log( Level.WARNING, "Callback of LDAP operation failed!", exception );
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+/**
+ * Provides a callback that is told about the outcome of a {@link LdapFuture}.
+ *
+ * @param <T>
+ *          the type of the outcome.
+ */
+public interface LdapFutureCallback<T>
+{
+  // METHODS
+
+  /**
+   * Called when the operation is completed successfully.
+   *
+   * @param aResult
+   *          the result of the operation, can be <code>null</code>.
+   */
+  public abstract void completed( T aResult );
+
+  /**
+   * Called when the operation failed or was cancelled.
+   *
+   * @param aFailure
+   *          the exception the operation failed with (typically a
+   *          {@link javax.naming.NamingException}), or a
+   *          {@link java.util.concurrent.CancellationException} in case it was
+   *          cancelled; never <code>null</code>.
+   */
+  public abstract void failed( Throwable aFailure );
+}
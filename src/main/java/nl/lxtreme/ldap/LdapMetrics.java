@@ -0,0 +1,269 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.naming.*;
+
+
+/**
+ * LdapMetrics provides a {@link LdapMetricsListener} that keeps statistics per
+ * server URL and operation type.
+ * <p>
+ * Per combination of server URL and operation type, the number of operations,
+ * the number of failed operations, the number of returned entries and bytes,
+ * and a {@link LatencyHistogram} of all operations are kept. One instance can
+ * be shared by many {@link LibLdap} instances, for example to compare the
+ * servers of a (load-balanced) cluster:
+ * </p>
+ *
+ * <pre>
+ * final LdapMetrics metrics = new LdapMetrics();
+ * ldap.setMetricsListener( metrics );
+ * ...
+ * final LdapMetrics.Statistics stats = metrics.getStatistics( ldap.getServerURL(), LdapOperationType.SEARCH_PAGE );
+ * System.out.println( &quot;p99.9 = &quot; + stats.getLatencies().getValueAtPercentile( 99.9 ) + &quot; ns&quot; );
+ * </pre>
+ */
+public class LdapMetrics implements LdapMetricsListener
+{
+  // INNER TYPES
+
+  /**
+   * Provides the statistics of a single operation type on a single server.
+   */
+  public static final class Statistics
+  {
+    // VARIABLES
+
+    private final AtomicLong count;
+    private final AtomicLong errorCount;
+    private final AtomicLong entryCount;
+    private final AtomicLong byteCount;
+    private final LatencyHistogram latencies;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Statistics object.
+     */
+    Statistics()
+    {
+      this.count = new AtomicLong();
+      this.errorCount = new AtomicLong();
+      this.entryCount = new AtomicLong();
+      this.byteCount = new AtomicLong();
+      this.latencies = new LatencyHistogram();
+    }
+
+    // METHODS
+
+    /**
+     * Returns the number of bytes returned or sent by all operations.
+     *
+     * @return a byte count, &gt;= 0.
+     */
+    public long getByteCount()
+    {
+      return this.byteCount.get();
+    }
+
+    /**
+     * Returns the number of operations, including failed ones.
+     *
+     * @return an operation count, &gt;= 0.
+     */
+    public long getCount()
+    {
+      return this.count.get();
+    }
+
+    /**
+     * Returns the number of entries returned by all operations.
+     *
+     * @return an entry count, &gt;= 0.
+     */
+    public long getEntryCount()
+    {
+      return this.entryCount.get();
+    }
+
+    /**
+     * Returns the number of failed operations.
+     *
+     * @return an error count, &gt;= 0.
+     */
+    public long getErrorCount()
+    {
+      return this.errorCount.get();
+    }
+
+    /**
+     * Returns the latencies of all operations, including failed ones.
+     *
+     * @return a latency histogram, never <code>null</code>.
+     */
+    public LatencyHistogram getLatencies()
+    {
+      return this.latencies;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+      return "errors=" + getErrorCount() + ", entries=" + getEntryCount() + ", bytes=" + getByteCount() + ", "
+          + this.latencies;
+    }
+
+    /**
+     * Records a single operation.
+     */
+    void record( final long aDuration, final int aEntryCount, final long aByteCount, final boolean aFailed )
+    {
+      this.count.incrementAndGet();
+      if ( aFailed )
+      {
+        this.errorCount.incrementAndGet();
+      }
+      if ( aEntryCount > 0 )
+      {
+        this.entryCount.addAndGet( aEntryCount );
+      }
+      if ( aByteCount > 0L )
+      {
+        this.byteCount.addAndGet( aByteCount );
+      }
+      this.latencies.record( aDuration );
+    }
+
+    /**
+     * Removes all recorded operations.
+     */
+    void reset()
+    {
+      this.count.set( 0L );
+      this.errorCount.set( 0L );
+      this.entryCount.set( 0L );
+      this.byteCount.set( 0L );
+      this.latencies.reset();
+    }
+  }
+
+  // VARIABLES
+
+  private final ConcurrentMap<String, Statistics[]> statistics;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, empty, LdapMetrics object.
+   */
+  public LdapMetrics()
+  {
+    this.statistics = new ConcurrentHashMap<String, Statistics[]>();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the URLs of all servers for which operations are recorded.
+   *
+   * @return a sorted set of server URLs, never <code>null</code>.
+   */
+  public Set<String> getServerURLs()
+  {
+    return new TreeSet<String>( this.statistics.keySet() );
+  }
+
+  /**
+   * Returns the statistics of the given operation type on the given server.
+   *
+   * @param aServerURL
+   *          the URL of the server, as returned by
+   *          {@link LibLdap#getServerURL()}, cannot be <code>null</code>;
+   * @param aType
+   *          the operation type, cannot be <code>null</code>.
+   * @return the live statistics, or <code>null</code> in case no operations
+   *         are recorded for the given server.
+   */
+  public Statistics getStatistics( final String aServerURL, final LdapOperationType aType )
+  {
+    final Statistics[] result = this.statistics.get( aServerURL );
+    return ( result == null ) ? null : result[aType.ordinal()];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void operationCompleted( final String aServerURL, final LdapOperationType aType, final long aDuration,
+      final int aEntryCount, final long aByteCount, final NamingException aError )
+  {
+    Statistics[] stats = this.statistics.get( aServerURL );
+    if ( stats == null )
+    {
+      final Statistics[] newStats = new Statistics[LdapOperationType.values().length];
+      for ( int i = 0; i < newStats.length; i++ )
+      {
+        newStats[i] = new Statistics();
+      }
+      stats = this.statistics.putIfAbsent( aServerURL, newStats );
+      if ( stats == null )
+      {
+        stats = newStats;
+      }
+    }
+    stats[aType.ordinal()].record( aDuration, aEntryCount, aByteCount, aError != null );
+  }
+
+  /**
+   * Removes all recorded operations, for example to start a new measurement
+   * interval.
+   */
+  public void reset()
+  {
+    for ( Statistics[] stats : this.statistics.values() )
+    {
+      for ( Statistics stat : stats )
+      {
+        stat.reset();
+      }
+    }
+  }
+
+  /**
+   * Returns a report of all recorded operations, with one line per server URL
+   * and operation type.
+   *
+   * @return a report, never <code>null</code>.
+   */
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( String serverURL : getServerURLs() )
+    {
+      final Statistics[] stats = this.statistics.get( serverURL );
+      for ( LdapOperationType type : LdapOperationType.values() )
+      {
+        final Statistics stat = stats[type.ordinal()];
+        if ( stat.getCount() > 0L )
+        {
+          sb.append( serverURL ).append( ' ' ).append( type.getDisplayName() ).append( ": " ).append( stat )
+              .append( '\n' );
+        }
+      }
+    }
+    return sb.toString();
+  }
+}
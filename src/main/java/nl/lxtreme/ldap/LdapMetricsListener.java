@@ -0,0 +1,80 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import javax.naming.*;
+
+
+/**
+ * Provides a listener that is told about each operation performed on a LDAP
+ * server, for example to keep track of latencies and error rates.
+ * <p>
+ * The following operations are reported:
+ * </p>
+ * <ul>
+ * <li>{@link LdapOperationType#BIND}: each new connection, including those
+ * created by a {@link LdapContextPool}, which includes binding with its
+ * credentials;</li>
+ * <li>{@link LdapOperationType#GET_ATTRIBUTES}: each lookup of a single entry,
+ * including the root DSE;</li>
+ * <li>{@link LdapOperationType#SEARCH_PAGE}: each page of a (paged) search,
+ * that is, each round trip to the server;</li>
+ * <li>{@link LdapOperationType#SEARCH}: each search as a whole, from the moment
+ * it is opened until it is closed;</li>
+ * <li>{@link LdapOperationType#MODIFY}: each modification of an entry;</li>
+ * <li>{@link LdapOperationType#EXTENDED}: each extended operation, like
+ * WhoAmI or Password Modify.</li>
+ * </ul>
+ * <p>
+ * Listeners are called synchronously by the thread that performed the
+ * operation, possibly by many threads concurrently, so they should be
+ * thread-safe, fast and never throw exceptions.
+ * </p>
+ *
+ * @see LibLdap#setMetricsListener(LdapMetricsListener)
+ * @see LdapMetrics
+ */
+public interface LdapMetricsListener
+{
+  // CONSTANTS
+
+  /** the listener that ignores all operations, which is used by default. */
+  public static final LdapMetricsListener NONE = new LdapMetricsListener()
+  {
+    @Override
+    public void operationCompleted( final String aServerURL, final LdapOperationType aType, final long aDuration,
+        final int aEntryCount, final long aByteCount, final NamingException aError )
+    {
+      // Nop
+    }
+  };
+
+  // METHODS
+
+  /**
+   * Called when an operation is completed, either successfully or not.
+   *
+   * @param aServerURL
+   *          the URL of the server the operation was performed on, never
+   *          <code>null</code>;
+   * @param aType
+   *          the type of the operation, never <code>null</code>;
+   * @param aDuration
+   *          the time the operation took, in nanoseconds;
+   * @param aEntryCount
+   *          the number of entries returned by the operation, &gt;= 0;
+   * @param aByteCount
+   *          the (estimated) number of bytes returned by the operation, as
+   *          the size of the returned attributes, or of the request and
+   *          response values of extended operations, &gt;= 0;
+   * @param aError
+   *          the exception the operation failed with, or <code>null</code> in
+   *          case it was successful.
+   */
+  public abstract void operationCompleted( String aServerURL, LdapOperationType aType, long aDuration,
+      int aEntryCount, long aByteCount, NamingException aError );
+}
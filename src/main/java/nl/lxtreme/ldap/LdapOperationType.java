@@ -0,0 +1,43 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+/**
+ * Denotes the types of operations reported to a {@link LdapMetricsListener}.
+ */
+public enum LdapOperationType
+{
+  BIND( "bind" ), //
+  GET_ATTRIBUTES( "getAttributes" ), //
+  SEARCH( "search" ), //
+  SEARCH_PAGE( "searchPage" ), //
+  MODIFY( "modify" ), //
+  EXTENDED( "extended" );
+
+  private final String displayName;
+
+  /**
+   * Creates a new LdapOperationType object.
+   *
+   * @param aDisplayName
+   *          the display name of this operation type.
+   */
+  private LdapOperationType( final String aDisplayName )
+  {
+    this.displayName = aDisplayName;
+  }
+
+  /**
+   * Returns the display name of this operation type.
+   *
+   * @return a display name, never <code>null</code>.
+   */
+  public String getDisplayName()
+  {
+    return this.displayName;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import javax.naming.directory.*;
+
+
+/**
+ * LdapSearchControls extends the standard search controls with the LDAP
+ * specific "typesOnly" flag.
+ * <p>
+ * To limit the data returned by the LDAP server, callers should always specify
+ * the attributes they actually need with
+ * {@link #setReturningAttributes(String[])}. In case no attributes at all are
+ * needed (for example, to only obtain the DNs of the matching entries), use
+ * {@link #NO_ATTRIBUTES}. In case only the names of the attributes are needed,
+ * use {@link #setTypesOnly(boolean)}.
+ * </p>
+ */
+public class LdapSearchControls extends SearchControls
+{
+  // CONSTANTS
+
+  private static final long serialVersionUID = 1L;
+
+  /** selects no attributes at all, see RFC 4511, section 4.5.1.8. */
+  public static final String[] NO_ATTRIBUTES = { "1.1" };
+
+  /** the JNDI environment property that enables "typesOnly" searches. */
+  static final String TYPES_ONLY = "java.naming.ldap.typesOnly";
+
+  // VARIABLES
+
+  private boolean typesOnly;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapSearchControls object with the default settings of
+   * {@link SearchControls#SearchControls()}.
+   */
+  public LdapSearchControls()
+  {
+    super();
+  }
+
+  /**
+   * Creates a new LdapSearchControls object for the given scope and
+   * attributes.
+   *
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE};
+   * @param aAttributes
+   *          the attribute IDs to return, <code>null</code> or none to return
+   *          all attributes, or {@link #NO_ATTRIBUTES} to return no attributes
+   *          at all.
+   */
+  public LdapSearchControls( final int aSearchScope, final String... aAttributes )
+  {
+    super();
+    setSearchScope( aSearchScope );
+    setReturningAttributes( ( ( aAttributes == null ) || ( aAttributes.length == 0 ) ) ? null : aAttributes );
+  }
+
+  /**
+   * Creates a new LdapSearchControls object as copy of the given search
+   * controls.
+   *
+   * @param aControls
+   *          the search controls to copy, cannot be <code>null</code>.
+   */
+  public LdapSearchControls( final SearchControls aControls )
+  {
+    super( aControls.getSearchScope(), aControls.getCountLimit(), aControls.getTimeLimit(), aControls
+        .getReturningAttributes(), aControls.getReturningObjFlag(), aControls.getDerefLinkFlag() );
+    if ( aControls instanceof LdapSearchControls )
+    {
+      this.typesOnly = ( ( LdapSearchControls )aControls ).typesOnly;
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Returns whether only the attribute names should be returned.
+   *
+   * @return <code>true</code> if only attribute names are returned,
+   *         <code>false</code> if both names and values are returned.
+   */
+  public boolean isTypesOnly()
+  {
+    return this.typesOnly;
+  }
+
+  /**
+   * Sets whether only the attribute names should be returned, without their
+   * values.
+   *
+   * @param aTypesOnly
+   *          <code>true</code> to return attribute names only,
+   *          <code>false</code> (the default) to return both names and values.
+   */
+  public void setTypesOnly( final boolean aTypesOnly )
+  {
+    this.typesOnly = aTypesOnly;
+  }
+}
@@ -8,7 +8,9 @@ package nl.lxtreme.ldap;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import javax.naming.*;
@@ -17,17 +19,29 @@ import javax.naming.ldap.*;
 
 import nl.lxtreme.ldap.extension.*;
 import nl.lxtreme.ldap.extension.impl.*;
+import nl.lxtreme.ldap.protocol.*;
 
 
 /**
  * {@link LibLdap} provides a simple LDAP facade for accessing LDAP from Java.
  */
-public class LibLdap implements LdapContextProvider, LdapAttributes
+public class LibLdap implements PooledContextProvider, LdapAttributes
 {
   // CONSTANTS
 
   /** the registry containing all extensions this library can use. */
-  private static final Map<String, Class<? extends LdapExtension>> EXTENSION_REGISTRY = new HashMap<String, Class<? extends LdapExtension>>();
+  private static final ConcurrentMap<String, LdapExtensionFactory<?>> EXTENSION_REGISTRY = new ConcurrentHashMap<String, LdapExtensionFactory<?>>();
+
+  /** the default number of entries to request per page in paged searches. */
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  /** the default maximum page size, as used by Active Directory. */
+  private static final int DEFAULT_MAX_PAGE_SIZE = 1000;
+  /** the default time a root DSE snapshot is cached. */
+  private static final long DEFAULT_ROOT_DSE_TTL = TimeUnit.MINUTES.toNanos( 10L );
+  /** the maximum number of DNs that are combined in a single search filter. */
+  private static final int BULK_CHUNK_SIZE = 100;
+  /** the environment property holding the connect timeout, in milliseconds. */
+  private static final String CONNECT_TIMEOUT_KEY = "com.sun.jndi.ldap.connect.timeout";
 
   private static final String DEBUG_KEY = "nl.lxtreme.libldap.debug";
   private static final boolean DEBUG;
@@ -49,11 +63,72 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
     LOG = Logger.getAnonymousLogger();
   }
 
+  // INNER TYPES
+
+  /**
+   * Creates extensions by calling their public constructor that accepts a
+   * {@link LdapContextProvider}, which is looked up only once.
+   */
+  private static final class ConstructorFactory<T extends LdapExtension> implements LdapExtensionFactory<T>
+  {
+    private final String extensionOID;
+    private final Constructor<T> constructor;
+
+    /**
+     * Creates a new ConstructorFactory object.
+     *
+     * @param aExtensionOID
+     *          the OID of the extension;
+     * @param aConstructor
+     *          the constructor to call.
+     */
+    ConstructorFactory( final String aExtensionOID, final Constructor<T> aConstructor )
+    {
+      this.extensionOID = aExtensionOID;
+      this.constructor = aConstructor;
+      this.constructor.setAccessible( true );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T createExtension( final LdapContextProvider aContextProvider ) throws UnsupportedOperationException
+    {
+      try
+      {
+        return this.constructor.newInstance( aContextProvider );
+      }
+      catch ( InstantiationException exception )
+      {
+        throw new UnsupportedOperationException( "Extension: " + this.extensionOID, exception );
+      }
+      catch ( IllegalAccessException exception )
+      {
+        throw new UnsupportedOperationException( "Extension: " + this.extensionOID, exception );
+      }
+      catch ( InvocationTargetException exception )
+      {
+        throw new UnsupportedOperationException( "Extension: " + this.extensionOID, exception );
+      }
+    }
+  }
+
   // VARIABLES
 
-  private LdapContext context;
+  private volatile LdapContext context;
+  private final LdapContextPool contextPool;
   private final Map<String, String> environment;
   private final String serverURL;
+  private volatile int readAheadDepth;
+  private volatile int pageSize;
+  private volatile int maxPageSize;
+  private volatile boolean adaptivePageSize;
+  private volatile RootDSE rootDSE;
+  private volatile String[] baseDNs;
+  private final ConcurrentMap<String, StatelessLdapExtension> extensions = new ConcurrentHashMap<String, StatelessLdapExtension>();
+  private volatile long rootDSETTL;
+  private volatile LdapMetricsListener metricsListener;
 
   // CONSTRUCTORS
 
@@ -109,6 +184,12 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
 
     this.serverURL = aServerURL;
     this.environment = new Hashtable<String, String>( aEnvironment );
+    this.contextPool = null;
+
+    this.pageSize = DEFAULT_PAGE_SIZE;
+    this.maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+    this.rootDSETTL = DEFAULT_ROOT_DSE_TTL;
+    this.metricsListener = LdapMetricsListener.NONE;
   }
 
   /**
@@ -136,11 +217,63 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
     }
 
     this.serverURL = aServerURL;
+    this.contextPool = null;
 
     this.environment = new Hashtable<String, String>();
     this.environment.put( Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory" );
     this.environment.put( Context.PROVIDER_URL, aServerURL + "/" + aBaseDN );
     this.environment.put( Context.SECURITY_AUTHENTICATION, "simple" );
+
+    this.pageSize = DEFAULT_PAGE_SIZE;
+    this.maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+    this.rootDSETTL = DEFAULT_ROOT_DSE_TTL;
+    this.metricsListener = LdapMetricsListener.NONE;
+  }
+
+  /**
+   * Creates a new SimpleLDAP object that obtains its connections from a given
+   * connection pool.
+   * <p>
+   * Use this constructor in case this object is to be used by many threads
+   * concurrently. Each operation checks out a (bound) context from the pool
+   * for its duration, including the extensions obtained through
+   * {@link #getExtension(String)}.
+   * </p>
+   *
+   * @param aServerURL
+   *          the server URL to use, like "ldap://localhost:369/";
+   * @param aContextPool
+   *          the connection pool to use, cannot be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given server URL did not start with "ldap://" or
+   *           "ldaps:///", or the given pool was <code>null</code> or did not
+   *           connect to the given server URL.
+   */
+  public LibLdap( final String aServerURL, final LdapContextPool aContextPool ) throws IllegalArgumentException
+  {
+    if ( ( aServerURL == null ) || ( !aServerURL.startsWith( "ldap://" ) && !aServerURL.startsWith( "ldaps://" ) ) )
+    {
+      throw new IllegalArgumentException(
+          "Invalid server URL: should be not null and start with 'ldap://' or 'ldaps://'!" );
+    }
+    if ( aContextPool == null )
+    {
+      throw new IllegalArgumentException( "Invalid context pool: cannot be null!" );
+    }
+    if ( !aContextPool.getEnvironment().get( Context.PROVIDER_URL ).startsWith( aServerURL ) )
+    {
+      throw new IllegalArgumentException(
+          "Invalid context pool: provider URL value does not start with given server URL!" );
+    }
+
+    this.serverURL = aServerURL;
+    this.contextPool = aContextPool;
+    this.environment = new Hashtable<String, String>( aContextPool.getEnvironment() );
+
+    this.pageSize = DEFAULT_PAGE_SIZE;
+    this.maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+    this.rootDSETTL = DEFAULT_ROOT_DSE_TTL;
+    this.metricsListener = LdapMetricsListener.NONE;
   }
 
   /**
@@ -177,6 +310,10 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
 
   /**
    * Registers a LDAPv3 extension.
+   * <p>
+   * The given extension class should have a public constructor accepting a
+   * {@link LdapContextProvider}.
+   * </p>
    *
    * @param aExtensionOID
    *          the extension OID to register;
@@ -186,17 +323,13 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    *           in case an extension with the given object ID already is
    *           registered.
    */
-  public static final void registerExtension( final String aExtensionOID,
-      final Class<? extends LdapExtension> aLdapExtension ) throws IllegalArgumentException
+  public static final <T extends LdapExtension> void registerExtension( final String aExtensionOID,
+      final Class<T> aLdapExtension ) throws IllegalArgumentException
   {
-    if ( EXTENSION_REGISTRY.containsKey( aExtensionOID ) )
-    {
-      throw new IllegalArgumentException( "Attempt to overwrite existing extension: " + aExtensionOID );
-    }
+    final Constructor<T> constructor;
     try
     {
-      final Constructor<? extends LdapExtension> constructor = aLdapExtension
-          .getConstructor( LdapContextProvider.class );
+      constructor = aLdapExtension.getConstructor( LdapContextProvider.class );
       if ( ( constructor.getModifiers() & Modifier.PUBLIC ) != Modifier.PUBLIC )
       {
         throw new IllegalArgumentException( "Extension " + aExtensionOID + " (" + aLdapExtension.getSimpleName()
@@ -209,7 +342,63 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
           + ") has no public constructor accepting ILdapContextProvider!" );
     }
 
-    EXTENSION_REGISTRY.put( aExtensionOID, aLdapExtension );
+    registerExtension( aExtensionOID, new ConstructorFactory<T>( aExtensionOID, constructor ) );
+  }
+
+  /**
+   * Registers a LDAPv3 extension by means of a factory.
+   *
+   * @param aExtensionOID
+   *          the extension OID to register;
+   * @param aFactory
+   *          the factory creating the extension instances, cannot be
+   *          <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case an extension with the given object ID already is
+   *           registered, or the given factory was <code>null</code>.
+   */
+  public static final void registerExtension( final String aExtensionOID, final LdapExtensionFactory<?> aFactory )
+      throws IllegalArgumentException
+  {
+    if ( aFactory == null )
+    {
+      throw new IllegalArgumentException( "Extension factory cannot be null!" );
+    }
+    if ( EXTENSION_REGISTRY.putIfAbsent( aExtensionOID, aFactory ) != null )
+    {
+      throw new IllegalArgumentException( "Attempt to overwrite existing extension: " + aExtensionOID );
+    }
+  }
+
+  /**
+   * Escapes the given value for use in a LDAP search filter, as described in
+   * RFC 4515, section 3.
+   *
+   * @param aValue
+   *          the value to escape, cannot be <code>null</code>.
+   * @return the escaped value, never <code>null</code>.
+   */
+  public static String escapeFilterValue( final String aValue )
+  {
+    StringBuilder sb = null;
+    for ( int i = 0; i < aValue.length(); i++ )
+    {
+      final char c = aValue.charAt( i );
+      if ( ( c == '*' ) || ( c == '(' ) || ( c == ')' ) || ( c == '\\' ) || ( c == '\0' ) )
+      {
+        if ( sb == null )
+        {
+          sb = new StringBuilder( aValue.length() + 8 );
+          sb.append( aValue, 0, i );
+        }
+        sb.append( '\\' ).append( Character.forDigit( c >> 4, 16 ) ).append( Character.forDigit( c & 0xF, 16 ) );
+      }
+      else if ( sb != null )
+      {
+        sb.append( c );
+      }
+    }
+    return ( sb == null ) ? aValue : sb.toString();
   }
 
   /**
@@ -267,13 +456,24 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    * @param aPassword
    *          the password to connect to the LDAP server.
    * @throws NamingException
-   *           in case the connection to the LDAP server failed.
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalStateException
+   *           in case this object uses a connection pool, whose connections
+   *           are bound by the pool itself.
    */
-  public final void bind( final String aUserDN, final String aPassword ) throws NamingException
+  public final void bind( final String aUserDN, final String aPassword ) throws NamingException,
+      IllegalStateException
   {
+    if ( this.contextPool != null )
+    {
+      throw new IllegalStateException( "Cannot bind pooled LDAP connections!" );
+    }
+
     this.environment.put( Context.SECURITY_CREDENTIALS, aPassword );
     this.environment.put( Context.SECURITY_PRINCIPAL, aUserDN );
 
+    invalidateConnectionState();
+
     final LdapContext ctx = getContext();
     if ( ctx == null )
     {
@@ -325,6 +525,17 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    */
   public boolean changePassword( final String aUserDN, final String aOldPassword, final String aNewPassword )
       throws NamingException
+  {
+    return changePassword( this, aUserDN, aOldPassword, aNewPassword );
+  }
+
+  /**
+   * Changes the password for a user, using the contexts of the given provider.
+   *
+   * @see #changePassword(String, String, String)
+   */
+  final boolean changePassword( final PooledContextProvider aProvider, final String aUserDN,
+      final String aOldPassword, final String aNewPassword ) throws NamingException
   {
     boolean result = false;
 
@@ -337,7 +548,16 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
         LOG.fine( "Using RFC 3062 password change method..." );
       }
 
-      final IChangePassword changePwExt = getExtension( IChangePassword.OID );
+      final IChangePassword changePwExt;
+      if ( aProvider == this )
+      {
+        changePwExt = getExtension( IChangePassword.OID );
+      }
+      else
+      {
+        // The cached extension would use the contexts of this object...
+        changePwExt = new ChangePassword( aProvider, this );
+      }
       changePwExt.changePassword( aUserDN, aOldPassword, aNewPassword );
 
       // If we're here we can safely assume it went correctly...
@@ -402,7 +622,22 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
       }
 
       // Perform the actual modification query...
-      getContext().modifyAttributes( aUserDN, mods );
+      final LdapContext ctx = aProvider.getContext();
+      final long start = System.nanoTime();
+      try
+      {
+        ctx.modifyAttributes( aUserDN, mods );
+      }
+      catch ( NamingException exception )
+      {
+        operationCompleted( LdapOperationType.MODIFY, start, 0, 0L, exception );
+        throw exception;
+      }
+      finally
+      {
+        aProvider.releaseContext( ctx );
+      }
+      operationCompleted( LdapOperationType.MODIFY, start, 0, 0L, null );
 
       // If we're here we can safely assume it went correctly...
       result = true;
@@ -420,6 +655,10 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
 
   /**
    * Closes the connection to the LDAP server.
+   * <p>
+   * In case this object uses a connection pool, this method does nothing, as
+   * the pool might be shared. Use {@link LdapContextPool#close()} instead.
+   * </p>
    *
    * @throws NamingException
    *           in case the connection to the LDAP server failed;
@@ -428,10 +667,15 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    */
   public final void close() throws NamingException, IllegalStateException
   {
+    if ( this.contextPool != null )
+    {
+      return;
+    }
     if ( this.context == null )
     {
       throw new IllegalStateException( "Cannot close unbound LDAP connection!" );
     }
+    invalidateConnectionState();
     getContext().close();
   }
 
@@ -451,7 +695,54 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
   public final Map<String, List<Object>> getAttributes( final String aDN, final String... aAttributes )
       throws NamingException
   {
-    return convertAttributes( getContext().getAttributes( aDN, aAttributes ) );
+    return getAttributes( this, aDN, aAttributes );
+  }
+
+  /**
+   * Retrieves all attributes for a given distinguished name, using a context
+   * of the given provider.
+   *
+   * @see #getAttributes(String, String...)
+   */
+  final Map<String, List<Object>> getAttributes( final PooledContextProvider aProvider, final String aDN,
+      final String... aAttributes ) throws NamingException
+  {
+    final LdapContext ctx = aProvider.getContext();
+    try
+    {
+      return convertAttributes( lookup( ctx, aDN, aAttributes ) );
+    }
+    finally
+    {
+      aProvider.releaseContext( ctx );
+    }
+  }
+
+  /**
+   * Retrieves the attributes of many distinguished names at once.
+   *
+   * @param aDNs
+   *          the distinguished names to retrieve the attributes for, cannot be
+   *          <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve, none to retrieve all attributes.
+   * @return the attributes of each DN as map of {DN -> {ID -> value}}, in the
+   *         order of the given DNs. DNs that do not exist are not contained in
+   *         this map. Never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed, or one of the
+   *           given DNs was invalid.
+   * @see #getEntries(Collection, String...)
+   */
+  public final Map<String, Map<String, List<Object>>> getAttributes( final Collection<String> aDNs,
+      final String... aAttributes ) throws NamingException
+  {
+    final Map<String, Map<String, List<Object>>> results = new LinkedHashMap<String, Map<String, List<Object>>>();
+    for ( Map.Entry<String, LdapEntry> entry : getEntries( aDNs, aAttributes ).entrySet() )
+    {
+      results.put( entry.getKey(), entry.getValue().toMap() );
+    }
+    return results;
   }
 
   /**
@@ -548,50 +839,36 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
 
   /**
    * Tries to determine which base DN the server uses.
+   * <p>
+   * The base DNs are read from the root DSE in a single request, and are kept
+   * for as long as the connection to the LDAP server is not changed (by
+   * binding, reconnecting or closing it). See {@link RootDSE#getBaseDNs()} for
+   * the order in which the base DNs are determined.
+   * </p>
    *
-   * @return
+   * @return the base DNs of the server, never <code>null</code>, but can be
+   *         empty.
    * @throws NamingException
+   *           in case the connection to the LDAP server failed.
    */
   public final String[] getBaseDNs() throws NamingException
   {
-    final LdapContext ctx = getContext();
-    if ( ctx == null )
-    {
-      throw new NamingException( "No LDAP context returned?!" );
-    }
-
-    Object[] results = null;
-    Attributes attr;
-
-    // OpenLDAP
-    attr = ctx.getAttributes( getServerURL(), new String[] { ATTR_NAMING_CONTEXT } );
-    results = getAttributeValues( attr, ATTR_NAMING_CONTEXT );
-    if ( ( results != null ) && ( results.length > 0 ) )
-    {
-      return convertToStringArray( results );
-    }
-
-    // Novell
-    attr = ctx.getAttributes( getServerURL(), new String[] { ATTR_DSA_NAME } );
-    results = getAttributeValues( attr, ATTR_DSA_NAME );
-    if ( ( results != null ) && ( results.length > 0 ) )
-    {
-      return convertToStringArray( results );
-    }
-
-    // Microsoft Active Directory
-    attr = ctx.getAttributes( getServerURL(), new String[] { ATTR_DEFAULT_NAMING_CONTEXT } );
-    results = getAttributeValues( attr, ATTR_DSA_NAME );
-    if ( ( results != null ) && ( results.length > 0 ) )
+    String[] result = this.baseDNs;
+    if ( result == null )
     {
-      return convertToStringArray( results );
+      result = getRootDSE().getBaseDNs();
+      this.baseDNs = result;
     }
-
-    return new String[0];
+    return result.clone();
   }
 
   /**
    * Returns the current LDAP context creating it when necessary.
+   * <p>
+   * In case this object uses a connection pool, a context is checked out from
+   * that pool instead, which should be returned to the pool using
+   * {@link #releaseContext(LdapContext)}.
+   * </p>
    *
    * @return the LDAP context, never <code>null</code>.
    * @throws NamingException
@@ -600,150 +877,413 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
   @Override
   public final LdapContext getContext() throws NamingException
   {
-    if ( this.context == null )
+    if ( this.contextPool != null )
     {
-      this.context = new InitialLdapContext( ( Hashtable<String, String> )this.environment, null /* connCtls */);
+      return this.contextPool.getContext();
     }
-    return this.context;
-  }
-
-  /**
-   * Creates a new instance of the extension denoted by the given object ID.
-   *
-   * @param aExtensionOID
-   *          the object ID of the extension to create an instance for, should
-   *          be a valid extension.
-   * @return an instance of the requested extension, never <code>null</code>.
-   * @throws UnsupportedOperationException
-   *           in case the extension does not exist, or could not be
-   *           instantiated correctly. See internal cause to further
-   *           information.
-   * @see #isExtensionSupported(String)
-   * @see #isExtensionSupportedByServer(String)
-   */
-  @SuppressWarnings( "unchecked" )
-  public final <T extends LdapExtension> T getExtension( final String aExtensionOID )
-      throws UnsupportedOperationException
-  {
-    try
+    LdapContext ctx = this.context;
+    if ( ctx == null )
     {
-      final Class<T> extClass = ( Class<T> )EXTENSION_REGISTRY.get( aExtensionOID );
-      if ( extClass == null )
+      synchronized ( this )
       {
-        throw new UnsupportedOperationException( "Unsupported extension: " + aExtensionOID );
-      }
-
-      final Constructor<T> constructor = extClass.getConstructor( LdapContextProvider.class );
-      constructor.setAccessible( true );
+        ctx = this.context;
+        if ( ctx == null )
+        {
+          final long start = System.nanoTime();
+          try
+          {
+            ctx = new InitialLdapContext( ( Hashtable<String, String> )this.environment, null /* connCtls */);
+          }
+          catch ( NamingException exception )
+          {
+            operationCompleted( LdapOperationType.BIND, start, 0, 0L, exception );
+            throw exception;
+          }
+          operationCompleted( LdapOperationType.BIND, start, 0, 0L, null );
 
-      return constructor.newInstance( this );
-    }
-    catch ( NoSuchMethodException exception )
-    {
-      throw new UnsupportedOperationException( "Extension: " + aExtensionOID, exception );
-    }
-    catch ( InstantiationException exception )
-    {
-      throw new UnsupportedOperationException( "Extension: " + aExtensionOID, exception );
-    }
-    catch ( IllegalAccessException exception )
-    {
-      throw new UnsupportedOperationException( "Extension: " + aExtensionOID, exception );
-    }
-    catch ( InvocationTargetException exception )
-    {
-      throw new UnsupportedOperationException( "Extension: " + aExtensionOID, exception );
+          this.context = ctx;
+        }
+      }
     }
+    return ctx;
   }
 
   /**
-   * Tries to determine what kind of LDAP server we're talking to.
+   * Retrieves the entries of many distinguished names at once.
    * <p>
-   * This mehod makes a best-effort approach in determining the type of the
-   * remote LDAP server. It does this by comparing (parts of) the OIDs returned
-   * by the supported extensions of the server.
+   * Instead of looking up each DN separately, the DNs are combined into search
+   * filters on their DN attribute (<code>distinguishedName</code> for Active
+   * Directory, <code>entryDN</code> (RFC 5020) for others), each matching up to
+   * a hundred DNs, which are searched for under the base DN(s) of the server.
+   * DNs that are not below any base DN, or that could not be found this way
+   * (for example, because the server does not support the DN attribute), are
+   * looked up separately.
    * </p>
    *
-   * @return a server type, never <code>null</code>.
+   * @param aDNs
+   *          the distinguished names to retrieve the attributes for, cannot be
+   *          <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve, none to retrieve all attributes.
+   * @return the entry of each DN as map of {DN -> entry}, in the order of the
+   *         given DNs. DNs that do not exist are not contained in this map.
+   *         Never <code>null</code>.
    * @throws NamingException
-   *           in case of LDAP problems.
+   *           in case the connection to the LDAP server failed, or one of the
+   *           given DNs was invalid.
+   * @see #getEntry(String, String...)
    */
-  public ServerType getServerType() throws NamingException
+  public final Map<String, LdapEntry> getEntries( final Collection<String> aDNs, final String... aAttributes )
+      throws NamingException
   {
-    ServerType result = ServerType.UNKNOWN;
+    final Map<String, LdapEntry> results = new LinkedHashMap<String, LdapEntry>();
+    if ( aDNs.isEmpty() )
+    {
+      return results;
+    }
 
-    final String openLDAP_oid = "1.3.6.1.4.1.4203";
-    final String microsoft_oid = "1.2.840.113556.1";
+    final List<LdapName> bases = new ArrayList<LdapName>();
+    for ( String baseDN : getBaseDNs() )
+    {
+      bases.add( new LdapName( baseDN ) );
+    }
 
-    final Map<String, List<Object>> supportedExtsAndCaps = convertAttributes( getSupportedLdapServerExtensions() );
-    for ( List<Object> ids : supportedExtsAndCaps.values() )
+    // Group all DNs by the base DN they reside under...
+    final Map<LdapName, Map<LdapName, String>> groups = new LinkedHashMap<LdapName, Map<LdapName, String>>();
+    final List<String> remaining = new ArrayList<String>();
+    for ( String dn : aDNs )
     {
-      for ( Object id : ids )
+      final LdapName name = new LdapName( dn );
+      final LdapName base = findBase( bases, name );
+      if ( base == null )
       {
-        final String idStr = String.valueOf( id ).trim();
+        remaining.add( dn );
+        continue;
+      }
 
-        if ( DEBUG )
+      Map<LdapName, String> group = groups.get( base );
+      if ( group == null )
+      {
+        group = new LinkedHashMap<LdapName, String>();
+        groups.put( base, group );
+      }
+      group.put( name, dn );
+    }
+
+    final ServerType serverType = getServerType();
+    final String dnAttribute = ( ( serverType == ServerType.AD_W2k ) || ( serverType == ServerType.AD_W2k3 )
+        || ( serverType == ServerType.AD_UNKNOWN ) ) ? "distinguishedName" : "entryDN";
+
+    final Map<LdapName, LdapEntry> found = new HashMap<LdapName, LdapEntry>();
+
+    for ( Map.Entry<LdapName, Map<LdapName, String>> group : groups.entrySet() )
+    {
+      final List<LdapName> names = new ArrayList<LdapName>( group.getValue().keySet() );
+      for ( int i = 0; i < names.size(); i += BULK_CHUNK_SIZE )
+      {
+        final List<LdapName> chunk = names.subList( i, Math.min( names.size(), i + BULK_CHUNK_SIZE ) );
+
+        final StringBuilder filter = new StringBuilder( "(|" );
+        for ( LdapName name : chunk )
         {
-          LOG.fine( "Checking OID " + idStr );
+          filter.append( '(' ).append( dnAttribute ).append( '=' ).append( escapeFilterValue( name.toString() ) )
+              .append( ')' );
         }
+        filter.append( ')' );
+
+        int matched = 0;
 
-        if ( idStr.startsWith( openLDAP_oid ) )
+        final SearchCursor cursor = openQuery( group.getKey().toString(), filter.toString(), new LdapSearchControls(
+            SearchControls.SUBTREE_SCOPE, aAttributes ) );
+        try
         {
-          if ( DEBUG )
+          while ( cursor.hasMore() )
           {
-            LOG.fine( "Starts with OpenLDAP OID..." );
+            final SearchResult result = cursor.next();
+            final LdapName name = new LdapName( result.getNameInNamespace() );
+            if ( group.getValue().containsKey( name ) && ( found.put( name, LdapEntry.valueOf( result ) ) == null ) )
+            {
+              matched++;
+            }
           }
-          return ServerType.OPENLDAP;
         }
-        else if ( idStr.startsWith( microsoft_oid ) )
+        finally
         {
-          if ( DEBUG )
-          {
-            LOG.fine( "Starts with Microsoft OID..." );
-          }
+          cursor.close();
+        }
 
-          if ( idStr.equals( IActiveDirectoryWin2k3.OID ) )
-          {
-            if ( DEBUG )
-            {
-              LOG.fine( "Equals to Microsoft AD Win2k3 OID..." );
-            }
-            if ( ( result == ServerType.AD_W2k ) || ( result == ServerType.AD_UNKNOWN ) )
-            {
-              result = ServerType.AD_W2k3;
-            }
-          }
-          else if ( idStr.equals( IActiveDirectoryWin2k.OID ) )
-          {
-            if ( DEBUG )
-            {
-              LOG.fine( "Equals to Microsoft AD Win2k OID..." );
-            }
-            if ( result == ServerType.AD_UNKNOWN )
-            {
-              result = ServerType.AD_W2k;
-            }
-          }
-          else
+        if ( matched == 0 )
+        {
+          // Either none of the DNs exist, or the server does not know how to
+          // search for DNs; look them up separately to be sure...
+          for ( LdapName name : chunk )
           {
-            result = ServerType.AD_UNKNOWN;
+            remaining.add( group.getValue().get( name ) );
           }
         }
       }
     }
 
-    return result;
+    final Map<String, LdapEntry> lookedUp = lookupEntries( remaining, aAttributes );
+
+    for ( String dn : aDNs )
+    {
+      LdapEntry entry = lookedUp.get( dn );
+      if ( entry == null )
+      {
+        entry = found.get( new LdapName( dn ) );
+      }
+      if ( entry != null )
+      {
+        results.put( dn, entry );
+      }
+    }
+
+    return results;
   }
 
   /**
-   * Returns the server URL.
+   * Retrieves an entry with the given attributes.
    *
-   * @return the server URL, like "ldap://localhost".
+   * @param aDN
+   *          the distinguished name of the entry to retrieve, cannot be
+   *          <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve, none to retrieve all attributes.
+   * @return the entry, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed, or the entry
+   *           does not exist.
    */
-  public final String getServerURL()
+  public final LdapEntry getEntry( final String aDN, final String... aAttributes ) throws NamingException
   {
-    return this.serverURL;
-  }
+    final String[] attrIDs = ( ( aAttributes == null ) || ( aAttributes.length == 0 ) ) ? null : aAttributes;
+
+    final LdapContext ctx = getContext();
+    try
+    {
+      return LdapEntry.valueOf( aDN, lookup( ctx, aDN, attrIDs ) );
+    }
+    finally
+    {
+      releaseContext( ctx );
+    }
+  }
+
+  /**
+   * Returns the instance of the extension denoted by the given object ID.
+   * <p>
+   * Extensions that are marked as {@link StatelessLdapExtension} are created
+   * once per instance of this class, and are reused by subsequent calls, also
+   * by concurrent threads. All other extensions (like StartTLS, which keeps the
+   * state of the TLS session) are created anew for each call, using the
+   * factory that was precomputed when the extension was registered.
+   * </p>
+   *
+   * @param aExtensionOID
+   *          the object ID of the extension to create an instance for, should
+   *          be a valid extension.
+   * @return an instance of the requested extension, never <code>null</code>.
+   * @throws UnsupportedOperationException
+   *           in case the extension does not exist, or could not be
+   *           instantiated correctly. See internal cause to further
+   *           information.
+   * @see #isExtensionSupported(String)
+   * @see #isExtensionSupportedByServer(String)
+   */
+  @SuppressWarnings( "unchecked" )
+  public final <T extends LdapExtension> T getExtension( final String aExtensionOID )
+      throws UnsupportedOperationException
+  {
+    LdapExtension result = this.extensions.get( aExtensionOID );
+    if ( result == null )
+    {
+      final LdapExtensionFactory<?> factory = EXTENSION_REGISTRY.get( aExtensionOID );
+      if ( factory == null )
+      {
+        throw new UnsupportedOperationException( "Unsupported extension: " + aExtensionOID );
+      }
+
+      final LdapExtension extension = factory.createExtension( this );
+      if ( !( extension instanceof StatelessLdapExtension ) )
+      {
+        // Stateful extensions cannot be shared between callers...
+        return ( T )extension;
+      }
+
+      result = this.extensions.putIfAbsent( aExtensionOID, ( StatelessLdapExtension )extension );
+      if ( result == null )
+      {
+        result = extension;
+      }
+    }
+    return ( T )result;
+  }
+
+  /**
+   * Returns the maximum number of entries the server allows per page.
+   *
+   * @return the maximum page size, &gt; 0.
+   * @see #setMaxPageSize(int)
+   */
+  public final int getMaxPageSize()
+  {
+    return this.maxPageSize;
+  }
+
+  /**
+   * Returns the listener that is told about each operation performed on the
+   * LDAP server.
+   *
+   * @return the metrics listener, never <code>null</code>, defaults to
+   *         {@link LdapMetricsListener#NONE}.
+   * @see #setMetricsListener(LdapMetricsListener)
+   */
+  public final LdapMetricsListener getMetricsListener()
+  {
+    return this.metricsListener;
+  }
+
+  /**
+   * Returns the number of entries requested per page in paged searches.
+   *
+   * @return the (initial) page size, &gt; 0.
+   * @see #setPageSize(int)
+   */
+  public final int getPageSize()
+  {
+    return this.pageSize;
+  }
+
+  /**
+   * Returns the number of pages that are read ahead by paged searches.
+   *
+   * @return the read-ahead depth, &gt;= 0. A value of 0 means that no pages
+   *         are read ahead.
+   * @see #setReadAheadDepth(int)
+   */
+  public final int getReadAheadDepth()
+  {
+    return this.readAheadDepth;
+  }
+
+  /**
+   * Returns a snapshot of the root DSE of the LDAP server.
+   * <p>
+   * The snapshot is cached for the duration set by
+   * {@link #setRootDSECacheTTL(long, TimeUnit)}, and is shared by all methods
+   * that need to know the capabilities of the server, like
+   * {@link #isExtensionSupportedByServer(String)} and {@link #getServerType()}.
+   * </p>
+   *
+   * @return a snapshot of the root DSE, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   * @see #invalidateRootDSE()
+   */
+  public final RootDSE getRootDSE() throws NamingException
+  {
+    RootDSE result = this.rootDSE;
+    if ( ( result == null ) || result.isOlderThan( this.rootDSETTL ) )
+    {
+      final LdapContext ctx = getContext();
+      try
+      {
+        result = new RootDSE( lookup( ctx, getServerURL(), RootDSE.ATTRIBUTE_IDS ) );
+      }
+      finally
+      {
+        releaseContext( ctx );
+      }
+      this.rootDSE = result;
+    }
+    return result;
+  }
+
+  /**
+   * Tries to determine what kind of LDAP server we're talking to.
+   * <p>
+   * This mehod makes a best-effort approach in determining the type of the
+   * remote LDAP server. It does this by comparing (parts of) the OIDs returned
+   * by the supported extensions of the server.
+   * </p>
+   *
+   * @return a server type, never <code>null</code>.
+   * @throws NamingException
+   *           in case of LDAP problems.
+   */
+  public ServerType getServerType() throws NamingException
+  {
+    ServerType result = ServerType.UNKNOWN;
+
+    final String openLDAP_oid = "1.3.6.1.4.1.4203";
+    final String microsoft_oid = "1.2.840.113556.1";
+
+    for ( String id : getRootDSE().getSupportedExtensions() )
+    {
+      final String idStr = id.trim();
+
+      if ( DEBUG )
+      {
+        LOG.fine( "Checking OID " + idStr );
+      }
+
+      if ( idStr.startsWith( openLDAP_oid ) )
+      {
+        if ( DEBUG )
+        {
+          LOG.fine( "Starts with OpenLDAP OID..." );
+        }
+        return ServerType.OPENLDAP;
+      }
+      else if ( idStr.startsWith( microsoft_oid ) )
+      {
+        if ( DEBUG )
+        {
+          LOG.fine( "Starts with Microsoft OID..." );
+        }
+
+        if ( idStr.equals( IActiveDirectoryWin2k3.OID ) )
+        {
+          if ( DEBUG )
+          {
+            LOG.fine( "Equals to Microsoft AD Win2k3 OID..." );
+          }
+          if ( ( result == ServerType.AD_W2k ) || ( result == ServerType.AD_UNKNOWN ) )
+          {
+            result = ServerType.AD_W2k3;
+          }
+        }
+        else if ( idStr.equals( IActiveDirectoryWin2k.OID ) )
+        {
+          if ( DEBUG )
+          {
+            LOG.fine( "Equals to Microsoft AD Win2k OID..." );
+          }
+          if ( result == ServerType.AD_UNKNOWN )
+          {
+            result = ServerType.AD_W2k;
+          }
+        }
+        else
+        {
+          result = ServerType.AD_UNKNOWN;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the server URL.
+   *
+   * @return the server URL, like "ldap://localhost".
+   */
+  public final String getServerURL()
+  {
+    return this.serverURL;
+  }
 
   /**
    * Convenience method to determine whether the server supports a particular
@@ -757,23 +1297,41 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    */
   public final String[] getSupportedServerExtensions() throws NamingException
   {
-    final Attributes exts = getSupportedLdapServerExtensions();
+    final String[] supportedExts = getRootDSE().getSupportedExtensions();
 
-    final Attribute supportedExts = exts.get( ATTR_SUPPORTED_EXTENSION );
-    if ( ( supportedExts != null ) && ( supportedExts.size() > 0 ) )
+    final List<String> result = new ArrayList<String>( supportedExts.length );
+    for ( String supportedExt : supportedExts )
     {
-      final List<String> result = new ArrayList<String>( supportedExts.size() );
-      for ( int i = 0; i < supportedExts.size(); i++ )
+      if ( isExtensionSupported( supportedExt ) )
       {
-        final String supportedExt = ( String )supportedExts.get( i );
-        if ( isExtensionSupported( supportedExt ) )
-        {
-          result.add( supportedExt );
-        }
+        result.add( supportedExt );
       }
-      return result.toArray( new String[result.size()] );
     }
-    return new String[0];
+    return result.toArray( new String[result.size()] );
+  }
+
+  /**
+   * Invalidates the cached snapshot of the root DSE, causing it to be read
+   * again from the LDAP server upon its next use.
+   *
+   * @see #getRootDSE()
+   */
+  public final void invalidateRootDSE()
+  {
+    this.rootDSE = null;
+  }
+
+  /**
+   * Returns whether paged searches adapt their page size to the latency and
+   * size of the received pages.
+   *
+   * @return <code>true</code> if the page size is adaptive, <code>false</code>
+   *         if a fixed page size is used.
+   * @see #setAdaptivePageSize(boolean)
+   */
+  public final boolean isAdaptivePageSize()
+  {
+    return this.adaptivePageSize;
   }
 
   /**
@@ -819,131 +1377,891 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    */
   public final boolean isExtensionSupportedByServer( final String aExtensionOID ) throws NamingException
   {
-    final Attributes exts = getSupportedLdapServerExtensions();
-    return findAttributeValue( exts, ATTR_SUPPORTED_EXTENSION, aExtensionOID ) != null;
+    return getRootDSE().isExtensionSupported( aExtensionOID );
   }
 
   /**
-   * Performs a simple LDAP query with subtree scope and returns the results.
+   * Returns the context pool this instance obtains its contexts from.
    *
-   * @param aQuery
-   *          the LDAP query to execute.
-   * @return a collection of search results, never <code>null</code>.
+   * @return the context pool, or <code>null</code> in case this instance is
+   *         not pooled.
+   * @see #isPooled()
+   */
+  final LdapContextPool getContextPool()
+  {
+    return this.contextPool;
+  }
+
+  /**
+   * Returns whether this instance obtains its contexts from a
+   * {@link LdapContextPool}.
+   * <p>
+   * Pooled instances hand out a different context (and connection) for each
+   * operation, so state tied to a single connection, like TLS started by the
+   * StartTLS extension, does not apply to them.
+   * </p>
+   *
+   * @return <code>true</code> if this instance uses a context pool,
+   *         <code>false</code> otherwise.
+   */
+  @Override
+  public final boolean isPooled()
+  {
+    return this.contextPool != null;
+  }
+
+  /**
+   * Opens a cursor that merges the results of the given partitions, which are
+   * searched concurrently.
+   *
+   * @param aPartitions
+   *          the factories of the paged searches of each partition, cannot be
+   *          <code>null</code>;
+   * @param aControls
+   *          the search controls of the query, cannot be <code>null</code>;
+   * @param aParallelism
+   *          the maximum number of partitions to search concurrently, &gt; 0.
+   * @return a cursor over the merged search results, never <code>null</code>.
+   */
+  private SearchCursor openParallelQuery( final List<SearchPageSourceFactory> aPartitions,
+      final LdapSearchControls aControls, final int aParallelism )
+  {
+    final int depth = Math.max( this.readAheadDepth, aParallelism );
+    return new SearchCursor( new ReadAheadPageSource( aPartitions, depth, aParallelism, aControls.getCountLimit() ) );
+  }
+
+  /**
+   * Opens a lazily paged LDAP query using the page size of this instance.
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE}.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
    * @throws NamingException
    *           in case the connection to the LDAP server failed.
-   * @see #query(String, int)
+   * @see #openQuery(String, String, int, int)
+   */
+  public SearchCursor openQuery( final String aDN, final String aFilter, final int aSearchScope )
+      throws NamingException
+  {
+    return openQuery( aDN, aFilter, aSearchScope, this.pageSize );
+  }
+
+  /**
+   * Opens a lazily paged LDAP query with subtree scope, using the given
+   * compiled filter and the page size of this instance.
+   * <p>
+   * The parameters are bound to the filter with RFC 4515 escaping, so values
+   * supplied by users cannot alter the structure of the filter.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the compiled filter to execute, cannot be <code>null</code>;
+   * @param aParams
+   *          the values of the parameters of the filter, see
+   *          {@link LdapFilter#bind(Object...)}.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case too few, or <code>null</code> parameters were given.
+   * @see LdapFilter#compile(String)
+   * @see #openQuery(String, LdapFilter, SearchControls, Object...)
+   */
+  public SearchCursor openQuery( final String aDN, final LdapFilter aFilter, final Object... aParams )
+      throws NamingException, IllegalArgumentException
+  {
+    return openQuery( aDN, aFilter.format( aParams ), SearchControls.SUBTREE_SCOPE );
+  }
+
+  /**
+   * Opens a lazily paged LDAP query with the given search controls, using the
+   * given compiled filter and the page size of this instance.
+   * <p>
+   * The search controls determine the scope and the attributes to return, for
+   * example <code>new LdapSearchControls( SearchControls.ONELEVEL_SCOPE, "cn" )</code>.
+   * There is deliberately no variant taking the scope as <code>int</code>, as
+   * it would be indistinguishable from a filter parameter.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the compiled filter to execute, cannot be <code>null</code>;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>;
+   * @param aParams
+   *          the values of the parameters of the filter, see
+   *          {@link LdapFilter#bind(Object...)}.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given controls were <code>null</code>, or too few, or
+   *           <code>null</code> parameters were given.
+   * @see #openQuery(String, String, SearchControls, int)
+   */
+  public SearchCursor openQuery( final String aDN, final LdapFilter aFilter, final SearchControls aControls,
+      final Object... aParams ) throws NamingException, IllegalArgumentException
+  {
+    return openQuery( aDN, aFilter.format( aParams ), aControls, this.pageSize );
+  }
+
+  /**
+   * Opens a lazily paged LDAP query.
+   * <p>
+   * In contrast to {@link #query(String, String, int, int)}, the search results
+   * are not collected up front, but requested page by page from the LDAP server
+   * while iterating over the returned cursor. This keeps the memory usage
+   * bounded by a single page, regardless of the total number of results.
+   * </p>
+   * <p>
+   * In case a read-ahead depth is set, the pages are requested on a background
+   * thread instead, and at most that many pages are kept ahead of the caller.
+   * </p>
+   * <p>
+   * Each query uses its own request controls, so multiple threads can page
+   * through different queries concurrently on the same connection.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE};
+   * @param aPageSize
+   *          the number of entries to request per page, &gt; 0. In case the page
+   *          size is adaptive, this is the page size of the first page.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given page size was not positive.
+   */
+  public SearchCursor openQuery( final String aDN, final String aFilter, final int aSearchScope, final int aPageSize )
+      throws NamingException, IllegalArgumentException
+  {
+    return openQuery( aDN, aFilter, new LdapSearchControls( aSearchScope ), aPageSize );
+  }
+
+  /**
+   * Opens a lazily paged LDAP query with the given search controls, using the
+   * page size of this instance.
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   * @see #openQuery(String, String, SearchControls, int)
+   */
+  public SearchCursor openQuery( final String aDN, final String aFilter, final SearchControls aControls )
+      throws NamingException
+  {
+    return openQuery( aDN, aFilter, aControls, this.pageSize );
+  }
+
+  /**
+   * Opens a lazily paged LDAP query with the given search controls.
+   * <p>
+   * The search controls determine the scope, the attributes to return, and
+   * the count and time limits of the query. In case the given controls are
+   * {@link LdapSearchControls}, only the attribute names are returned if its
+   * "typesOnly" flag is set. Reaching the count limit ends the query normally;
+   * reaching the time limit causes a {@link TimeLimitExceededException}.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>. Later
+   *          changes to these controls do not affect the returned cursor;
+   * @param aPageSize
+   *          the number of entries to request per page, &gt; 0. In case the page
+   *          size is adaptive, this is the page size of the first page.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given controls were <code>null</code>, or the given
+   *           page size was not positive.
+   * @see #openQuery(String, String, int, int)
+   */
+  public SearchCursor openQuery( final String aDN, final String aFilter, final SearchControls aControls,
+      final int aPageSize ) throws NamingException, IllegalArgumentException
+  {
+    if ( aControls == null )
+    {
+      throw new IllegalArgumentException( "Search controls cannot be null!" );
+    }
+    if ( aPageSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid page size: should be positive!" );
+    }
+
+    final String dn = ( aDN == null ) ? "" : aDN;
+
+    final PagedSearch search = createPagedSearch( dn, aFilter, new LdapSearchControls( aControls ), aPageSize );
+
+    final int depth = this.readAheadDepth;
+    if ( depth > 0 )
+    {
+      return new SearchCursor( new ReadAheadPageSource( search, depth ) );
+    }
+    return new SearchCursor( search );
+  }
+
+  /**
+   * Opens a LDAP query that searches the subtree below the given DN in
+   * parallel.
+   * <p>
+   * The subtree is partitioned into the base entry itself and the subtrees of
+   * each of its direct children. Up to the given number of partitions are
+   * searched concurrently, each with its own (pooled) connection, and their
+   * results are merged into a single cursor. The order of the results is
+   * therefore not defined.
+   * </p>
+   * <p>
+   * The number of connections that can actually be used concurrently is
+   * bounded by the {@link LdapContextPool} of this instance, if any. Note that
+   * this only speeds up searches when the entries are reasonably spread over
+   * the direct children of the given DN.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>. In case
+   *          the search scope is not {@link SearchControls#SUBTREE_SCOPE}, the
+   *          query is performed sequentially;
+   * @param aParallelism
+   *          the maximum number of partitions to search concurrently, &gt; 0.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given controls were <code>null</code>, or the given
+   *           parallelism was not positive.
+   * @see #openParallelQuery(String, String, SearchControls, int, List)
+   */
+  public SearchCursor openParallelQuery( final String aDN, final String aFilter, final SearchControls aControls,
+      final int aParallelism ) throws NamingException, IllegalArgumentException
+  {
+    if ( aControls == null )
+    {
+      throw new IllegalArgumentException( "Search controls cannot be null!" );
+    }
+    if ( aParallelism <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid parallelism: should be positive!" );
+    }
+    if ( aControls.getSearchScope() != SearchControls.SUBTREE_SCOPE )
+    {
+      return openQuery( aDN, aFilter, aControls );
+    }
+
+    final String dn = ( aDN == null ) ? "" : aDN;
+
+    final LdapSearchControls ctrl = new LdapSearchControls( aControls );
+
+    final List<SearchPageSourceFactory> partitions = new ArrayList<SearchPageSourceFactory>();
+
+    // The base entry itself...
+    final LdapSearchControls baseCtrl = new LdapSearchControls( ctrl );
+    baseCtrl.setSearchScope( SearchControls.OBJECT_SCOPE );
+    partitions.add( createPagedSearchFactory( dn, aFilter, baseCtrl ) );
+
+    // ...and the subtree of each of its children...
+    final SearchCursor children = openQuery( dn, "(objectClass=*)", new LdapSearchControls(
+        SearchControls.ONELEVEL_SCOPE, LdapSearchControls.NO_ATTRIBUTES ) );
+    try
+    {
+      while ( children.hasMore() )
+      {
+        partitions.add( createPagedSearchFactory( children.next().getNameInNamespace(), aFilter, ctrl ) );
+      }
+    }
+    finally
+    {
+      children.close();
+    }
+
+    return openParallelQuery( partitions, ctrl, aParallelism );
+  }
+
+  /**
+   * Opens a LDAP query that is performed in parallel for each of the given
+   * partitions.
+   * <p>
+   * Each partition is a LDAP filter that is combined with the given filter, for
+   * example <code>(cn=a*)</code>, <code>(cn=b*)</code>, and so on. The
+   * partitions should not overlap, as otherwise entries are returned more than
+   * once, and should together cover all entries of interest. Up to the given
+   * number of partitions are searched concurrently, each with its own (pooled)
+   * connection, and their results are merged into a single cursor. The order
+   * of the results is therefore not defined.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>;
+   * @param aParallelism
+   *          the maximum number of partitions to search concurrently, &gt; 0;
+   * @param aPartitions
+   *          the LDAP filters that partition the search, cannot be
+   *          <code>null</code> or empty.
+   * @return a cursor over the search results, never <code>null</code>. The
+   *         caller is responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given controls or partitions were <code>null</code>
+   *           or empty, or the given parallelism was not positive.
+   * @see #openParallelQuery(String, String, SearchControls, int)
+   */
+  public SearchCursor openParallelQuery( final String aDN, final String aFilter, final SearchControls aControls,
+      final int aParallelism, final List<String> aPartitions ) throws NamingException, IllegalArgumentException
+  {
+    if ( aControls == null )
+    {
+      throw new IllegalArgumentException( "Search controls cannot be null!" );
+    }
+    if ( ( aPartitions == null ) || aPartitions.isEmpty() )
+    {
+      throw new IllegalArgumentException( "Partitions cannot be null or empty!" );
+    }
+    if ( aParallelism <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid parallelism: should be positive!" );
+    }
+
+    final String dn = ( aDN == null ) ? "" : aDN;
+
+    final LdapSearchControls ctrl = new LdapSearchControls( aControls );
+
+    final List<SearchPageSourceFactory> partitions = new ArrayList<SearchPageSourceFactory>();
+    for ( String partition : aPartitions )
+    {
+      partitions.add( createPagedSearchFactory( dn, "(&" + parenthesize( aFilter ) + parenthesize( partition ) + ")",
+          ctrl ) );
+    }
+
+    return openParallelQuery( partitions, ctrl, aParallelism );
+  }
+
+  /**
+   * Opens a pipelining client to the LDAP server of this object, which is
+   * bound with the same credentials as this object.
+   * <p>
+   * In contrast to the (JNDI-based) methods of this object, which wait for the
+   * response of each operation before a connection can be used for the next,
+   * the returned client sends all operations directly and matches their
+   * responses by message ID. This allows many thousands of concurrent lookups
+   * and searches to be served by only a few connections.
+   * </p>
+   * <p>
+   * Only plain "ldap://" server URLs, and anonymous or "simple"
+   * authentication are supported. The "com.sun.jndi.ldap.connect.timeout"
+   * property of the environment of this object, if set, bounds the time in
+   * which the connections should be established.
+   * </p>
+   *
+   * @param aConnections
+   *          the number of connections to open, &gt; 0.
+   * @return a new, bound, client that should be closed after use, never
+   *         <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed or timed out,
+   *           binding failed, the connect timeout is invalid, or the server
+   *           URL or authentication are not supported.
+   * @see PipeliningLdapClient
+   */
+  public PipeliningLdapClient openPipeliningClient( final int aConnections ) throws NamingException
+  {
+    final URI uri;
+    try
+    {
+      uri = new URI( this.serverURL );
+    }
+    catch ( URISyntaxException exception )
+    {
+      final InvalidNameException ne = new InvalidNameException( "Invalid server URL: " + this.serverURL );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+
+    if ( !"ldap".equalsIgnoreCase( uri.getScheme() ) )
+    {
+      throw new OperationNotSupportedException( "Pipelining is only supported for ldap:// URLs!" );
+    }
+    final String authentication = this.environment.get( Context.SECURITY_AUTHENTICATION );
+    if ( ( authentication != null ) && !"simple".equalsIgnoreCase( authentication )
+        && !"none".equalsIgnoreCase( authentication ) )
+    {
+      throw new AuthenticationNotSupportedException( "Pipelining does not support " + authentication
+          + " authentication!" );
+    }
+
+    long connectTimeout = 0L;
+    final String timeout = this.environment.get( CONNECT_TIMEOUT_KEY );
+    if ( timeout != null )
+    {
+      try
+      {
+        connectTimeout = Math.max( 0L, Long.parseLong( timeout.trim() ) );
+      }
+      catch ( NumberFormatException exception )
+      {
+        final ConfigurationException ne = new ConfigurationException( "Invalid connect timeout: " + timeout );
+        ne.setRootCause( exception );
+        throw ne;
+      }
+    }
+
+    final PipeliningLdapClient client;
+    try
+    {
+      client = new PipeliningLdapClient( new InetSocketAddress( uri.getHost(), ( uri.getPort() < 0 ) ? 389 : uri
+          .getPort() ), aConnections, connectTimeout );
+    }
+    catch ( IOException exception )
+    {
+      final CommunicationException ne = new CommunicationException( "Failed to connect to " + this.serverURL );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+
+    final String principal = this.environment.get( Context.SECURITY_PRINCIPAL );
+    if ( ( principal != null ) && !"none".equalsIgnoreCase( authentication ) )
+    {
+      try
+      {
+        client.bind( principal, this.environment.get( Context.SECURITY_CREDENTIALS ) );
+      }
+      catch ( NamingException exception )
+      {
+        client.close();
+        throw exception;
+      }
+    }
+    return client;
+  }
+
+  /**
+   * Performs a simple LDAP query with subtree scope and returns the results.
+   *
+   * @param aQuery
+   *          the LDAP query to execute.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   * @see #query(String, int)
+   */
+  public Collection<SearchResult> query( final String aQuery ) throws NamingException
+  {
+    return query( aQuery, SearchControls.SUBTREE_SCOPE );
+  }
+
+  /**
+   * Performs a simple LDAP query and returns the results.
+   *
+   * @param aQuery
+   *          the LDAP query to execute;
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE}.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  public Collection<SearchResult> query( final String aQuery, final int aSearchScope ) throws NamingException
+  {
+    final List<SearchResult> searchResults = new ArrayList<SearchResult>();
+
+    final SearchControls ctrl = new SearchControls();
+    ctrl.setSearchScope( aSearchScope );
+
+    final long start = System.nanoTime();
+    long byteCount = 0L;
+
+    final LdapContext ctx = getExclusiveContext();
+    try
+    {
+      final NamingEnumeration<SearchResult> enumeration = ctx.search( "", aQuery, ctrl );
+      while ( enumeration.hasMore() )
+      {
+        final SearchResult result = enumeration.next();
+        if ( this.metricsListener != LdapMetricsListener.NONE )
+        {
+          byteCount += AdaptivePageSize.estimateSize( result );
+        }
+        searchResults.add( result );
+      }
+    }
+    catch ( NamingException exception )
+    {
+      operationCompleted( LdapOperationType.SEARCH, start, searchResults.size(), byteCount, exception );
+      throw exception;
+    }
+    finally
+    {
+      releaseContext( ctx );
+    }
+    operationCompleted( LdapOperationType.SEARCH, start, searchResults.size(), byteCount, null );
+
+    return searchResults;
+  }
+
+  /**
+   * Performs a simple LDAP query with subtree scope and returns the results.
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   * @see #query(String, int)
+   */
+  public Collection<SearchResult> query( final String aDN, final String aFilter ) throws NamingException
+  {
+    return query( aDN, aFilter, SearchControls.SUBTREE_SCOPE );
+  }
+
+  /**
+   * Performs a LDAP query with subtree scope using the given compiled filter,
+   * and returns the results.
+   * <p>
+   * The parameters are bound to the filter with RFC 4515 escaping, so values
+   * supplied by users cannot alter the structure of the filter:
+   * </p>
+   *
+   * <pre>
+   * final LdapFilter user = LdapFilter.compile( &quot;(&amp;(objectClass=user)(sAMAccountName={0}))&quot; );
+   * ...
+   * final Collection&lt;SearchResult&gt; results = ldap.query( baseDN, user, accountName );
+   * </pre>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the compiled filter to execute, cannot be <code>null</code>;
+   * @param aParams
+   *          the values of the parameters of the filter, see
+   *          {@link LdapFilter#bind(Object...)}.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case too few, or <code>null</code> parameters were given.
+   * @see LdapFilter#compile(String)
+   * @see #query(String, LdapFilter, SearchControls, Object...)
+   */
+  public Collection<SearchResult> query( final String aDN, final LdapFilter aFilter, final Object... aParams )
+      throws NamingException, IllegalArgumentException
+  {
+    return query( aDN, aFilter.format( aParams ) );
+  }
+
+  /**
+   * Performs a paged LDAP query with the given search controls using the given
+   * compiled filter, and returns the results.
+   * <p>
+   * The search controls determine the scope and the attributes to return:
+   * </p>
+   *
+   * <pre>
+   * final SearchControls names = new LdapSearchControls( SearchControls.ONELEVEL_SCOPE, &quot;cn&quot; );
+   * ...
+   * final Collection&lt;SearchResult&gt; results = ldap.query( baseDN, user, names, accountName );
+   * </pre>
+   * <p>
+   * There is deliberately no variant taking the scope as <code>int</code>, as
+   * it would be indistinguishable from a filter parameter.
+   * </p>
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the compiled filter to execute, cannot be <code>null</code>;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>;
+   * @param aParams
+   *          the values of the parameters of the filter, see
+   *          {@link LdapFilter#bind(Object...)}.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given controls were <code>null</code>, or too few, or
+   *           <code>null</code> parameters were given.
+   * @see #openQuery(String, LdapFilter, SearchControls, Object...)
+   */
+  public Collection<SearchResult> query( final String aDN, final LdapFilter aFilter, final SearchControls aControls,
+      final Object... aParams ) throws NamingException, IllegalArgumentException
+  {
+    return query( aDN, aFilter.format( aParams ), aControls, this.pageSize );
+  }
+
+  /**
+   * Performs a simple LDAP query and returns the results.
+   *
+   * @param aDN
+   *          DOCUMENT ME!
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE}.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws RuntimeException
+   *           in case the connection control settings failed.
+   * @see #openQuery(String, String, int)
+   */
+  public Collection<SearchResult> query( final String aDN, final String aFilter, final int aSearchScope )
+      throws NamingException
+  {
+    return query( aDN, aFilter, aSearchScope, this.pageSize );
+  }
+
+  /**
+   * Performs a paged LDAP query with a given page size and returns the
+   * results.
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE};
+   * @param aPageSize
+   *          the number of entries to request per page, &gt; 0.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given page size was not positive;
+   * @throws RuntimeException
+   *           in case the connection control settings failed.
+   * @see #openQuery(String, String, int, int)
+   */
+  public Collection<SearchResult> query( final String aDN, final String aFilter, final int aSearchScope,
+      final int aPageSize ) throws NamingException, IllegalArgumentException
+  {
+    return query( aDN, aFilter, new LdapSearchControls( aSearchScope ), aPageSize );
+  }
+
+  /**
+   * Performs a paged LDAP query that only returns the given attributes.
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE};
+   * @param aAttributes
+   *          the attribute IDs to return, use
+   *          {@link LdapSearchControls#NO_ATTRIBUTES} to return no attributes
+   *          at all.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   * @see #query(String, String, SearchControls)
+   */
+  public Collection<SearchResult> query( final String aDN, final String aFilter, final int aSearchScope,
+      final String... aAttributes ) throws NamingException
+  {
+    return query( aDN, aFilter, new LdapSearchControls( aSearchScope, aAttributes ) );
+  }
+
+  /**
+   * Performs a paged LDAP query with the given search controls and returns the
+   * results.
+   *
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>.
+   * @return a collection of search results, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   * @see #openQuery(String, String, SearchControls, int)
    */
-  public Collection<SearchResult> query( final String aQuery ) throws NamingException
+  public Collection<SearchResult> query( final String aDN, final String aFilter, final SearchControls aControls )
+      throws NamingException
   {
-    return query( aQuery, SearchControls.SUBTREE_SCOPE );
+    return query( aDN, aFilter, aControls, this.pageSize );
   }
 
   /**
-   * Performs a simple LDAP query and returns the results.
+   * Performs a paged LDAP query with the given search controls and page size,
+   * and returns the results.
    *
-   * @param aQuery
+   * @param aDN
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
+   * @param aFilter
    *          the LDAP query to execute;
-   * @param aSearchScope
-   *          the scope of searching, must be one of
-   *          {@link SearchControls#OBJECT_SCOPE},
-   *          {@link SearchControls#ONELEVEL_SCOPE} or
-   *          {@link SearchControls#SUBTREE_SCOPE}.
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>;
+   * @param aPageSize
+   *          the number of entries to request per page, &gt; 0.
    * @return a collection of search results, never <code>null</code>.
    * @throws NamingException
-   *           in case the connection to the LDAP server failed.
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given controls were <code>null</code>, or the given
+   *           page size was not positive.
+   * @see #openQuery(String, String, SearchControls, int)
    */
-  public Collection<SearchResult> query( final String aQuery, final int aSearchScope ) throws NamingException
+  public Collection<SearchResult> query( final String aDN, final String aFilter, final SearchControls aControls,
+      final int aPageSize ) throws NamingException, IllegalArgumentException
   {
     final List<SearchResult> searchResults = new ArrayList<SearchResult>();
 
-    final SearchControls ctrl = new SearchControls();
-    ctrl.setSearchScope( aSearchScope );
-
-    final NamingEnumeration<SearchResult> enumeration = getContext().search( "", aQuery, ctrl );
-    while ( enumeration.hasMore() )
+    final SearchCursor cursor = openQuery( aDN, aFilter, aControls, aPageSize );
+    try
+    {
+      while ( cursor.hasMore() )
+      {
+        searchResults.add( cursor.next() );
+      }
+    }
+    finally
     {
-      searchResults.add( enumeration.next() );
+      cursor.close();
     }
 
     return searchResults;
   }
 
   /**
-   * Performs a simple LDAP query with subtree scope and returns the results.
+   * Performs a paged LDAP query that returns compact entries with the given
+   * attributes.
    *
    * @param aDN
    *          the distinguished name to search under (may be <code>null</code>
    *          or empty);
    * @param aFilter
-   *          the LDAP query to execute.
-   * @return a collection of search results, never <code>null</code>.
+   *          the LDAP query to execute;
+   * @param aSearchScope
+   *          the scope of searching, must be one of
+   *          {@link SearchControls#OBJECT_SCOPE},
+   *          {@link SearchControls#ONELEVEL_SCOPE} or
+   *          {@link SearchControls#SUBTREE_SCOPE};
+   * @param aAttributes
+   *          the attribute IDs to return, none to return all attributes.
+   * @return a list of entries, never <code>null</code>.
    * @throws NamingException
    *           in case the connection to the LDAP server failed.
-   * @see #query(String, int)
+   * @see #queryEntries(String, String, SearchControls)
    */
-  public Collection<SearchResult> query( final String aDN, final String aFilter ) throws NamingException
+  public List<LdapEntry> queryEntries( final String aDN, final String aFilter, final int aSearchScope,
+      final String... aAttributes ) throws NamingException
   {
-    return query( aDN, aFilter, SearchControls.SUBTREE_SCOPE );
+    return queryEntries( aDN, aFilter, new LdapSearchControls( aSearchScope, aAttributes ) );
   }
 
   /**
-   * Performs a simple LDAP query and returns the results.
+   * Performs a paged LDAP query with the given search controls that returns
+   * compact entries.
+   * <p>
+   * The search results are converted while they are received, so at most a
+   * single page of search results is kept in memory besides the returned
+   * entries, which require considerably less memory than search results.
+   * </p>
    *
    * @param aDN
-   *          DOCUMENT ME!
+   *          the distinguished name to search under (may be <code>null</code>
+   *          or empty);
    * @param aFilter
    *          the LDAP query to execute;
-   * @param aSearchScope
-   *          the scope of searching, must be one of
-   *          {@link SearchControls#OBJECT_SCOPE},
-   *          {@link SearchControls#ONELEVEL_SCOPE} or
-   *          {@link SearchControls#SUBTREE_SCOPE}.
-   * @return a collection of search results, never <code>null</code>.
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>.
+   * @return a list of entries, never <code>null</code>.
    * @throws NamingException
-   *           in case the connection to the LDAP server failed;
-   * @throws RuntimeException
-   *           in case the connection control settings failed.
+   *           in case the connection to the LDAP server failed.
+   * @see #openQuery(String, String, SearchControls)
    */
-  public Collection<SearchResult> query( final String aDN, final String aFilter, final int aSearchScope )
+  public List<LdapEntry> queryEntries( final String aDN, final String aFilter, final SearchControls aControls )
       throws NamingException
   {
-    final List<SearchResult> searchResults = new ArrayList<SearchResult>();
-
-    final int pageSize = 100;
-    final String dn = ( aDN == null ) ? "" : aDN;
-
-    final SearchControls ctrl = new SearchControls();
-    ctrl.setSearchScope( aSearchScope );
+    final List<LdapEntry> entries = new ArrayList<LdapEntry>();
 
+    final SearchCursor cursor = openQuery( aDN, aFilter, aControls );
     try
     {
-      final LdapContext ctx = getContext();
-      ctx.setRequestControls( new Control[] { new PagedResultsControl( pageSize, Control.CRITICAL ) } );
-
-      byte[] cookie = null;
-
-      do
+      while ( cursor.hasMore() )
       {
-        final NamingEnumeration<SearchResult> results = ctx.search( dn, aFilter, ctrl );
-        while ( ( results != null ) && results.hasMoreElements() )
-        {
-          final SearchResult sr = results.next();
-          searchResults.add( sr );
-        }
-
-        cookie = parseControls( ctx.getResponseControls() );
-
-        // pass the cookie back to the server for the next page
-        ctx.setRequestControls( new Control[] { new PagedResultsControl( pageSize, cookie, Control.CRITICAL ) } );
+        entries.add( LdapEntry.valueOf( cursor.next() ) );
       }
-      while ( ( cookie != null ) && ( cookie.length != 0 ) );
     }
-    catch ( IOException exception )
+    finally
     {
-      throw new RuntimeException( "Unexpected I/O exception!", exception );
+      cursor.close();
     }
 
-    return searchResults;
+    return entries;
   }
 
   /**
@@ -954,13 +2272,168 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    * </p>
    *
    * @throws NamingException
-   *           in case the connection to the LDAP server failed.
+   *           in case the connection to the LDAP server failed;
+   * @throws IllegalStateException
+   *           in case this object uses a connection pool.
    */
-  public final void reconnect() throws NamingException
+  public final void reconnect() throws NamingException, IllegalStateException
   {
+    if ( this.contextPool != null )
+    {
+      throw new IllegalStateException( "Cannot reconnect pooled LDAP connections!" );
+    }
+    invalidateConnectionState();
     getContext().reconnect( null /* connCtls */);
   }
 
+  /**
+   * Releases a LDAP context obtained by {@link #getContext()}.
+   * <p>
+   * In case this object uses a connection pool, the context is returned to
+   * that pool. The shared context of this object is left open, while contexts
+   * derived from it for a single operation are closed.
+   * </p>
+   *
+   * @param aContext
+   *          the LDAP context to release, cannot be <code>null</code>.
+   * @throws NamingException
+   *           in case releasing the context failed.
+   */
+  @Override
+  public final void releaseContext( final LdapContext aContext ) throws NamingException
+  {
+    if ( this.contextPool != null )
+    {
+      this.contextPool.releaseContext( aContext );
+    }
+    else if ( aContext != this.context )
+    {
+      aContext.close();
+    }
+  }
+
+  /**
+   * Sets whether paged searches should adapt their page size.
+   * <p>
+   * When enabled, each paged search starts with the configured page size and
+   * doubles it as long as pages are received quickly and are small, and halves
+   * it when pages take long to receive or get large. The page size never
+   * exceeds the maximum page size.
+   * </p>
+   *
+   * @param aAdaptive
+   *          <code>true</code> to adapt the page size, <code>false</code> to use
+   *          a fixed page size (the default).
+   * @see #setMaxPageSize(int)
+   */
+  public final void setAdaptivePageSize( final boolean aAdaptive )
+  {
+    this.adaptivePageSize = aAdaptive;
+  }
+
+  /**
+   * Sets the maximum number of entries the server allows per page, such as the
+   * MaxPageSize policy of Active Directory (1000 by default).
+   * <p>
+   * This value is only used as upper bound for adaptive page sizes. In case
+   * the server returns fewer entries per page than requested, the adaptive page
+   * size is lowered to that number as well.
+   * </p>
+   *
+   * @param aMaxPageSize
+   *          the maximum page size, &gt; 0.
+   * @throws IllegalArgumentException
+   *           in case the given page size was not positive.
+   */
+  public final void setMaxPageSize( final int aMaxPageSize ) throws IllegalArgumentException
+  {
+    if ( aMaxPageSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid maximum page size: should be positive!" );
+    }
+    this.maxPageSize = aMaxPageSize;
+  }
+
+  /**
+   * Sets the listener that is told about each operation performed on the LDAP
+   * server, like binds, lookups, (pages of) searches and extended operations.
+   * <p>
+   * Searches that are already opened keep reporting to the previous listener.
+   * In case this object uses a {@link LdapContextPool}, the binds of the
+   * contexts created by that pool are reported to this listener as well.
+   * </p>
+   *
+   * @param aListener
+   *          the metrics listener to use, can be <code>null</code> to stop
+   *          reporting operations (the default).
+   * @see LdapMetrics
+   */
+  public final void setMetricsListener( final LdapMetricsListener aListener )
+  {
+    this.metricsListener = ( aListener == null ) ? LdapMetricsListener.NONE : aListener;
+    if ( this.contextPool != null )
+    {
+      this.contextPool.setMetricsListener( this.serverURL, this.metricsListener );
+    }
+  }
+
+  /**
+   * Sets how long a snapshot of the root DSE is cached.
+   *
+   * @param aTTL
+   *          the time to cache the root DSE, &gt;= 0, defaults to 10 minutes.
+   *          Use 0 to read the root DSE each time it is needed;
+   * @param aUnit
+   *          the unit of the given time, cannot be <code>null</code>.
+   * @see #getRootDSE()
+   */
+  public final void setRootDSECacheTTL( final long aTTL, final TimeUnit aUnit )
+  {
+    this.rootDSETTL = aUnit.toNanos( aTTL );
+  }
+
+  /**
+   * Sets the number of entries to request per page in paged searches.
+   *
+   * @param aPageSize
+   *          the page size, &gt; 0, defaults to 100.
+   * @throws IllegalArgumentException
+   *           in case the given page size was not positive.
+   */
+  public final void setPageSize( final int aPageSize ) throws IllegalArgumentException
+  {
+    if ( aPageSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid page size: should be positive!" );
+    }
+    this.pageSize = aPageSize;
+  }
+
+  /**
+   * Sets the number of pages that paged searches should read ahead.
+   * <p>
+   * When set to a value larger than zero, the next page(s) of a paged search
+   * are requested on a background thread while the caller processes the
+   * current page. This overlaps the latency of the LDAP server with the
+   * processing of the search results, at the expense of keeping up to the
+   * given number of additional pages in memory.
+   * </p>
+   *
+   * @param aDepth
+   *          the maximum number of pages to read ahead, &gt;= 0. Use 0 to
+   *          disable reading ahead (the default).
+   * @throws IllegalArgumentException
+   *           in case the given depth was negative.
+   */
+  public final void setReadAheadDepth( final int aDepth ) throws IllegalArgumentException
+  {
+    if ( aDepth < 0 )
+    {
+      throw new IllegalArgumentException( "Invalid read-ahead depth: cannot be negative!" );
+    }
+    this.readAheadDepth = aDepth;
+  }
+
   /**
    * Sets the authentication mechanisms to use for binding with the LDAP server.
    *
@@ -1040,76 +2513,266 @@ public class LibLdap implements LdapContextProvider, LdapAttributes
    * @return the attributes containing the server extensions.
    * @throws NamingException
    *           in case the connection to the LDAP server failed.
+   * @see #getRootDSE()
    */
   protected final Attributes getSupportedLdapServerExtensions() throws NamingException
   {
-    return getContext().getAttributes( getServerURL(), new String[] { ATTR_SUPPORTED_EXTENSION } );
+    final Attribute supportedExts = new BasicAttribute( ATTR_SUPPORTED_EXTENSION );
+    for ( String supportedExt : getRootDSE().getSupportedExtensions() )
+    {
+      supportedExts.add( supportedExt );
+    }
+
+    final Attributes result = new BasicAttributes( true /* ignoreCase */);
+    result.put( supportedExts );
+    return result;
   }
 
   /**
-   * Converts a given object-array into a string-array.
+   * Finds the (most specific) base DN the given DN resides under.
    *
-   * @param aInput
-   *          the input array to convert, can be <code>null</code> or empty.
-   * @return the string array, never <code>null</code>.
+   * @param aBases
+   *          the base DNs to search in, cannot be <code>null</code>;
+   * @param aName
+   *          the DN to find the base DN for, cannot be <code>null</code>.
+   * @return the base DN of the given DN, or <code>null</code> if it does not
+   *         reside under any of the given base DNs.
    */
-  private String[] convertToStringArray( final Object[] aInput )
+  private static LdapName findBase( final List<LdapName> aBases, final LdapName aName )
   {
-    if ( ( aInput == null ) || ( aInput.length == 0 ) )
-    {
-      return new String[0];
-    }
-    final String[] result = new String[aInput.length];
-    for ( int i = 0; i < aInput.length; i++ )
+    LdapName result = null;
+    for ( LdapName base : aBases )
     {
-      result[i] = ( aInput[i] == null ) ? null : String.valueOf( aInput[i] );
+      if ( aName.startsWith( base ) && ( ( result == null ) || ( base.size() > result.size() ) ) )
+      {
+        result = base;
+      }
     }
     return result;
   }
 
   /**
-   * Finds a given attribute value in a given attribute.
+   * Looks up the entry of each of the given DNs separately.
    *
-   * @param aAttribute
-   *          the attribute to search in;
-   * @param aAttributeValue
-   *          the value to look for.
-   * @return the attribute value if found, <code>null</code> if not found.
+   * @param aDNs
+   *          the distinguished names to look up, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve, none to retrieve all attributes.
+   * @return the entry of each existing DN, never <code>null</code>.
    * @throws NamingException
    *           in case the connection to the LDAP server failed.
    */
-  private Object findAttributeValue( final Attribute aAttribute, final Object aAttributeValue ) throws NamingException
+  private Map<String, LdapEntry> lookupEntries( final List<String> aDNs, final String... aAttributes )
+      throws NamingException
   {
-    if ( aAttribute != null )
+    final Map<String, LdapEntry> result = new HashMap<String, LdapEntry>();
+    if ( aDNs.isEmpty() )
     {
-      for ( int i = 0; i < aAttribute.size(); i++ )
+      return result;
+    }
+
+    final String[] attrIDs = ( ( aAttributes == null ) || ( aAttributes.length == 0 ) ) ? null : aAttributes;
+
+    final LdapContext ctx = getContext();
+    try
+    {
+      for ( String dn : aDNs )
       {
-        final Object supportedExt = aAttribute.get( i );
-        if ( aAttributeValue.equals( supportedExt ) )
+        try
         {
-          return supportedExt;
+          result.put( dn, LdapEntry.valueOf( dn, lookup( ctx, dn, attrIDs ) ) );
+        }
+        catch ( NameNotFoundException exception )
+        {
+          // Ignore; DN does not exist...
         }
       }
     }
-    return null;
+    finally
+    {
+      releaseContext( ctx );
+    }
+
+    return result;
   }
 
   /**
-   * Finds a given attribute value in a given attribute.
+   * Retrieves the attributes of a single entry, reporting the lookup to the
+   * metrics listener.
    *
+   * @param aContext
+   *          the LDAP context to use, cannot be <code>null</code>;
+   * @param aDN
+   *          the distinguished name of the entry, cannot be <code>null</code>;
    * @param aAttributes
-   *          the attributes to search in;
-   * @param aAttributeID
-   *          the ID of the attribute to look for;
-   * @param aAttributeValue
-   *          the value to look for.
-   * @return the attribute value if found, <code>null</code> if not found.
+   *          the attribute IDs to retrieve, <code>null</code> to retrieve all
+   *          attributes.
+   * @return the attributes of the entry, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed, or the entry
+   *           does not exist.
+   */
+  private Attributes lookup( final LdapContext aContext, final String aDN, final String[] aAttributes )
+      throws NamingException
+  {
+    final long start = System.nanoTime();
+
+    final Attributes result;
+    try
+    {
+      result = aContext.getAttributes( aDN, aAttributes );
+    }
+    catch ( NamingException exception )
+    {
+      operationCompleted( LdapOperationType.GET_ATTRIBUTES, start, 0, 0L, exception );
+      throw exception;
+    }
+
+    if ( this.metricsListener != LdapMetricsListener.NONE )
+    {
+      operationCompleted( LdapOperationType.GET_ATTRIBUTES, start, 1, AdaptivePageSize.estimateSize( result ), null );
+    }
+    return result;
+  }
+
+  /**
+   * Reports a completed operation to the metrics listener.
+   *
+   * @param aType
+   *          the type of the operation;
+   * @param aStart
+   *          the start time of the operation, as returned by
+   *          {@link System#nanoTime()};
+   * @param aEntryCount
+   *          the number of returned entries;
+   * @param aByteCount
+   *          the (estimated) number of returned bytes;
+   * @param aError
+   *          the exception the operation failed with, can be <code>null</code>.
+   */
+  private void operationCompleted( final LdapOperationType aType, final long aStart, final int aEntryCount,
+      final long aByteCount, final NamingException aError )
+  {
+    final LdapMetricsListener listener = this.metricsListener;
+    if ( listener != LdapMetricsListener.NONE )
+    {
+      listener.operationCompleted( this.serverURL, aType, System.nanoTime() - aStart, aEntryCount, aByteCount,
+          aError );
+    }
+  }
+
+  /**
+   * Wraps the given LDAP filter in parentheses, if needed.
+   *
+   * @param aFilter
+   *          the LDAP filter to wrap, cannot be <code>null</code>.
+   * @return the parenthesized LDAP filter, never <code>null</code>.
+   */
+  private static String parenthesize( final String aFilter )
+  {
+    final String filter = aFilter.trim();
+    return filter.startsWith( "(" ) ? filter : "(" + filter + ")";
+  }
+
+  /**
+   * Creates a new paged search on an exclusive LDAP context.
+   *
+   * @param aDN
+   *          the distinguished name to search under, cannot be
+   *          <code>null</code>;
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>;
+   * @param aPageSize
+   *          the number of entries to request per page, &gt; 0.
+   * @return a new paged search, never <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  private PagedSearch createPagedSearch( final String aDN, final String aFilter, final LdapSearchControls aControls,
+      final int aPageSize ) throws NamingException
+  {
+    final AdaptivePageSize adaptive = this.adaptivePageSize ? new AdaptivePageSize( aPageSize, this.maxPageSize )
+        : null;
+
+    // Paging cookies are passed as request controls, which should not be
+    // shared with concurrent operations...
+    final LdapContext ctx = getExclusiveContext();
+    if ( aControls.isTypesOnly() )
+    {
+      try
+      {
+        ctx.addToEnvironment( LdapSearchControls.TYPES_ONLY, "true" );
+      }
+      catch ( NamingException exception )
+      {
+        releaseContext( ctx );
+        throw exception;
+      }
+    }
+
+    return new PagedSearch( this, ctx, aDN, aFilter, aControls, aPageSize, adaptive, this.metricsListener,
+        this.serverURL );
+  }
+
+  /**
+   * Creates a factory that creates a paged search once it is needed, using the
+   * current page size of this instance.
+   *
+   * @param aDN
+   *          the distinguished name to search under, cannot be
+   *          <code>null</code>;
+   * @param aFilter
+   *          the LDAP query to execute;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>.
+   * @return a new page source factory, never <code>null</code>.
+   */
+  private SearchPageSourceFactory createPagedSearchFactory( final String aDN, final String aFilter,
+      final LdapSearchControls aControls )
+  {
+    final int size = this.pageSize;
+    return new SearchPageSourceFactory()
+    {
+      @Override
+      public SearchPageSource createPageSource() throws NamingException
+      {
+        return createPagedSearch( aDN, aFilter, aControls, size );
+      }
+    };
+  }
+
+  /**
+   * Returns a LDAP context for the exclusive use of a single operation, which
+   * should be released with {@link #releaseContext(LdapContext)}.
+   * <p>
+   * Without a connection pool, a new context is derived from the shared
+   * context of this object, which has its own request controls, but shares the
+   * underlying connection.
+   * </p>
+   *
+   * @return a LDAP context, never <code>null</code>.
    * @throws NamingException
    *           in case the connection to the LDAP server failed.
    */
-  private Object findAttributeValue( final Attributes aAttributes, final String aAttributeID,
-      final Object aAttributeValue ) throws NamingException
+  private LdapContext getExclusiveContext() throws NamingException
+  {
+    if ( this.contextPool != null )
+    {
+      return this.contextPool.getContext();
+    }
+    return getContext().newInstance( null /* requestControls */);
+  }
+
+  /**
+   * Forgets all information obtained from the current connection to the LDAP
+   * server, as the server might present itself differently on a new
+   * connection (for example, after starting TLS or binding as another user).
+   */
+  private void invalidateConnectionState()
   {
-    return findAttributeValue( aAttributes.get( aAttributeID ), aAttributeValue );
+    this.rootDSE = null;
+    this.baseDNs = null;
   }
 }
@@ -0,0 +1,273 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.io.*;
+import java.util.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+import javax.naming.ldap.*;
+
+
+/**
+ * PagedSearch performs a single LDAP search using the paged results control
+ * (RFC 2696), fetching one page at a time.
+ * <p>
+ * In case the search controls specify a count limit, no more than that number
+ * of entries is requested from the server. Reaching the count limit ends the
+ * search, instead of causing a {@link SizeLimitExceededException}.
+ * </p>
+ */
+final class PagedSearch implements SearchPageSource
+{
+  // VARIABLES
+
+  private final PooledContextProvider contextProvider;
+  private final LdapContext context;
+  private final String dn;
+  private final String filter;
+  private final LdapSearchControls controls;
+  private final int pageSize;
+  private final AdaptivePageSize adaptivePageSize;
+  private final LdapMetricsListener metricsListener;
+  private final String serverURL;
+  private final long started;
+
+  private byte[] cookie;
+  private boolean done;
+  private long received;
+  private long receivedBytes;
+  private NamingException failure;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new PagedSearch object.
+   * <p>
+   * As the paging state is kept in the request controls of the given context,
+   * it should not be used by any other operation during this search.
+   * </p>
+   *
+   * @param aContextProvider
+   *          the provider of the given LDAP context, used to release it when
+   *          this search is closed, cannot be <code>null</code>;
+   * @param aContext
+   *          the LDAP context to search with, cannot be <code>null</code>;
+   * @param aDN
+   *          the distinguished name to search under, cannot be
+   *          <code>null</code>;
+   * @param aFilter
+   *          the LDAP filter to use;
+   * @param aControls
+   *          the search controls to use, cannot be <code>null</code>. In case
+   *          these denote a "typesOnly" search, this should already be set in
+   *          the environment of the given context;
+   * @param aPageSize
+   *          the number of entries to request per page, &gt; 0;
+   * @param aAdaptivePageSize
+   *          the adaptive page size to use instead of the fixed page size, can
+   *          be <code>null</code> to always use the fixed page size;
+   * @param aMetricsListener
+   *          the listener to report each page and the search as a whole to,
+   *          cannot be <code>null</code>;
+   * @param aServerURL
+   *          the URL of the LDAP server, as reported to the metrics listener.
+   */
+  PagedSearch( final PooledContextProvider aContextProvider, final LdapContext aContext, final String aDN,
+      final String aFilter, final LdapSearchControls aControls, final int aPageSize,
+      final AdaptivePageSize aAdaptivePageSize, final LdapMetricsListener aMetricsListener, final String aServerURL )
+  {
+    this.contextProvider = aContextProvider;
+    this.context = aContext;
+    this.dn = aDN;
+    this.filter = aFilter;
+    this.controls = aControls;
+    this.pageSize = aPageSize;
+    this.adaptivePageSize = aAdaptivePageSize;
+    this.metricsListener = aMetricsListener;
+    this.serverURL = aServerURL;
+    this.started = System.nanoTime();
+  }
+
+  // METHODS
+
+  /**
+   * Stops this search, telling the server to release its resources in case not
+   * all pages are retrieved yet.
+   *
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  @Override
+  public void close() throws NamingException
+  {
+    if ( this.metricsListener != LdapMetricsListener.NONE )
+    {
+      this.metricsListener.operationCompleted( this.serverURL, LdapOperationType.SEARCH, System.nanoTime()
+          - this.started, ( int )Math.min( Integer.MAX_VALUE, this.received ), this.receivedBytes, this.failure );
+    }
+
+    try
+    {
+      if ( ( this.cookie != null ) && ( this.cookie.length > 0 ) )
+      {
+        // The server has more pages for us, which we no longer want; a page
+        // size of zero abandons the paged search, see RFC 2696...
+        this.context.setRequestControls( new Control[] { createControl( 0 ) } );
+        this.context.search( this.dn, this.filter, this.controls ).close();
+      }
+    }
+    finally
+    {
+      this.done = true;
+      this.cookie = null;
+      try
+      {
+        this.context.setRequestControls( null );
+        if ( this.controls.isTypesOnly() )
+        {
+          this.context.removeFromEnvironment( LdapSearchControls.TYPES_ONLY );
+        }
+      }
+      finally
+      {
+        this.contextProvider.releaseContext( this.context );
+      }
+    }
+  }
+
+  /**
+   * Fetches the next page of search results from the LDAP server.
+   *
+   * @return the next page of search results (possibly empty), or
+   *         <code>null</code> in case all pages are retrieved.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  @Override
+  public List<SearchResult> nextPage() throws NamingException
+  {
+    if ( this.done )
+    {
+      return null;
+    }
+
+    int requested = ( this.adaptivePageSize == null ) ? this.pageSize : this.adaptivePageSize.getPageSize();
+
+    final long countLimit = this.controls.getCountLimit();
+    if ( countLimit > 0L )
+    {
+      requested = ( int )Math.min( requested, countLimit - this.received );
+    }
+
+    final long start = System.nanoTime();
+
+    final List<SearchResult> page = new ArrayList<SearchResult>( requested );
+
+    try
+    {
+      this.context.setRequestControls( new Control[] { createControl( requested ) } );
+
+      boolean limitExceeded = false;
+
+      final NamingEnumeration<SearchResult> results = this.context.search( this.dn, this.filter, this.controls );
+      try
+      {
+        while ( ( results != null ) && results.hasMore() )
+        {
+          page.add( results.next() );
+        }
+      }
+      catch ( SizeLimitExceededException exception )
+      {
+        if ( ( countLimit <= 0L ) || ( ( this.received + page.size() ) < countLimit ) )
+        {
+          // The server stopped the search due to a limit of its own, which
+          // truncates the results...
+          throw exception;
+        }
+        // The server stopped the search due to our count limit...
+        limitExceeded = true;
+      }
+      finally
+      {
+        if ( results != null )
+        {
+          results.close();
+        }
+      }
+
+      this.received += page.size();
+
+      if ( limitExceeded )
+      {
+        this.cookie = null;
+        this.done = true;
+      }
+      else
+      {
+        this.cookie = LibLdap.parseControls( this.context.getResponseControls() );
+        this.done = ( this.cookie.length == 0 ) || ( ( countLimit > 0L ) && ( this.received >= countLimit ) );
+      }
+    }
+    catch ( NamingException exception )
+    {
+      this.failure = exception;
+      this.metricsListener.operationCompleted( this.serverURL, LdapOperationType.SEARCH_PAGE, System.nanoTime()
+          - start, page.size(), 0L, exception );
+      throw exception;
+    }
+
+    final long latency = System.nanoTime() - start;
+
+    if ( ( this.adaptivePageSize != null ) || ( this.metricsListener != LdapMetricsListener.NONE ) )
+    {
+      long size = 0L;
+      for ( SearchResult result : page )
+      {
+        size += AdaptivePageSize.estimateSize( result );
+      }
+      this.receivedBytes += size;
+
+      if ( this.adaptivePageSize != null )
+      {
+        this.adaptivePageSize.pageReceived( requested, page.size(), latency, size, !this.done );
+      }
+      this.metricsListener.operationCompleted( this.serverURL, LdapOperationType.SEARCH_PAGE, latency, page.size(),
+          size, null );
+    }
+
+    return page;
+  }
+
+  /**
+   * Creates the paged results control for the next request, passing the cookie
+   * of the previous response (if any) back to the server.
+   *
+   * @param aPageSize
+   *          the page size to request.
+   * @return a new paged results control, never <code>null</code>.
+   * @throws RuntimeException
+   *           in case the control could not be created.
+   */
+  private PagedResultsControl createControl( final int aPageSize )
+  {
+    try
+    {
+      if ( this.cookie == null )
+      {
+        return new PagedResultsControl( aPageSize, Control.CRITICAL );
+      }
+      return new PagedResultsControl( aPageSize, this.cookie, Control.CRITICAL );
+    }
+    catch ( IOException exception )
+    {
+      throw new RuntimeException( "Unexpected I/O exception!", exception );
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import javax.naming.*;
+import javax.naming.ldap.*;
+
+
+/**
+ * Provides LDAP contexts that should be handed back once they are no longer
+ * needed, allowing them to be shared (for example, by pooling them).
+ * <p>
+ * Code that obtains a context from a {@link LdapContextProvider} should check
+ * whether it implements this interface, and if so, release the context with
+ * {@link #releaseContext(LdapContext)} when done with it.
+ * </p>
+ */
+public interface PooledContextProvider extends LdapContextProvider
+{
+  // METHODS
+
+  /**
+   * Returns whether this provider hands out a different context (and
+   * connection) for each call to {@link #getContext()}.
+   * <p>
+   * State tied to a single connection, like TLS started by the StartTLS
+   * extension, does not apply to all contexts of a pooled provider.
+   * </p>
+   *
+   * @return <code>true</code> if the contexts of this provider are pooled,
+   *         <code>false</code> otherwise.
+   */
+  public abstract boolean isPooled();
+
+  /**
+   * Releases a LDAP context obtained by {@link #getContext()}.
+   *
+   * @param aContext
+   *          the LDAP context to release, cannot be <code>null</code>.
+   * @throws NamingException
+   *           in case releasing the context failed.
+   */
+  public abstract void releaseContext( LdapContext aContext ) throws NamingException;
+}
@@ -0,0 +1,370 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+
+
+/**
+ * ReadAheadPageSource obtains the pages of one or more other page sources on
+ * background threads, keeping up to a given number of pages ahead of its
+ * consumer.
+ * <p>
+ * This allows the LDAP server to produce the next page(s) while the current
+ * page is being processed. In case multiple page sources are given, they are
+ * read concurrently by a given number of threads, and their pages are merged
+ * in the order in which they arrive.
+ * </p>
+ * <p>
+ * The pages are read by tasks of an executor that is shared by all instances.
+ * A task stops reading, and closes its page source, as soon as this source is
+ * closed, or its consumer did not take a page for {@link #CONSUMER_TIMEOUT}
+ * nanoseconds, so an abandoned cursor cannot hold on to its LDAP context.
+ * </p>
+ */
+final class ReadAheadPageSource implements SearchPageSource, Runnable
+{
+  // CONSTANTS
+
+  /** marks the end of all pages, compared by identity. */
+  private static final List<SearchResult> END_OF_PAGES = new ArrayList<SearchResult>( 0 );
+
+  /** the time after which a consumer that takes no pages is considered gone, in nanoseconds. */
+  static final long CONSUMER_TIMEOUT = TimeUnit.MINUTES.toNanos( 5L );
+
+  /** the interval in which blocked producers check whether they should stop. */
+  private static final long OFFER_INTERVAL = 100L;
+
+  /** the maximum time to wait for the producers to stop when closing. */
+  private static final long CLOSE_TIMEOUT = 5L;
+
+  /** the time after which idle threads of the shared executor are stopped. */
+  private static final long THREAD_KEEP_ALIVE = 60L;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  // INNER TYPES
+
+  /**
+   * Creates the daemon threads for the shared executor.
+   */
+  private static final class DaemonThreadFactory implements ThreadFactory
+  {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread( final Runnable aRunnable )
+    {
+      final Thread result = new Thread( aRunnable, "LibLdap-ReadAhead-" + THREAD_COUNTER.incrementAndGet() );
+      result.setDaemon( true );
+      return result;
+    }
+  }
+
+  /**
+   * Runs the producers of all instances; each producer gets a thread of its
+   * own right away, as a queued producer would stall its consumer.
+   */
+  private static final ExecutorService PRODUCERS = new ThreadPoolExecutor( 0, Integer.MAX_VALUE, THREAD_KEEP_ALIVE,
+      TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new DaemonThreadFactory() );
+
+  // VARIABLES
+
+  private final Queue<SearchPageSourceFactory> pending;
+  private final BlockingQueue<List<SearchResult>> pages;
+  private final CountDownLatch stopped;
+  private final AtomicInteger running;
+  private final AtomicReference<Exception> failure;
+  private final long countLimit;
+
+  private volatile boolean closed;
+  private volatile long lastTaken;
+  private boolean exhausted;
+  private long returned;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ReadAheadPageSource object and directly starts reading pages
+   * from the given source.
+   *
+   * @param aSource
+   *          the page source to read ahead, cannot be <code>null</code>;
+   * @param aDepth
+   *          the maximum number of pages to read ahead, &gt; 0.
+   */
+  ReadAheadPageSource( final SearchPageSource aSource, final int aDepth )
+  {
+    this( Collections.<SearchPageSourceFactory> singletonList( new SearchPageSourceFactory()
+    {
+      @Override
+      public SearchPageSource createPageSource()
+      {
+        return aSource;
+      }
+    } ), aDepth, 1, 0L );
+  }
+
+  /**
+   * Creates a new ReadAheadPageSource object and directly starts reading pages
+   * from the page sources created by the given factories.
+   *
+   * @param aFactories
+   *          the factories of the page sources to read, cannot be
+   *          <code>null</code>;
+   * @param aDepth
+   *          the maximum number of pages to read ahead, &gt; 0;
+   * @param aParallelism
+   *          the maximum number of page sources to read concurrently, &gt; 0;
+   * @param aCountLimit
+   *          the maximum number of search results to return in total, or 0 to
+   *          return all search results.
+   */
+  ReadAheadPageSource( final Collection<SearchPageSourceFactory> aFactories, final int aDepth,
+      final int aParallelism, final long aCountLimit )
+  {
+    this.pending = new ConcurrentLinkedQueue<SearchPageSourceFactory>( aFactories );
+    this.pages = new LinkedBlockingQueue<List<SearchResult>>( aDepth );
+    this.failure = new AtomicReference<Exception>();
+    this.countLimit = aCountLimit;
+    this.lastTaken = System.nanoTime();
+
+    final int count = Math.max( 1, Math.min( aParallelism, aFactories.size() ) );
+
+    this.running = new AtomicInteger( count );
+    this.stopped = new CountDownLatch( count );
+    for ( int i = 0; i < count; i++ )
+    {
+      PRODUCERS.execute( this );
+    }
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws NamingException
+  {
+    if ( this.closed )
+    {
+      return;
+    }
+    this.closed = true;
+    this.pages.clear();
+
+    try
+    {
+      // Wait until the producers have closed the underlying sources; one that
+      // is still waiting for the LDAP server closes its source once the
+      // server responds...
+      this.stopped.await( CLOSE_TIMEOUT, TimeUnit.SECONDS );
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<SearchResult> nextPage() throws NamingException
+  {
+    if ( this.closed || this.exhausted )
+    {
+      return null;
+    }
+
+    List<SearchResult> page;
+    try
+    {
+      this.lastTaken = System.nanoTime();
+      page = this.pages.take();
+      this.lastTaken = System.nanoTime();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+
+      final InterruptedNamingException ne = new InterruptedNamingException( "Interrupted while waiting for page!" );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+
+    if ( page != END_OF_PAGES )
+    {
+      if ( this.countLimit > 0L )
+      {
+        final long remaining = this.countLimit - this.returned;
+        if ( page.size() >= remaining )
+        {
+          page = new ArrayList<SearchResult>( page.subList( 0, ( int )remaining ) );
+          this.exhausted = true;
+        }
+        this.returned += page.size();
+      }
+      return page;
+    }
+    this.exhausted = true;
+
+    final Exception error = this.failure.get();
+    if ( error instanceof NamingException )
+    {
+      throw ( NamingException )error;
+    }
+    else if ( error instanceof RuntimeException )
+    {
+      throw ( RuntimeException )error;
+    }
+    return null;
+  }
+
+  /**
+   * Reads all pages from the pending page sources until either all pages are
+   * read, one of the sources failed, this source is closed, or its consumer is
+   * gone.
+   */
+  @Override
+  public void run()
+  {
+    try
+    {
+      SearchPageSourceFactory factory;
+      while ( isProducing() && ( ( factory = this.pending.poll() ) != null ) )
+      {
+        readAll( factory.createPageSource() );
+      }
+    }
+    catch ( InterruptedException exception )
+    {
+      // Nothing interrupts the producers, so make sure this is noticed...
+      this.failure.compareAndSet( null, new InterruptedNamingException( "Interrupted while reading ahead!" ) );
+    }
+    catch ( NamingException exception )
+    {
+      this.failure.compareAndSet( null, exception );
+    }
+    catch ( RuntimeException exception )
+    {
+      this.failure.compareAndSet( null, exception );
+    }
+    finally
+    {
+      Thread.interrupted();
+
+      try
+      {
+        if ( ( this.running.decrementAndGet() == 0 ) && !offer( END_OF_PAGES ) && !this.closed )
+        {
+          // The consumer is gone; make sure it sees the failure in case it
+          // ever returns...
+          this.pages.clear();
+          this.pages.offer( END_OF_PAGES );
+        }
+      }
+      catch ( InterruptedException exception )
+      {
+        // Already stopping...
+      }
+      finally
+      {
+        this.stopped.countDown();
+      }
+    }
+  }
+
+  /**
+   * Offers the given page to the consumer, waiting until there is room for it,
+   * this source is closed, or the consumer is considered gone.
+   *
+   * @param aPage
+   *          the page to offer, cannot be <code>null</code>.
+   * @return <code>true</code> if the page was offered, <code>false</code> if
+   *         the page should no longer be produced.
+   * @throws InterruptedException
+   *           in case the calling thread was interrupted.
+   */
+  private boolean offer( final List<SearchResult> aPage ) throws InterruptedException
+  {
+    while ( !this.pages.offer( aPage, OFFER_INTERVAL, TimeUnit.MILLISECONDS ) )
+    {
+      if ( this.closed )
+      {
+        return false;
+      }
+      if ( ( System.nanoTime() - this.lastTaken ) > CONSUMER_TIMEOUT )
+      {
+        this.failure.compareAndSet( null, new NamingException( "Read-ahead stopped: no page was taken for "
+            + TimeUnit.NANOSECONDS.toSeconds( CONSUMER_TIMEOUT ) + " seconds!" ) );
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return <code>true</code> if pages should still be produced,
+   *         <code>false</code> otherwise.
+   */
+  private boolean isProducing()
+  {
+    return !this.closed && ( this.failure.get() == null );
+  }
+
+  /**
+   * Reads all pages of the given source, and closes it afterwards.
+   *
+   * @param aSource
+   *          the page source to read, cannot be <code>null</code>.
+   * @throws InterruptedException
+   *           in case the calling thread was interrupted;
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  private void readAll( final SearchPageSource aSource ) throws InterruptedException, NamingException
+  {
+    try
+    {
+      List<SearchResult> page;
+      while ( isProducing() && ( ( page = aSource.nextPage() ) != null ) )
+      {
+        if ( !offer( page ) )
+        {
+          break;
+        }
+      }
+    }
+    finally
+    {
+      // Make sure closing the source isn't hindered by a pending interrupt...
+      final boolean interrupted = Thread.interrupted();
+
+      try
+      {
+        aSource.close();
+      }
+      catch ( NamingException exception )
+      {
+        this.failure.compareAndSet( null, exception );
+      }
+
+      if ( interrupted )
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
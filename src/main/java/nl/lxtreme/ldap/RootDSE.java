@@ -0,0 +1,257 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import javax.naming.*;
+import javax.naming.directory.*;
+
+
+/**
+ * RootDSE provides an immutable snapshot of the root DSE of a LDAP server,
+ * which describes the capabilities of that server.
+ */
+public final class RootDSE implements LdapAttributes
+{
+  // CONSTANTS
+
+  /** all attributes of the root DSE that are kept in a snapshot. */
+  static final String[] ATTRIBUTE_IDS = { ATTR_SUPPORTED_EXTENSION, ATTR_SUPPORTED_CONTROL, ATTR_NAMING_CONTEXT,
+      ATTR_DEFAULT_NAMING_CONTEXT, ATTR_DSA_NAME, ATTR_SUPPORTED_SASL_MECHANISMS };
+
+  // VARIABLES
+
+  private final String[] supportedExtensions;
+  private final String[] supportedControls;
+  private final String[] namingContexts;
+  private final String defaultNamingContext;
+  private final String dsaName;
+  private final String[] supportedSASLMechanisms;
+  private final long created;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new RootDSE object.
+   *
+   * @param aAttributes
+   *          the attributes of the root DSE, as read from the LDAP server,
+   *          cannot be <code>null</code>.
+   * @throws NamingException
+   *           in case the attribute values could not be obtained.
+   */
+  RootDSE( final Attributes aAttributes ) throws NamingException
+  {
+    this.supportedExtensions = getValues( aAttributes, ATTR_SUPPORTED_EXTENSION );
+    this.supportedControls = getValues( aAttributes, ATTR_SUPPORTED_CONTROL );
+    this.namingContexts = getValues( aAttributes, ATTR_NAMING_CONTEXT );
+    this.defaultNamingContext = getValue( aAttributes, ATTR_DEFAULT_NAMING_CONTEXT );
+    this.dsaName = getValue( aAttributes, ATTR_DSA_NAME );
+    this.supportedSASLMechanisms = getValues( aAttributes, ATTR_SUPPORTED_SASL_MECHANISMS );
+    this.created = System.nanoTime();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the first value of a given attribute.
+   *
+   * @param aAttributes
+   *          the attributes to search in;
+   * @param aAttributeID
+   *          the ID of the attribute to return the value for.
+   * @return the first attribute value, or <code>null</code> if the attribute
+   *         has no values.
+   * @throws NamingException
+   *           in case the attribute values could not be obtained.
+   */
+  private static String getValue( final Attributes aAttributes, final String aAttributeID ) throws NamingException
+  {
+    final String[] values = getValues( aAttributes, aAttributeID );
+    return ( values.length > 0 ) ? values[0] : null;
+  }
+
+  /**
+   * Returns all values of a given attribute as strings.
+   *
+   * @param aAttributes
+   *          the attributes to search in;
+   * @param aAttributeID
+   *          the ID of the attribute to return the values for.
+   * @return the attribute values, never <code>null</code>.
+   * @throws NamingException
+   *           in case the attribute values could not be obtained.
+   */
+  private static String[] getValues( final Attributes aAttributes, final String aAttributeID ) throws NamingException
+  {
+    final Attribute attribute = aAttributes.get( aAttributeID );
+    if ( attribute == null )
+    {
+      return new String[0];
+    }
+
+    final String[] result = new String[attribute.size()];
+    for ( int i = 0; i < result.length; i++ )
+    {
+      result[i] = String.valueOf( attribute.get( i ) );
+    }
+    return result;
+  }
+
+  /**
+   * Returns the base DNs of the server.
+   * <p>
+   * The base DNs are determined from (in order of priority):
+   * </p>
+   * <ol>
+   * <li>the naming contexts (OpenLDAP and most other servers);</li>
+   * <li>the DSA name (Novell eDirectory);</li>
+   * <li>the default naming context (Microsoft Active Directory).</li>
+   * </ol>
+   *
+   * @return the base DNs, never <code>null</code>, but can be empty in case
+   *         the server provides none of the above attributes.
+   */
+  public String[] getBaseDNs()
+  {
+    if ( this.namingContexts.length > 0 )
+    {
+      return this.namingContexts.clone();
+    }
+    if ( this.dsaName != null )
+    {
+      return new String[] { this.dsaName };
+    }
+    if ( this.defaultNamingContext != null )
+    {
+      return new String[] { this.defaultNamingContext };
+    }
+    return new String[0];
+  }
+
+  /**
+   * Returns the default naming context, as provided by Active Directory.
+   *
+   * @return the default naming context, or <code>null</code> if not provided
+   *         by the server.
+   */
+  public String getDefaultNamingContext()
+  {
+    return this.defaultNamingContext;
+  }
+
+  /**
+   * Returns the DSA name, as provided by Novell eDirectory.
+   *
+   * @return the DSA name, or <code>null</code> if not provided by the server.
+   */
+  public String getDsaName()
+  {
+    return this.dsaName;
+  }
+
+  /**
+   * Returns the naming contexts held by the server.
+   *
+   * @return the naming contexts, never <code>null</code>.
+   */
+  public String[] getNamingContexts()
+  {
+    return this.namingContexts.clone();
+  }
+
+  /**
+   * Returns the object IDs of the controls supported by the server.
+   *
+   * @return the supported control OIDs, never <code>null</code>.
+   */
+  public String[] getSupportedControls()
+  {
+    return this.supportedControls.clone();
+  }
+
+  /**
+   * Returns the object IDs of the extensions supported by the server.
+   *
+   * @return the supported extension OIDs, never <code>null</code>.
+   */
+  public String[] getSupportedExtensions()
+  {
+    return this.supportedExtensions.clone();
+  }
+
+  /**
+   * Returns the SASL mechanisms supported by the server.
+   *
+   * @return the supported SASL mechanisms, never <code>null</code>.
+   */
+  public String[] getSupportedSASLMechanisms()
+  {
+    return this.supportedSASLMechanisms.clone();
+  }
+
+  /**
+   * Returns whether the server supports the control with the given object ID.
+   *
+   * @param aControlOID
+   *          the object ID of the control to test.
+   * @return <code>true</code> if the control is supported, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isControlSupported( final String aControlOID )
+  {
+    return contains( this.supportedControls, aControlOID );
+  }
+
+  /**
+   * Returns whether the server supports the extension with the given object
+   * ID.
+   *
+   * @param aExtensionOID
+   *          the object ID of the extension to test.
+   * @return <code>true</code> if the extension is supported,
+   *         <code>false</code> otherwise.
+   */
+  public boolean isExtensionSupported( final String aExtensionOID )
+  {
+    return contains( this.supportedExtensions, aExtensionOID );
+  }
+
+  /**
+   * Returns whether this snapshot is older than the given age.
+   *
+   * @param aMaxAge
+   *          the maximum age, in nanoseconds.
+   * @return <code>true</code> if this snapshot is older, <code>false</code>
+   *         otherwise.
+   */
+  boolean isOlderThan( final long aMaxAge )
+  {
+    return ( System.nanoTime() - this.created ) > aMaxAge;
+  }
+
+  /**
+   * Returns whether a given value is contained in an array of values.
+   *
+   * @param aValues
+   *          the values to search in;
+   * @param aValue
+   *          the value to search for.
+   * @return <code>true</code> if the value is found, <code>false</code>
+   *         otherwise.
+   */
+  private boolean contains( final String[] aValues, final String aValue )
+  {
+    for ( String value : aValues )
+    {
+      if ( value.equals( aValue ) )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
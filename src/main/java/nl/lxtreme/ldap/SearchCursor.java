@@ -0,0 +1,142 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+
+
+/**
+ * SearchCursor provides a lazily paged view on the results of a LDAP search.
+ * <p>
+ * A page of search results is only requested from the LDAP server when the
+ * previous page is consumed, so at most one page is kept in memory at any time.
+ * The first page is requested upon the first call to {@link #hasMore()} or
+ * {@link #next()}.
+ * </p>
+ * <p>
+ * A cursor is closed automatically when all results are consumed. Cursors that
+ * are not fully consumed should be closed explicitly, as the LDAP server keeps
+ * state for unfinished paged searches.
+ * </p>
+ */
+public final class SearchCursor implements NamingEnumeration<SearchResult>
+{
+  // VARIABLES
+
+  private final SearchPageSource source;
+
+  private Iterator<SearchResult> page;
+  private boolean closed;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new SearchCursor object.
+   *
+   * @param aSource
+   *          the source to obtain the pages from, cannot be <code>null</code>.
+   */
+  SearchCursor( final SearchPageSource aSource )
+  {
+    this.source = aSource;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws NamingException
+  {
+    if ( !this.closed )
+    {
+      this.closed = true;
+      this.page = null;
+
+      this.source.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean hasMore() throws NamingException
+  {
+    while ( ( this.page == null ) || !this.page.hasNext() )
+    {
+      if ( this.closed )
+      {
+        return false;
+      }
+
+      final List<SearchResult> nextPage = this.source.nextPage();
+      if ( nextPage == null )
+      {
+        close();
+        return false;
+      }
+      this.page = nextPage.iterator();
+    }
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws RuntimeException
+   *           in case the next page could not be obtained from the LDAP server.
+   */
+  @Override
+  public boolean hasMoreElements()
+  {
+    try
+    {
+      return hasMore();
+    }
+    catch ( NamingException exception )
+    {
+      throw new RuntimeException( "Failed to obtain search results!", exception );
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SearchResult next() throws NamingException
+  {
+    if ( !hasMore() )
+    {
+      throw new NoSuchElementException();
+    }
+    return this.page.next();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws RuntimeException
+   *           in case the next page could not be obtained from the LDAP server.
+   */
+  @Override
+  public SearchResult nextElement()
+  {
+    try
+    {
+      return next();
+    }
+    catch ( NamingException exception )
+    {
+      throw new RuntimeException( "Failed to obtain search results!", exception );
+    }
+  }
+}
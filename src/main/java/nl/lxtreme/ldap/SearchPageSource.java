@@ -0,0 +1,39 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import java.util.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+
+
+/**
+ * Provides pages of search results to a {@link SearchCursor}.
+ */
+interface SearchPageSource
+{
+  // METHODS
+
+  /**
+   * Stops obtaining pages from this source, releasing all of its resources.
+   *
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  void close() throws NamingException;
+
+  /**
+   * Returns the next page of search results.
+   *
+   * @return the next page of search results (possibly empty), or
+   *         <code>null</code> in case all pages are retrieved.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  List<SearchResult> nextPage() throws NamingException;
+}
@@ -0,0 +1,29 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import javax.naming.*;
+
+
+/**
+ * Creates a {@link SearchPageSource} at the moment it is actually needed, so no
+ * LDAP context is held before its pages are requested.
+ */
+interface SearchPageSourceFactory
+{
+  // METHODS
+
+  /**
+   * Creates a new page source.
+   *
+   * @return a new page source, never <code>null</code>. The caller is
+   *         responsible for closing it.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  SearchPageSource createPageSource() throws NamingException;
+}
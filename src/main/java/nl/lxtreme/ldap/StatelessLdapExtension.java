@@ -0,0 +1,21 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+/**
+ * Marks a LDAPv3 extension that keeps no state between calls, and is
+ * thread-safe.
+ * <p>
+ * Instances of such extensions are shared by all callers of
+ * {@link LibLdap#getExtension(String)} on the same {@link LibLdap}; all other
+ * extensions, like StartTLS, are created anew for each call.
+ * </p>
+ */
+public interface StatelessLdapExtension extends LdapExtension
+{
+  // No methods
+}
@@ -63,12 +63,20 @@ public interface IStartTLS extends LdapExtension
    * <em>must</em> reconnect to the LDAP server to make the authenticated user
    * known for this session.
    * </p>
+   * <p>
+   * TLS is started on a single connection, so this cannot be used with pooled
+   * contexts; use {@link LdapContextPool#setStartTLS(boolean)} instead, which
+   * starts TLS on each pooled connection before binding it.
+   * </p>
    *
    * @throws NamingException
    *           in case the connection to the LDAP server failed;
    * @throws IOException
    *           in case of I/O (network) problems during the closing of the TLS
-   *           connection.
+   *           connection;
+   * @throws IllegalStateException
+   *           in case the LDAP contexts are obtained from a pooled
+   *           {@link PooledContextProvider}, like a {@link LdapContextPool}.
    */
-  public abstract void startTLS() throws NamingException, IOException;
+  public abstract void startTLS() throws NamingException, IOException, IllegalStateException;
 }
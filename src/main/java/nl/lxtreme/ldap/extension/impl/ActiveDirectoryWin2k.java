@@ -13,7 +13,7 @@ import nl.lxtreme.ldap.extension.*;
 /**
  * Denotes the active directory extension used for Windows 2K and up.
  */
-public class ActiveDirectoryWin2k extends BaseExtension implements IActiveDirectoryWin2k
+public class ActiveDirectoryWin2k extends BaseExtension implements IActiveDirectoryWin2k, StatelessLdapExtension
 {
   // CONSTRUCTORS
 
@@ -13,7 +13,7 @@ import nl.lxtreme.ldap.extension.*;
 /**
  * Denotes the active directory extension used for Windows 2K3 and up.
  */
-public class ActiveDirectoryWin2k3 extends BaseExtension implements IActiveDirectoryWin2k3
+public class ActiveDirectoryWin2k3 extends BaseExtension implements IActiveDirectoryWin2k3, StatelessLdapExtension
 {
   // CONSTRUCTORS
 
@@ -20,6 +20,7 @@ abstract class BaseExtension implements LdapExtension
   // VARIABLES
 
   private final LdapContextProvider ldapContextProvider;
+  private final LibLdap ldap;
 
   // CONSTRUCTORS
 
@@ -32,12 +33,31 @@ abstract class BaseExtension implements LdapExtension
    *           in case the given provider was <code>null</code>.
    */
   public BaseExtension( final LdapContextProvider aLdapContextProvider )
+  {
+    this( aLdapContextProvider, ( aLdapContextProvider instanceof LibLdap ) ? ( LibLdap )aLdapContextProvider
+        : null );
+  }
+
+  /**
+   * Creates a new BaseExtension object that reports its operations to the
+   * given library.
+   *
+   * @param aLdapContextProvider
+   *          the LDAP context provider, cannot be <code>null</code>;
+   * @param aLdap
+   *          the library whose metrics listener is told about the operations of
+   *          this extension, can be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given provider was <code>null</code>.
+   */
+  protected BaseExtension( final LdapContextProvider aLdapContextProvider, final LibLdap aLdap )
   {
     if ( aLdapContextProvider == null )
     {
       throw new IllegalArgumentException( "LDAP context provider cannot be null!" );
     }
     this.ldapContextProvider = aLdapContextProvider;
+    this.ldap = aLdap;
   }
 
   // METHODS
@@ -54,6 +74,16 @@ abstract class BaseExtension implements LdapExtension
     return this.ldapContextProvider.getContext();
   }
 
+  /**
+   * Returns the LDAP context provider of this extension.
+   *
+   * @return the LDAP context provider, never <code>null</code>.
+   */
+  protected final LdapContextProvider getContextProvider()
+  {
+    return this.ldapContextProvider;
+  }
+
   /**
    * Convenience method to perform an LDAPv3 "extended operation".
    *
@@ -67,6 +97,71 @@ abstract class BaseExtension implements LdapExtension
    */
   protected final ExtendedResponse extendedOperation( final ExtendedRequest aExtendedRequest ) throws NamingException
   {
-    return getContext().extendedOperation( aExtendedRequest );
+    final LdapContext ctx = getContext();
+    final long start = System.nanoTime();
+
+    final ExtendedResponse response;
+    try
+    {
+      response = ctx.extendedOperation( aExtendedRequest );
+    }
+    catch ( NamingException exception )
+    {
+      operationCompleted( start, 0L, exception );
+      throw exception;
+    }
+    finally
+    {
+      releaseContext( ctx );
+    }
+
+    final byte[] requestValue = aExtendedRequest.getEncodedValue();
+    final byte[] responseValue = ( response == null ) ? null : response.getEncodedValue();
+    operationCompleted( start, ( ( requestValue == null ) ? 0L : requestValue.length )
+        + ( ( responseValue == null ) ? 0L : responseValue.length ), null );
+
+    return response;
+  }
+
+  /**
+   * Reports a completed extended operation to the metrics listener of the
+   * {@link LibLdap} this extension belongs to, if any.
+   *
+   * @param aStart
+   *          the start time of the operation, as returned by
+   *          {@link System#nanoTime()};
+   * @param aByteCount
+   *          the number of bytes of the encoded request and response values;
+   * @param aError
+   *          the exception the operation failed with, can be <code>null</code>.
+   */
+  private void operationCompleted( final long aStart, final long aByteCount, final NamingException aError )
+  {
+    if ( this.ldap != null )
+    {
+      final LdapMetricsListener listener = this.ldap.getMetricsListener();
+      if ( listener != LdapMetricsListener.NONE )
+      {
+        listener.operationCompleted( this.ldap.getServerURL(), LdapOperationType.EXTENDED, System.nanoTime()
+            - aStart, 0, aByteCount, aError );
+      }
+    }
+  }
+
+  /**
+   * Releases a LDAP context obtained by {@link #getContext()}, in case the
+   * context provider of this extension is a {@link PooledContextProvider}.
+   *
+   * @param aContext
+   *          the LDAP context to release, cannot be <code>null</code>.
+   * @throws NamingException
+   *           in case releasing the context failed.
+   */
+  protected final void releaseContext( final LdapContext aContext ) throws NamingException
+  {
+    if ( this.ldapContextProvider instanceof PooledContextProvider )
+    {
+      ( ( PooledContextProvider )this.ldapContextProvider ).releaseContext( aContext );
+    }
   }
 }
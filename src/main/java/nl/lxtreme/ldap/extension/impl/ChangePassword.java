@@ -22,7 +22,7 @@ import nl.lxtreme.ldap.extension.impl.encoding.*;
  * This class is based on code found on <a href="d-dt.de/ldap">this site</a>.
  * </p>
  */
-public final class ChangePassword extends BaseExtension implements IChangePassword
+public final class ChangePassword extends BaseExtension implements IChangePassword, StatelessLdapExtension
 {
   // CONSTANTS
 
@@ -106,10 +106,9 @@ public final class ChangePassword extends BaseExtension implements IChangePasswo
      */
     public ChangePasswordRequest( final String aUserDN, final String aCurPasswd, final String aNewPasswd )
     {
+      final BerEncoder encoder = BerEncoder.acquire();
       try
       {
-        final BerEncoder encoder = new BerEncoder();
-
         if ( aUserDN != null )
         {
           encoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR ); // = 0x30;
@@ -135,6 +134,11 @@ public final class ChangePassword extends BaseExtension implements IChangePasswo
       {
         throw new IllegalStateException( "BER encoding error: " + exception.getMessage() );
       }
+      finally
+      {
+        // Do not keep the passwords in the encoder of this thread...
+        encoder.reset();
+      }
     }
 
     /**
@@ -221,6 +225,21 @@ public final class ChangePassword extends BaseExtension implements IChangePasswo
     super( aContextProvider );
   }
 
+  /**
+   * Creates a new ChangePassword object that reports its operations to the
+   * given library.
+   *
+   * @param aContextProvider
+   *          the LDAP context provider to use;
+   * @param aLdap
+   *          the library whose metrics listener is told about the operations,
+   *          can be <code>null</code>.
+   */
+  public ChangePassword( final LdapContextProvider aContextProvider, final LibLdap aLdap )
+  {
+    super( aContextProvider, aLdap );
+  }
+
   // METHODS
 
   /**
@@ -0,0 +1,74 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.extension.impl;
+
+
+import javax.naming.*;
+import javax.naming.ldap.*;
+
+import nl.lxtreme.ldap.*;
+
+
+/**
+ * ExtendedOperation performs an arbitrary, caller supplied, LDAPv3 extended
+ * request, for which no dedicated extension exists.
+ */
+public class ExtendedOperation extends BaseExtension
+{
+  // VARIABLES
+
+  private final ExtendedRequest request;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ExtendedOperation object.
+   *
+   * @param aContextProvider
+   *          the LDAP context provider to use, cannot be <code>null</code>;
+   * @param aLdap
+   *          the library whose metrics listener is told about the operation,
+   *          can be <code>null</code>;
+   * @param aRequest
+   *          the extended request to perform, cannot be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given provider or request was <code>null</code>.
+   */
+  public ExtendedOperation( final LdapContextProvider aContextProvider, final LibLdap aLdap,
+      final ExtendedRequest aRequest ) throws IllegalArgumentException
+  {
+    super( aContextProvider, aLdap );
+    if ( aRequest == null )
+    {
+      throw new IllegalArgumentException( "Extended request cannot be null!" );
+    }
+    this.request = aRequest;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getOID()
+  {
+    return this.request.getID();
+  }
+
+  /**
+   * Performs the extended request on the LDAP server.
+   *
+   * @return the extended response (created by the extended request), may be
+   *         <code>null</code>.
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed.
+   */
+  public ExtendedResponse perform() throws NamingException
+  {
+    return extendedOperation( this.request );
+  }
+}
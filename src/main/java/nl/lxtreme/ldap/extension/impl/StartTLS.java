@@ -26,6 +26,7 @@ public class StartTLS extends BaseExtension implements IStartTLS
 
   private HostnameVerifier hostNameVerifier;
   private StartTlsResponse tlsResponse;
+  private LdapContext tlsContext;
 
   // CONSTRUCTORS
 
@@ -64,6 +65,10 @@ public class StartTLS extends BaseExtension implements IStartTLS
       // Make sure the start-TLS response is cleared; next time we either get
       // a illegal state exception, or simply re-create it...
       this.tlsResponse = null;
+
+      final LdapContext ctx = this.tlsContext;
+      this.tlsContext = null;
+      releaseContext( ctx );
     }
   }
 
@@ -89,7 +94,7 @@ public class StartTLS extends BaseExtension implements IStartTLS
    * {@inheritDoc}
    */
   @Override
-  public void startTLS() throws NamingException, IOException
+  public void startTLS() throws NamingException, IOException, IllegalStateException
   {
     final StartTlsResponse response = getTlsResponse();
     response.negotiate();
@@ -97,16 +102,46 @@ public class StartTLS extends BaseExtension implements IStartTLS
 
   /**
    * Returns the start-TLS response, lazy creating the request if necessary.
+   * <p>
+   * As TLS is negotiated for a single connection, the context used for this is
+   * kept until the TLS connection is closed.
+   * </p>
    *
    * @return a start-TLS response, never <code>null</code>.
    * @throws NamingException
-   *           in case of connection problems.
+   *           in case of connection problems;
+   * @throws IllegalStateException
+   *           in case the context provider is pooled.
    */
-  private StartTlsResponse getTlsResponse() throws NamingException
+  private StartTlsResponse getTlsResponse() throws NamingException, IllegalStateException
   {
     if ( this.tlsResponse == null )
     {
-      this.tlsResponse = ( StartTlsResponse )extendedOperation( new StartTlsRequest() );
+      if ( isPooled() )
+      {
+        // Only the checked-out connection would be secured, while all others
+        // would silently remain in cleartext...
+        throw new IllegalStateException( "Cannot start TLS on a pooled LDAP context provider: "
+            + "use LdapContextPool#setStartTLS instead!" );
+      }
+
+      final LdapContext ctx = getContext();
+      try
+      {
+        this.tlsResponse = ( StartTlsResponse )ctx.extendedOperation( new StartTlsRequest() );
+      }
+      catch ( NamingException exception )
+      {
+        releaseContext( ctx );
+        throw exception;
+      }
+      catch ( RuntimeException exception )
+      {
+        releaseContext( ctx );
+        throw exception;
+      }
+      this.tlsContext = ctx;
+
       if ( this.hostNameVerifier != null )
       {
         this.tlsResponse.setHostnameVerifier( this.hostNameVerifier );
@@ -114,4 +149,17 @@ public class StartTLS extends BaseExtension implements IStartTLS
     }
     return this.tlsResponse;
   }
+
+  /**
+   * Returns whether the context provider of this extension hands out pooled
+   * contexts.
+   *
+   * @return <code>true</code> if the context provider is pooled,
+   *         <code>false</code> otherwise.
+   */
+  private boolean isPooled()
+  {
+    final LdapContextProvider provider = getContextProvider();
+    return ( provider instanceof PooledContextProvider ) && ( ( PooledContextProvider )provider ).isPooled();
+  }
 }
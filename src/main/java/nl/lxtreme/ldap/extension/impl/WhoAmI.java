@@ -16,7 +16,7 @@ import nl.lxtreme.ldap.extension.*;
 /**
  * WhoAmI performs a simple "who am I" query on the LDAP server.
  */
-public class WhoAmI extends BaseExtension implements IWhoAmI
+public class WhoAmI extends BaseExtension implements IWhoAmI, StatelessLdapExtension
 {
   // INNER TYPES
 
@@ -50,7 +50,7 @@ public interface Ber
      * @param aMsg
      *          the message.
      */
-    DecodeException( final String aMsg )
+    public DecodeException( final String aMsg )
     {
       super( aMsg );
     }
@@ -69,7 +69,7 @@ public interface Ber
      * @param aMsg
      *          the message.
      */
-    EncodeException( final String aMsg )
+    public EncodeException( final String aMsg )
     {
       super( aMsg );
     }
@@ -0,0 +1,570 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.extension.impl.encoding;
+
+
+import java.nio.*;
+import java.nio.charset.*;
+
+
+/**
+ * BerBufferDecoder is a BER-value decoder (used in ASN.1) that works directly
+ * on a {@link ByteBuffer}, which can be heap, direct or memory-mapped buffer.
+ * <p>
+ * In contrast to {@link BerDecoder}, octet strings need not be copied: they can
+ * be obtained as slice of the underlying buffer, or as a handle denoting their
+ * offset and length in the underlying buffer. Strings are decoded directly from
+ * the underlying buffer.
+ * </p>
+ * <p>
+ * The position and limit of the given buffer are never changed by this
+ * decoder; all offsets are absolute indices in the given buffer.
+ * </p>
+ */
+public final class BerBufferDecoder implements Ber
+{
+  // CONSTANTS
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+  private static final Charset ISO_8859_1 = Charset.forName( "ISO-8859-1" );
+
+  // VARIABLES
+
+  private final ByteBuffer buf;
+  private final int bufsize;
+  private int offset;
+
+  private final int origOffset; // The start point in buf to decode
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a BER decoder that reads the remaining bytes of the given buffer,
+   * that is, from its current position up to its limit.
+   *
+   * @param aBuf
+   *          the buffer to decode, cannot be <code>null</code>.
+   */
+  public BerBufferDecoder( final ByteBuffer aBuf )
+  {
+    this( aBuf, aBuf.position(), aBuf.limit() );
+  }
+
+  /**
+   * Creates a BER decoder that reads bytes from the given buffer.
+   *
+   * @param aBuf
+   *          the buffer to decode, cannot be <code>null</code>;
+   * @param aOffset
+   *          the (absolute) offset in the buffer to start decoding;
+   * @param aBufSize
+   *          the (absolute) offset in the buffer to stop decoding.
+   */
+  public BerBufferDecoder( final ByteBuffer aBuf, final int aOffset, final int aBufSize )
+  {
+    if ( ( aOffset < 0 ) || ( aBufSize > aBuf.limit() ) || ( aOffset > aBufSize ) )
+    {
+      throw new IndexOutOfBoundsException( "Invalid offset or size!" );
+    }
+    this.buf = aBuf;
+    this.bufsize = aBufSize;
+    this.origOffset = aOffset;
+
+    reset();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the length of the given octet string handle.
+   *
+   * @param aHandle
+   *          the handle, as returned by {@link #parseOctetStringHandle(int)}.
+   * @return the length of the octet string, &gt;= 0.
+   */
+  public static int getHandleLength( final long aHandle )
+  {
+    return ( int )aHandle;
+  }
+
+  /**
+   * Returns the (absolute) offset of the given octet string handle.
+   *
+   * @param aHandle
+   *          the handle, as returned by {@link #parseOctetStringHandle(int)}.
+   * @return the offset of the octet string in the underlying buffer, &gt;= 0.
+   */
+  public static int getHandleOffset( final long aHandle )
+  {
+    return ( int )( aHandle >>> 32 );
+  }
+
+  /**
+   * Returns the number of unparsed bytes in this BER buffer.
+   *
+   * @return the number of bytes left (>= 0).
+   */
+  public int bytesLeft()
+  {
+    return this.bufsize - this.offset;
+  }
+
+  /**
+   * Decodes the octet string denoted by the given handle as string.
+   *
+   * @param aHandle
+   *          the handle, as returned by {@link #parseOctetStringHandle(int)};
+   * @param aDecodeUTF8
+   *          If <code>true</code>, use UTF-8 when decoding the string;
+   *          otherwise use ISO-Latin-1 (8859_1).
+   * @return the decoded string, never <code>null</code>.
+   */
+  public String decodeString( final long aHandle, final boolean aDecodeUTF8 )
+  {
+    return decodeString( getHandleOffset( aHandle ), getHandleLength( aHandle ), aDecodeUTF8 );
+  }
+
+  /**
+   * Returns the underlying buffer of this decoder.
+   *
+   * @return the buffer, never <code>null</code>.
+   */
+  public ByteBuffer getBuffer()
+  {
+    return this.buf;
+  }
+
+  /**
+   * Returns the current parse position. It points to the byte that will be
+   * parsed next. Useful for parsing sequences.
+   *
+   * @return the current (absolute) parse position.
+   */
+  public int getParsePosition()
+  {
+    return this.offset;
+  }
+
+  /**
+   * Parses an ASN_BOOLEAN tagged integer from this BER buffer.
+   *
+   * @return true if the tagged integer is 0; false otherwise.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public boolean parseBoolean() throws DecodeException
+  {
+    return ( ( parseIntWithTag( ASN_BOOLEAN ) == 0x00 ) ? false : true );
+  }
+
+  /**
+   * Parses the next byte in this BER buffer.
+   *
+   * @return The byte parsed.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public int parseByte() throws DecodeException
+  {
+    if ( ( this.bufsize - this.offset ) < 1 )
+    {
+      throw new DecodeException( "Insufficient data" );
+    }
+    return this.buf.get( this.offset++ ) & 0xff;
+  }
+
+  /**
+   * Parses an ASN_ENUMERATED tagged integer from this BER buffer.
+   *
+   * @return The tag of enumeration.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public int parseEnumeration() throws DecodeException
+  {
+    return parseIntWithTag( ASN_ENUMERATED );
+  }
+
+  /**
+   * Parses an ASN_INTEGER tagged integer from this BER buffer.
+   *
+   * @return The value of the integer.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public int parseInt() throws DecodeException
+  {
+    return parseIntWithTag( ASN_INTEGER );
+  }
+
+  /**
+   * Parses an integer that's preceded by a tag. <blockquote>
+   *
+   * <pre>
+   * BER integer ::= tag length byte {byte}*
+   * </pre>
+   *
+   * </blockquote>
+   * <p>
+   * The integer is decoded as two's complement value.
+   * </p>
+   *
+   * @param aTag
+   *          the tag to expect during parsing.
+   * @return the parsed integer.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public int parseIntWithTag( final int aTag ) throws DecodeException
+  {
+    int st;
+    if ( ( st = parseByte() ) != aTag )
+    {
+      throw new DecodeException( "Encountered ASN.1 tag " + Integer.toString( st ) + " (expected tag "
+          + Integer.toString( aTag ) + ")" );
+    }
+
+    final int len = parseLength();
+
+    if ( ( len < 1 ) || ( len > 4 ) )
+    {
+      throw new DecodeException( "INTEGER too long" );
+    }
+    else if ( len > ( this.bufsize - this.offset ) )
+    {
+      throw new DecodeException( "Insufficient data" );
+    }
+
+    // Sign-extend the first byte...
+    int value = this.buf.get( this.offset++ );
+    for ( int i = 1 /* first byte already read */; i < len; i++ )
+    {
+      value = ( value << 8 ) | ( this.buf.get( this.offset++ ) & 0xff );
+    }
+
+    return value;
+  }
+
+  /**
+   * Parses a possibly variable length field.
+   *
+   * @return the parsed length, as integer.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public int parseLength() throws DecodeException
+  {
+    int lengthbyte = parseByte();
+
+    if ( ( lengthbyte & 0x80 ) == 0x80 )
+    {
+      lengthbyte &= 0x7f;
+
+      if ( lengthbyte == 0 )
+      {
+        throw new DecodeException( "Indefinite length not supported" );
+      }
+
+      if ( lengthbyte > 4 )
+      {
+        throw new DecodeException( "Encoding too long" );
+      }
+
+      if ( ( this.bufsize - this.offset ) < lengthbyte )
+      {
+        throw new DecodeException( "Insufficient data" );
+      }
+
+      int retval = 0;
+
+      for ( int i = 0; i < lengthbyte; i++ )
+      {
+        retval = ( retval << 8 ) + ( this.buf.get( this.offset++ ) & 0xff );
+      }
+
+      if ( retval < 0 )
+      {
+        throw new DecodeException( "Encoding too long" );
+      }
+      return retval;
+    }
+    else
+    {
+      return lengthbyte;
+    }
+  }
+
+  /**
+   * Parses an octet string of a given type(tag) from this BER buffer, copying
+   * its contents into a new array.
+   *
+   * @param aTag
+   *          the tag to look for;
+   * @param aReturnLen
+   *          an array for returning the relative parsed position. If
+   *          <code>null</code>, the relative parsed position is not returned.
+   * @return A non-null array containing the octet string.
+   * @throws DecodeException
+   *           If the next byte in the BER buffer is not <tt>tag</tt>, or if
+   *           length specified in the BER buffer exceeds the number of bytes
+   *           left in the buffer.
+   * @see #parseOctetStringSlice(int)
+   * @see #parseOctetStringHandle(int)
+   */
+  public byte[] parseOctetString( final int aTag, final int[] aReturnLen ) throws DecodeException
+  {
+    final int origOffset = this.offset;
+    final long handle = parseOctetStringHandle( aTag );
+
+    final byte[] retarr = new byte[getHandleLength( handle )];
+    if ( retarr.length > 0 )
+    {
+      final ByteBuffer src = this.buf.duplicate();
+      src.position( getHandleOffset( handle ) );
+      src.get( retarr );
+    }
+
+    if ( aReturnLen != null )
+    {
+      aReturnLen[0] = this.offset - origOffset;
+    }
+
+    return retarr;
+  }
+
+  /**
+   * Parses an octet string of a given type(tag) from this BER buffer without
+   * copying it.
+   * <p>
+   * The returned handle packs both the offset and length of the octet string
+   * contents, which can be obtained by {@link #getHandleOffset(long)} and
+   * {@link #getHandleLength(long)}, or decoded with
+   * {@link #decodeString(long, boolean)}.
+   * </p>
+   *
+   * @param aTag
+   *          the tag to look for.
+   * @return the handle of the octet string.
+   * @throws DecodeException
+   *           If the next byte in the BER buffer is not <tt>tag</tt>, or if
+   *           length specified in the BER buffer exceeds the number of bytes
+   *           left in the buffer.
+   */
+  public long parseOctetStringHandle( final int aTag ) throws DecodeException
+  {
+    int st;
+    if ( ( st = parseByte() ) != aTag )
+    {
+      throw new DecodeException( "Encountered ASN.1 tag " + Integer.toString( st ) + " (expected tag "
+          + Integer.toString( aTag ) + ")" );
+    }
+
+    final int len = parseLength();
+
+    if ( len > ( this.bufsize - this.offset ) )
+    {
+      throw new DecodeException( "Insufficient data" );
+    }
+
+    final long handle = ( ( long )this.offset << 32 ) | len;
+    this.offset += len;
+    return handle;
+  }
+
+  /**
+   * Parses an octet string of a given type(tag) from this BER buffer as slice
+   * of the underlying buffer, without copying it.
+   * <p>
+   * The returned buffer shares its contents with the underlying buffer, so any
+   * change to the underlying buffer is visible in the returned buffer.
+   * </p>
+   *
+   * @param aTag
+   *          the tag to look for.
+   * @return a buffer with the contents of the octet string, never
+   *         <code>null</code>.
+   * @throws DecodeException
+   *           If the next byte in the BER buffer is not <tt>tag</tt>, or if
+   *           length specified in the BER buffer exceeds the number of bytes
+   *           left in the buffer.
+   */
+  public ByteBuffer parseOctetStringSlice( final int aTag ) throws DecodeException
+  {
+    final long handle = parseOctetStringHandle( aTag );
+    return slice( getHandleOffset( handle ), getHandleLength( handle ) );
+  }
+
+  /**
+   * Parses the next sequence in this BER buffer.
+   *
+   * @param aReturnLen
+   *          an array for returning size of the sequence in bytes. If
+   *          <code>null</code>, the size is not returned.
+   * @return The sequence's tag.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public int parseSeq( final int[] aReturnLen ) throws DecodeException
+  {
+    final int seq = parseByte();
+    final int len = parseLength();
+    if ( aReturnLen != null )
+    {
+      aReturnLen[0] = len;
+    }
+    return seq;
+  }
+
+  /**
+   * Parses a simple string (ASN_SIMPLE).
+   *
+   * @param aDecodeUTF8
+   *          If <code>true</code>, use UTF-8 when decoding the string;
+   *          otherwise use ISO-Latin-1 (8859_1). Use <code>true</code> for
+   *          LDAPv3; <code>false</code> for LDAPv2;
+   * @return the parsed string, never <code>null</code>.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public String parseString( final boolean aDecodeUTF8 ) throws DecodeException
+  {
+    return parseStringWithTag( ASN_SIMPLE_STRING, aDecodeUTF8, null );
+  }
+
+  /**
+   * Parses a string of a given tag from this BER buffer, decoding it directly
+   * from the underlying buffer.
+   *
+   * @param aTag
+   *          the tag that precedes the string;
+   * @param aDecodeUTF8
+   *          If <code>true</code>, use UTF-8 when decoding the string;
+   *          otherwise use ISO-Latin-1 (8859_1). Use <code>true</code> for
+   *          LDAPv3; <code>false</code> for LDAPv2;
+   * @param aReturnLen
+   *          an array for holding the relative parsed offset; if
+   *          <code>null</code> offset not set.
+   * @return The non-null parsed string.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public String parseStringWithTag( final int aTag, final boolean aDecodeUTF8, final int[] aReturnLen )
+      throws DecodeException
+  {
+    final int origOffset = this.offset;
+    final long handle = parseOctetStringHandle( aTag );
+
+    final String retstr = decodeString( getHandleOffset( handle ), getHandleLength( handle ), aDecodeUTF8 );
+
+    if ( aReturnLen != null )
+    {
+      aReturnLen[0] = this.offset - origOffset;
+    }
+
+    return retstr;
+  }
+
+  /**
+   * Returns the next byte in this BER buffer without consuming it.
+   *
+   * @return The next byte.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public int peekByte() throws DecodeException
+  {
+    if ( ( this.bufsize - this.offset ) < 1 )
+    {
+      throw new DecodeException( "Insufficient data" );
+    }
+    return this.buf.get( this.offset ) & 0xff;
+  }
+
+  /**
+   * Resets this decode to start parsing from the initial offset (ie., same
+   * state as after calling the constructor).
+   */
+  public void reset()
+  {
+    this.offset = this.origOffset;
+  }
+
+  /**
+   * Skips the given number of bytes.
+   *
+   * @param aNumber
+   *          The number of bytes to skip.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public void seek( final int aNumber ) throws DecodeException
+  {
+    if ( ( ( this.offset + aNumber ) > this.bufsize ) || ( ( this.offset + aNumber ) < this.origOffset ) )
+    {
+      throw new DecodeException( "array index out of bounds" );
+    }
+    this.offset += aNumber;
+  }
+
+  /**
+   * Returns a slice of the underlying buffer.
+   *
+   * @param aOffset
+   *          the (absolute) offset of the slice;
+   * @param aLength
+   *          the length of the slice.
+   * @return a new buffer sharing its contents with the underlying buffer,
+   *         never <code>null</code>.
+   */
+  public ByteBuffer slice( final int aOffset, final int aLength )
+  {
+    final ByteBuffer dup = this.buf.duplicate();
+    dup.limit( aOffset + aLength );
+    dup.position( aOffset );
+    return dup.slice();
+  }
+
+  /**
+   * Decodes a string directly from the underlying buffer.
+   *
+   * @param aOffset
+   *          the (absolute) offset of the string;
+   * @param aLength
+   *          the length of the string, in bytes;
+   * @param aDecodeUTF8
+   *          If <code>true</code>, use UTF-8 when decoding the string;
+   *          otherwise use ISO-Latin-1 (8859_1).
+   * @return the decoded string, never <code>null</code>.
+   */
+  private String decodeString( final int aOffset, final int aLength, final boolean aDecodeUTF8 )
+  {
+    if ( aLength == 0 )
+    {
+      return "";
+    }
+
+    if ( this.buf.hasArray() )
+    {
+      return BerDecoder.decodeString( this.buf.array(), this.buf.arrayOffset() + aOffset, aLength, aDecodeUTF8 );
+    }
+
+    final Charset charset = aDecodeUTF8 ? UTF8 : ISO_8859_1;
+
+    // Most LDAP strings are plain ASCII, which can be decoded without the
+    // intermediate buffers of the charset decoder...
+    final char[] chars = new char[aLength];
+    for ( int i = 0; i < aLength; i++ )
+    {
+      final byte b = this.buf.get( aOffset + i );
+      if ( ( b < 0 ) && aDecodeUTF8 )
+      {
+        return charset.decode( slice( aOffset, aLength ) ).toString();
+      }
+      chars[i] = ( char )( b & 0xff );
+    }
+    return new String( chars );
+  }
+}
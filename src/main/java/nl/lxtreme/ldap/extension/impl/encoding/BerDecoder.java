@@ -6,7 +6,7 @@
 package nl.lxtreme.ldap.extension.impl.encoding;
 
 
-import java.io.*;
+import java.nio.charset.*;
 
 
 /**
@@ -14,6 +14,11 @@ import java.io.*;
  */
 public final class BerDecoder implements Ber
 {
+  // CONSTANTS
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+  private static final Charset ISO_8859_1 = Charset.forName( "ISO-8859-1" );
+
   // VARIABLES
 
   private final byte[] buf;
@@ -293,40 +298,8 @@ public final class BerDecoder implements Ber
       throw new DecodeException( "Insufficient data" );
     }
 
-    String retstr;
-    if ( len == 0 )
-    {
-      retstr = "";
-    }
-    else
-    {
-      final byte[] buf2 = new byte[len];
-
-      System.arraycopy( this.buf, this.offset, buf2, 0, len );
-      if ( aDecodeUTF8 )
-      {
-        try
-        {
-          retstr = new String( buf2, "UTF8" );
-        }
-        catch ( final UnsupportedEncodingException e )
-        {
-          throw new DecodeException( "UTF8 not available on platform" );
-        }
-      }
-      else
-      {
-        try
-        {
-          retstr = new String( buf2, "8859_1" );
-        }
-        catch ( final UnsupportedEncodingException e )
-        {
-          throw new DecodeException( "8859_1 not available on platform" );
-        }
-      }
-      this.offset += len;
-    }
+    final String retstr = decodeString( this.buf, this.offset, len, aDecodeUTF8 );
+    this.offset += len;
 
     if ( aReturnLen != null )
     {
@@ -379,6 +352,25 @@ public final class BerDecoder implements Ber
     this.offset += aNumber;
   }
 
+  /**
+   * Decodes a string directly from the given buffer.
+   *
+   * @param aBuf
+   *          the buffer to decode from;
+   * @param aOffset
+   *          the offset of the string in the buffer;
+   * @param aLength
+   *          the length of the string, in bytes;
+   * @param aDecodeUTF8
+   *          If <code>true</code>, use UTF-8 when decoding the string;
+   *          otherwise use ISO-Latin-1 (8859_1).
+   * @return the decoded string, never <code>null</code>.
+   */
+  static String decodeString( final byte[] aBuf, final int aOffset, final int aLength, final boolean aDecodeUTF8 )
+  {
+    return new String( aBuf, aOffset, aLength, aDecodeUTF8 ? UTF8 : ISO_8859_1 );
+  }
+
   /**
    * Parses an integer that's preceded by a tag. <blockquote>
    *
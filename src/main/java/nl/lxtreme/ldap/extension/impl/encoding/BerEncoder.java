@@ -6,21 +6,46 @@
 package nl.lxtreme.ldap.extension.impl.encoding;
 
 
-import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
 
 
 /**
  * BerEncoder is a simple BER-value encoder (used in ASN.1). Based on code from the SUN JDK.
+ * <p>
+ * The length of a sequence is only known when it ends, so space for its length
+ * is reserved when it begins. Unused reserved space is not removed directly,
+ * which would move the data of the sequence for each nesting level, but once
+ * the outermost sequence ends, moving each byte at most once.
+ * </p>
+ * <p>
+ * Encoders can be reused after {@link #reset()}; {@link #acquire()} provides a
+ * reusable encoder for the calling thread. As encoded values can contain
+ * secrets, like passwords, the used part of the buffer is zeroed by
+ * {@link #reset()}, and buffers are zeroed before they are discarded.
+ * </p>
  */
 public final class BerEncoder implements Ber
 {
   // CONSTANTS
 
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+  private static final Charset ISO_8859_1 = Charset.forName( "ISO-8859-1" );
+
   private static final int INITIAL_SEQUENCES = 16;
   private static final int DEFAULT_BUFSIZE = 1024;
 
   // When buf is full, expand its size by the following factor.
-  private static final int BUF_GROWTH_FACTOR = 8;
+  private static final int BUF_GROWTH_FACTOR = 2;
+
+  // The number of bytes reserved for the length of a sequence, which is
+  // enough for sequences up to 16M.
+  private static final int SEQ_LENGTH_SIZE = 4;
+
+  // Encoders whose buffer grew beyond this size are not kept for reuse.
+  private static final int MAX_REUSED_BUFSIZE = 64 * 1024;
+
+  private static final ThreadLocal<BerEncoder> THREAD_ENCODER = new ThreadLocal<BerEncoder>();
 
   // VARIABLES
 
@@ -29,6 +54,12 @@ public final class BerEncoder implements Ber
   private int curSeqIndex;
   private int offset;
   private int[] seqOffset;
+  // The number of unused reserved bytes of all sequences nested in each of
+  // the currently open sequences.
+  private int[] seqSavings;
+  // The unused reserved bytes to remove, as (offset << 32 | count).
+  private long[] gaps;
+  private int gapCount;
 
   // CONSTRUCTORS
 
@@ -54,11 +85,46 @@ public final class BerEncoder implements Ber
     this.offset = 0;
 
     this.seqOffset = new int[INITIAL_SEQUENCES];
+    this.seqSavings = new int[INITIAL_SEQUENCES];
     this.curSeqIndex = 0;
+
+    this.gaps = new long[INITIAL_SEQUENCES];
+    this.gapCount = 0;
   }
 
   // METHODS
 
+  /**
+   * Returns a reset encoder for exclusive use by the calling thread, which is
+   * reused by subsequent calls from the same thread.
+   * <p>
+   * The returned encoder should not be used anymore after the next call to
+   * this method from the same thread, hence it should not be used for nested
+   * encodings. Its contents should be copied (for example, using
+   * {@link #getTrimmedBuf()}) before this method is called again.
+   * </p>
+   *
+   * @return an empty encoder, never <code>null</code>.
+   */
+  public static BerEncoder acquire()
+  {
+    BerEncoder result = THREAD_ENCODER.get();
+    if ( ( result == null ) || ( result.bufsize > MAX_REUSED_BUFSIZE ) )
+    {
+      if ( result != null )
+      {
+        result.reset();
+      }
+      result = new BerEncoder();
+      THREAD_ENCODER.set( result );
+    }
+    else
+    {
+      result.reset();
+    }
+    return result;
+  }
+
   /**
    * Begin encoding a sequence with a aTag.
    *
@@ -70,25 +136,18 @@ public final class BerEncoder implements Ber
     // Double the size of the SEQUENCE array if it overflows
     if ( this.curSeqIndex >= this.seqOffset.length )
     {
-      final int[] seqOffsetTmp = new int[this.seqOffset.length * 2];
-
-      for ( int i = 0; i < this.seqOffset.length; i++ )
-      {
-        seqOffsetTmp[i] = this.seqOffset[i];
-      }
-      this.seqOffset = seqOffsetTmp;
+      this.seqOffset = Arrays.copyOf( this.seqOffset, this.seqOffset.length * 2 );
+      this.seqSavings = Arrays.copyOf( this.seqSavings, this.seqSavings.length * 2 );
     }
 
     encodeByte( aTag );
     this.seqOffset[this.curSeqIndex] = this.offset;
+    this.seqSavings[this.curSeqIndex] = 0;
 
-    // Save space for sequence length.
-    // %%% Currently we save enough space for sequences up to 64k.
-    // For larger sequences we'll need to shift the data to the right
-    // in endSeq(). If we could instead pad the length field with
-    // zeros, it would be a big win.
-    ensureFreeBytes( 3 );
-    this.offset += 3;
+    // Save space for the largest sequence length; the unused space is removed
+    // once the outermost sequence ends...
+    ensureFreeBytes( SEQ_LENGTH_SIZE );
+    this.offset += SEQ_LENGTH_SIZE;
 
     this.curSeqIndex++;
   }
@@ -233,6 +292,27 @@ public final class BerEncoder implements Ber
     }
   }
 
+  /**
+   * Copies a portion of already BER-encoded data as is, for example a
+   * precompiled value.
+   *
+   * @param aBuf
+   *          the encoded data to copy;
+   * @param aOffset
+   *          the offset in the byte array to copy;
+   * @param aLength
+   *          the length to copy.
+   */
+  public void encodeRaw( final byte[] aBuf, final int aOffset, final int aLength )
+  {
+    if ( aLength > 0 )
+    {
+      ensureFreeBytes( aLength );
+      System.arraycopy( aBuf, aOffset, this.buf, this.offset, aLength );
+      this.offset += aLength;
+    }
+  }
+
   /**
    * Encodes a string. <blockquote>
    *
@@ -283,46 +363,21 @@ public final class BerEncoder implements Ber
   {
     encodeByte( aTag );
 
-    int i = 0;
-    int count;
-    byte[] bytes = null;
-
     if ( aString == null )
     {
-      count = 0;
-    }
-    else if ( aEncodeUTF8 )
-    {
-      try
-      {
-        bytes = aString.getBytes( "UTF8" );
-        count = bytes.length;
-      }
-      catch ( final UnsupportedEncodingException e )
-      {
-        throw new EncodeException( "UTF8 not available on platform" );
-      }
-    }
-    else
-    {
-      try
-      {
-        bytes = aString.getBytes( "8859_1" );
-        count = bytes.length;
-      }
-      catch ( final UnsupportedEncodingException e )
-      {
-        throw new EncodeException( "8859_1 not available on platform" );
-      }
+      encodeLength( 0 );
+      return;
     }
 
-    encodeLength( count );
+    // The charset encoders of the JDK are intrinsified for plain ASCII, which
+    // outweighs the intermediate array...
+    final byte[] bytes = aString.getBytes( aEncodeUTF8 ? UTF8 : ISO_8859_1 );
+    final int count = bytes.length;
 
+    encodeLength( count );
     ensureFreeBytes( count );
-    while ( i < count )
-    {
-      this.buf[this.offset++] = bytes[i++];
-    }
+    System.arraycopy( bytes, 0, this.buf, this.offset, count );
+    this.offset += count;
   }
 
   /**
@@ -359,45 +414,59 @@ public final class BerEncoder implements Ber
    */
   public void endSeq() throws EncodeException
   {
-    this.curSeqIndex--;
-    if ( this.curSeqIndex < 0 )
+    if ( this.curSeqIndex <= 0 )
     {
       throw new IllegalStateException( "BER encode error: Unbalanced SEQUENCEs." );
     }
+    this.curSeqIndex--;
 
-    final int start = this.seqOffset[this.curSeqIndex] + 3; // index beyond
-    // length field
-    final int len = this.offset - start;
+    final int lenOffset = this.seqOffset[this.curSeqIndex];
+    final int savings = this.seqSavings[this.curSeqIndex];
+    // The actual length, excluding the unused space of nested sequences...
+    final int len = this.offset - ( lenOffset + SEQ_LENGTH_SIZE ) - savings;
 
+    int pos = lenOffset;
     if ( len <= 0x7f )
     {
-      shiftSeqData( start, len, -2 );
-      this.buf[this.seqOffset[this.curSeqIndex]] = ( byte )len;
+      this.buf[pos++] = ( byte )len;
     }
     else if ( len <= 0xff )
     {
-      shiftSeqData( start, len, -1 );
-      this.buf[this.seqOffset[this.curSeqIndex]] = ( byte )0x81;
-      this.buf[this.seqOffset[this.curSeqIndex] + 1] = ( byte )len;
+      this.buf[pos++] = ( byte )0x81;
+      this.buf[pos++] = ( byte )len;
     }
     else if ( len <= 0xffff )
     {
-      this.buf[this.seqOffset[this.curSeqIndex]] = ( byte )0x82;
-      this.buf[this.seqOffset[this.curSeqIndex] + 1] = ( byte )( len >> 8 );
-      this.buf[this.seqOffset[this.curSeqIndex] + 2] = ( byte )len;
+      this.buf[pos++] = ( byte )0x82;
+      this.buf[pos++] = ( byte )( len >> 8 );
+      this.buf[pos++] = ( byte )len;
     }
     else if ( len <= 0xffffff )
     {
-      shiftSeqData( start, len, 1 );
-      this.buf[this.seqOffset[this.curSeqIndex]] = ( byte )0x83;
-      this.buf[this.seqOffset[this.curSeqIndex] + 1] = ( byte )( len >> 16 );
-      this.buf[this.seqOffset[this.curSeqIndex] + 2] = ( byte )( len >> 8 );
-      this.buf[this.seqOffset[this.curSeqIndex] + 3] = ( byte )len;
+      this.buf[pos++] = ( byte )0x83;
+      this.buf[pos++] = ( byte )( len >> 16 );
+      this.buf[pos++] = ( byte )( len >> 8 );
+      this.buf[pos++] = ( byte )len;
     }
     else
     {
       throw new EncodeException( "SEQUENCE too long" );
     }
+
+    final int unused = ( lenOffset + SEQ_LENGTH_SIZE ) - pos;
+    if ( unused > 0 )
+    {
+      addGap( pos, unused );
+    }
+
+    if ( this.curSeqIndex > 0 )
+    {
+      this.seqSavings[this.curSeqIndex - 1] += savings + unused;
+    }
+    else
+    {
+      removeGaps();
+    }
   }
 
   /**
@@ -444,19 +513,38 @@ public final class BerEncoder implements Ber
   }
 
   /**
-   * Resets encoder to state when newly constructed. Zeros out internal data
-   * structures.
+   * Resets encoder to state when newly constructed, keeping its buffer for
+   * reuse. The used part of the buffer is zeroed, such that no encoded values
+   * remain in memory.
+   * <p>
+   * Callers that encode secrets with an encoder obtained by {@link #acquire()}
+   * should call this method once they copied its contents, as otherwise the
+   * secrets remain in memory until the calling thread acquires it again.
+   * </p>
    */
   public void reset()
   {
-    while ( this.offset > 0 )
-    {
-      this.buf[--this.offset] = 0;
-    }
-    while ( this.curSeqIndex > 0 )
+    Arrays.fill( this.buf, 0, this.offset, ( byte )0 );
+    this.offset = 0;
+    this.curSeqIndex = 0;
+    this.gapCount = 0;
+  }
+
+  /**
+   * Registers unused bytes to be removed once the outermost sequence ends.
+   *
+   * @param aOffset
+   *          the offset of the unused bytes;
+   * @param aCount
+   *          the number of unused bytes.
+   */
+  private void addGap( final int aOffset, final int aCount )
+  {
+    if ( this.gapCount >= this.gaps.length )
     {
-      this.seqOffset[--this.curSeqIndex] = 0;
+      this.gaps = Arrays.copyOf( this.gaps, this.gaps.length * 2 );
     }
+    this.gaps[this.gapCount++] = ( ( long )aOffset << 32 ) | aCount;
   }
 
   /**
@@ -556,6 +644,8 @@ public final class BerEncoder implements Ber
       final byte[] newbuf = new byte[newsize];
       // Only copy bytes in the range [0, offset)
       System.arraycopy( this.buf, 0, newbuf, 0, this.offset );
+      // Do not leave the encoded data behind in the discarded buffer...
+      Arrays.fill( this.buf, 0, this.offset, ( byte )0 );
 
       this.buf = newbuf;
       this.bufsize = newsize;
@@ -563,23 +653,37 @@ public final class BerEncoder implements Ber
   }
 
   /**
-   * Shifts contents of buf in the range [start,start+len) a specified amount.
-   * Positive shift value means shift to the right.
-   *
-   * @param aStart
-   *          the start index;
-   * @param aLen
-   *          the length;
-   * @param aShift
-   *          the (relative) shift index.
+   * Removes all registered unused bytes from buf, in a single pass.
    */
-  private void shiftSeqData( final int aStart, final int aLen, final int aShift )
+  private void removeGaps()
   {
-    if ( aShift > 0 )
+    if ( this.gapCount == 0 )
     {
-      ensureFreeBytes( aShift );
+      return;
     }
-    System.arraycopy( this.buf, aStart, this.buf, aStart + aShift, aLen );
-    this.offset += aShift;
+
+    // Gaps are registered innermost sequence first...
+    Arrays.sort( this.gaps, 0, this.gapCount );
+
+    int write = ( int )( this.gaps[0] >>> 32 );
+    int read = write;
+    for ( int i = 0; i < this.gapCount; i++ )
+    {
+      final int gapOffset = ( int )( this.gaps[i] >>> 32 );
+      final int gapCount = ( int )this.gaps[i];
+
+      System.arraycopy( this.buf, read, this.buf, write, gapOffset - read );
+      write += gapOffset - read;
+      read = gapOffset + gapCount;
+    }
+    System.arraycopy( this.buf, read, this.buf, write, this.offset - read );
+
+    final int newOffset = write + ( this.offset - read );
+    // Zero the bytes freed at the end, such that offset stays the high-water
+    // mark of the data in buf...
+    Arrays.fill( this.buf, newOffset, this.offset, ( byte )0 );
+
+    this.offset = newOffset;
+    this.gapCount = 0;
   }
 }
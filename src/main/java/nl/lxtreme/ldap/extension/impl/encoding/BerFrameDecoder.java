@@ -0,0 +1,294 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.extension.impl.encoding;
+
+
+import java.nio.*;
+
+
+/**
+ * BerFrameDecoder splits a stream of BER-encoded values, such as the
+ * LDAPMessages received from a socket, into complete values ("frames"), which
+ * can be fed in chunks of arbitrary size.
+ * <p>
+ * In contrast to {@link BerDecoder} and {@link BerBufferDecoder}, which throw
+ * an "Insufficient data" exception in case a value is incomplete, this decoder
+ * keeps the incomplete part and asks for more bytes by returning
+ * <code>null</code> from {@link #nextFrame(ByteBuffer)}.
+ * </p>
+ * <p>
+ * Frames that lie entirely within a chunk are returned as view of that chunk,
+ * without copying them. Only a frame that spans multiple chunks is assembled,
+ * in a buffer of exactly its size, so the chunk buffer itself can be of a
+ * fixed size, regardless of the size of the frames.
+ * </p>
+ * <p>
+ * A typical use looks like:
+ * </p>
+ *
+ * <pre>
+ * final ByteBuffer chunk = ByteBuffer.allocate( 64 * 1024 );
+ * while ( channel.read( chunk ) &gt; 0 )
+ * {
+ *   chunk.flip();
+ *   ByteBuffer frame;
+ *   while ( ( frame = frameDecoder.nextFrame( chunk ) ) != null )
+ *   {
+ *     handle( new BerBufferDecoder( frame ) );
+ *   }
+ *   chunk.clear();
+ * }
+ * </pre>
+ */
+public final class BerFrameDecoder implements Ber
+{
+  // CONSTANTS
+
+  /** returned by {@link #getFrameLength(ByteBuffer, int, int)} in case more bytes are needed. */
+  public static final int NEED_MORE_BYTES = -1;
+
+  /** the default maximum frame size, in bytes. */
+  public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  /** the largest assembly buffer we keep for reuse. */
+  private static final int MAX_SPARE_SIZE = 64 * 1024;
+
+  /** the largest possible header: tag + length byte + four length bytes. */
+  private static final int MAX_HEADER_SIZE = 6;
+
+  // VARIABLES
+
+  private final int maxFrameSize;
+  private final byte[] header;
+
+  private int headerLen;
+  private ByteBuffer assembly;
+  private ByteBuffer spare;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BerFrameDecoder object that accepts frames up to
+   * {@link #DEFAULT_MAX_FRAME_SIZE} bytes.
+   */
+  public BerFrameDecoder()
+  {
+    this( DEFAULT_MAX_FRAME_SIZE );
+  }
+
+  /**
+   * Creates a new BerFrameDecoder object.
+   *
+   * @param aMaxFrameSize
+   *          the maximum size of a single frame, in bytes, &gt; 0. Larger
+   *          frames are rejected to protect against running out of memory.
+   */
+  public BerFrameDecoder( final int aMaxFrameSize )
+  {
+    if ( aMaxFrameSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid maximum frame size: should be positive!" );
+    }
+    this.maxFrameSize = aMaxFrameSize;
+    this.header = new byte[MAX_HEADER_SIZE];
+  }
+
+  // METHODS
+
+  /**
+   * Returns the total length (including tag and length bytes) of the value
+   * that starts at the given offset.
+   *
+   * @param aBuf
+   *          the buffer to inspect, cannot be <code>null</code>;
+   * @param aOffset
+   *          the (absolute) offset of the value in the buffer;
+   * @param aLimit
+   *          the (absolute) offset in the buffer up to which bytes are
+   *          available.
+   * @return the total length of the value, or {@link #NEED_MORE_BYTES} in case
+   *         not all of its tag and length bytes are available yet.
+   * @throws DecodeException
+   *           in case the value uses a multi-byte tag or an unsupported
+   *           length encoding.
+   */
+  public static int getFrameLength( final ByteBuffer aBuf, final int aOffset, final int aLimit )
+      throws DecodeException
+  {
+    if ( ( aLimit - aOffset ) < 2 )
+    {
+      return NEED_MORE_BYTES;
+    }
+    if ( ( aBuf.get( aOffset ) & 0x1f ) == 0x1f )
+    {
+      throw new DecodeException( "Multi-byte tags not supported" );
+    }
+
+    final int lengthbyte = aBuf.get( aOffset + 1 ) & 0xff;
+    if ( ( lengthbyte & 0x80 ) == 0 )
+    {
+      return 2 + lengthbyte;
+    }
+
+    final int count = lengthbyte & 0x7f;
+    if ( count == 0 )
+    {
+      throw new DecodeException( "Indefinite length not supported" );
+    }
+    if ( count > 4 )
+    {
+      throw new DecodeException( "Encoding too long" );
+    }
+    if ( ( aLimit - aOffset ) < ( 2 + count ) )
+    {
+      return NEED_MORE_BYTES;
+    }
+
+    int length = 0;
+    for ( int i = 0; i < count; i++ )
+    {
+      length = ( length << 8 ) | ( aBuf.get( aOffset + 2 + i ) & 0xff );
+    }
+    if ( ( length < 0 ) || ( length > ( Integer.MAX_VALUE - 2 - count ) ) )
+    {
+      throw new DecodeException( "Encoding too long" );
+    }
+    return 2 + count + length;
+  }
+
+  /**
+   * Returns the number of bytes of an incomplete frame that are kept by this
+   * decoder.
+   *
+   * @return the number of buffered bytes, &gt;= 0.
+   */
+  public int getBufferedBytes()
+  {
+    return ( this.assembly != null ) ? this.assembly.position() : this.headerLen;
+  }
+
+  /**
+   * Returns the next complete frame, consuming its bytes from the given chunk.
+   * <p>
+   * In case the chunk does not contain a complete frame, all of its remaining
+   * bytes are consumed and kept by this decoder, and <code>null</code> is
+   * returned to ask for more bytes. Hence, once this method returns
+   * <code>null</code>, the chunk can be reused for the next bytes.
+   * </p>
+   * <p>
+   * The returned frame is positioned at the first byte of the value, and
+   * limited to its last byte. It shares its contents with either the given
+   * chunk or an internal buffer, so it is only valid until the chunk is
+   * changed or this method is called again.
+   * </p>
+   *
+   * @param aChunk
+   *          the next bytes of the stream, cannot be <code>null</code>.
+   * @return the next complete frame, or <code>null</code> in case more bytes
+   *         are needed.
+   * @throws DecodeException
+   *           in case a frame header is invalid, or a frame exceeds the
+   *           maximum frame size. The state of this decoder is undefined
+   *           afterwards, see {@link #reset()}.
+   */
+  public ByteBuffer nextFrame( final ByteBuffer aChunk ) throws DecodeException
+  {
+    if ( ( this.assembly == null ) && ( this.headerLen > 0 ) )
+    {
+      // Complete the header of the pending frame, one byte at a time...
+      int length = NEED_MORE_BYTES;
+      while ( aChunk.hasRemaining() && ( length == NEED_MORE_BYTES ) )
+      {
+        this.header[this.headerLen++] = aChunk.get();
+        length = getFrameLength( ByteBuffer.wrap( this.header ), 0, this.headerLen );
+      }
+      if ( length == NEED_MORE_BYTES )
+      {
+        return null;
+      }
+
+      this.assembly = allocate( length );
+      this.assembly.put( this.header, 0, this.headerLen );
+      this.headerLen = 0;
+    }
+
+    if ( this.assembly != null )
+    {
+      // Complete the body of the pending frame...
+      final int count = Math.min( aChunk.remaining(), this.assembly.remaining() );
+      final ByteBuffer src = aChunk.duplicate();
+      src.limit( src.position() + count );
+      this.assembly.put( src );
+      aChunk.position( aChunk.position() + count );
+
+      if ( this.assembly.hasRemaining() )
+      {
+        return null;
+      }
+
+      final ByteBuffer result = this.assembly;
+      this.assembly = null;
+      result.flip();
+      return result;
+    }
+
+    final int offset = aChunk.position();
+    final int length = getFrameLength( aChunk, offset, aChunk.limit() );
+    if ( length == NEED_MORE_BYTES )
+    {
+      // Keep the start of the header...
+      this.headerLen = aChunk.remaining();
+      aChunk.get( this.header, 0, this.headerLen );
+      return null;
+    }
+    if ( length > aChunk.remaining() )
+    {
+      // Keep the start of the frame...
+      this.assembly = allocate( length );
+      this.assembly.put( aChunk );
+      return null;
+    }
+
+    final ByteBuffer result = aChunk.duplicate();
+    result.limit( offset + length );
+    aChunk.position( offset + length );
+    return result;
+  }
+
+  /**
+   * Discards any incomplete frame, for example after a decoding error or when
+   * the underlying stream is reconnected.
+   */
+  public void reset()
+  {
+    this.headerLen = 0;
+    this.assembly = null;
+  }
+
+  /**
+   * Returns an empty buffer for assembling a frame of the given length.
+   */
+  private ByteBuffer allocate( final int aLength ) throws DecodeException
+  {
+    if ( aLength > this.maxFrameSize )
+    {
+      throw new DecodeException( "Frame of " + aLength + " bytes exceeds maximum of " + this.maxFrameSize + " bytes" );
+    }
+
+    ByteBuffer result = this.spare;
+    if ( ( result == null ) || ( result.capacity() < aLength ) )
+    {
+      result = ByteBuffer.allocate( aLength );
+      if ( aLength <= MAX_SPARE_SIZE )
+      {
+        this.spare = result;
+      }
+    }
+    result.clear();
+    result.limit( aLength );
+    return result;
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.extension.impl.encoding;
+
+
+import java.nio.*;
+import java.util.*;
+
+
+/**
+ * BerPullParser is a streaming, event-based parser for BER-encoded values
+ * (used in ASN.1).
+ * <p>
+ * Instead of requiring the caller to know the exact sequence of tags up front,
+ * as {@link BerDecoder} does, this parser reports what it encounters as a
+ * series of events:
+ * </p>
+ * <ul>
+ * <li>{@link #START_SEQ} for each constructed value (such as a SEQUENCE or
+ * SET);</li>
+ * <li>{@link #END_SEQ} at the end of each constructed value;</li>
+ * <li>{@link #PRIMITIVE} for each primitive value;</li>
+ * <li>{@link #END_DOCUMENT} once all data is parsed.</li>
+ * </ul>
+ * <p>
+ * For each event, the tag, offset and length of the value can be obtained.
+ * Values are only decoded when asked for, and constructed values can be
+ * skipped as a whole with {@link #skipSubtree()} without parsing their
+ * contents, so callers only pay for the values they actually use.
+ * </p>
+ * <p>
+ * A typical use looks like:
+ * </p>
+ *
+ * <pre>
+ * final BerPullParser parser = new BerPullParser( buf, 0, buf.length );
+ * int event;
+ * while ( ( event = parser.next() ) != BerPullParser.END_DOCUMENT )
+ * {
+ *   if ( ( event == BerPullParser.PRIMITIVE ) &amp;&amp; ( parser.getTag() == Ber.ASN_OCTET_STR ) )
+ *   {
+ *     System.out.println( parser.getString( true ) );
+ *   }
+ * }
+ * </pre>
+ */
+public final class BerPullParser implements Ber
+{
+  // CONSTANTS
+
+  /** denotes the start of a constructed value. */
+  public static final int START_SEQ = 1;
+  /** denotes the end of a constructed value. */
+  public static final int END_SEQ = 2;
+  /** denotes a primitive value. */
+  public static final int PRIMITIVE = 3;
+  /** denotes the end of all data. */
+  public static final int END_DOCUMENT = 4;
+
+  private static final int INITIAL_DEPTH = 16;
+
+  // VARIABLES
+
+  private final BerBufferDecoder decoder;
+  private final ByteBuffer buf;
+  private final int bufsize;
+
+  private int offset;
+  private int[] ends;
+  private int[] tags;
+  private int depth;
+
+  private int event;
+  private int tag;
+  private int valueOffset;
+  private int valueLength;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BerPullParser that parses the given buffer.
+   *
+   * @param aBuf
+   *          the buffer to parse;
+   * @param aOffset
+   *          the offset in the buffer;
+   * @param aBufSize
+   *          the number of bytes to parse.
+   */
+  public BerPullParser( final byte[] aBuf, final int aOffset, final int aBufSize )
+  {
+    this( ByteBuffer.wrap( aBuf ), aOffset, aOffset + aBufSize );
+  }
+
+  /**
+   * Creates a new BerPullParser that parses the remaining bytes of the given
+   * buffer, that is, from its current position up to its limit.
+   *
+   * @param aBuf
+   *          the buffer to parse, cannot be <code>null</code>.
+   */
+  public BerPullParser( final ByteBuffer aBuf )
+  {
+    this( aBuf, aBuf.position(), aBuf.limit() );
+  }
+
+  /**
+   * Creates a new BerPullParser.
+   *
+   * @param aBuf
+   *          the buffer to parse;
+   * @param aStart
+   *          the (absolute) offset to start parsing;
+   * @param aEnd
+   *          the (absolute) offset to stop parsing.
+   */
+  private BerPullParser( final ByteBuffer aBuf, final int aStart, final int aEnd )
+  {
+    this.decoder = new BerBufferDecoder( aBuf, aStart, aEnd );
+    this.buf = aBuf;
+    this.bufsize = aEnd;
+    this.offset = aStart;
+
+    this.ends = new int[INITIAL_DEPTH];
+    this.tags = new int[INITIAL_DEPTH];
+    this.depth = 0;
+    this.event = 0;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the contents of the current primitive value as boolean.
+   *
+   * @return <code>false</code> if the value is zero, <code>true</code>
+   *         otherwise.
+   * @throws DecodeException
+   *           in case the current value is not a valid boolean.
+   */
+  public boolean getBoolean() throws DecodeException
+  {
+    return getInt() != 0;
+  }
+
+  /**
+   * Returns a copy of the contents of the current primitive value.
+   *
+   * @return the contents, never <code>null</code>.
+   * @throws IllegalStateException
+   *           in case the current event is not {@link #PRIMITIVE}.
+   */
+  public byte[] getBytes()
+  {
+    final ByteBuffer slice = getSlice();
+    final byte[] result = new byte[slice.remaining()];
+    slice.get( result );
+    return result;
+  }
+
+  /**
+   * Returns the nesting depth of the current event, which is zero for top level
+   * values.
+   *
+   * @return the depth, &gt;= 0.
+   */
+  public int getDepth()
+  {
+    return ( this.event == START_SEQ ) ? ( this.depth - 1 ) : this.depth;
+  }
+
+  /**
+   * Returns the current event.
+   *
+   * @return the current event, or 0 in case {@link #next()} is not called yet.
+   */
+  public int getEvent()
+  {
+    return this.event;
+  }
+
+  /**
+   * Returns the contents of the current primitive value as (two's
+   * complement) integer, as used by INTEGER and ENUMERATED values.
+   *
+   * @return the integer value.
+   * @throws DecodeException
+   *           in case the current value is not a valid integer.
+   * @throws IllegalStateException
+   *           in case the current event is not {@link #PRIMITIVE}.
+   */
+  public int getInt() throws DecodeException
+  {
+    assertEvent( PRIMITIVE );
+    if ( ( this.valueLength < 1 ) || ( this.valueLength > 4 ) )
+    {
+      throw new DecodeException( "INTEGER too long" );
+    }
+
+    // Sign-extend the first byte...
+    int value = this.buf.get( this.valueOffset );
+    for ( int i = 1; i < this.valueLength; i++ )
+    {
+      value = ( value << 8 ) | ( this.buf.get( this.valueOffset + i ) & 0xff );
+    }
+    return value;
+  }
+
+  /**
+   * Returns the length of the contents of the current value.
+   *
+   * @return the length, in bytes, &gt;= 0.
+   */
+  public int getLength()
+  {
+    return this.valueLength;
+  }
+
+  /**
+   * Returns the (absolute) offset of the contents of the current value, that
+   * is, the offset directly following its tag and length.
+   *
+   * @return the offset, &gt;= 0.
+   */
+  public int getOffset()
+  {
+    return this.valueOffset;
+  }
+
+  /**
+   * Returns the contents of the current primitive value as slice of the
+   * underlying buffer, without copying it.
+   *
+   * @return a buffer sharing its contents with the underlying buffer, never
+   *         <code>null</code>.
+   * @throws IllegalStateException
+   *           in case the current event is not {@link #PRIMITIVE}.
+   */
+  public ByteBuffer getSlice()
+  {
+    assertEvent( PRIMITIVE );
+    return this.decoder.slice( this.valueOffset, this.valueLength );
+  }
+
+  /**
+   * Returns the contents of the current primitive value as string.
+   *
+   * @param aDecodeUTF8
+   *          If <code>true</code>, use UTF-8 when decoding the string;
+   *          otherwise use ISO-Latin-1 (8859_1). Use <code>true</code> for
+   *          LDAPv3; <code>false</code> for LDAPv2.
+   * @return the string, never <code>null</code>.
+   * @throws IllegalStateException
+   *           in case the current event is not {@link #PRIMITIVE}.
+   */
+  public String getString( final boolean aDecodeUTF8 )
+  {
+    assertEvent( PRIMITIVE );
+    return this.decoder.decodeString( ( ( long )this.valueOffset << 32 ) | this.valueLength, aDecodeUTF8 );
+  }
+
+  /**
+   * Returns the tag of the current value. For {@link #END_SEQ} events, this is
+   * the tag of the constructed value that ends.
+   *
+   * @return the tag.
+   */
+  public int getTag()
+  {
+    return this.tag;
+  }
+
+  /**
+   * Parses the next event.
+   *
+   * @return the next event, one of {@link #START_SEQ}, {@link #END_SEQ},
+   *         {@link #PRIMITIVE} or {@link #END_DOCUMENT}.
+   * @throws DecodeException
+   *           in case the data is not valid BER.
+   */
+  public int next() throws DecodeException
+  {
+    if ( this.event == END_DOCUMENT )
+    {
+      return END_DOCUMENT;
+    }
+
+    if ( ( this.depth > 0 ) && ( this.offset >= this.ends[this.depth - 1] ) )
+    {
+      this.depth--;
+      this.tag = this.tags[this.depth];
+      this.valueOffset = this.ends[this.depth];
+      this.valueLength = 0;
+      return this.event = END_SEQ;
+    }
+
+    if ( this.offset >= this.bufsize )
+    {
+      this.valueOffset = this.offset;
+      this.valueLength = 0;
+      return this.event = END_DOCUMENT;
+    }
+
+    final int end = ( this.depth > 0 ) ? this.ends[this.depth - 1] : this.bufsize;
+
+    this.tag = readByte( end );
+    if ( ( this.tag & 0x1f ) == 0x1f )
+    {
+      throw new DecodeException( "Multi-byte tags not supported" );
+    }
+
+    this.valueLength = readLength( end );
+    this.valueOffset = this.offset;
+    if ( this.valueLength > ( end - this.offset ) )
+    {
+      throw new DecodeException( "Insufficient data" );
+    }
+
+    if ( ( this.tag & ASN_CONSTRUCTOR ) != 0 )
+    {
+      if ( this.depth >= this.ends.length )
+      {
+        this.ends = Arrays.copyOf( this.ends, this.ends.length * 2 );
+        this.tags = Arrays.copyOf( this.tags, this.tags.length * 2 );
+      }
+      this.ends[this.depth] = this.offset + this.valueLength;
+      this.tags[this.depth] = this.tag;
+      this.depth++;
+      return this.event = START_SEQ;
+    }
+
+    this.offset += this.valueLength;
+    return this.event = PRIMITIVE;
+  }
+
+  /**
+   * Skips the contents of the current constructed value without parsing them.
+   * After this call, the current event is the {@link #END_SEQ} of the skipped
+   * value.
+   *
+   * @throws IllegalStateException
+   *           in case the current event is not {@link #START_SEQ}.
+   */
+  public void skipSubtree()
+  {
+    assertEvent( START_SEQ );
+
+    this.depth--;
+    this.offset = this.ends[this.depth];
+    this.valueOffset = this.offset;
+    this.valueLength = 0;
+    this.event = END_SEQ;
+  }
+
+  /**
+   * Asserts that the current event is the given event.
+   *
+   * @param aEvent
+   *          the expected event.
+   * @throws IllegalStateException
+   *           in case the current event is not the given event.
+   */
+  private void assertEvent( final int aEvent )
+  {
+    if ( this.event != aEvent )
+    {
+      throw new IllegalStateException( "Invalid parser state: event " + this.event + " (expected " + aEvent + ")" );
+    }
+  }
+
+  /**
+   * Reads the next byte.
+   *
+   * @param aEnd
+   *          the offset that may not be exceeded.
+   * @return the byte read.
+   * @throws DecodeException
+   *           in case no more bytes are available.
+   */
+  private int readByte( final int aEnd ) throws DecodeException
+  {
+    if ( this.offset >= aEnd )
+    {
+      throw new DecodeException( "Insufficient data" );
+    }
+    return this.buf.get( this.offset++ ) & 0xff;
+  }
+
+  /**
+   * Reads a possibly variable length field.
+   *
+   * @param aEnd
+   *          the offset that may not be exceeded.
+   * @return the length read.
+   * @throws DecodeException
+   *           in case the length could not be read.
+   */
+  private int readLength( final int aEnd ) throws DecodeException
+  {
+    int lengthbyte = readByte( aEnd );
+    if ( ( lengthbyte & 0x80 ) == 0 )
+    {
+      return lengthbyte;
+    }
+
+    lengthbyte &= 0x7f;
+    if ( lengthbyte == 0 )
+    {
+      throw new DecodeException( "Indefinite length not supported" );
+    }
+    if ( lengthbyte > 4 )
+    {
+      throw new DecodeException( "Encoding too long" );
+    }
+
+    int retval = 0;
+    for ( int i = 0; i < lengthbyte; i++ )
+    {
+      retval = ( retval << 8 ) + readByte( aEnd );
+    }
+    if ( retval < 0 )
+    {
+      throw new DecodeException( "Encoding too long" );
+    }
+    return retval;
+  }
+}
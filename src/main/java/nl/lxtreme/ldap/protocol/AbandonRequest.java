@@ -0,0 +1,69 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * AbandonRequest asks the server to abandon an outstanding operation.
+ *
+ * <pre>
+ * AbandonRequest ::= [APPLICATION 16] MessageID
+ * </pre>
+ */
+public final class AbandonRequest extends LdapOperation
+{
+  // VARIABLES
+
+  private final int abandonId;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new AbandonRequest object.
+   *
+   * @param aAbandonId
+   *          the message ID of the operation to abandon.
+   */
+  public AbandonRequest( final int aAbandonId )
+  {
+    super( ABANDON_REQUEST );
+    this.abandonId = aAbandonId;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the message ID of the operation to abandon.
+   *
+   * @return the message ID.
+   */
+  public int getAbandonId()
+  {
+    return this.abandonId;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "AbandonRequest(" + this.abandonId + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.encodeInt( this.abandonId, ABANDON_REQUEST );
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * AddRequest adds a new entry to the directory.
+ *
+ * <pre>
+ * AddRequest ::= [APPLICATION 8] SEQUENCE {
+ *      entry           LDAPDN,
+ *      attributes      AttributeList }
+ *
+ * AttributeList ::= SEQUENCE OF attribute Attribute
+ * </pre>
+ */
+public final class AddRequest extends LdapOperation
+{
+  // VARIABLES
+
+  private final String entry;
+  private final List<PartialAttribute> attributes;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new AddRequest object.
+   *
+   * @param aEntry
+   *          the DN of the entry to add, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attributes of the entry to add, cannot be <code>null</code>.
+   */
+  public AddRequest( final String aEntry, final List<PartialAttribute> aAttributes )
+  {
+    super( ADD_REQUEST );
+    if ( aEntry == null )
+    {
+      throw new IllegalArgumentException( "Entry cannot be null!" );
+    }
+    this.entry = aEntry;
+    this.attributes = Collections.unmodifiableList( new ArrayList<PartialAttribute>( aAttributes ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the attributes of the entry to add.
+   *
+   * @return the attributes, never <code>null</code>.
+   */
+  public List<PartialAttribute> getAttributes()
+  {
+    return this.attributes;
+  }
+
+  /**
+   * Returns the DN of the entry to add.
+   *
+   * @return the DN, never <code>null</code>.
+   */
+  public String getEntry()
+  {
+    return this.entry;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "AddRequest(" + this.entry + ", " + this.attributes + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( ADD_REQUEST );
+    aEncoder.encodeString( this.entry, true );
+    aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+    for ( PartialAttribute attribute : this.attributes )
+    {
+      attribute.encode( aEncoder );
+    }
+    aEncoder.endSeq();
+    aEncoder.endSeq();
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.nio.charset.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * BindRequest authenticates a client, either with a simple password or with a
+ * SASL mechanism.
+ *
+ * <pre>
+ * BindRequest ::= [APPLICATION 0] SEQUENCE {
+ *      version                 INTEGER (1 ..  127),
+ *      name                    LDAPDN,
+ *      authentication          AuthenticationChoice }
+ *
+ * AuthenticationChoice ::= CHOICE {
+ *      simple                  [0] OCTET STRING,
+ *      sasl                    [3] SaslCredentials }
+ *
+ * SaslCredentials ::= SEQUENCE {
+ *      mechanism               LDAPString,
+ *      credentials             OCTET STRING OPTIONAL }
+ * </pre>
+ */
+public final class BindRequest extends LdapOperation
+{
+  // CONSTANTS
+
+  static final int AUTH_SIMPLE = 0x80;
+  static final int AUTH_SASL = 0xa3;
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  // VARIABLES
+
+  private final int version;
+  private final String name;
+  private final String saslMechanism;
+  private final byte[] credentials;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BindRequest object.
+   *
+   * @param aVersion
+   *          the protocol version, typically {@link LdapProtocol#VERSION};
+   * @param aName
+   *          the DN to bind as, may be <code>null</code> or empty for
+   *          anonymous binds;
+   * @param aSaslMechanism
+   *          the SASL mechanism, or <code>null</code> for simple binds;
+   * @param aCredentials
+   *          the password (simple binds) or SASL credentials, may be
+   *          <code>null</code>.
+   */
+  public BindRequest( final int aVersion, final String aName, final String aSaslMechanism, final byte[] aCredentials )
+  {
+    super( BIND_REQUEST );
+    this.version = aVersion;
+    this.name = ( aName == null ) ? "" : aName;
+    this.saslMechanism = aSaslMechanism;
+    this.credentials = aCredentials;
+  }
+
+  // METHODS
+
+  /**
+   * Creates a new simple bind request.
+   *
+   * @param aName
+   *          the DN to bind as, may be <code>null</code> or empty for
+   *          anonymous binds;
+   * @param aPassword
+   *          the password, may be <code>null</code> for anonymous binds.
+   * @return a new bind request, never <code>null</code>.
+   */
+  public static BindRequest simple( final String aName, final String aPassword )
+  {
+    return new BindRequest( VERSION, aName, null, ( aPassword == null ) ? new byte[0] : aPassword.getBytes( UTF8 ) );
+  }
+
+  /**
+   * Returns the password or SASL credentials.
+   *
+   * @return the credentials, can be <code>null</code>.
+   */
+  public byte[] getCredentials()
+  {
+    return this.credentials;
+  }
+
+  /**
+   * Returns the DN to bind as.
+   *
+   * @return the DN, never <code>null</code>.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * Returns the SASL mechanism.
+   *
+   * @return the SASL mechanism, or <code>null</code> for simple binds.
+   */
+  public String getSaslMechanism()
+  {
+    return this.saslMechanism;
+  }
+
+  /**
+   * Returns the protocol version.
+   *
+   * @return the version.
+   */
+  public int getVersion()
+  {
+    return this.version;
+  }
+
+  /**
+   * Returns whether this is a simple bind.
+   *
+   * @return <code>true</code> for simple binds, <code>false</code> for SASL
+   *         binds.
+   */
+  public boolean isSimple()
+  {
+    return this.saslMechanism == null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "BindRequest(" + this.name + ( isSimple() ? "" : ", " + this.saslMechanism ) + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( BIND_REQUEST );
+    aEncoder.encodeInt( this.version );
+    aEncoder.encodeString( this.name, true );
+    if ( isSimple() )
+    {
+      aEncoder.encodeOctetString( ( this.credentials == null ) ? new byte[0] : this.credentials, AUTH_SIMPLE );
+    }
+    else
+    {
+      aEncoder.beginSeq( AUTH_SASL );
+      aEncoder.encodeString( this.saslMechanism, true );
+      if ( this.credentials != null )
+      {
+        aEncoder.encodeOctetString( this.credentials, Ber.ASN_OCTET_STR );
+      }
+      aEncoder.endSeq();
+    }
+    aEncoder.endSeq();
+  }
+}
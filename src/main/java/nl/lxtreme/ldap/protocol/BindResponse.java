@@ -0,0 +1,71 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * BindResponse represents the outcome of a {@link BindRequest}.
+ *
+ * <pre>
+ * BindResponse ::= [APPLICATION 1] SEQUENCE {
+ *      COMPONENTS OF LDAPResult,
+ *      serverSaslCreds    [7] OCTET STRING OPTIONAL }
+ * </pre>
+ */
+public final class BindResponse extends LdapResponse
+{
+  // CONSTANTS
+
+  static final int SERVER_SASL_CREDS = 0x87;
+
+  // VARIABLES
+
+  private final byte[] serverSaslCreds;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BindResponse object.
+   *
+   * @param aResult
+   *          the result of the bind, cannot be <code>null</code>;
+   * @param aServerSaslCreds
+   *          the SASL credentials of the server, may be <code>null</code>.
+   */
+  public BindResponse( final LdapResult aResult, final byte[] aServerSaslCreds )
+  {
+    super( BIND_RESPONSE, aResult, true );
+    this.serverSaslCreds = aServerSaslCreds;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the SASL credentials of the server.
+   *
+   * @return the server SASL credentials, can be <code>null</code>.
+   */
+  public byte[] getServerSaslCreds()
+  {
+    return this.serverSaslCreds;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encodeTrailer( final BerEncoder aEncoder ) throws EncodeException
+  {
+    if ( this.serverSaslCreds != null )
+    {
+      aEncoder.encodeOctetString( this.serverSaslCreds, SERVER_SASL_CREDS );
+    }
+  }
+}
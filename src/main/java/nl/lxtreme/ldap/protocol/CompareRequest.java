@@ -0,0 +1,113 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * CompareRequest asks whether an entry contains a given attribute value.
+ *
+ * <pre>
+ * CompareRequest ::= [APPLICATION 14] SEQUENCE {
+ *      entry           LDAPDN,
+ *      ava             AttributeValueAssertion }
+ *
+ * AttributeValueAssertion ::= SEQUENCE {
+ *      attributeDesc   AttributeDescription,
+ *      assertionValue  AssertionValue }
+ * </pre>
+ */
+public final class CompareRequest extends LdapOperation
+{
+  // VARIABLES
+
+  private final String name;
+  private final String attributeDesc;
+  private final byte[] assertionValue;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new CompareRequest object.
+   *
+   * @param aName
+   *          the DN of the entry to compare, cannot be <code>null</code>;
+   * @param aAttributeDesc
+   *          the attribute to compare, cannot be <code>null</code>;
+   * @param aAssertionValue
+   *          the value to compare with, cannot be <code>null</code>.
+   */
+  public CompareRequest( final String aName, final String aAttributeDesc, final byte[] aAssertionValue )
+  {
+    super( COMPARE_REQUEST );
+    if ( ( aName == null ) || ( aAttributeDesc == null ) || ( aAssertionValue == null ) )
+    {
+      throw new IllegalArgumentException( "Name, attribute and value cannot be null!" );
+    }
+    this.name = aName;
+    this.attributeDesc = aAttributeDesc;
+    this.assertionValue = aAssertionValue;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the value to compare with.
+   *
+   * @return the assertion value, never <code>null</code>.
+   */
+  public byte[] getAssertionValue()
+  {
+    return this.assertionValue;
+  }
+
+  /**
+   * Returns the attribute to compare.
+   *
+   * @return the attribute description, never <code>null</code>.
+   */
+  public String getAttributeDesc()
+  {
+    return this.attributeDesc;
+  }
+
+  /**
+   * Returns the DN of the entry to compare.
+   *
+   * @return the DN, never <code>null</code>.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "CompareRequest(" + this.name + ", " + this.attributeDesc + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( COMPARE_REQUEST );
+    aEncoder.encodeString( this.name, true );
+    aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+    aEncoder.encodeString( this.attributeDesc, true );
+    aEncoder.encodeOctetString( this.assertionValue, Ber.ASN_OCTET_STR );
+    aEncoder.endSeq();
+    aEncoder.endSeq();
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * DeleteRequest removes a leaf entry from the directory.
+ *
+ * <pre>
+ * DelRequest ::= [APPLICATION 10] LDAPDN
+ * </pre>
+ */
+public final class DeleteRequest extends LdapOperation
+{
+  // VARIABLES
+
+  private final String name;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new DeleteRequest object.
+   *
+   * @param aName
+   *          the DN of the entry to delete, cannot be <code>null</code>.
+   */
+  public DeleteRequest( final String aName )
+  {
+    super( DEL_REQUEST );
+    if ( aName == null )
+    {
+      throw new IllegalArgumentException( "Name cannot be null!" );
+    }
+    this.name = aName;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the DN of the entry to delete.
+   *
+   * @return the DN, never <code>null</code>.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "DeleteRequest(" + this.name + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.encodeString( this.name, DEL_REQUEST, true );
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * ExtendedOperationRequest invokes an extended operation on the server.
+ *
+ * <pre>
+ * ExtendedRequest ::= [APPLICATION 23] SEQUENCE {
+ *      requestName      [0] LDAPOID,
+ *      requestValue     [1] OCTET STRING OPTIONAL }
+ * </pre>
+ */
+public final class ExtendedOperationRequest extends LdapOperation
+{
+  // CONSTANTS
+
+  static final int REQUEST_NAME = 0x80;
+  static final int REQUEST_VALUE = 0x81;
+
+  // VARIABLES
+
+  private final String requestName;
+  private final byte[] requestValue;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ExtendedOperationRequest object.
+   *
+   * @param aRequestName
+   *          the OID of the extended operation, cannot be <code>null</code>;
+   * @param aRequestValue
+   *          the (encoded) value of the request, may be <code>null</code>.
+   */
+  public ExtendedOperationRequest( final String aRequestName, final byte[] aRequestValue )
+  {
+    super( EXTENDED_REQUEST );
+    if ( aRequestName == null )
+    {
+      throw new IllegalArgumentException( "Request name cannot be null!" );
+    }
+    this.requestName = aRequestName;
+    this.requestValue = aRequestValue;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the OID of the extended operation.
+   *
+   * @return the request name, never <code>null</code>.
+   */
+  public String getRequestName()
+  {
+    return this.requestName;
+  }
+
+  /**
+   * Returns the (encoded) value of the request.
+   *
+   * @return the request value, can be <code>null</code>.
+   */
+  public byte[] getRequestValue()
+  {
+    return this.requestValue;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "ExtendedOperationRequest(" + this.requestName + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( EXTENDED_REQUEST );
+    aEncoder.encodeString( this.requestName, REQUEST_NAME, true );
+    if ( this.requestValue != null )
+    {
+      aEncoder.encodeOctetString( this.requestValue, REQUEST_VALUE );
+    }
+    aEncoder.endSeq();
+  }
+}
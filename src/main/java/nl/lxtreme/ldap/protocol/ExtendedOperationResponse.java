@@ -0,0 +1,92 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * ExtendedOperationResponse represents the outcome of an
+ * {@link ExtendedOperationRequest}.
+ *
+ * <pre>
+ * ExtendedResponse ::= [APPLICATION 24] SEQUENCE {
+ *      COMPONENTS OF LDAPResult,
+ *      responseName     [10] LDAPOID OPTIONAL,
+ *      responseValue    [11] OCTET STRING OPTIONAL }
+ * </pre>
+ */
+public final class ExtendedOperationResponse extends LdapResponse
+{
+  // CONSTANTS
+
+  static final int RESPONSE_NAME = 0x8a;
+  static final int RESPONSE_VALUE = 0x8b;
+
+  // VARIABLES
+
+  private final String responseName;
+  private final byte[] responseValue;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ExtendedOperationResponse object.
+   *
+   * @param aResult
+   *          the result of the operation, cannot be <code>null</code>;
+   * @param aResponseName
+   *          the OID of the response, may be <code>null</code>;
+   * @param aResponseValue
+   *          the (encoded) value of the response, may be <code>null</code>.
+   */
+  public ExtendedOperationResponse( final LdapResult aResult, final String aResponseName, final byte[] aResponseValue )
+  {
+    super( EXTENDED_RESPONSE, aResult, true );
+    this.responseName = aResponseName;
+    this.responseValue = aResponseValue;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the OID of the response.
+   *
+   * @return the response name, can be <code>null</code>.
+   */
+  public String getResponseName()
+  {
+    return this.responseName;
+  }
+
+  /**
+   * Returns the (encoded) value of the response.
+   *
+   * @return the response value, can be <code>null</code>.
+   */
+  public byte[] getResponseValue()
+  {
+    return this.responseValue;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encodeTrailer( final BerEncoder aEncoder ) throws EncodeException
+  {
+    if ( this.responseName != null )
+    {
+      aEncoder.encodeString( this.responseName, RESPONSE_NAME, true );
+    }
+    if ( this.responseValue != null )
+    {
+      aEncoder.encodeOctetString( this.responseValue, RESPONSE_VALUE );
+    }
+  }
+}
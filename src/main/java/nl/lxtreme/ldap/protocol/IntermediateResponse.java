@@ -0,0 +1,100 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * IntermediateResponse carries intermediate results of an operation, which
+ * precede its final response.
+ *
+ * <pre>
+ * IntermediateResponse ::= [APPLICATION 25] SEQUENCE {
+ *      responseName     [0] LDAPOID OPTIONAL,
+ *      responseValue    [1] OCTET STRING OPTIONAL }
+ * </pre>
+ */
+public final class IntermediateResponse extends LdapOperation
+{
+  // CONSTANTS
+
+  static final int RESPONSE_NAME = 0x80;
+  static final int RESPONSE_VALUE = 0x81;
+
+  // VARIABLES
+
+  private final String responseName;
+  private final byte[] responseValue;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new IntermediateResponse object.
+   *
+   * @param aResponseName
+   *          the OID of the response, may be <code>null</code>;
+   * @param aResponseValue
+   *          the (encoded) value of the response, may be <code>null</code>.
+   */
+  public IntermediateResponse( final String aResponseName, final byte[] aResponseValue )
+  {
+    super( INTERMEDIATE_RESPONSE );
+    this.responseName = aResponseName;
+    this.responseValue = aResponseValue;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the OID of the response.
+   *
+   * @return the response name, can be <code>null</code>.
+   */
+  public String getResponseName()
+  {
+    return this.responseName;
+  }
+
+  /**
+   * Returns the (encoded) value of the response.
+   *
+   * @return the response value, can be <code>null</code>.
+   */
+  public byte[] getResponseValue()
+  {
+    return this.responseValue;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "IntermediateResponse(" + this.responseName + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( INTERMEDIATE_RESPONSE );
+    if ( this.responseName != null )
+    {
+      aEncoder.encodeString( this.responseName, RESPONSE_NAME, true );
+    }
+    if ( this.responseValue != null )
+    {
+      aEncoder.encodeOctetString( this.responseValue, RESPONSE_VALUE );
+    }
+    aEncoder.endSeq();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+/**
+ * LdapControl represents a single control of a {@link LdapMessage}.
+ *
+ * <pre>
+ * Control ::= SEQUENCE {
+ *      controlType             LDAPOID,
+ *      criticality             BOOLEAN DEFAULT FALSE,
+ *      controlValue            OCTET STRING OPTIONAL }
+ * </pre>
+ */
+public final class LdapControl
+{
+  // VARIABLES
+
+  private final String oid;
+  private final boolean critical;
+  private final byte[] value;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapControl object.
+   *
+   * @param aOID
+   *          the object ID of the control, cannot be <code>null</code>;
+   * @param aCritical
+   *          <code>true</code> if the control is critical, <code>false</code>
+   *          otherwise;
+   * @param aValue
+   *          the (encoded) value of the control, may be <code>null</code>.
+   */
+  public LdapControl( final String aOID, final boolean aCritical, final byte[] aValue )
+  {
+    if ( aOID == null )
+    {
+      throw new IllegalArgumentException( "OID cannot be null!" );
+    }
+    this.oid = aOID;
+    this.critical = aCritical;
+    this.value = aValue;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the object ID of this control.
+   *
+   * @return the OID, never <code>null</code>.
+   */
+  public String getOID()
+  {
+    return this.oid;
+  }
+
+  /**
+   * Returns the (encoded) value of this control.
+   *
+   * @return the value, can be <code>null</code>.
+   */
+  public byte[] getValue()
+  {
+    return this.value;
+  }
+
+  /**
+   * Returns whether this control is critical.
+   *
+   * @return <code>true</code> if the control is critical, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isCritical()
+  {
+    return this.critical;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "Control(" + this.oid + ( this.critical ? ", critical" : "" ) + ")";
+  }
+}
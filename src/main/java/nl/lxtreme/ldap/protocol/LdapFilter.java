@@ -0,0 +1,1108 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import javax.naming.directory.*;
+
+import nl.lxtreme.ldap.*;
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * LdapFilter represents a parsed search filter, which can be converted between
+ * its string representation, as defined in RFC 4515, and its BER encoding, as
+ * defined in RFC 4511.
+ *
+ * <pre>
+ * Filter ::= CHOICE {
+ *      and             [0] SET SIZE (1..MAX) OF filter Filter,
+ *      or              [1] SET SIZE (1..MAX) OF filter Filter,
+ *      not             [2] Filter,
+ *      equalityMatch   [3] AttributeValueAssertion,
+ *      substrings      [4] SubstringFilter,
+ *      greaterOrEqual  [5] AttributeValueAssertion,
+ *      lessOrEqual     [6] AttributeValueAssertion,
+ *      present         [7] AttributeDescription,
+ *      approxMatch     [8] AttributeValueAssertion,
+ *      extensibleMatch [9] MatchingRuleAssertion }
+ * </pre>
+ * <p>
+ * Filters can be compiled from templates, in which <tt>{0}</tt>,
+ * <tt>{1}</tt>, ... denote parameters, for example:
+ * </p>
+ *
+ * <pre>
+ * private static final LdapFilter USER_BY_NAME = LdapFilter.compile( &quot;(&amp;(objectClass=user)(sAMAccountName={0}))&quot; );
+ * ...
+ * client.search( baseDN, SearchRequest.SCOPE_WHOLE_SUBTREE, USER_BY_NAME.bind( name ) );
+ * </pre>
+ * <p>
+ * Parameters are bound as values, never as filter syntax, so characters such
+ * as <tt>*</tt> and <tt>)</tt> in parameters are escaped as needed and cannot
+ * alter the structure of the filter. The template is parsed only once, and the
+ * BER encoding of the parts of the template that do not depend on parameters
+ * is computed only once, and copied as is when encoding.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ */
+public final class LdapFilter
+{
+  // CONSTANTS
+
+  public static final int AND = 0xa0;
+  public static final int OR = 0xa1;
+  public static final int NOT = 0xa2;
+  public static final int EQUALITY_MATCH = 0xa3;
+  public static final int SUBSTRINGS = 0xa4;
+  public static final int GREATER_OR_EQUAL = 0xa5;
+  public static final int LESS_OR_EQUAL = 0xa6;
+  public static final int PRESENT = 0x87;
+  public static final int APPROX_MATCH = 0xa8;
+  public static final int EXTENSIBLE_MATCH = 0xa9;
+
+  static final int SUBSTRING_INITIAL = 0x80;
+  static final int SUBSTRING_ANY = 0x81;
+  static final int SUBSTRING_FINAL = 0x82;
+
+  static final int MATCHING_RULE = 0x81;
+  static final int MATCHING_TYPE = 0x82;
+  static final int MATCH_VALUE = 0x83;
+  static final int DN_ATTRIBUTES = 0x84;
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  private static final LdapFilter[] NO_CHILDREN = new LdapFilter[0];
+  private static final Object[] NO_VALUES = new Object[0];
+  private static final int[] NO_TAGS = new int[0];
+
+  // INNER TYPES
+
+  /**
+   * Parses the string representation of a filter.
+   */
+  private static final class Parser
+  {
+    // VARIABLES
+
+    private final String filter;
+    private final boolean template;
+    private int pos;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Parser object.
+     */
+    Parser( final String aFilter, final boolean aTemplate )
+    {
+      this.filter = aFilter;
+      this.template = aTemplate;
+    }
+
+    // METHODS
+
+    /**
+     * Parses the entire filter.
+     */
+    LdapFilter parse() throws InvalidSearchFilterException
+    {
+      final LdapFilter result = parseFilter();
+      if ( this.pos != this.filter.length() )
+      {
+        throw error( "Trailing characters" );
+      }
+      return result;
+    }
+
+    /**
+     * Checks whether the given attribute description is valid.
+     */
+    private String checkType( final String aType ) throws InvalidSearchFilterException
+    {
+      if ( aType.isEmpty() )
+      {
+        throw error( "Missing attribute description" );
+      }
+      for ( int i = 0; i < aType.length(); i++ )
+      {
+        final char c = aType.charAt( i );
+        if ( !( ( ( c >= 'a' ) && ( c <= 'z' ) ) || ( ( c >= 'A' ) && ( c <= 'Z' ) )
+            || ( ( c >= '0' ) && ( c <= '9' ) ) || ( c == '-' ) || ( c == '.' ) || ( c == ';' ) ) )
+        {
+          throw error( "Invalid attribute description: " + aType );
+        }
+      }
+      return aType;
+    }
+
+    /**
+     * Creates an exception for an invalid filter.
+     */
+    private InvalidSearchFilterException error( final String aMessage )
+    {
+      return new InvalidSearchFilterException( aMessage + " at position " + this.pos + " in filter " + this.filter );
+    }
+
+    /**
+     * Consumes the given character at the current position.
+     */
+    private void expect( final char aChar ) throws InvalidSearchFilterException
+    {
+      if ( ( this.pos >= this.filter.length() ) || ( this.filter.charAt( this.pos ) != aChar ) )
+      {
+        throw error( "Expected '" + aChar + "'" );
+      }
+      this.pos++;
+    }
+
+    /**
+     * Parses an extensible match, such as <tt>cn:dn:caseExactMatch:=foo</tt>.
+     */
+    private LdapFilter parseExtensible( final String aDescription, final String aValue )
+        throws InvalidSearchFilterException
+    {
+      final String[] parts = aDescription.split( ":", -1 );
+
+      final String type = parts[0].isEmpty() ? null : checkType( parts[0] );
+      boolean dnAttributes = false;
+      String rule = null;
+      for ( int i = 1; i < parts.length; i++ )
+      {
+        if ( !dnAttributes && ( rule == null ) && "dn".equalsIgnoreCase( parts[i] ) )
+        {
+          dnAttributes = true;
+        }
+        else if ( ( rule == null ) && !parts[i].isEmpty() )
+        {
+          rule = parts[i];
+        }
+        else
+        {
+          throw error( "Invalid extensible match: " + aDescription );
+        }
+      }
+      if ( ( type == null ) && ( rule == null ) )
+      {
+        throw error( "Extensible match needs a type or matching rule: " + aDescription );
+      }
+
+      return new LdapFilter( EXTENSIBLE_MATCH, type, rule, dnAttributes, new int[] { MATCH_VALUE },
+          new Object[] { parseValue( aValue ) }, NO_CHILDREN );
+    }
+
+    /**
+     * Parses a single parenthesized filter, starting at the current position.
+     */
+    private LdapFilter parseFilter() throws InvalidSearchFilterException
+    {
+      expect( '(' );
+      if ( this.pos >= this.filter.length() )
+      {
+        throw error( "Unexpected end of filter" );
+      }
+
+      final LdapFilter result;
+
+      final char c = this.filter.charAt( this.pos );
+      if ( ( c == '&' ) || ( c == '|' ) )
+      {
+        this.pos++;
+        final List<LdapFilter> children = new ArrayList<LdapFilter>();
+        do
+        {
+          children.add( parseFilter() );
+        }
+        while ( ( this.pos < this.filter.length() ) && ( this.filter.charAt( this.pos ) == '(' ) );
+
+        result = new LdapFilter( ( c == '&' ) ? AND : OR, null, null, false, NO_TAGS, NO_VALUES,
+            children.toArray( new LdapFilter[children.size()] ) );
+      }
+      else if ( c == '!' )
+      {
+        this.pos++;
+        result = new LdapFilter( NOT, null, null, false, NO_TAGS, NO_VALUES, new LdapFilter[] { parseFilter() } );
+      }
+      else
+      {
+        final int end = this.filter.indexOf( ')', this.pos );
+        if ( end < 0 )
+        {
+          throw error( "Unbalanced parentheses" );
+        }
+        result = parseItem( this.filter.substring( this.pos, end ) );
+        this.pos = end;
+      }
+
+      expect( ')' );
+      return result;
+    }
+
+    /**
+     * Parses a single item filter, such as <tt>cn=foo*</tt>.
+     */
+    private LdapFilter parseItem( final String aItem ) throws InvalidSearchFilterException
+    {
+      final int eq = aItem.indexOf( '=' );
+      if ( eq < 1 )
+      {
+        throw error( "Invalid filter item: " + aItem );
+      }
+
+      final String value = aItem.substring( eq + 1 );
+      final char op = aItem.charAt( eq - 1 );
+
+      if ( op == ':' )
+      {
+        return parseExtensible( aItem.substring( 0, eq - 1 ), value );
+      }
+      else if ( ( op == '~' ) || ( op == '>' ) || ( op == '<' ) )
+      {
+        final int type = ( op == '~' ) ? APPROX_MATCH : ( op == '>' ) ? GREATER_OR_EQUAL : LESS_OR_EQUAL;
+        return new LdapFilter( type, checkType( aItem.substring( 0, eq - 1 ) ), null, false,
+            new int[] { Ber.ASN_OCTET_STR }, new Object[] { parseValue( value ) }, NO_CHILDREN );
+      }
+
+      final String type = checkType( aItem.substring( 0, eq ) );
+      if ( "*".equals( value ) )
+      {
+        return new LdapFilter( PRESENT, type, null, false, NO_TAGS, NO_VALUES, NO_CHILDREN );
+      }
+      else if ( value.indexOf( '*' ) >= 0 )
+      {
+        return parseSubstrings( type, value );
+      }
+      return new LdapFilter( EQUALITY_MATCH, type, null, false, new int[] { Ber.ASN_OCTET_STR },
+          new Object[] { parseValue( value ) }, NO_CHILDREN );
+    }
+
+    /**
+     * Parses a substrings filter, such as <tt>cn=f*o*o</tt>.
+     */
+    private LdapFilter parseSubstrings( final String aType, final String aValue ) throws InvalidSearchFilterException
+    {
+      final String[] parts = aValue.split( "\\*", -1 );
+
+      final List<Object> values = new ArrayList<Object>( parts.length );
+      final int[] tags = new int[parts.length];
+      for ( int i = 0; i < parts.length; i++ )
+      {
+        if ( parts[i].isEmpty() )
+        {
+          if ( ( i > 0 ) && ( i < ( parts.length - 1 ) ) )
+          {
+            throw error( "Consecutive wildcards in substring filter: " + aValue );
+          }
+          continue;
+        }
+        tags[values.size()] = ( i == 0 ) ? SUBSTRING_INITIAL : ( i == ( parts.length - 1 ) ) ? SUBSTRING_FINAL
+            : SUBSTRING_ANY;
+        values.add( parseValue( parts[i] ) );
+      }
+
+      return new LdapFilter( SUBSTRINGS, aType, null, false, Arrays.copyOf( tags, values.size() ), values.toArray(),
+          NO_CHILDREN );
+    }
+
+    /**
+     * Parses an (escaped) value, which is either a constant value (as byte
+     * array), or, for templates, a value that contains parameters (as array of
+     * byte arrays and parameter indexes).
+     */
+    private Object parseValue( final String aValue ) throws InvalidSearchFilterException
+    {
+      if ( !this.template || ( aValue.indexOf( '{' ) < 0 ) )
+      {
+        return unescape( aValue );
+      }
+
+      final List<Object> segments = new ArrayList<Object>();
+      int start = 0;
+      int open;
+      while ( ( open = aValue.indexOf( '{', start ) ) >= 0 )
+      {
+        final int close = aValue.indexOf( '}', open );
+        if ( close < 0 )
+        {
+          throw error( "Unterminated parameter in value: " + aValue );
+        }
+
+        final int index;
+        try
+        {
+          index = Integer.parseInt( aValue.substring( open + 1, close ) );
+        }
+        catch ( NumberFormatException exception )
+        {
+          throw error( "Invalid parameter in value: " + aValue );
+        }
+        if ( index < 0 )
+        {
+          throw error( "Invalid parameter in value: " + aValue );
+        }
+
+        if ( open > start )
+        {
+          segments.add( unescape( aValue.substring( start, open ) ) );
+        }
+        segments.add( Integer.valueOf( index ) );
+        start = close + 1;
+      }
+      if ( start < aValue.length() )
+      {
+        segments.add( unescape( aValue.substring( start ) ) );
+      }
+
+      return segments.toArray();
+    }
+
+    /**
+     * Unescapes the given value to its raw bytes.
+     */
+    private byte[] unescape( final String aValue ) throws InvalidSearchFilterException
+    {
+      if ( aValue.indexOf( '\\' ) < 0 )
+      {
+        return aValue.getBytes( UTF8 );
+      }
+
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream( aValue.length() );
+      int start = 0;
+      int idx;
+      while ( ( idx = aValue.indexOf( '\\', start ) ) >= 0 )
+      {
+        final byte[] run = aValue.substring( start, idx ).getBytes( UTF8 );
+        baos.write( run, 0, run.length );
+
+        final int hi = ( ( idx + 1 ) < aValue.length() ) ? Character.digit( aValue.charAt( idx + 1 ), 16 ) : -1;
+        final int lo = ( ( idx + 2 ) < aValue.length() ) ? Character.digit( aValue.charAt( idx + 2 ), 16 ) : -1;
+        if ( ( hi < 0 ) || ( lo < 0 ) )
+        {
+          throw error( "Invalid escape sequence in value: " + aValue );
+        }
+        baos.write( ( hi << 4 ) | lo );
+        start = idx + 3;
+      }
+      final byte[] run = aValue.substring( start ).getBytes( UTF8 );
+      baos.write( run, 0, run.length );
+
+      return baos.toByteArray();
+    }
+  }
+
+  // VARIABLES
+
+  private final int type;
+  private final String attribute;
+  private final String rule;
+  private final boolean dnAttributes;
+  private final int[] valueTags;
+  /** each value is either a byte array, or an array of byte arrays and parameter indexes. */
+  private final Object[] values;
+  private final LdapFilter[] children;
+  private final int parameterCount;
+
+  private volatile byte[] encoded;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapFilter object.
+   */
+  private LdapFilter( final int aType, final String aAttribute, final String aRule, final boolean aDNAttributes,
+      final int[] aValueTags, final Object[] aValues, final LdapFilter[] aChildren )
+  {
+    this.type = aType;
+    this.attribute = aAttribute;
+    this.rule = aRule;
+    this.dnAttributes = aDNAttributes;
+    this.valueTags = aValueTags;
+    this.values = aValues;
+    this.children = aChildren;
+
+    int count = 0;
+    for ( LdapFilter child : aChildren )
+    {
+      count = Math.max( count, child.parameterCount );
+    }
+    for ( Object value : aValues )
+    {
+      if ( value instanceof Object[] )
+      {
+        for ( Object segment : ( Object[] )value )
+        {
+          if ( segment instanceof Integer )
+          {
+            count = Math.max( count, ( ( Integer )segment ).intValue() + 1 );
+          }
+        }
+      }
+    }
+    this.parameterCount = count;
+  }
+
+  // METHODS
+
+  /**
+   * Compiles the given filter template, in which <tt>{0}</tt>, <tt>{1}</tt>,
+   * ... denote parameters.
+   * <p>
+   * Parameters can only be used in values, and can be combined with constant
+   * text, for example <tt>(cn={0}*)</tt> or <tt>(mail={0}@{1})</tt>. A
+   * literal <tt>{</tt> in a value should be escaped as <tt>\7b</tt>.
+   * </p>
+   *
+   * @param aTemplate
+   *          the filter template to compile, cannot be <code>null</code>. The
+   *          outer parentheses may be omitted.
+   * @return the compiled filter, never <code>null</code>.
+   * @throws InvalidSearchFilterException
+   *           in case the given template is invalid.
+   * @see #bind(Object...)
+   */
+  public static LdapFilter compile( final String aTemplate ) throws InvalidSearchFilterException
+  {
+    return new Parser( parenthesize( aTemplate ), true ).parse();
+  }
+
+  /**
+   * Decodes a BER encoded filter.
+   *
+   * @param aDecoder
+   *          the decoder to decode from, positioned at the start of the
+   *          filter, cannot be <code>null</code>.
+   * @return the decoded filter, never <code>null</code>.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public static LdapFilter decode( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final int tag = aDecoder.peekByte();
+    if ( tag == PRESENT )
+    {
+      return new LdapFilter( PRESENT, aDecoder.parseStringWithTag( PRESENT, true, null ), null, false, NO_TAGS,
+          NO_VALUES, NO_CHILDREN );
+    }
+
+    final int[] len = new int[1];
+    aDecoder.parseSeq( len );
+    final int end = aDecoder.getParsePosition() + len[0];
+
+    final LdapFilter result;
+    switch ( tag )
+    {
+      case AND:
+      case OR:
+        final List<LdapFilter> children = new ArrayList<LdapFilter>();
+        while ( aDecoder.getParsePosition() < end )
+        {
+          children.add( decode( aDecoder ) );
+        }
+        if ( children.isEmpty() )
+        {
+          throw new DecodeException( "Empty filter set" );
+        }
+        result = new LdapFilter( tag, null, null, false, NO_TAGS, NO_VALUES, children
+            .toArray( new LdapFilter[children.size()] ) );
+        break;
+
+      case NOT:
+        result = new LdapFilter( NOT, null, null, false, NO_TAGS, NO_VALUES, new LdapFilter[] { decode( aDecoder ) } );
+        break;
+
+      case EQUALITY_MATCH:
+      case GREATER_OR_EQUAL:
+      case LESS_OR_EQUAL:
+      case APPROX_MATCH:
+        final String attribute = aDecoder.parseString( true );
+        final byte[] value = aDecoder.parseOctetString( Ber.ASN_OCTET_STR, null );
+        result = new LdapFilter( tag, attribute, null, false, new int[] { Ber.ASN_OCTET_STR }, new Object[] { value },
+            NO_CHILDREN );
+        break;
+
+      case SUBSTRINGS:
+        final String substringsAttribute = aDecoder.parseString( true );
+        aDecoder.parseSeq( len );
+        final int substringsEnd = aDecoder.getParsePosition() + len[0];
+        final List<Object> substrings = new ArrayList<Object>();
+        final int[] tags = new int[( len[0] / 2 ) + 1];
+        int lastTag = 0;
+        while ( aDecoder.getParsePosition() < substringsEnd )
+        {
+          final int substringTag = aDecoder.peekByte();
+          if ( ( lastTag == SUBSTRING_FINAL ) || ( substringTag < SUBSTRING_INITIAL )
+              || ( substringTag > SUBSTRING_FINAL ) || ( ( substringTag == SUBSTRING_INITIAL ) && ( lastTag != 0 ) ) )
+          {
+            throw new DecodeException( "Invalid substring filter" );
+          }
+          tags[substrings.size()] = substringTag;
+          substrings.add( aDecoder.parseOctetString( substringTag, null ) );
+          lastTag = substringTag;
+        }
+        if ( substrings.isEmpty() )
+        {
+          throw new DecodeException( "Empty substring filter" );
+        }
+        result = new LdapFilter( SUBSTRINGS, substringsAttribute, null, false,
+            Arrays.copyOf( tags, substrings.size() ), substrings.toArray(), NO_CHILDREN );
+        break;
+
+      case EXTENSIBLE_MATCH:
+        String rule = null;
+        String type = null;
+        if ( aDecoder.peekByte() == MATCHING_RULE )
+        {
+          rule = aDecoder.parseStringWithTag( MATCHING_RULE, true, null );
+        }
+        if ( aDecoder.peekByte() == MATCHING_TYPE )
+        {
+          type = aDecoder.parseStringWithTag( MATCHING_TYPE, true, null );
+        }
+        final byte[] matchValue = aDecoder.parseOctetString( MATCH_VALUE, null );
+        boolean dnAttributes = false;
+        if ( ( aDecoder.getParsePosition() < end ) && ( aDecoder.peekByte() == DN_ATTRIBUTES ) )
+        {
+          dnAttributes = ( aDecoder.parseIntWithTag( DN_ATTRIBUTES ) != 0 );
+        }
+        result = new LdapFilter( EXTENSIBLE_MATCH, type, rule, dnAttributes, new int[] { MATCH_VALUE },
+            new Object[] { matchValue }, NO_CHILDREN );
+        break;
+
+      default:
+        throw new DecodeException( "Unknown filter type: " + Integer.toHexString( tag ) );
+    }
+
+    if ( aDecoder.getParsePosition() != end )
+    {
+      throw new DecodeException( "Invalid filter length" );
+    }
+    return result;
+  }
+
+  /**
+   * Parses the given filter.
+   * <p>
+   * In contrast to {@link #compile(String)}, braces in values have no special
+   * meaning.
+   * </p>
+   *
+   * @param aFilter
+   *          the filter to parse, cannot be <code>null</code>. The outer
+   *          parentheses may be omitted.
+   * @return the parsed filter, never <code>null</code>.
+   * @throws InvalidSearchFilterException
+   *           in case the given filter is invalid.
+   */
+  public static LdapFilter parse( final String aFilter ) throws InvalidSearchFilterException
+  {
+    return new Parser( parenthesize( aFilter ), false ).parse();
+  }
+
+  /**
+   * Creates a presence filter for the given attribute.
+   */
+  static LdapFilter present( final String aAttribute )
+  {
+    return new LdapFilter( PRESENT, aAttribute, null, false, NO_TAGS, NO_VALUES, NO_CHILDREN );
+  }
+
+  /**
+   * Escapes the given raw value for use in a filter string.
+   * <p>
+   * Values that are valid UTF-8 are escaped as described by
+   * {@link LibLdap#escapeFilterValue(String)}, other (binary) values are
+   * escaped entirely.
+   * </p>
+   */
+  private static void appendEscaped( final StringBuilder aSB, final byte[] aValue )
+  {
+    final CharsetDecoder decoder = UTF8.newDecoder().onMalformedInput( CodingErrorAction.REPORT )
+        .onUnmappableCharacter( CodingErrorAction.REPORT );
+    try
+    {
+      aSB.append( LibLdap.escapeFilterValue( decoder.decode( ByteBuffer.wrap( aValue ) ).toString() ) );
+    }
+    catch ( CharacterCodingException exception )
+    {
+      for ( byte value : aValue )
+      {
+        final int b = value & 0xff;
+        aSB.append( '\\' ).append( Character.forDigit( b >> 4, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+      }
+    }
+  }
+
+  /**
+   * Surrounds the given filter with parentheses in case it has none.
+   */
+  private static String parenthesize( final String aFilter )
+  {
+    final String filter = aFilter.trim();
+    return filter.startsWith( "(" ) ? filter : "(" + filter + ")";
+  }
+
+  /**
+   * Converts the given parameter to its raw value.
+   */
+  private static byte[] toBytes( final Object aParameter )
+  {
+    if ( aParameter == null )
+    {
+      throw new IllegalArgumentException( "Parameter cannot be null!" );
+    }
+    if ( aParameter instanceof byte[] )
+    {
+      return ( byte[] )aParameter;
+    }
+    return String.valueOf( aParameter ).getBytes( UTF8 );
+  }
+
+  /**
+   * Binds the parameters of this filter.
+   * <p>
+   * The parts of this filter that do not depend on parameters are shared with
+   * the returned filter, including their precompiled encoding.
+   * </p>
+   *
+   * @param aParameters
+   *          the values of the parameters, at least {@link #getParameterCount()}
+   *          . Strings are encoded as UTF-8, byte arrays are used as is, any
+   *          other object is converted to string first. Values cannot be
+   *          <code>null</code>.
+   * @return the bound filter, never <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case too few, or <code>null</code> parameters were given.
+   */
+  public LdapFilter bind( final Object... aParameters )
+  {
+    if ( this.parameterCount == 0 )
+    {
+      return this;
+    }
+    checkParameters( aParameters );
+
+    final LdapFilter[] boundChildren = new LdapFilter[this.children.length];
+    for ( int i = 0; i < boundChildren.length; i++ )
+    {
+      boundChildren[i] = this.children[i].bind( aParameters );
+    }
+    final Object[] boundValues = new Object[this.values.length];
+    for ( int i = 0; i < boundValues.length; i++ )
+    {
+      boundValues[i] = resolve( this.values[i], aParameters );
+    }
+
+    return new LdapFilter( this.type, this.attribute, this.rule, this.dnAttributes, this.valueTags, boundValues,
+        boundChildren );
+  }
+
+  /**
+   * Encodes this filter as BER.
+   *
+   * @param aEncoder
+   *          the encoder to encode with, cannot be <code>null</code>.
+   * @throws EncodeException
+   *           in case encoding failed.
+   * @throws IllegalStateException
+   *           in case this filter has unbound parameters.
+   */
+  public void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    if ( this.parameterCount > 0 )
+    {
+      throw new IllegalStateException( "Filter has unbound parameters: " + this );
+    }
+    encode( aEncoder, NO_VALUES );
+  }
+
+  /**
+   * Encodes this filter as BER, binding its parameters to the given values
+   * without creating a bound filter first.
+   *
+   * @param aEncoder
+   *          the encoder to encode with, cannot be <code>null</code>;
+   * @param aParameters
+   *          the values of the parameters, see {@link #bind(Object...)}.
+   * @throws EncodeException
+   *           in case encoding failed.
+   * @throws IllegalArgumentException
+   *           in case too few, or <code>null</code> parameters were given.
+   */
+  public void encode( final BerEncoder aEncoder, final Object... aParameters ) throws EncodeException
+  {
+    if ( this.parameterCount == 0 )
+    {
+      byte[] result = this.encoded;
+      if ( result == null )
+      {
+        final BerEncoder encoder = new BerEncoder( 256 );
+        encodeTo( encoder, null );
+        this.encoded = result = encoder.getTrimmedBuf();
+      }
+      aEncoder.encodeRaw( result, 0, result.length );
+    }
+    else
+    {
+      checkParameters( aParameters );
+      encodeTo( aEncoder, aParameters );
+    }
+  }
+
+  /**
+   * Formats this filter as string, binding its parameters to the given values.
+   *
+   * @param aParameters
+   *          the values of the parameters, see {@link #bind(Object...)}.
+   * @return the string representation of the bound filter, never
+   *         <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case too few, or <code>null</code> parameters were given.
+   */
+  public String format( final Object... aParameters )
+  {
+    return bind( aParameters ).toString();
+  }
+
+  /**
+   * Returns the value of this assertion, or the match value of this
+   * extensible match.
+   *
+   * @return the raw value, never <code>null</code>.
+   * @throws IllegalStateException
+   *           in case this filter is no (extensible) assertion, or has
+   *           unbound parameters.
+   */
+  public byte[] getAssertionValue()
+  {
+    if ( ( this.values.length != 1 ) || ( this.type == SUBSTRINGS ) )
+    {
+      throw new IllegalStateException( "Not an assertion filter!" );
+    }
+    return getValue( 0 );
+  }
+
+  /**
+   * Returns the attribute description this filter applies to.
+   *
+   * @return the attribute description, or <code>null</code> for and, or and
+   *         not filters, and extensible matches without type.
+   */
+  public String getAttribute()
+  {
+    return this.attribute;
+  }
+
+  /**
+   * Returns the nested filters of this and, or or not filter.
+   *
+   * @return the nested filters, never <code>null</code>.
+   */
+  public List<LdapFilter> getChildren()
+  {
+    return Collections.unmodifiableList( Arrays.asList( this.children ) );
+  }
+
+  /**
+   * Returns the matching rule of this extensible match.
+   *
+   * @return the matching rule, can be <code>null</code>.
+   */
+  public String getMatchingRule()
+  {
+    return this.rule;
+  }
+
+  /**
+   * Returns the number of parameters of this filter.
+   *
+   * @return the number of parameters, &gt;= 0.
+   */
+  public int getParameterCount()
+  {
+    return this.parameterCount;
+  }
+
+  /**
+   * Returns the middle parts of this substrings filter.
+   *
+   * @return the raw middle parts, never <code>null</code>.
+   */
+  public List<byte[]> getSubstringsAny()
+  {
+    final List<byte[]> result = new ArrayList<byte[]>( this.values.length );
+    for ( int i = 0; i < this.values.length; i++ )
+    {
+      if ( this.valueTags[i] == SUBSTRING_ANY )
+      {
+        result.add( getValue( i ) );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the final part of this substrings filter.
+   *
+   * @return the raw final part, or <code>null</code> if there is none.
+   */
+  public byte[] getSubstringsFinal()
+  {
+    final int last = this.values.length - 1;
+    return ( ( this.type == SUBSTRINGS ) && ( this.valueTags[last] == SUBSTRING_FINAL ) ) ? getValue( last ) : null;
+  }
+
+  /**
+   * Returns the initial part of this substrings filter.
+   *
+   * @return the raw initial part, or <code>null</code> if there is none.
+   */
+  public byte[] getSubstringsInitial()
+  {
+    return ( ( this.type == SUBSTRINGS ) && ( this.valueTags[0] == SUBSTRING_INITIAL ) ) ? getValue( 0 ) : null;
+  }
+
+  /**
+   * Returns the type of this filter.
+   *
+   * @return the type, for example {@link #EQUALITY_MATCH}.
+   */
+  public int getType()
+  {
+    return this.type;
+  }
+
+  /**
+   * Returns whether this extensible match also applies to the attributes of
+   * the DN of entries.
+   *
+   * @return <code>true</code> if the DN attributes are matched as well,
+   *         <code>false</code> otherwise.
+   */
+  public boolean isDNAttributes()
+  {
+    return this.dnAttributes;
+  }
+
+  /**
+   * Returns the string representation of this filter, as defined in RFC 4515.
+   * Unbound parameters are represented as <tt>{0}</tt>, <tt>{1}</tt>, ...
+   *
+   * @return the string representation, never <code>null</code>.
+   */
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder();
+    appendTo( sb );
+    return sb.toString();
+  }
+
+  /**
+   * Appends the string representation of this filter to the given builder.
+   */
+  private void appendTo( final StringBuilder aSB )
+  {
+    aSB.append( '(' );
+    switch ( this.type )
+    {
+      case AND:
+      case OR:
+      case NOT:
+        aSB.append( ( this.type == AND ) ? '&' : ( this.type == OR ) ? '|' : '!' );
+        for ( LdapFilter child : this.children )
+        {
+          child.appendTo( aSB );
+        }
+        break;
+
+      case PRESENT:
+        aSB.append( this.attribute ).append( "=*" );
+        break;
+
+      case SUBSTRINGS:
+        aSB.append( this.attribute ).append( '=' );
+        for ( int i = 0; i < this.values.length; i++ )
+        {
+          if ( this.valueTags[i] != SUBSTRING_INITIAL )
+          {
+            aSB.append( '*' );
+          }
+          appendValue( aSB, this.values[i] );
+        }
+        if ( this.valueTags[this.values.length - 1] != SUBSTRING_FINAL )
+        {
+          aSB.append( '*' );
+        }
+        break;
+
+      case EXTENSIBLE_MATCH:
+        if ( this.attribute != null )
+        {
+          aSB.append( this.attribute );
+        }
+        if ( this.dnAttributes )
+        {
+          aSB.append( ":dn" );
+        }
+        if ( this.rule != null )
+        {
+          aSB.append( ':' ).append( this.rule );
+        }
+        aSB.append( ":=" );
+        appendValue( aSB, this.values[0] );
+        break;
+
+      default:
+        aSB.append( this.attribute );
+        aSB.append( ( this.type == GREATER_OR_EQUAL ) ? ">=" : ( this.type == LESS_OR_EQUAL ) ? "<="
+            : ( this.type == APPROX_MATCH ) ? "~=" : "=" );
+        appendValue( aSB, this.values[0] );
+        break;
+    }
+    aSB.append( ')' );
+  }
+
+  /**
+   * Appends the given (escaped) value to the given builder.
+   */
+  private void appendValue( final StringBuilder aSB, final Object aValue )
+  {
+    if ( aValue instanceof byte[] )
+    {
+      appendEscaped( aSB, ( byte[] )aValue );
+      return;
+    }
+    for ( Object segment : ( Object[] )aValue )
+    {
+      if ( segment instanceof Integer )
+      {
+        aSB.append( '{' ).append( segment ).append( '}' );
+      }
+      else
+      {
+        appendEscaped( aSB, ( byte[] )segment );
+      }
+    }
+  }
+
+  /**
+   * Checks whether enough parameters are given.
+   */
+  private void checkParameters( final Object[] aParameters )
+  {
+    if ( ( aParameters == null ) || ( aParameters.length < this.parameterCount ) )
+    {
+      throw new IllegalArgumentException( "Filter needs " + this.parameterCount + " parameter(s): " + this );
+    }
+  }
+
+  /**
+   * Encodes this filter, binding its parameters to the given values, if any.
+   */
+  private void encodeTo( final BerEncoder aEncoder, final Object[] aParameters ) throws EncodeException
+  {
+    switch ( this.type )
+    {
+      case AND:
+      case OR:
+      case NOT:
+        aEncoder.beginSeq( this.type );
+        for ( LdapFilter child : this.children )
+        {
+          child.encode( aEncoder, aParameters );
+        }
+        aEncoder.endSeq();
+        break;
+
+      case PRESENT:
+        aEncoder.encodeString( this.attribute, PRESENT, true );
+        break;
+
+      case SUBSTRINGS:
+        aEncoder.beginSeq( SUBSTRINGS );
+        aEncoder.encodeString( this.attribute, true );
+        aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+        for ( int i = 0; i < this.values.length; i++ )
+        {
+          aEncoder.encodeOctetString( resolve( this.values[i], aParameters ), this.valueTags[i] );
+        }
+        aEncoder.endSeq();
+        aEncoder.endSeq();
+        break;
+
+      case EXTENSIBLE_MATCH:
+        aEncoder.beginSeq( EXTENSIBLE_MATCH );
+        if ( this.rule != null )
+        {
+          aEncoder.encodeString( this.rule, MATCHING_RULE, true );
+        }
+        if ( this.attribute != null )
+        {
+          aEncoder.encodeString( this.attribute, MATCHING_TYPE, true );
+        }
+        aEncoder.encodeOctetString( resolve( this.values[0], aParameters ), MATCH_VALUE );
+        if ( this.dnAttributes )
+        {
+          aEncoder.encodeBoolean( true, DN_ATTRIBUTES );
+        }
+        aEncoder.endSeq();
+        break;
+
+      default:
+        aEncoder.beginSeq( this.type );
+        aEncoder.encodeString( this.attribute, true );
+        aEncoder.encodeOctetString( resolve( this.values[0], aParameters ), Ber.ASN_OCTET_STR );
+        aEncoder.endSeq();
+        break;
+    }
+  }
+
+  /**
+   * Returns the given value as bound value.
+   */
+  private byte[] getValue( final int aIndex )
+  {
+    if ( !( this.values[aIndex] instanceof byte[] ) )
+    {
+      throw new IllegalStateException( "Filter has unbound parameters: " + this );
+    }
+    return ( byte[] )this.values[aIndex];
+  }
+
+  /**
+   * Resolves the given value, replacing its parameters by their values.
+   */
+  private byte[] resolve( final Object aValue, final Object[] aParameters )
+  {
+    if ( aValue instanceof byte[] )
+    {
+      return ( byte[] )aValue;
+    }
+
+    final Object[] segments = ( Object[] )aValue;
+    if ( segments.length == 1 )
+    {
+      return toBytes( aParameters[( ( Integer )segments[0] ).intValue()] );
+    }
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    for ( Object segment : segments )
+    {
+      final byte[] bytes = ( segment instanceof Integer ) ? toBytes( aParameters[( ( Integer )segment ).intValue()] )
+          : ( byte[] )segment;
+      baos.write( bytes, 0, bytes.length );
+    }
+    return baos.toByteArray();
+  }
+}
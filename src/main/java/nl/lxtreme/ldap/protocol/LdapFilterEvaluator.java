@@ -0,0 +1,529 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.nio.charset.*;
+import java.util.*;
+
+import nl.lxtreme.ldap.*;
+
+
+/**
+ * LdapFilterEvaluator matches entries that are already present on the client
+ * against a search filter, allowing queries to be answered without consulting
+ * the LDAP server, for example from a cache.
+ * <p>
+ * Entries can be given as {@link LdapEntry} or in the form returned by
+ * {@link LibLdap#getAttributes(String, String...)}. Attribute IDs are matched
+ * case-insensitively. As no schema is available on the client, string values
+ * are compared as by the <tt>caseIgnoreMatch</tt> matching rule, that is,
+ * ignoring case and insignificant spaces, and binary values (byte arrays) are
+ * compared as octet strings. Equality is always a string comparison, while
+ * ordering is numeric in case both values are integers, and lexicographical
+ * otherwise. Approximate matches are evaluated as equality matches.
+ * </p>
+ * <p>
+ * Filters are evaluated using the three-valued logic of RFC 4511, in which an
+ * assertion that cannot be evaluated, such as an extensible match with an
+ * unknown matching rule, is <em>Undefined</em> and never matches, not even
+ * when negated.
+ * </p>
+ * <p>
+ * The filter is prepared once, hence an evaluator should be reused for
+ * matching many entries. Instances are immutable and can be shared between
+ * threads.
+ * </p>
+ */
+public final class LdapFilterEvaluator
+{
+  // CONSTANTS
+
+  private static final int FALSE = 0;
+  private static final int TRUE = 1;
+  private static final int UNDEFINED = 2;
+
+  private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  // INNER TYPES
+
+  /**
+   * Provides the prepared form of a single (nested) filter.
+   */
+  private static final class Node
+  {
+    // VARIABLES
+
+    final int type;
+    final String attribute;
+    final Node[] children;
+    final boolean supported;
+    final boolean caseExact;
+    /** the raw assertion value, or the raw substrings in order. */
+    final byte[][] raw;
+    /** the normalized assertion value, or the normalized substrings in order. */
+    final String[] normalized;
+    final boolean hasInitial;
+    final boolean hasFinal;
+    /** the numeric assertion value of an ordering match, if any. */
+    final Long number;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Node object.
+     */
+    Node( final LdapFilter aFilter )
+    {
+      final int filterType = aFilter.getType();
+
+      final List<LdapFilter> nested = aFilter.getChildren();
+      this.children = new Node[nested.size()];
+      for ( int i = 0; i < this.children.length; i++ )
+      {
+        this.children[i] = new Node( nested.get( i ) );
+      }
+
+      final String rule = aFilter.getMatchingRule();
+      if ( filterType == LdapFilter.EXTENSIBLE_MATCH )
+      {
+        this.caseExact = "caseExactMatch".equalsIgnoreCase( rule ) || "2.5.13.5".equals( rule )
+            || "octetStringMatch".equalsIgnoreCase( rule ) || "2.5.13.17".equals( rule );
+        this.supported = ( aFilter.getAttribute() != null ) && !aFilter.isDNAttributes()
+            && ( ( rule == null ) || this.caseExact || "caseIgnoreMatch".equalsIgnoreCase( rule )
+                || "2.5.13.2".equals( rule ) );
+        // Extensible matches are equality matches for all supported rules...
+        this.type = LdapFilter.EQUALITY_MATCH;
+      }
+      else
+      {
+        this.caseExact = false;
+        this.supported = true;
+        this.type = ( filterType == LdapFilter.APPROX_MATCH ) ? LdapFilter.EQUALITY_MATCH : filterType;
+      }
+      this.attribute = aFilter.getAttribute();
+
+      if ( this.type == LdapFilter.SUBSTRINGS )
+      {
+        final byte[] initial = aFilter.getSubstringsInitial();
+        final byte[] last = aFilter.getSubstringsFinal();
+
+        final List<byte[]> parts = new ArrayList<byte[]>();
+        if ( initial != null )
+        {
+          parts.add( initial );
+        }
+        parts.addAll( aFilter.getSubstringsAny() );
+        if ( last != null )
+        {
+          parts.add( last );
+        }
+
+        this.hasInitial = ( initial != null );
+        this.hasFinal = ( last != null );
+        this.raw = parts.toArray( new byte[parts.size()][] );
+      }
+      else
+      {
+        this.hasInitial = false;
+        this.hasFinal = false;
+        this.raw = ( ( this.children.length > 0 ) || ( this.type == LdapFilter.PRESENT ) ) ? new byte[0][]
+            : new byte[][] { aFilter.getAssertionValue() };
+      }
+
+      this.normalized = new String[this.raw.length];
+      for ( int i = 0; i < this.raw.length; i++ )
+      {
+        // Spaces around substrings are significant, as they join other parts...
+        this.normalized[i] = normalize( new String( this.raw[i], UTF8 ), this.caseExact,
+            this.type != LdapFilter.SUBSTRINGS );
+      }
+
+      // Only ordering is numeric, for equality "007" and "7" remain different
+      // strings, as they are for the caseIgnoreMatch rule...
+      final boolean ordering = ( this.type == LdapFilter.GREATER_OR_EQUAL )
+          || ( this.type == LdapFilter.LESS_OR_EQUAL );
+      this.number = ordering ? parseNumber( this.normalized[0] ) : null;
+    }
+  }
+
+  // VARIABLES
+
+  private final LdapFilter filter;
+  private final Node root;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapFilterEvaluator object.
+   *
+   * @param aFilter
+   *          the filter to evaluate, whose parameters should be bound, cannot
+   *          be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given filter was <code>null</code> or has unbound
+   *           parameters.
+   */
+  public LdapFilterEvaluator( final LdapFilter aFilter )
+  {
+    if ( aFilter == null )
+    {
+      throw new IllegalArgumentException( "Filter cannot be null!" );
+    }
+    if ( aFilter.getParameterCount() > 0 )
+    {
+      throw new IllegalArgumentException( "Filter has unbound parameters: " + aFilter );
+    }
+    this.filter = aFilter;
+    this.root = new Node( aFilter );
+  }
+
+  // METHODS
+
+  /**
+   * Normalizes the given string value, optionally removing leading and
+   * trailing spaces, and collapsing all other sequences of spaces to a single
+   * space.
+   */
+  private static String normalize( final String aValue, final boolean aCaseExact, final boolean aTrim )
+  {
+    final StringBuilder sb = new StringBuilder( aValue.length() );
+    boolean space = false;
+    for ( int i = 0; i < aValue.length(); i++ )
+    {
+      final char c = aValue.charAt( i );
+      if ( Character.isWhitespace( c ) )
+      {
+        space = !aTrim || ( sb.length() > 0 );
+        continue;
+      }
+      if ( space )
+      {
+        sb.append( ' ' );
+        space = false;
+      }
+      sb.append( aCaseExact ? c : Character.toLowerCase( Character.toUpperCase( c ) ) );
+    }
+    if ( space && !aTrim )
+    {
+      sb.append( ' ' );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Parses the given value as integer.
+   *
+   * @return the integer value, or <code>null</code> if the given value is no
+   *         integer.
+   */
+  private static Long parseNumber( final String aValue )
+  {
+    final int length = aValue.length();
+    if ( ( length == 0 ) || ( length > 19 ) )
+    {
+      return null;
+    }
+    for ( int i = ( aValue.charAt( 0 ) == '-' ) ? 1 : 0; i < length; i++ )
+    {
+      final char c = aValue.charAt( i );
+      if ( ( c < '0' ) || ( c > '9' ) )
+      {
+        return null;
+      }
+    }
+    try
+    {
+      return Long.valueOf( aValue );
+    }
+    catch ( NumberFormatException exception )
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the filter evaluated by this evaluator.
+   *
+   * @return the filter, never <code>null</code>.
+   */
+  public LdapFilter getFilter()
+  {
+    return this.filter;
+  }
+
+  /**
+   * Returns whether the given entry matches the filter.
+   *
+   * @param aEntry
+   *          the entry to match, cannot be <code>null</code>.
+   * @return <code>true</code> if the given entry matches, <code>false</code>
+   *         otherwise.
+   */
+  public boolean matches( final LdapEntry aEntry )
+  {
+    if ( aEntry == null )
+    {
+      throw new IllegalArgumentException( "Entry cannot be null!" );
+    }
+    return evaluate( this.root, aEntry ) == TRUE;
+  }
+
+  /**
+   * Returns whether the given attributes match the filter.
+   *
+   * @param aAttributes
+   *          the attributes to match, as map of {ID -&gt; values}, cannot be
+   *          <code>null</code>.
+   * @return <code>true</code> if the given attributes match,
+   *         <code>false</code> otherwise.
+   */
+  public boolean matches( final Map<String, ? extends Collection<?>> aAttributes )
+  {
+    if ( aAttributes == null )
+    {
+      throw new IllegalArgumentException( "Attributes cannot be null!" );
+    }
+    return evaluate( this.root, aAttributes ) == TRUE;
+  }
+
+  /**
+   * Returns all given entries that match the filter.
+   *
+   * @param aEntries
+   *          the entries to match, cannot be <code>null</code>.
+   * @return the matching entries, in the order in which they were given, never
+   *         <code>null</code>.
+   */
+  public List<LdapEntry> select( final Collection<LdapEntry> aEntries )
+  {
+    final List<LdapEntry> result = new ArrayList<LdapEntry>();
+    for ( LdapEntry entry : aEntries )
+    {
+      if ( matches( entry ) )
+      {
+        result.add( entry );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "LdapFilterEvaluator(" + this.filter + ")";
+  }
+
+  /**
+   * Compares the given attribute value with the assertion value of the given
+   * node.
+   *
+   * @return the comparison result, or {@link #INCOMPARABLE} if the values
+   *         cannot be compared.
+   */
+  private int compare( final Node aNode, final Object aValue )
+  {
+    if ( aValue instanceof byte[] )
+    {
+      if ( aNode.type != LdapFilter.EQUALITY_MATCH )
+      {
+        return INCOMPARABLE;
+      }
+      return Arrays.equals( ( byte[] )aValue, aNode.raw[0] ) ? 0 : 1;
+    }
+
+    final String value = normalize( String.valueOf( aValue ), aNode.caseExact, true );
+    if ( aNode.number != null )
+    {
+      final Long number = parseNumber( value );
+      if ( number != null )
+      {
+        return number.compareTo( aNode.number );
+      }
+    }
+    return Math.max( -1, Math.min( 1, value.compareTo( aNode.normalized[0] ) ) );
+  }
+
+  /**
+   * Evaluates the given node against the given entry or attributes.
+   *
+   * @return {@link #TRUE}, {@link #FALSE} or {@link #UNDEFINED}.
+   */
+  private int evaluate( final Node aNode, final Object aEntry )
+  {
+    switch ( aNode.type )
+    {
+      case LdapFilter.AND:
+        int and = TRUE;
+        for ( Node child : aNode.children )
+        {
+          final int result = evaluate( child, aEntry );
+          if ( result == FALSE )
+          {
+            return FALSE;
+          }
+          and = Math.max( and, result );
+        }
+        return and;
+
+      case LdapFilter.OR:
+        int or = FALSE;
+        for ( Node child : aNode.children )
+        {
+          final int result = evaluate( child, aEntry );
+          if ( result == TRUE )
+          {
+            return TRUE;
+          }
+          or = Math.max( or, result );
+        }
+        return or;
+
+      case LdapFilter.NOT:
+        final int not = evaluate( aNode.children[0], aEntry );
+        return ( not == UNDEFINED ) ? UNDEFINED : ( TRUE - not );
+
+      default:
+        if ( !aNode.supported )
+        {
+          return UNDEFINED;
+        }
+
+        final Collection<?> values = getValues( aEntry, aNode.attribute );
+        if ( ( values == null ) || values.isEmpty() )
+        {
+          return FALSE;
+        }
+        if ( aNode.type == LdapFilter.PRESENT )
+        {
+          return TRUE;
+        }
+
+        int match = FALSE;
+        for ( Object value : values )
+        {
+          final int result = evaluateValue( aNode, value );
+          if ( result == TRUE )
+          {
+            return TRUE;
+          }
+          match = Math.max( match, result );
+        }
+        return match;
+    }
+  }
+
+  /**
+   * Evaluates the given assertion node against a single attribute value.
+   *
+   * @return {@link #TRUE}, {@link #FALSE} or {@link #UNDEFINED}.
+   */
+  private int evaluateValue( final Node aNode, final Object aValue )
+  {
+    if ( aNode.type == LdapFilter.SUBSTRINGS )
+    {
+      if ( aValue instanceof byte[] )
+      {
+        return UNDEFINED;
+      }
+      return matchesSubstrings( aNode, normalize( String.valueOf( aValue ), false, true ) ) ? TRUE : FALSE;
+    }
+
+    final int c = compare( aNode, aValue );
+    if ( c == INCOMPARABLE )
+    {
+      return UNDEFINED;
+    }
+
+    switch ( aNode.type )
+    {
+      case LdapFilter.GREATER_OR_EQUAL:
+        return ( c >= 0 ) ? TRUE : FALSE;
+
+      case LdapFilter.LESS_OR_EQUAL:
+        return ( c <= 0 ) ? TRUE : FALSE;
+
+      default:
+        return ( c == 0 ) ? TRUE : FALSE;
+    }
+  }
+
+  /**
+   * Returns the values of the given attribute of the given entry or
+   * attributes, matching the attribute ID case-insensitively.
+   *
+   * @return the values, or <code>null</code> if not present.
+   */
+  private Collection<?> getValues( final Object aEntry, final String aAttributeID )
+  {
+    if ( aEntry instanceof LdapEntry )
+    {
+      return ( ( LdapEntry )aEntry ).getValues( aAttributeID );
+    }
+
+    final Map<?, ?> attributes = ( Map<?, ?> )aEntry;
+    final Object values = attributes.get( aAttributeID );
+    if ( values != null )
+    {
+      return ( Collection<?> )values;
+    }
+    for ( Map.Entry<?, ?> entry : attributes.entrySet() )
+    {
+      if ( aAttributeID.equalsIgnoreCase( String.valueOf( entry.getKey() ) ) )
+      {
+        return ( Collection<?> )entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the given normalized value matches the substrings of the
+   * given node.
+   */
+  private boolean matchesSubstrings( final Node aNode, final String aValue )
+  {
+    final String[] parts = aNode.normalized;
+
+    int pos = 0;
+    int first = 0;
+    int last = parts.length;
+    if ( aNode.hasInitial )
+    {
+      if ( !aValue.startsWith( parts[0] ) )
+      {
+        return false;
+      }
+      pos = parts[0].length();
+      first++;
+    }
+    int end = aValue.length();
+    if ( aNode.hasFinal )
+    {
+      last--;
+      end -= parts[last].length();
+      if ( ( end < pos ) || !aValue.endsWith( parts[last] ) )
+      {
+        return false;
+      }
+    }
+    for ( int i = first; i < last; i++ )
+    {
+      final int idx = aValue.indexOf( parts[i], pos );
+      if ( ( idx < 0 ) || ( ( idx + parts[i].length() ) > end ) )
+      {
+        return false;
+      }
+      pos = idx + parts[i].length();
+    }
+    return true;
+  }
+}
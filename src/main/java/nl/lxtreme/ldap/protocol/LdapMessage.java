@@ -0,0 +1,148 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+
+
+/**
+ * LdapMessage represents the envelope of all LDAP protocol operations.
+ *
+ * <pre>
+ * LDAPMessage ::= SEQUENCE {
+ *      messageID       MessageID,
+ *      protocolOp      CHOICE { ... },
+ *      controls        [0] Controls OPTIONAL }
+ * </pre>
+ *
+ * @see LdapMessageCodec
+ */
+public final class LdapMessage
+{
+  // VARIABLES
+
+  private final int messageId;
+  private final LdapOperation operation;
+  private final List<LdapControl> controls;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapMessage object without controls.
+   *
+   * @param aMessageId
+   *          the message ID, &gt;= 0;
+   * @param aOperation
+   *          the protocol operation, cannot be <code>null</code>.
+   */
+  public LdapMessage( final int aMessageId, final LdapOperation aOperation )
+  {
+    this( aMessageId, aOperation, Collections.<LdapControl> emptyList() );
+  }
+
+  /**
+   * Creates a new LdapMessage object.
+   *
+   * @param aMessageId
+   *          the message ID, &gt;= 0;
+   * @param aOperation
+   *          the protocol operation, cannot be <code>null</code>;
+   * @param aControls
+   *          the controls of the message, cannot be <code>null</code>.
+   */
+  public LdapMessage( final int aMessageId, final LdapOperation aOperation, final List<LdapControl> aControls )
+  {
+    if ( aMessageId < 0 )
+    {
+      throw new IllegalArgumentException( "Message ID cannot be negative!" );
+    }
+    if ( aOperation == null )
+    {
+      throw new IllegalArgumentException( "Operation cannot be null!" );
+    }
+    this.messageId = aMessageId;
+    this.operation = aOperation;
+    this.controls = aControls.isEmpty() ? Collections.<LdapControl> emptyList() : Collections
+        .unmodifiableList( new ArrayList<LdapControl>( aControls ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the first control with the given OID.
+   *
+   * @param aOID
+   *          the OID of the control to return, cannot be <code>null</code>.
+   * @return the control, or <code>null</code> if this message has no such
+   *         control.
+   */
+  public LdapControl getControl( final String aOID )
+  {
+    for ( LdapControl control : this.controls )
+    {
+      if ( aOID.equals( control.getOID() ) )
+      {
+        return control;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the controls of this message.
+   *
+   * @return the controls, never <code>null</code>.
+   */
+  public List<LdapControl> getControls()
+  {
+    return this.controls;
+  }
+
+  /**
+   * Returns the message ID.
+   *
+   * @return the message ID, &gt;= 0.
+   */
+  public int getMessageId()
+  {
+    return this.messageId;
+  }
+
+  /**
+   * Returns the protocol operation.
+   *
+   * @return the operation, never <code>null</code>.
+   */
+  public LdapOperation getOperation()
+  {
+    return this.operation;
+  }
+
+  /**
+   * Returns the protocol operation, cast to the given type.
+   *
+   * @param aType
+   *          the expected type of the operation, cannot be <code>null</code>.
+   * @return the operation, never <code>null</code>.
+   * @throws ClassCastException
+   *           in case the operation is not of the expected type.
+   */
+  public <T extends LdapOperation> T getOperation( final Class<T> aType )
+  {
+    return aType.cast( this.operation );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "LdapMessage(" + this.messageId + ", " + this.operation
+        + ( this.controls.isEmpty() ? "" : ", " + this.controls ) + ")";
+  }
+}
@@ -0,0 +1,518 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.nio.*;
+import java.util.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * LdapMessageCodec encodes and decodes {@link LdapMessage}s, as defined in RFC
+ * 4511, using our own BER encoder and decoder.
+ * <p>
+ * Unknown trailing elements of protocol operations are skipped while decoding,
+ * as required by the extensibility rules of RFC 4511. Unknown protocol
+ * operations are decoded as {@link UnknownOperation}.
+ * </p>
+ */
+public final class LdapMessageCodec implements LdapProtocol
+{
+  // CONSTANTS
+
+  private static final int SEQUENCE = Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR;
+  private static final int SET = Ber.ASN_SET | Ber.ASN_CONSTRUCTOR;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapMessageCodec object, never used.
+   */
+  private LdapMessageCodec()
+  {
+    // Nop
+  }
+
+  // METHODS
+
+  /**
+   * Decodes a single message from the given array.
+   *
+   * @param aBuf
+   *          the array to decode, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the array to start decoding;
+   * @param aLength
+   *          the number of bytes available for decoding.
+   * @return the decoded message, never <code>null</code>.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public static LdapMessage decode( final byte[] aBuf, final int aOffset, final int aLength ) throws DecodeException
+  {
+    return decode( new BerBufferDecoder( ByteBuffer.wrap( aBuf ), aOffset, aOffset + aLength ) );
+  }
+
+  /**
+   * Decodes a single message from the remaining bytes of the given buffer.
+   * <p>
+   * Upon success, the position of the buffer is advanced to the end of the
+   * decoded message. Upon failure, the position is left unchanged.
+   * </p>
+   *
+   * @param aBuf
+   *          the buffer to decode, cannot be <code>null</code>.
+   * @return the decoded message, never <code>null</code>.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public static LdapMessage decode( final ByteBuffer aBuf ) throws DecodeException
+  {
+    final BerBufferDecoder decoder = new BerBufferDecoder( aBuf );
+    final LdapMessage result = decode( decoder );
+    aBuf.position( decoder.getParsePosition() );
+    return result;
+  }
+
+  /**
+   * Decodes a single message, starting at the current position of the given
+   * decoder.
+   *
+   * @param aDecoder
+   *          the decoder to decode from, cannot be <code>null</code>.
+   * @return the decoded message, never <code>null</code>.
+   * @throws DecodeException
+   *           in case decoding failed.
+   */
+  public static LdapMessage decode( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final int end = parseSeq( aDecoder, SEQUENCE );
+
+    final int messageId = aDecoder.parseInt();
+    final LdapOperation operation = decodeOperation( aDecoder );
+
+    List<LdapControl> controls = Collections.emptyList();
+    if ( ( aDecoder.getParsePosition() < end ) && ( aDecoder.peekByte() == CONTROLS ) )
+    {
+      controls = decodeControls( aDecoder );
+    }
+    skipTo( aDecoder, end );
+
+    return new LdapMessage( messageId, operation, controls );
+  }
+
+  /**
+   * Encodes the given message into a new array.
+   *
+   * @param aMessage
+   *          the message to encode, cannot be <code>null</code>.
+   * @return the encoded message, never <code>null</code>.
+   * @throws EncodeException
+   *           in case encoding failed.
+   */
+  public static byte[] encode( final LdapMessage aMessage ) throws EncodeException
+  {
+    final BerEncoder encoder = BerEncoder.acquire();
+    try
+    {
+      encode( aMessage, encoder );
+      return encoder.getTrimmedBuf();
+    }
+    finally
+    {
+      // Messages can contain credentials, like those of a bind request...
+      encoder.reset();
+    }
+  }
+
+  /**
+   * Encodes the given message with the given encoder.
+   *
+   * @param aMessage
+   *          the message to encode, cannot be <code>null</code>;
+   * @param aEncoder
+   *          the encoder to encode with, cannot be <code>null</code>.
+   * @throws EncodeException
+   *           in case encoding failed.
+   */
+  public static void encode( final LdapMessage aMessage, final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( SEQUENCE );
+    aEncoder.encodeInt( aMessage.getMessageId() );
+    aMessage.getOperation().encode( aEncoder );
+
+    if ( !aMessage.getControls().isEmpty() )
+    {
+      aEncoder.beginSeq( CONTROLS );
+      for ( LdapControl control : aMessage.getControls() )
+      {
+        aEncoder.beginSeq( SEQUENCE );
+        aEncoder.encodeString( control.getOID(), true );
+        if ( control.isCritical() )
+        {
+          aEncoder.encodeBoolean( true );
+        }
+        if ( control.getValue() != null )
+        {
+          aEncoder.encodeOctetString( control.getValue(), Ber.ASN_OCTET_STR );
+        }
+        aEncoder.endSeq();
+      }
+      aEncoder.endSeq();
+    }
+
+    aEncoder.endSeq();
+  }
+
+  /**
+   * Decodes the controls of a message.
+   */
+  private static List<LdapControl> decodeControls( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final int end = parseSeq( aDecoder, CONTROLS );
+
+    final List<LdapControl> result = new ArrayList<LdapControl>();
+    while ( aDecoder.getParsePosition() < end )
+    {
+      final int controlEnd = parseSeq( aDecoder, SEQUENCE );
+
+      final String oid = aDecoder.parseString( true );
+      boolean critical = false;
+      byte[] value = null;
+      if ( ( aDecoder.getParsePosition() < controlEnd ) && ( aDecoder.peekByte() == Ber.ASN_BOOLEAN ) )
+      {
+        critical = aDecoder.parseBoolean();
+      }
+      if ( ( aDecoder.getParsePosition() < controlEnd ) && ( aDecoder.peekByte() == Ber.ASN_OCTET_STR ) )
+      {
+        value = aDecoder.parseOctetString( Ber.ASN_OCTET_STR, null );
+      }
+      skipTo( aDecoder, controlEnd );
+
+      result.add( new LdapControl( oid, critical, value ) );
+    }
+    return result;
+  }
+
+  /**
+   * Decodes a protocol operation.
+   */
+  private static LdapOperation decodeOperation( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final int type = aDecoder.peekByte();
+
+    final LdapOperation result;
+    switch ( type )
+    {
+      case UNBIND_REQUEST:
+        skipTo( aDecoder, parseSeq( aDecoder, UNBIND_REQUEST ) );
+        return new UnbindRequest();
+
+      case DEL_REQUEST:
+        return new DeleteRequest( aDecoder.parseStringWithTag( DEL_REQUEST, true, null ) );
+
+      case ABANDON_REQUEST:
+        return new AbandonRequest( aDecoder.parseIntWithTag( ABANDON_REQUEST ) );
+
+      default:
+        break;
+    }
+
+    final int end = parseSeq( aDecoder, type );
+    switch ( type )
+    {
+      case BIND_REQUEST:
+        result = decodeBindRequest( aDecoder );
+        break;
+
+      case BIND_RESPONSE:
+        final LdapResult bindResult = decodeResult( aDecoder, end );
+        byte[] serverSaslCreds = null;
+        if ( ( aDecoder.getParsePosition() < end ) && ( aDecoder.peekByte() == BindResponse.SERVER_SASL_CREDS ) )
+        {
+          serverSaslCreds = aDecoder.parseOctetString( BindResponse.SERVER_SASL_CREDS, null );
+        }
+        result = new BindResponse( bindResult, serverSaslCreds );
+        break;
+
+      case SEARCH_REQUEST:
+        result = decodeSearchRequest( aDecoder );
+        break;
+
+      case SEARCH_RESULT_ENTRY:
+        final String objectName = aDecoder.parseString( true );
+        result = new SearchResultEntry( objectName, decodeAttributes( aDecoder ) );
+        break;
+
+      case SEARCH_RESULT_REFERENCE:
+        final List<String> uris = new ArrayList<String>();
+        while ( aDecoder.getParsePosition() < end )
+        {
+          uris.add( aDecoder.parseString( true ) );
+        }
+        result = new SearchResultReference( uris );
+        break;
+
+      case SEARCH_RESULT_DONE:
+      case MODIFY_RESPONSE:
+      case ADD_RESPONSE:
+      case DEL_RESPONSE:
+      case COMPARE_RESPONSE:
+        result = new LdapResponse( type, decodeResult( aDecoder, end ) );
+        break;
+
+      case MODIFY_REQUEST:
+        result = decodeModifyRequest( aDecoder );
+        break;
+
+      case ADD_REQUEST:
+        final String entry = aDecoder.parseString( true );
+        result = new AddRequest( entry, decodeAttributes( aDecoder ) );
+        break;
+
+      case COMPARE_REQUEST:
+        final String name = aDecoder.parseString( true );
+        final int avaEnd = parseSeq( aDecoder, SEQUENCE );
+        final String attributeDesc = aDecoder.parseString( true );
+        final byte[] assertionValue = aDecoder.parseOctetString( Ber.ASN_OCTET_STR, null );
+        skipTo( aDecoder, avaEnd );
+        result = new CompareRequest( name, attributeDesc, assertionValue );
+        break;
+
+      case EXTENDED_REQUEST:
+        final String requestName = aDecoder.parseStringWithTag( ExtendedOperationRequest.REQUEST_NAME, true, null );
+        byte[] requestValue = null;
+        if ( ( aDecoder.getParsePosition() < end ) && ( aDecoder.peekByte() == ExtendedOperationRequest.REQUEST_VALUE ) )
+        {
+          requestValue = aDecoder.parseOctetString( ExtendedOperationRequest.REQUEST_VALUE, null );
+        }
+        result = new ExtendedOperationRequest( requestName, requestValue );
+        break;
+
+      case EXTENDED_RESPONSE:
+        final LdapResult extendedResult = decodeResult( aDecoder, end );
+        String responseName = null;
+        byte[] responseValue = null;
+        if ( ( aDecoder.getParsePosition() < end )
+            && ( aDecoder.peekByte() == ExtendedOperationResponse.RESPONSE_NAME ) )
+        {
+          responseName = aDecoder.parseStringWithTag( ExtendedOperationResponse.RESPONSE_NAME, true, null );
+        }
+        if ( ( aDecoder.getParsePosition() < end )
+            && ( aDecoder.peekByte() == ExtendedOperationResponse.RESPONSE_VALUE ) )
+        {
+          responseValue = aDecoder.parseOctetString( ExtendedOperationResponse.RESPONSE_VALUE, null );
+        }
+        result = new ExtendedOperationResponse( extendedResult, responseName, responseValue );
+        break;
+
+      case INTERMEDIATE_RESPONSE:
+        String intermediateName = null;
+        byte[] intermediateValue = null;
+        if ( ( aDecoder.getParsePosition() < end )
+            && ( aDecoder.peekByte() == IntermediateResponse.RESPONSE_NAME ) )
+        {
+          intermediateName = aDecoder.parseStringWithTag( IntermediateResponse.RESPONSE_NAME, true, null );
+        }
+        if ( ( aDecoder.getParsePosition() < end )
+            && ( aDecoder.peekByte() == IntermediateResponse.RESPONSE_VALUE ) )
+        {
+          intermediateValue = aDecoder.parseOctetString( IntermediateResponse.RESPONSE_VALUE, null );
+        }
+        result = new IntermediateResponse( intermediateName, intermediateValue );
+        break;
+
+      default:
+        // Unknown operations are retained undecoded, and skipped by their
+        // length, so they do not fail the remainder of the stream...
+        final int start = aDecoder.getParsePosition();
+        final byte[] contents = new byte[end - start];
+        aDecoder.slice( start, contents.length ).get( contents );
+        result = new UnknownOperation( type, contents );
+        break;
+    }
+    skipTo( aDecoder, end );
+
+    return result;
+  }
+
+  /**
+   * Decodes a (partial) attribute list.
+   */
+  private static List<PartialAttribute> decodeAttributes( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final int end = parseSeq( aDecoder, SEQUENCE );
+
+    final List<PartialAttribute> result = new ArrayList<PartialAttribute>();
+    while ( aDecoder.getParsePosition() < end )
+    {
+      result.add( decodeAttribute( aDecoder ) );
+    }
+    return result;
+  }
+
+  /**
+   * Decodes a single (partial) attribute.
+   */
+  private static PartialAttribute decodeAttribute( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final int end = parseSeq( aDecoder, SEQUENCE );
+
+    final String type = aDecoder.parseString( true );
+
+    final int valuesEnd = parseSeq( aDecoder, SET );
+    final List<byte[]> values = new ArrayList<byte[]>();
+    while ( aDecoder.getParsePosition() < valuesEnd )
+    {
+      values.add( aDecoder.parseOctetString( Ber.ASN_OCTET_STR, null ) );
+    }
+    skipTo( aDecoder, end );
+
+    return new PartialAttribute( type, values );
+  }
+
+  /**
+   * Decodes the components of a BindRequest.
+   */
+  private static BindRequest decodeBindRequest( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final int version = aDecoder.parseInt();
+    final String name = aDecoder.parseString( true );
+
+    final int auth = aDecoder.peekByte();
+    if ( auth == BindRequest.AUTH_SIMPLE )
+    {
+      return new BindRequest( version, name, null, aDecoder.parseOctetString( BindRequest.AUTH_SIMPLE, null ) );
+    }
+    else if ( auth == BindRequest.AUTH_SASL )
+    {
+      final int end = parseSeq( aDecoder, BindRequest.AUTH_SASL );
+      final String mechanism = aDecoder.parseString( true );
+      byte[] credentials = null;
+      if ( aDecoder.getParsePosition() < end )
+      {
+        credentials = aDecoder.parseOctetString( Ber.ASN_OCTET_STR, null );
+      }
+      skipTo( aDecoder, end );
+      return new BindRequest( version, name, mechanism, credentials );
+    }
+
+    throw new DecodeException( "Unsupported authentication choice: " + Integer.toHexString( auth ) );
+  }
+
+  /**
+   * Decodes the components of a ModifyRequest.
+   */
+  private static ModifyRequest decodeModifyRequest( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final String object = aDecoder.parseString( true );
+
+    final int end = parseSeq( aDecoder, SEQUENCE );
+    final List<ModifyRequest.Change> changes = new ArrayList<ModifyRequest.Change>();
+    while ( aDecoder.getParsePosition() < end )
+    {
+      final int changeEnd = parseSeq( aDecoder, SEQUENCE );
+      final int operation = aDecoder.parseEnumeration();
+      final PartialAttribute modification = decodeAttribute( aDecoder );
+      skipTo( aDecoder, changeEnd );
+
+      try
+      {
+        changes.add( new ModifyRequest.Change( operation, modification ) );
+      }
+      catch ( IllegalArgumentException exception )
+      {
+        throw new DecodeException( exception.getMessage() );
+      }
+    }
+
+    return new ModifyRequest( object, changes );
+  }
+
+  /**
+   * Decodes the components of a LDAPResult, which ends before the given end
+   * offset of its enclosing response.
+   */
+  private static LdapResult decodeResult( final BerBufferDecoder aDecoder, final int aEnd ) throws DecodeException
+  {
+    final int resultCode = aDecoder.parseEnumeration();
+    final String matchedDN = aDecoder.parseString( true );
+    final String diagnosticMessage = aDecoder.parseString( true );
+
+    List<String> referrals = Collections.emptyList();
+    if ( ( aDecoder.getParsePosition() < aEnd ) && ( aDecoder.peekByte() == REFERRAL ) )
+    {
+      final int end = parseSeq( aDecoder, REFERRAL );
+      referrals = new ArrayList<String>();
+      while ( aDecoder.getParsePosition() < end )
+      {
+        referrals.add( aDecoder.parseString( true ) );
+      }
+    }
+
+    return new LdapResult( resultCode, matchedDN, diagnosticMessage, referrals );
+  }
+
+  /**
+   * Decodes the components of a SearchRequest.
+   */
+  private static SearchRequest decodeSearchRequest( final BerBufferDecoder aDecoder ) throws DecodeException
+  {
+    final String baseObject = aDecoder.parseString( true );
+    final int scope = aDecoder.parseEnumeration();
+    final int derefAliases = aDecoder.parseEnumeration();
+    final int sizeLimit = aDecoder.parseInt();
+    final int timeLimit = aDecoder.parseInt();
+    final boolean typesOnly = aDecoder.parseBoolean();
+    final LdapFilter filter = LdapFilter.decode( aDecoder );
+
+    final int end = parseSeq( aDecoder, SEQUENCE );
+    final List<String> attributes = new ArrayList<String>();
+    while ( aDecoder.getParsePosition() < end )
+    {
+      attributes.add( aDecoder.parseString( true ) );
+    }
+
+    return new SearchRequest( baseObject, scope, derefAliases, sizeLimit, timeLimit, typesOnly, filter, attributes );
+  }
+
+  /**
+   * Parses the header of a constructed element with the given tag.
+   *
+   * @return the (absolute) end offset of the element's contents.
+   */
+  private static int parseSeq( final BerBufferDecoder aDecoder, final int aTag ) throws DecodeException
+  {
+    final int[] len = new int[1];
+    final int tag = aDecoder.parseSeq( len );
+    if ( tag != aTag )
+    {
+      throw new DecodeException( "Encountered ASN.1 tag " + Integer.toString( tag ) + " (expected tag "
+          + Integer.toString( aTag ) + ")" );
+    }
+    if ( len[0] > aDecoder.bytesLeft() )
+    {
+      throw new DecodeException( "Insufficient data" );
+    }
+    return aDecoder.getParsePosition() + len[0];
+  }
+
+  /**
+   * Skips any unknown trailing elements up to the given end offset.
+   */
+  private static void skipTo( final BerBufferDecoder aDecoder, final int aEnd ) throws DecodeException
+  {
+    final int pos = aDecoder.getParsePosition();
+    if ( pos > aEnd )
+    {
+      throw new DecodeException( "Element exceeds its length" );
+    }
+    aDecoder.seek( aEnd - pos );
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * LdapOperation provides a common base class for all protocol operations that
+ * can be carried by a {@link LdapMessage}.
+ */
+public abstract class LdapOperation implements LdapProtocol
+{
+  // VARIABLES
+
+  private final int type;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapOperation object.
+   *
+   * @param aType
+   *          the type (application tag) of this operation, for example
+   *          {@link LdapProtocol#BIND_REQUEST}.
+   */
+  LdapOperation( final int aType )
+  {
+    this.type = aType;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the type of this operation.
+   *
+   * @return the type (application tag) of this operation, for example
+   *         {@link LdapProtocol#BIND_REQUEST}.
+   */
+  public final int getType()
+  {
+    return this.type;
+  }
+
+  /**
+   * Encodes this operation, including its tag.
+   *
+   * @param aEncoder
+   *          the encoder to encode this operation with, cannot be
+   *          <code>null</code>.
+   * @throws EncodeException
+   *           in case encoding failed.
+   */
+  abstract void encode( BerEncoder aEncoder ) throws EncodeException;
+}
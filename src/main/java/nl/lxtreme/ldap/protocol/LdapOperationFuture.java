@@ -0,0 +1,349 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.naming.*;
+
+import nl.lxtreme.ldap.*;
+
+
+/**
+ * LdapOperationFuture denotes the pending outcome of an operation sent by a
+ * {@link PipeliningLdapClient}.
+ * <p>
+ * The outcome of an operation consists of all messages the server returned for
+ * it, that is, for searches all entries and references followed by the
+ * SearchResultDone, and for all other operations a single response. Any
+ * intermediate responses precede the final response. Abandon and Unbind
+ * requests have no response, and are done as soon as they are sent.
+ * </p>
+ */
+public final class LdapOperationFuture implements Future<List<LdapMessage>>
+{
+  // VARIABLES
+
+  private final PipeliningLdapClient client;
+  private final int messageId;
+  private final List<LdapMessage> messages;
+  private final CountDownLatch done;
+
+  private volatile Throwable failure;
+  private volatile boolean cancelled;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapOperationFuture object.
+   *
+   * @param aClient
+   *          the client that sent the operation, cannot be <code>null</code>;
+   * @param aMessageId
+   *          the message ID of the operation.
+   */
+  LdapOperationFuture( final PipeliningLdapClient aClient, final int aMessageId )
+  {
+    this.client = aClient;
+    this.messageId = aMessageId;
+    this.messages = new ArrayList<LdapMessage>( 1 );
+    this.done = new CountDownLatch( 1 );
+  }
+
+  // METHODS
+
+  /**
+   * Creates a naming exception for the given (unsuccessful) result, using the
+   * same messages and exception types as JNDI does.
+   *
+   * @param aResult
+   *          the result to create an exception for, cannot be
+   *          <code>null</code>.
+   * @return a new exception, never <code>null</code>.
+   */
+  static NamingException createException( final LdapResult aResult )
+  {
+    final String message = "[LDAP: error code " + aResult.getResultCode() + " - " + aResult.getDiagnosticMessage()
+        + "]";
+
+    final NamingException result;
+    switch ( aResult.getResultCode() )
+    {
+      case LdapProtocol.NO_SUCH_OBJECT:
+        result = new NameNotFoundException( message );
+        break;
+      case LdapProtocol.INAPPROPRIATE_AUTHENTICATION:
+      case LdapProtocol.INVALID_CREDENTIALS:
+        result = new AuthenticationException( message );
+        break;
+      case LdapProtocol.INSUFFICIENT_ACCESS_RIGHTS:
+        result = new NoPermissionException( message );
+        break;
+      case LdapProtocol.SIZE_LIMIT_EXCEEDED:
+        result = new SizeLimitExceededException( message );
+        break;
+      case LdapProtocol.TIME_LIMIT_EXCEEDED:
+        result = new TimeLimitExceededException( message );
+        break;
+      case LdapProtocol.BUSY:
+      case LdapProtocol.UNAVAILABLE:
+        result = new ServiceUnavailableException( message );
+        break;
+      case LdapProtocol.ENTRY_ALREADY_EXISTS:
+        result = new NameAlreadyBoundException( message );
+        break;
+      case LdapProtocol.NOT_ALLOWED_ON_NON_LEAF:
+        result = new ContextNotEmptyException( message );
+        break;
+      default:
+        result = new NamingException( message );
+        break;
+    }
+    return result;
+  }
+
+  /**
+   * Cancels this operation by abandoning it at the server.
+   *
+   * @param aMayInterruptIfRunning
+   *          ignored, the operation is always abandoned.
+   * @return <code>true</code> if the operation was cancelled,
+   *         <code>false</code> if it was already done.
+   */
+  @Override
+  public boolean cancel( final boolean aMayInterruptIfRunning )
+  {
+    if ( isDone() )
+    {
+      return false;
+    }
+    this.cancelled = true;
+    this.client.abandon( this.messageId );
+    complete();
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<LdapMessage> get() throws InterruptedException, ExecutionException
+  {
+    this.done.await();
+    return getMessages();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<LdapMessage> get( final long aTimeout, final TimeUnit aUnit ) throws InterruptedException,
+      ExecutionException, TimeoutException
+  {
+    if ( !this.done.await( aTimeout, aUnit ) )
+    {
+      throw new TimeoutException( "No response for message " + this.messageId );
+    }
+    return getMessages();
+  }
+
+  /**
+   * Waits for the search to complete, and returns the entries it found.
+   *
+   * @return the found entries, in the order they were returned, never
+   *         <code>null</code>.
+   * @throws InterruptedNamingException
+   *           in case the search was cancelled, or the calling thread was
+   *           interrupted while waiting;
+   * @throws NamingException
+   *           in case the search failed, or the connection to the LDAP server
+   *           failed.
+   */
+  public List<LdapEntry> getEntries() throws NamingException
+  {
+    final List<LdapMessage> messages = awaitMessages();
+
+    final List<LdapEntry> result = new ArrayList<LdapEntry>( messages.size() );
+    for ( LdapMessage message : messages )
+    {
+      if ( message.getOperation() instanceof SearchResultEntry )
+      {
+        result.add( ( ( SearchResultEntry )message.getOperation() ).toLdapEntry() );
+      }
+    }
+
+    final LdapResult status = getResult( messages );
+    if ( !status.isSuccess() && !( ( status.getResultCode() == LdapProtocol.NO_SUCH_OBJECT ) && result.isEmpty() ) )
+    {
+      throw createException( status );
+    }
+    return result;
+  }
+
+  /**
+   * Returns the message ID of the operation.
+   *
+   * @return the message ID, &gt; 0.
+   */
+  public int getMessageId()
+  {
+    return this.messageId;
+  }
+
+  /**
+   * Waits for the operation to complete, and returns its final response.
+   *
+   * @return the final response of the operation, never <code>null</code>.
+   * @throws InterruptedNamingException
+   *           in case the operation was cancelled, or the calling thread was
+   *           interrupted while waiting;
+   * @throws NamingException
+   *           in case the connection to the LDAP server failed, or the
+   *           operation has no response.
+   */
+  public LdapResponse getResponse() throws NamingException
+  {
+    final List<LdapMessage> messages = awaitMessages();
+    if ( messages.isEmpty() )
+    {
+      throw new NamingException( "No response for message " + this.messageId );
+    }
+    return messages.get( messages.size() - 1 ).getOperation( LdapResponse.class );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isCancelled()
+  {
+    return this.cancelled;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isDone()
+  {
+    return this.done.getCount() == 0;
+  }
+
+  /**
+   * Marks this operation as completed.
+   */
+  final void complete()
+  {
+    this.done.countDown();
+  }
+
+  /**
+   * Marks this operation as failed.
+   *
+   * @param aFailure
+   *          the cause of the failure, cannot be <code>null</code>.
+   */
+  final void fail( final Throwable aFailure )
+  {
+    if ( !isDone() )
+    {
+      this.failure = aFailure;
+      this.done.countDown();
+    }
+  }
+
+  /**
+   * Adds a message received for this operation.
+   *
+   * @param aMessage
+   *          the received message, cannot be <code>null</code>.
+   * @return <code>true</code> if the message completed this operation,
+   *         <code>false</code> if more messages are expected.
+   */
+  final boolean messageReceived( final LdapMessage aMessage )
+  {
+    synchronized ( this.messages )
+    {
+      this.messages.add( aMessage );
+    }
+
+    // Only a response ends the operation; search entries and references, as
+    // well as intermediate responses, precede it...
+    if ( !( aMessage.getOperation() instanceof LdapResponse ) )
+    {
+      return false;
+    }
+    complete();
+    return true;
+  }
+
+  /**
+   * Waits for the operation to complete, mapping its outcome onto a
+   * {@link NamingException} in case it did not complete normally.
+   */
+  private List<LdapMessage> awaitMessages() throws NamingException
+  {
+    try
+    {
+      return get();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+
+      final InterruptedNamingException ne = new InterruptedNamingException( "Interrupted while waiting for message "
+          + this.messageId );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+    catch ( CancellationException exception )
+    {
+      final InterruptedNamingException ne = new InterruptedNamingException( "Cancelled message " + this.messageId );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+    catch ( ExecutionException exception )
+    {
+      final CommunicationException ne = new CommunicationException( "Failed to obtain response for message "
+          + this.messageId );
+      ne.setRootCause( exception.getCause() );
+      throw ne;
+    }
+  }
+
+  /**
+   * Returns the messages of the completed operation.
+   */
+  private List<LdapMessage> getMessages() throws ExecutionException
+  {
+    if ( this.cancelled )
+    {
+      throw new CancellationException();
+    }
+    if ( this.failure != null )
+    {
+      throw new ExecutionException( this.failure );
+    }
+    synchronized ( this.messages )
+    {
+      return new ArrayList<LdapMessage>( this.messages );
+    }
+  }
+
+  /**
+   * Returns the result of the final response in the given messages.
+   */
+  private LdapResult getResult( final List<LdapMessage> aMessages ) throws NamingException
+  {
+    if ( aMessages.isEmpty() )
+    {
+      throw new NamingException( "No response for message " + this.messageId );
+    }
+    return aMessages.get( aMessages.size() - 1 ).getOperation( LdapResponse.class ).getResult();
+  }
+}
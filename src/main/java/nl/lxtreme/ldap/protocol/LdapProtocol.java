@@ -0,0 +1,99 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+/**
+ * Provides the constants of the LDAPv3 protocol, as defined in RFC 4511.
+ */
+public interface LdapProtocol
+{
+  // CONSTANTS
+
+  /** the LDAP protocol version. */
+  public static final int VERSION = 3;
+
+  /** [APPLICATION 0] BindRequest. */
+  public static final int BIND_REQUEST = 0x60;
+  /** [APPLICATION 1] BindResponse. */
+  public static final int BIND_RESPONSE = 0x61;
+  /** [APPLICATION 2] UnbindRequest. */
+  public static final int UNBIND_REQUEST = 0x42;
+  /** [APPLICATION 3] SearchRequest. */
+  public static final int SEARCH_REQUEST = 0x63;
+  /** [APPLICATION 4] SearchResultEntry. */
+  public static final int SEARCH_RESULT_ENTRY = 0x64;
+  /** [APPLICATION 5] SearchResultDone. */
+  public static final int SEARCH_RESULT_DONE = 0x65;
+  /** [APPLICATION 6] ModifyRequest. */
+  public static final int MODIFY_REQUEST = 0x66;
+  /** [APPLICATION 7] ModifyResponse. */
+  public static final int MODIFY_RESPONSE = 0x67;
+  /** [APPLICATION 8] AddRequest. */
+  public static final int ADD_REQUEST = 0x68;
+  /** [APPLICATION 9] AddResponse. */
+  public static final int ADD_RESPONSE = 0x69;
+  /** [APPLICATION 10] DelRequest. */
+  public static final int DEL_REQUEST = 0x4a;
+  /** [APPLICATION 11] DelResponse. */
+  public static final int DEL_RESPONSE = 0x6b;
+  /** [APPLICATION 14] CompareRequest. */
+  public static final int COMPARE_REQUEST = 0x6e;
+  /** [APPLICATION 15] CompareResponse. */
+  public static final int COMPARE_RESPONSE = 0x6f;
+  /** [APPLICATION 16] AbandonRequest. */
+  public static final int ABANDON_REQUEST = 0x50;
+  /** [APPLICATION 19] SearchResultReference. */
+  public static final int SEARCH_RESULT_REFERENCE = 0x73;
+  /** [APPLICATION 23] ExtendedRequest. */
+  public static final int EXTENDED_REQUEST = 0x77;
+  /** [APPLICATION 24] ExtendedResponse. */
+  public static final int EXTENDED_RESPONSE = 0x78;
+  /** [APPLICATION 25] IntermediateResponse. */
+  public static final int INTERMEDIATE_RESPONSE = 0x79;
+
+  /** [0] Controls of a LDAPMessage. */
+  public static final int CONTROLS = 0xa0;
+  /** [3] Referral of a LDAPResult. */
+  public static final int REFERRAL = 0xa3;
+
+  // Result codes
+
+  public static final int SUCCESS = 0;
+  public static final int OPERATIONS_ERROR = 1;
+  public static final int PROTOCOL_ERROR = 2;
+  public static final int TIME_LIMIT_EXCEEDED = 3;
+  public static final int SIZE_LIMIT_EXCEEDED = 4;
+  public static final int COMPARE_FALSE = 5;
+  public static final int COMPARE_TRUE = 6;
+  public static final int AUTH_METHOD_NOT_SUPPORTED = 7;
+  public static final int STRONGER_AUTH_REQUIRED = 8;
+  public static final int REFERRAL_RESULT = 10;
+  public static final int ADMIN_LIMIT_EXCEEDED = 11;
+  public static final int UNAVAILABLE_CRITICAL_EXTENSION = 12;
+  public static final int CONFIDENTIALITY_REQUIRED = 13;
+  public static final int SASL_BIND_IN_PROGRESS = 14;
+  public static final int NO_SUCH_ATTRIBUTE = 16;
+  public static final int UNDEFINED_ATTRIBUTE_TYPE = 17;
+  public static final int INAPPROPRIATE_MATCHING = 18;
+  public static final int CONSTRAINT_VIOLATION = 19;
+  public static final int ATTRIBUTE_OR_VALUE_EXISTS = 20;
+  public static final int INVALID_ATTRIBUTE_SYNTAX = 21;
+  public static final int NO_SUCH_OBJECT = 32;
+  public static final int ALIAS_PROBLEM = 33;
+  public static final int INVALID_DN_SYNTAX = 34;
+  public static final int INAPPROPRIATE_AUTHENTICATION = 48;
+  public static final int INVALID_CREDENTIALS = 49;
+  public static final int INSUFFICIENT_ACCESS_RIGHTS = 50;
+  public static final int BUSY = 51;
+  public static final int UNAVAILABLE = 52;
+  public static final int UNWILLING_TO_PERFORM = 53;
+  public static final int NAMING_VIOLATION = 64;
+  public static final int OBJECT_CLASS_VIOLATION = 65;
+  public static final int NOT_ALLOWED_ON_NON_LEAF = 66;
+  public static final int ENTRY_ALREADY_EXISTS = 68;
+  public static final int OTHER = 80;
+}
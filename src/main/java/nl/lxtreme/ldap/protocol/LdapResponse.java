@@ -0,0 +1,131 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * LdapResponse represents all responses that consist of a {@link LdapResult}
+ * only, that is, SearchResultDone, ModifyResponse, AddResponse, DelResponse and
+ * CompareResponse, and is the base class of the other responses.
+ */
+public class LdapResponse extends LdapOperation
+{
+  // VARIABLES
+
+  private final LdapResult result;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapResponse object.
+   *
+   * @param aType
+   *          the type of the response, one of
+   *          {@link LdapProtocol#SEARCH_RESULT_DONE},
+   *          {@link LdapProtocol#MODIFY_RESPONSE},
+   *          {@link LdapProtocol#ADD_RESPONSE},
+   *          {@link LdapProtocol#DEL_RESPONSE} or
+   *          {@link LdapProtocol#COMPARE_RESPONSE};
+   * @param aResult
+   *          the result of the operation, cannot be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the given type is not a plain response type.
+   */
+  public LdapResponse( final int aType, final LdapResult aResult )
+  {
+    this( aType, aResult, false );
+
+    if ( ( aType != SEARCH_RESULT_DONE ) && ( aType != MODIFY_RESPONSE ) && ( aType != ADD_RESPONSE )
+        && ( aType != DEL_RESPONSE ) && ( aType != COMPARE_RESPONSE ) )
+    {
+      throw new IllegalArgumentException( "Invalid response type: " + aType );
+    }
+  }
+
+  /**
+   * Creates a new LdapResponse object for subclasses.
+   *
+   * @param aType
+   *          the type of the response;
+   * @param aResult
+   *          the result of the operation, cannot be <code>null</code>;
+   * @param aSubclass
+   *          ignored, only used to distinguish this constructor.
+   */
+  LdapResponse( final int aType, final LdapResult aResult, final boolean aSubclass )
+  {
+    super( aType );
+    if ( aResult == null )
+    {
+      throw new IllegalArgumentException( "Result cannot be null!" );
+    }
+    this.result = aResult;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the result of the operation.
+   *
+   * @return the result, never <code>null</code>.
+   */
+  public final LdapResult getResult()
+  {
+    return this.result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "(" + Integer.toHexString( getType() ) + ", " + this.result + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  final void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( getType() );
+
+    aEncoder.encodeInt( this.result.getResultCode(), Ber.ASN_ENUMERATED );
+    aEncoder.encodeString( this.result.getMatchedDN(), true );
+    aEncoder.encodeString( this.result.getDiagnosticMessage(), true );
+    if ( !this.result.getReferrals().isEmpty() )
+    {
+      aEncoder.beginSeq( REFERRAL );
+      for ( String referral : this.result.getReferrals() )
+      {
+        aEncoder.encodeString( referral, true );
+      }
+      aEncoder.endSeq();
+    }
+
+    encodeTrailer( aEncoder );
+
+    aEncoder.endSeq();
+  }
+
+  /**
+   * Encodes the components of this response that follow the result, if any.
+   *
+   * @param aEncoder
+   *          the encoder to encode with, cannot be <code>null</code>.
+   * @throws EncodeException
+   *           in case encoding failed.
+   */
+  void encodeTrailer( final BerEncoder aEncoder ) throws EncodeException
+  {
+    // Nothing by default...
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+
+
+/**
+ * LdapResult represents the outcome of an operation.
+ *
+ * <pre>
+ * LDAPResult ::= SEQUENCE {
+ *      resultCode         ENUMERATED,
+ *      matchedDN          LDAPDN,
+ *      diagnosticMessage  LDAPString,
+ *      referral           [3] Referral OPTIONAL }
+ * </pre>
+ */
+public final class LdapResult implements LdapProtocol
+{
+  // VARIABLES
+
+  private final int resultCode;
+  private final String matchedDN;
+  private final String diagnosticMessage;
+  private final List<String> referrals;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new LdapResult object without referrals.
+   *
+   * @param aResultCode
+   *          the result code, for example {@link LdapProtocol#SUCCESS};
+   * @param aMatchedDN
+   *          the matched DN, may be <code>null</code>;
+   * @param aDiagnosticMessage
+   *          the diagnostic message, may be <code>null</code>.
+   */
+  public LdapResult( final int aResultCode, final String aMatchedDN, final String aDiagnosticMessage )
+  {
+    this( aResultCode, aMatchedDN, aDiagnosticMessage, null );
+  }
+
+  /**
+   * Creates a new LdapResult object.
+   *
+   * @param aResultCode
+   *          the result code, for example {@link LdapProtocol#SUCCESS};
+   * @param aMatchedDN
+   *          the matched DN, may be <code>null</code>;
+   * @param aDiagnosticMessage
+   *          the diagnostic message, may be <code>null</code>;
+   * @param aReferrals
+   *          the referral URIs, may be <code>null</code>.
+   */
+  public LdapResult( final int aResultCode, final String aMatchedDN, final String aDiagnosticMessage,
+      final List<String> aReferrals )
+  {
+    this.resultCode = aResultCode;
+    this.matchedDN = ( aMatchedDN == null ) ? "" : aMatchedDN;
+    this.diagnosticMessage = ( aDiagnosticMessage == null ) ? "" : aDiagnosticMessage;
+    this.referrals = ( aReferrals == null ) ? Collections.<String> emptyList() : Collections
+        .unmodifiableList( new ArrayList<String>( aReferrals ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the diagnostic message.
+   *
+   * @return the diagnostic message, never <code>null</code>.
+   */
+  public String getDiagnosticMessage()
+  {
+    return this.diagnosticMessage;
+  }
+
+  /**
+   * Returns the matched DN.
+   *
+   * @return the matched DN, never <code>null</code>.
+   */
+  public String getMatchedDN()
+  {
+    return this.matchedDN;
+  }
+
+  /**
+   * Returns the referral URIs.
+   *
+   * @return the referrals, never <code>null</code>.
+   */
+  public List<String> getReferrals()
+  {
+    return this.referrals;
+  }
+
+  /**
+   * Returns the result code.
+   *
+   * @return the result code, for example {@link LdapProtocol#SUCCESS}.
+   */
+  public int getResultCode()
+  {
+    return this.resultCode;
+  }
+
+  /**
+   * Returns whether this result denotes success.
+   *
+   * @return <code>true</code> if the result code is
+   *         {@link LdapProtocol#SUCCESS}, <code>false</code> otherwise.
+   */
+  public boolean isSuccess()
+  {
+    return this.resultCode == SUCCESS;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "Result(" + this.resultCode + ( this.diagnosticMessage.isEmpty() ? "" : ", " + this.diagnosticMessage )
+        + ")";
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * ModifyRequest changes the attributes of an existing entry.
+ *
+ * <pre>
+ * ModifyRequest ::= [APPLICATION 6] SEQUENCE {
+ *      object          LDAPDN,
+ *      changes         SEQUENCE OF change SEQUENCE {
+ *           operation       ENUMERATED {
+ *                add     (0),
+ *                delete  (1),
+ *                replace (2) },
+ *           modification    PartialAttribute } }
+ * </pre>
+ */
+public final class ModifyRequest extends LdapOperation
+{
+  // CONSTANTS
+
+  public static final int ADD = 0;
+  public static final int DELETE = 1;
+  public static final int REPLACE = 2;
+
+  // INNER TYPES
+
+  /**
+   * Denotes a single change of a {@link ModifyRequest}.
+   */
+  public static final class Change
+  {
+    // VARIABLES
+
+    private final int operation;
+    private final PartialAttribute modification;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Change object.
+     *
+     * @param aOperation
+     *          the operation, one of {@link ModifyRequest#ADD},
+     *          {@link ModifyRequest#DELETE} or {@link ModifyRequest#REPLACE};
+     * @param aModification
+     *          the attribute to modify, cannot be <code>null</code>.
+     */
+    public Change( final int aOperation, final PartialAttribute aModification )
+    {
+      if ( ( aOperation < ADD ) || ( aOperation > REPLACE ) )
+      {
+        throw new IllegalArgumentException( "Invalid operation: " + aOperation );
+      }
+      if ( aModification == null )
+      {
+        throw new IllegalArgumentException( "Modification cannot be null!" );
+      }
+      this.operation = aOperation;
+      this.modification = aModification;
+    }
+
+    // METHODS
+
+    /**
+     * Returns the attribute to modify.
+     *
+     * @return the modification, never <code>null</code>.
+     */
+    public PartialAttribute getModification()
+    {
+      return this.modification;
+    }
+
+    /**
+     * Returns the operation.
+     *
+     * @return the operation, one of {@link ModifyRequest#ADD},
+     *         {@link ModifyRequest#DELETE} or {@link ModifyRequest#REPLACE}.
+     */
+    public int getOperation()
+    {
+      return this.operation;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+      return this.operation + ":" + this.modification;
+    }
+  }
+
+  // VARIABLES
+
+  private final String object;
+  private final List<Change> changes;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ModifyRequest object.
+   *
+   * @param aObject
+   *          the DN of the entry to modify, cannot be <code>null</code>;
+   * @param aChanges
+   *          the changes to apply, in order, cannot be <code>null</code>.
+   */
+  public ModifyRequest( final String aObject, final List<Change> aChanges )
+  {
+    super( MODIFY_REQUEST );
+    if ( aObject == null )
+    {
+      throw new IllegalArgumentException( "Object cannot be null!" );
+    }
+    this.object = aObject;
+    this.changes = Collections.unmodifiableList( new ArrayList<Change>( aChanges ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the changes to apply.
+   *
+   * @return the changes, never <code>null</code>.
+   */
+  public List<Change> getChanges()
+  {
+    return this.changes;
+  }
+
+  /**
+   * Returns the DN of the entry to modify.
+   *
+   * @return the DN, never <code>null</code>.
+   */
+  public String getObject()
+  {
+    return this.object;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "ModifyRequest(" + this.object + ", " + this.changes + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( MODIFY_REQUEST );
+    aEncoder.encodeString( this.object, true );
+    aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+    for ( Change change : this.changes )
+    {
+      aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+      aEncoder.encodeInt( change.getOperation(), Ber.ASN_ENUMERATED );
+      change.getModification().encode( aEncoder );
+      aEncoder.endSeq();
+    }
+    aEncoder.endSeq();
+    aEncoder.endSeq();
+  }
+}
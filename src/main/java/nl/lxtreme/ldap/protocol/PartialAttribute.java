@@ -0,0 +1,141 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.nio.charset.*;
+import java.util.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * PartialAttribute represents an attribute description with its values.
+ *
+ * <pre>
+ * PartialAttribute ::= SEQUENCE {
+ *      type       AttributeDescription,
+ *      vals       SET OF value AttributeValue }
+ * </pre>
+ */
+public final class PartialAttribute
+{
+  // CONSTANTS
+
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  // VARIABLES
+
+  private final String type;
+  private final List<byte[]> values;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new PartialAttribute object.
+   *
+   * @param aType
+   *          the attribute description, cannot be <code>null</code>;
+   * @param aValues
+   *          the (raw) values of the attribute, cannot be <code>null</code>.
+   */
+  public PartialAttribute( final String aType, final List<byte[]> aValues )
+  {
+    if ( aType == null )
+    {
+      throw new IllegalArgumentException( "Type cannot be null!" );
+    }
+    this.type = aType;
+    this.values = Collections.unmodifiableList( new ArrayList<byte[]>( aValues ) );
+  }
+
+  // METHODS
+
+  /**
+   * Creates a new attribute with the given string values, encoded as UTF-8.
+   *
+   * @param aType
+   *          the attribute description, cannot be <code>null</code>;
+   * @param aValues
+   *          the values of the attribute.
+   * @return a new attribute, never <code>null</code>.
+   */
+  public static PartialAttribute valueOf( final String aType, final String... aValues )
+  {
+    final List<byte[]> values = new ArrayList<byte[]>( aValues.length );
+    for ( String value : aValues )
+    {
+      values.add( value.getBytes( UTF8 ) );
+    }
+    return new PartialAttribute( aType, values );
+  }
+
+  /**
+   * Returns the attribute description.
+   *
+   * @return the type, never <code>null</code>.
+   */
+  public String getType()
+  {
+    return this.type;
+  }
+
+  /**
+   * Returns the raw values of this attribute.
+   *
+   * @return the values, never <code>null</code>.
+   */
+  public List<byte[]> getValues()
+  {
+    return this.values;
+  }
+
+  /**
+   * Returns the values of this attribute, decoded as UTF-8 strings.
+   *
+   * @return the string values, never <code>null</code>.
+   */
+  public List<String> getStringValues()
+  {
+    final List<String> result = new ArrayList<String>( this.values.size() );
+    for ( byte[] value : this.values )
+    {
+      result.add( new String( value, UTF8 ) );
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return this.type + "=" + getStringValues();
+  }
+
+  /**
+   * Encodes this attribute as PartialAttribute sequence.
+   *
+   * @param aEncoder
+   *          the encoder to encode with, cannot be <code>null</code>.
+   * @throws EncodeException
+   *           in case encoding failed.
+   */
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+    aEncoder.encodeString( this.type, true );
+    aEncoder.beginSeq( Ber.ASN_SET | Ber.ASN_CONSTRUCTOR );
+    for ( byte[] value : this.values )
+    {
+      aEncoder.encodeOctetString( value, Ber.ASN_OCTET_STR );
+    }
+    aEncoder.endSeq();
+    aEncoder.endSeq();
+  }
+}
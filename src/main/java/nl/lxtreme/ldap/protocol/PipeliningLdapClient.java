@@ -0,0 +1,864 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import javax.naming.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * PipeliningLdapClient provides a non-blocking LDAP client that multiplexes
+ * many outstanding operations over a small number of connections.
+ * <p>
+ * Unlike JNDI, operations do not wait for the response of the previous one:
+ * each operation is sent directly with its own message ID, and its responses
+ * are matched by that message ID as they arrive, on a single I/O thread that
+ * serves all connections using a {@link Selector}. The outcome of each
+ * operation is available as {@link LdapOperationFuture}.
+ * </p>
+ * <p>
+ * Operations are distributed over the connections, picking the connection with
+ * the fewest outstanding operations. As all connections are bound with the
+ * same credentials (see {@link #bind(String, String)}), it does not matter
+ * which connection serves an operation.
+ * </p>
+ * <p>
+ * The number of bytes queued for sending is bounded per connection (see
+ * {@link #MAX_QUEUED_BYTES}): when a connection cannot keep up, callers block
+ * until its queue has room again, rather than letting the queue grow without
+ * limit.
+ * </p>
+ * <p>
+ * Only plain LDAP connections are supported, that is, neither LDAPS nor
+ * StartTLS.
+ * </p>
+ */
+public final class PipeliningLdapClient implements Closeable
+{
+  // CONSTANTS
+
+  /** the maximum number of bytes queued for sending, per connection. */
+  public static final int MAX_QUEUED_BYTES = 1024 * 1024;
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  /** the interval in which blocked senders check whether their connection failed. */
+  private static final long WRITE_WAIT_INTERVAL = 100L;
+
+  /** the OID of the notice of disconnection, see RFC 4511, section 4.4.1. */
+  private static final String NOTICE_OF_DISCONNECTION = "1.3.6.1.4.1.1466.20036";
+
+  private static final LdapFilter ANY_OBJECT = LdapFilter.present( "objectClass" );
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private static final Logger LOG = Logger.getAnonymousLogger();
+
+  // INNER TYPES
+
+  /**
+   * Keeps the state of a single connection.
+   */
+  private static final class Connection
+  {
+    final SocketChannel channel;
+    final ConcurrentMap<Integer, LdapOperationFuture> pending;
+    final Queue<ByteBuffer> writeQueue;
+    final Semaphore writePermits;
+    final AtomicBoolean writeScheduled;
+
+    final BerFrameDecoder frameDecoder;
+
+    SelectionKey key;
+
+    Connection( final SocketChannel aChannel )
+    {
+      this.channel = aChannel;
+      this.pending = new ConcurrentHashMap<Integer, LdapOperationFuture>();
+      this.writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+      this.writePermits = new Semaphore( MAX_QUEUED_BYTES );
+      this.writeScheduled = new AtomicBoolean();
+      this.frameDecoder = new BerFrameDecoder();
+    }
+  }
+
+  // VARIABLES
+
+  private final InetSocketAddress address;
+  private final Connection[] connections;
+  private final Selector selector;
+  private final ByteBuffer readBuffer;
+  private final Queue<Connection> writeReady;
+  private final AtomicInteger messageIds;
+  private final Thread ioThread;
+
+  private volatile boolean closed;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new PipeliningLdapClient object and directly connects to the
+   * given server, without a timeout.
+   *
+   * @param aAddress
+   *          the address of the LDAP server, cannot be <code>null</code>;
+   * @param aConnections
+   *          the number of connections to open, &gt; 0.
+   * @throws IOException
+   *           in case connecting to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given number of connections was not positive.
+   */
+  public PipeliningLdapClient( final InetSocketAddress aAddress, final int aConnections ) throws IOException,
+      IllegalArgumentException
+  {
+    this( aAddress, aConnections, 0L );
+  }
+
+  /**
+   * Creates a new PipeliningLdapClient object and directly connects to the
+   * given server.
+   *
+   * @param aAddress
+   *          the address of the LDAP server, cannot be <code>null</code>;
+   * @param aConnections
+   *          the number of connections to open, &gt; 0;
+   * @param aConnectTimeout
+   *          the time in which all connections should be established, in
+   *          milliseconds, or 0 to wait as long as the operating system allows.
+   * @throws SocketTimeoutException
+   *           in case the connections were not established in time;
+   * @throws IOException
+   *           in case connecting to the LDAP server failed;
+   * @throws IllegalArgumentException
+   *           in case the given number of connections was not positive, or the
+   *           given timeout was negative.
+   */
+  public PipeliningLdapClient( final InetSocketAddress aAddress, final int aConnections, final long aConnectTimeout )
+      throws IOException, IllegalArgumentException
+  {
+    if ( aConnections <= 0 )
+    {
+      throw new IllegalArgumentException( "Invalid number of connections: should be positive!" );
+    }
+    if ( aConnectTimeout < 0L )
+    {
+      throw new IllegalArgumentException( "Invalid connect timeout: should be zero or positive!" );
+    }
+
+    this.address = aAddress;
+    this.connections = new Connection[aConnections];
+    this.writeReady = new ConcurrentLinkedQueue<Connection>();
+    this.messageIds = new AtomicInteger();
+    this.readBuffer = ByteBuffer.allocate( READ_BUFFER_SIZE );
+    this.selector = Selector.open();
+
+    try
+    {
+      connect( aConnectTimeout );
+    }
+    catch ( IOException exception )
+    {
+      closeChannels();
+      throw exception;
+    }
+
+    this.ioThread = new Thread( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        processIO();
+      }
+    }, "LibLdap-Pipelining-" + THREAD_COUNTER.incrementAndGet() );
+    this.ioThread.setDaemon( true );
+    this.ioThread.start();
+  }
+
+  // METHODS
+
+  /**
+   * Binds all connections with the given credentials.
+   * <p>
+   * Binding should be done before any other operation is sent, as a bind
+   * request causes the server to abandon all outstanding operations on that
+   * connection.
+   * </p>
+   *
+   * @param aName
+   *          the DN to bind as, may be <code>null</code> for an anonymous bind;
+   * @param aPassword
+   *          the password to bind with, may be <code>null</code> for an
+   *          anonymous bind.
+   * @throws NamingException
+   *           in case the bind failed on any of the connections.
+   */
+  public void bind( final String aName, final String aPassword ) throws NamingException
+  {
+    final List<LdapOperationFuture> futures = new ArrayList<LdapOperationFuture>( this.connections.length );
+    for ( Connection connection : this.connections )
+    {
+      futures.add( send( connection, BindRequest.simple( aName, aPassword ), Collections.<LdapControl> emptyList() ) );
+    }
+    for ( LdapOperationFuture future : futures )
+    {
+      final LdapResult result = future.getResponse().getResult();
+      if ( !result.isSuccess() )
+      {
+        throw LdapOperationFuture.createException( result );
+      }
+    }
+  }
+
+  /**
+   * Closes all connections, after sending an unbind request on each of them.
+   * Outstanding operations fail.
+   */
+  @Override
+  public void close()
+  {
+    if ( this.closed )
+    {
+      return;
+    }
+
+    for ( Connection connection : this.connections )
+    {
+      try
+      {
+        send( connection, new UnbindRequest(), Collections.<LdapControl> emptyList() );
+      }
+      catch ( NamingException exception )
+      {
+        // Ignore; we're closing anyway...
+      }
+    }
+
+    this.closed = true;
+    this.selector.wakeup();
+
+    try
+    {
+      this.ioThread.join( TimeUnit.SECONDS.toMillis( 5L ) );
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Sends the given operation to the server.
+   *
+   * @param aOperation
+   *          the operation to send, cannot be <code>null</code>.
+   * @return the future outcome of the operation, never <code>null</code>.
+   * @throws NamingException
+   *           in case the operation could not be encoded, this client is
+   *           closed, or the calling thread was interrupted while waiting for
+   *           room in the write queue.
+   */
+  public LdapOperationFuture execute( final LdapOperation aOperation ) throws NamingException
+  {
+    return execute( aOperation, Collections.<LdapControl> emptyList() );
+  }
+
+  /**
+   * Sends the given operation with the given controls to the server.
+   * <p>
+   * In case the selected connection already has {@link #MAX_QUEUED_BYTES}
+   * bytes queued for sending, this method blocks until the connection has
+   * written enough of them.
+   * </p>
+   *
+   * @param aOperation
+   *          the operation to send, cannot be <code>null</code>;
+   * @param aControls
+   *          the controls to send along, cannot be <code>null</code>.
+   * @return the future outcome of the operation, never <code>null</code>.
+   * @throws NamingException
+   *           in case the operation could not be encoded, this client is
+   *           closed, or the calling thread was interrupted while waiting for
+   *           room in the write queue.
+   */
+  public LdapOperationFuture execute( final LdapOperation aOperation, final List<LdapControl> aControls )
+      throws NamingException
+  {
+    if ( ( aOperation instanceof BindRequest ) || ( aOperation instanceof UnbindRequest )
+        || ( aOperation instanceof AbandonRequest ) )
+    {
+      throw new IllegalArgumentException( "Use bind, close or cancel instead!" );
+    }
+    return send( selectConnection(), aOperation, aControls );
+  }
+
+  /**
+   * Returns the address of the LDAP server.
+   *
+   * @return the address, never <code>null</code>.
+   */
+  public InetSocketAddress getAddress()
+  {
+    return this.address;
+  }
+
+  /**
+   * Returns the number of connections of this client.
+   *
+   * @return the number of connections, &gt; 0.
+   */
+  public int getConnectionCount()
+  {
+    return this.connections.length;
+  }
+
+  /**
+   * Returns the number of operations that are still waiting for their
+   * response.
+   *
+   * @return the number of outstanding operations, &gt;= 0.
+   */
+  public int getPendingCount()
+  {
+    int result = 0;
+    for ( Connection connection : this.connections )
+    {
+      result += connection.pending.size();
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether this client is closed.
+   *
+   * @return <code>true</code> if this client is closed, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isClosed()
+  {
+    return this.closed;
+  }
+
+  /**
+   * Looks up the entry with the given DN.
+   *
+   * @param aDN
+   *          the DN of the entry to look up, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve, none to retrieve all attributes.
+   * @return the future outcome of the lookup, whose
+   *         {@link LdapOperationFuture#getEntries()} contains at most one
+   *         entry, never <code>null</code>.
+   * @throws NamingException
+   *           in case this client is closed.
+   */
+  public LdapOperationFuture lookup( final String aDN, final String... aAttributes ) throws NamingException
+  {
+    return search( aDN, SearchRequest.SCOPE_BASE_OBJECT, ANY_OBJECT, aAttributes );
+  }
+
+  /**
+   * Searches for entries matching the given filter.
+   *
+   * @param aDN
+   *          the DN to search under, cannot be <code>null</code>;
+   * @param aScope
+   *          the scope of the search, for example
+   *          {@link SearchRequest#SCOPE_WHOLE_SUBTREE};
+   * @param aFilter
+   *          the filter to use, whose parameters should be bound, cannot be
+   *          <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve, none to retrieve all attributes.
+   * @return the future outcome of the search, never <code>null</code>.
+   * @throws NamingException
+   *           in case this client is closed.
+   */
+  public LdapOperationFuture search( final String aDN, final int aScope, final LdapFilter aFilter,
+      final String... aAttributes ) throws NamingException
+  {
+    return execute( new SearchRequest( aDN, aScope, aFilter, aAttributes ) );
+  }
+
+  /**
+   * Searches for entries matching the given filter.
+   *
+   * @param aDN
+   *          the DN to search under, cannot be <code>null</code>;
+   * @param aScope
+   *          the scope of the search, for example
+   *          {@link SearchRequest#SCOPE_WHOLE_SUBTREE};
+   * @param aFilter
+   *          the filter to use, in its string representation, cannot be
+   *          <code>null</code>;
+   * @param aAttributes
+   *          the attribute IDs to retrieve, none to retrieve all attributes.
+   * @return the future outcome of the search, never <code>null</code>.
+   * @throws NamingException
+   *           in case the filter is invalid, or this client is closed.
+   */
+  public LdapOperationFuture search( final String aDN, final int aScope, final String aFilter,
+      final String... aAttributes ) throws NamingException
+  {
+    return search( aDN, aScope, LdapFilter.parse( aFilter ), aAttributes );
+  }
+
+  /**
+   * Abandons the operation with the given message ID.
+   *
+   * @param aMessageId
+   *          the message ID of the operation to abandon.
+   */
+  void abandon( final int aMessageId )
+  {
+    for ( Connection connection : this.connections )
+    {
+      if ( connection.pending.remove( Integer.valueOf( aMessageId ) ) != null )
+      {
+        try
+        {
+          send( connection, new AbandonRequest( aMessageId ), Collections.<LdapControl> emptyList() );
+        }
+        catch ( NamingException exception )
+        {
+          // Ignore; the operation is no longer tracked...
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Waits until the write queue of the given connection has room for the
+   * given number of bytes.
+   *
+   * @throws NamingException
+   *           in case the connection failed while waiting, or the calling
+   *           thread was interrupted.
+   */
+  private void awaitWritePermits( final Connection aConnection, final int aPermits, final int aMessageId )
+      throws NamingException
+  {
+    try
+    {
+      while ( !aConnection.writePermits.tryAcquire( aPermits, WRITE_WAIT_INTERVAL, TimeUnit.MILLISECONDS ) )
+      {
+        if ( !aConnection.key.isValid() )
+        {
+          aConnection.pending.remove( Integer.valueOf( aMessageId ) );
+          throw new CommunicationException( "Connection to " + this.address + " failed!" );
+        }
+      }
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      aConnection.pending.remove( Integer.valueOf( aMessageId ) );
+
+      final InterruptedNamingException ne = new InterruptedNamingException( "Interrupted while sending message "
+          + aMessageId );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+  }
+
+  /**
+   * Closes all channels and the selector.
+   */
+  private void closeChannels()
+  {
+    for ( Connection connection : this.connections )
+    {
+      if ( connection != null )
+      {
+        closeQuietly( connection.channel );
+      }
+    }
+    closeQuietly( this.selector );
+  }
+
+  /**
+   * Closes the given resource, ignoring any exception.
+   */
+  private void closeQuietly( final Closeable aCloseable )
+  {
+    try
+    {
+      aCloseable.close();
+    }
+    catch ( IOException exception )
+    {
+      // Ignore...
+    }
+  }
+
+  /**
+   * Opens all connections without blocking, and waits until they are
+   * established, or the given timeout expires.
+   *
+   * @param aTimeout
+   *          the connect timeout, in milliseconds, or 0 to wait indefinitely.
+   */
+  private void connect( final long aTimeout ) throws IOException
+  {
+    int connecting = 0;
+    for ( int i = 0; i < this.connections.length; i++ )
+    {
+      final SocketChannel channel = SocketChannel.open();
+      final Connection connection = new Connection( channel );
+      this.connections[i] = connection;
+
+      channel.socket().setTcpNoDelay( true );
+      channel.socket().setKeepAlive( true );
+      channel.configureBlocking( false );
+
+      if ( channel.connect( this.address ) )
+      {
+        connection.key = channel.register( this.selector, SelectionKey.OP_READ, connection );
+      }
+      else
+      {
+        connection.key = channel.register( this.selector, SelectionKey.OP_CONNECT, connection );
+        connecting++;
+      }
+    }
+
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( aTimeout );
+    while ( connecting > 0 )
+    {
+      long wait = 0L;
+      if ( aTimeout > 0L )
+      {
+        final long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0L )
+        {
+          throw new SocketTimeoutException( "Connect to " + this.address + " timed out after " + aTimeout + " ms" );
+        }
+        // Round up, as zero means to wait indefinitely...
+        wait = TimeUnit.NANOSECONDS.toMillis( remaining + 999999L );
+      }
+      this.selector.select( wait );
+
+      final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+      while ( keys.hasNext() )
+      {
+        final SelectionKey key = keys.next();
+        keys.remove();
+
+        if ( key.isConnectable() && ( ( SocketChannel )key.channel() ).finishConnect() )
+        {
+          key.interestOps( SelectionKey.OP_READ );
+          connecting--;
+        }
+      }
+    }
+  }
+
+  /**
+   * Fails all outstanding operations of the given connection, and closes it.
+   */
+  private void failConnection( final Connection aConnection, final Throwable aCause )
+  {
+    if ( aConnection.key != null )
+    {
+      aConnection.key.cancel();
+    }
+    closeQuietly( aConnection.channel );
+
+    for ( Iterator<LdapOperationFuture> iter = aConnection.pending.values().iterator(); iter.hasNext(); )
+    {
+      iter.next().fail( aCause );
+      iter.remove();
+    }
+
+    ByteBuffer buf;
+    while ( ( buf = aConnection.writeQueue.poll() ) != null )
+    {
+      aConnection.writePermits.release( getWritePermits( buf ) );
+    }
+  }
+
+  /**
+   * Returns the number of write permits taken by the given queued data. Data
+   * larger than the queue limit takes all permits, such that it can still be
+   * sent once the queue is empty.
+   */
+  private static int getWritePermits( final ByteBuffer aData )
+  {
+    return Math.min( aData.capacity(), MAX_QUEUED_BYTES );
+  }
+
+  /**
+   * Dispatches a received message to its operation.
+   */
+  private void dispatch( final Connection aConnection, final LdapMessage aMessage ) throws IOException
+  {
+    if ( aMessage.getMessageId() == 0 )
+    {
+      // Unsolicited notification, only the notice of disconnection requires
+      // us to act, as the server is about to close the connection...
+      final LdapOperation notification = aMessage.getOperation();
+      if ( ( notification instanceof ExtendedOperationResponse )
+          && NOTICE_OF_DISCONNECTION.equals( ( ( ExtendedOperationResponse )notification ).getResponseName() ) )
+      {
+        throw new EOFException( "Notice of disconnection: "
+            + ( ( ExtendedOperationResponse )notification ).getResult().getDiagnosticMessage() );
+      }
+      LOG.log( Level.FINE, "Ignoring unsolicited notification: " + notification );
+      return;
+    }
+
+    final Integer key = Integer.valueOf( aMessage.getMessageId() );
+    final LdapOperationFuture future = aConnection.pending.get( key );
+    if ( future == null )
+    {
+      // Abandoned operation...
+      return;
+    }
+    if ( future.messageReceived( aMessage ) )
+    {
+      aConnection.pending.remove( key );
+    }
+  }
+
+  /**
+   * Runs the I/O loop until this client is closed.
+   */
+  private void processIO()
+  {
+    try
+    {
+      while ( !this.closed || hasPendingWrites() )
+      {
+        this.selector.select( this.closed ? 100L : 0L );
+
+        Connection ready;
+        while ( ( ready = this.writeReady.poll() ) != null )
+        {
+          ready.writeScheduled.set( false );
+          if ( ready.key.isValid() )
+          {
+            ready.key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+          }
+        }
+
+        final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while ( keys.hasNext() )
+        {
+          final SelectionKey key = keys.next();
+          keys.remove();
+
+          final Connection connection = ( Connection )key.attachment();
+          try
+          {
+            if ( key.isValid() && key.isReadable() )
+            {
+              read( connection );
+            }
+            if ( key.isValid() && key.isWritable() )
+            {
+              write( connection );
+            }
+          }
+          catch ( IOException exception )
+          {
+            if ( !this.closed )
+            {
+              LOG.log( Level.WARNING, "Connection to " + this.address + " failed!", exception );
+            }
+            failConnection( connection, exception );
+          }
+        }
+      }
+    }
+    catch ( IOException exception )
+    {
+      LOG.log( Level.WARNING, "Selector failed!", exception );
+    }
+    finally
+    {
+      this.closed = true;
+
+      final IOException cause = new IOException( "Client closed" );
+      for ( Connection connection : this.connections )
+      {
+        failConnection( connection, cause );
+      }
+      closeQuietly( this.selector );
+    }
+  }
+
+  /**
+   * @return <code>true</code> if any connection still has data to write,
+   *         <code>false</code> otherwise.
+   */
+  private boolean hasPendingWrites()
+  {
+    for ( Connection connection : this.connections )
+    {
+      if ( connection.key.isValid() && !connection.writeQueue.isEmpty() )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads all available data of the given connection, and dispatches all
+   * complete messages to their operations.
+   * <p>
+   * As all data is consumed by the frame decoder of the connection, a single
+   * read buffer suffices for all connections.
+   * </p>
+   */
+  private void read( final Connection aConnection ) throws IOException
+  {
+    final ByteBuffer buf = this.readBuffer;
+
+    int read;
+    while ( ( read = aConnection.channel.read( buf ) ) > 0 )
+    {
+      buf.flip();
+
+      ByteBuffer frame;
+      while ( ( frame = aConnection.frameDecoder.nextFrame( buf ) ) != null )
+      {
+        dispatch( aConnection, LdapMessageCodec.decode( new BerBufferDecoder( frame ) ) );
+      }
+
+      buf.clear();
+    }
+    if ( read < 0 )
+    {
+      throw new EOFException( "Connection closed by server" );
+    }
+  }
+
+  /**
+   * Selects the connection with the fewest outstanding operations.
+   */
+  private Connection selectConnection() throws NamingException
+  {
+    Connection result = null;
+    int fewest = Integer.MAX_VALUE;
+    for ( Connection connection : this.connections )
+    {
+      final int count = connection.pending.size();
+      if ( ( count < fewest ) && connection.key.isValid() )
+      {
+        result = connection;
+        fewest = count;
+      }
+    }
+    if ( result == null )
+    {
+      throw new CommunicationException( "No connection available to " + this.address );
+    }
+    return result;
+  }
+
+  /**
+   * Sends the given operation on the given connection, blocking while its
+   * write queue is full.
+   */
+  private LdapOperationFuture send( final Connection aConnection, final LdapOperation aOperation,
+      final List<LdapControl> aControls ) throws NamingException
+  {
+    if ( this.closed )
+    {
+      throw new ServiceUnavailableException( "Client is closed!" );
+    }
+
+    int messageId;
+    do
+    {
+      messageId = this.messageIds.incrementAndGet() & Integer.MAX_VALUE;
+    }
+    while ( messageId == 0 );
+
+    final byte[] data;
+    try
+    {
+      data = LdapMessageCodec.encode( new LdapMessage( messageId, aOperation, aControls ) );
+    }
+    catch ( EncodeException exception )
+    {
+      final NamingException ne = new NamingException( exception.getMessage() );
+      ne.setRootCause( exception );
+      throw ne;
+    }
+
+    final LdapOperationFuture future = new LdapOperationFuture( this, messageId );
+
+    final int type = aOperation.getType();
+    if ( ( type == LdapProtocol.ABANDON_REQUEST ) || ( type == LdapProtocol.UNBIND_REQUEST ) )
+    {
+      // No response is to be expected...
+      future.complete();
+    }
+    else
+    {
+      // Register before sending, as the response might arrive before we return...
+      aConnection.pending.put( Integer.valueOf( messageId ), future );
+      if ( !aConnection.key.isValid() && ( aConnection.pending.remove( Integer.valueOf( messageId ) ) != null ) )
+      {
+        // The connection failed in the meantime...
+        throw new CommunicationException( "Connection to " + this.address + " failed!" );
+      }
+    }
+
+    final ByteBuffer buf = ByteBuffer.wrap( data );
+    awaitWritePermits( aConnection, getWritePermits( buf ), messageId );
+
+    aConnection.writeQueue.add( buf );
+    if ( aConnection.writeScheduled.compareAndSet( false, true ) )
+    {
+      this.writeReady.add( aConnection );
+      this.selector.wakeup();
+    }
+
+    return future;
+  }
+
+  /**
+   * Writes as much queued data of the given connection as possible.
+   */
+  private void write( final Connection aConnection ) throws IOException
+  {
+    ByteBuffer buf;
+    while ( ( buf = aConnection.writeQueue.peek() ) != null )
+    {
+      aConnection.channel.write( buf );
+      if ( buf.hasRemaining() )
+      {
+        // Socket buffer is full; wait until it becomes writable again...
+        return;
+      }
+      aConnection.writeQueue.poll();
+      aConnection.writePermits.release( getWritePermits( buf ) );
+    }
+    aConnection.key.interestOps( SelectionKey.OP_READ );
+
+    if ( !aConnection.writeQueue.isEmpty() && aConnection.writeScheduled.compareAndSet( false, true ) )
+    {
+      // Data was queued while we were resetting our interest...
+      this.writeReady.add( aConnection );
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * SearchRequest searches the directory for entries matching a filter.
+ *
+ * <pre>
+ * SearchRequest ::= [APPLICATION 3] SEQUENCE {
+ *      baseObject      LDAPDN,
+ *      scope           ENUMERATED,
+ *      derefAliases    ENUMERATED,
+ *      sizeLimit       INTEGER (0 ..  maxInt),
+ *      timeLimit       INTEGER (0 ..  maxInt),
+ *      typesOnly       BOOLEAN,
+ *      filter          Filter,
+ *      attributes      AttributeSelection }
+ * </pre>
+ * <p>
+ * The filter is given as {@link LdapFilter}, whose parameters (if any) should
+ * be bound.
+ * </p>
+ */
+public final class SearchRequest extends LdapOperation
+{
+  // CONSTANTS
+
+  public static final int SCOPE_BASE_OBJECT = 0;
+  public static final int SCOPE_SINGLE_LEVEL = 1;
+  public static final int SCOPE_WHOLE_SUBTREE = 2;
+
+  public static final int DEREF_NEVER = 0;
+  public static final int DEREF_IN_SEARCHING = 1;
+  public static final int DEREF_FINDING_BASE = 2;
+  public static final int DEREF_ALWAYS = 3;
+
+  // VARIABLES
+
+  private final String baseObject;
+  private final int scope;
+  private final int derefAliases;
+  private final int sizeLimit;
+  private final int timeLimit;
+  private final boolean typesOnly;
+  private final LdapFilter filter;
+  private final List<String> attributes;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new SearchRequest object that never dereferences aliases, and
+   * has no size and time limits.
+   *
+   * @param aBaseObject
+   *          the DN to search under, cannot be <code>null</code>;
+   * @param aScope
+   *          the scope of the search, for example
+   *          {@link #SCOPE_WHOLE_SUBTREE};
+   * @param aFilter
+   *          the filter to use, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attributes to return, if none are given, all user
+   *          attributes are returned.
+   * @throws IllegalArgumentException
+   *           in case the given filter has unbound parameters.
+   */
+  public SearchRequest( final String aBaseObject, final int aScope, final LdapFilter aFilter,
+      final String... aAttributes )
+  {
+    this( aBaseObject, aScope, DEREF_NEVER, 0, 0, false, aFilter, Arrays.asList( aAttributes ) );
+  }
+
+  /**
+   * Creates a new SearchRequest object.
+   *
+   * @param aBaseObject
+   *          the DN to search under, cannot be <code>null</code>;
+   * @param aScope
+   *          the scope of the search, for example
+   *          {@link #SCOPE_WHOLE_SUBTREE};
+   * @param aDerefAliases
+   *          how to dereference aliases, for example {@link #DEREF_NEVER};
+   * @param aSizeLimit
+   *          the maximum number of entries to return, or 0 for no limit;
+   * @param aTimeLimit
+   *          the maximum time in seconds for the search, or 0 for no limit;
+   * @param aTypesOnly
+   *          <code>true</code> to return attribute types only,
+   *          <code>false</code> to return types and values;
+   * @param aFilter
+   *          the filter to use, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attributes to return, cannot be <code>null</code>. If empty,
+   *          all user attributes are returned.
+   * @throws IllegalArgumentException
+   *           in case the given filter has unbound parameters.
+   */
+  public SearchRequest( final String aBaseObject, final int aScope, final int aDerefAliases, final int aSizeLimit,
+      final int aTimeLimit, final boolean aTypesOnly, final LdapFilter aFilter, final List<String> aAttributes )
+  {
+    super( SEARCH_REQUEST );
+    if ( ( aBaseObject == null ) || ( aFilter == null ) )
+    {
+      throw new IllegalArgumentException( "Base object and filter cannot be null!" );
+    }
+    if ( aFilter.getParameterCount() > 0 )
+    {
+      throw new IllegalArgumentException( "Filter has unbound parameters: " + aFilter );
+    }
+    this.baseObject = aBaseObject;
+    this.scope = aScope;
+    this.derefAliases = aDerefAliases;
+    this.sizeLimit = aSizeLimit;
+    this.timeLimit = aTimeLimit;
+    this.typesOnly = aTypesOnly;
+    this.filter = aFilter;
+    this.attributes = Collections.unmodifiableList( new ArrayList<String>( aAttributes ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the attributes to return.
+   *
+   * @return the attribute selection, never <code>null</code>.
+   */
+  public List<String> getAttributes()
+  {
+    return this.attributes;
+  }
+
+  /**
+   * Returns the DN to search under.
+   *
+   * @return the base object, never <code>null</code>.
+   */
+  public String getBaseObject()
+  {
+    return this.baseObject;
+  }
+
+  /**
+   * Returns how aliases are dereferenced.
+   *
+   * @return the alias dereferencing mode.
+   */
+  public int getDerefAliases()
+  {
+    return this.derefAliases;
+  }
+
+  /**
+   * Returns the filter to use.
+   *
+   * @return the filter, never <code>null</code>.
+   */
+  public LdapFilter getFilter()
+  {
+    return this.filter;
+  }
+
+  /**
+   * Returns the scope of the search.
+   *
+   * @return the scope.
+   */
+  public int getScope()
+  {
+    return this.scope;
+  }
+
+  /**
+   * Returns the maximum number of entries to return.
+   *
+   * @return the size limit, or 0 for no limit.
+   */
+  public int getSizeLimit()
+  {
+    return this.sizeLimit;
+  }
+
+  /**
+   * Returns the maximum time for the search.
+   *
+   * @return the time limit in seconds, or 0 for no limit.
+   */
+  public int getTimeLimit()
+  {
+    return this.timeLimit;
+  }
+
+  /**
+   * Returns whether only attribute types should be returned.
+   *
+   * @return <code>true</code> if only attribute types are returned,
+   *         <code>false</code> if types and values are returned.
+   */
+  public boolean isTypesOnly()
+  {
+    return this.typesOnly;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "SearchRequest(" + this.baseObject + ", " + this.scope + ", " + this.filter + ", " + this.attributes + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( SEARCH_REQUEST );
+    aEncoder.encodeString( this.baseObject, true );
+    aEncoder.encodeInt( this.scope, Ber.ASN_ENUMERATED );
+    aEncoder.encodeInt( this.derefAliases, Ber.ASN_ENUMERATED );
+    aEncoder.encodeInt( this.sizeLimit );
+    aEncoder.encodeInt( this.timeLimit );
+    aEncoder.encodeBoolean( this.typesOnly );
+    this.filter.encode( aEncoder );
+    aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+    for ( String attribute : this.attributes )
+    {
+      aEncoder.encodeString( attribute, true );
+    }
+    aEncoder.endSeq();
+    aEncoder.endSeq();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+
+import nl.lxtreme.ldap.*;
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * SearchResultEntry represents a single entry returned by a search.
+ *
+ * <pre>
+ * SearchResultEntry ::= [APPLICATION 4] SEQUENCE {
+ *      objectName      LDAPDN,
+ *      attributes      PartialAttributeList }
+ *
+ * PartialAttributeList ::= SEQUENCE OF partialAttribute PartialAttribute
+ * </pre>
+ */
+public final class SearchResultEntry extends LdapOperation
+{
+  // VARIABLES
+
+  private final String objectName;
+  private final List<PartialAttribute> attributes;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new SearchResultEntry object.
+   *
+   * @param aObjectName
+   *          the DN of the entry, cannot be <code>null</code>;
+   * @param aAttributes
+   *          the attributes of the entry, cannot be <code>null</code>.
+   */
+  public SearchResultEntry( final String aObjectName, final List<PartialAttribute> aAttributes )
+  {
+    super( SEARCH_RESULT_ENTRY );
+    if ( aObjectName == null )
+    {
+      throw new IllegalArgumentException( "Object name cannot be null!" );
+    }
+    this.objectName = aObjectName;
+    this.attributes = Collections.unmodifiableList( new ArrayList<PartialAttribute>( aAttributes ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the attributes of the entry.
+   *
+   * @return the attributes, never <code>null</code>.
+   */
+  public List<PartialAttribute> getAttributes()
+  {
+    return this.attributes;
+  }
+
+  /**
+   * Returns the DN of the entry.
+   *
+   * @return the DN, never <code>null</code>.
+   */
+  public String getObjectName()
+  {
+    return this.objectName;
+  }
+
+  /**
+   * Converts this search result to a {@link LdapEntry}, decoding all values as
+   * UTF-8 strings.
+   *
+   * @return a new entry, never <code>null</code>.
+   */
+  public LdapEntry toLdapEntry()
+  {
+    final Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+    for ( PartialAttribute attribute : this.attributes )
+    {
+      values.put( attribute.getType(), attribute.getStringValues() );
+    }
+    return LdapEntry.valueOf( this.objectName, values );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "SearchResultEntry(" + this.objectName + ", " + this.attributes + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( SEARCH_RESULT_ENTRY );
+    aEncoder.encodeString( this.objectName, true );
+    aEncoder.beginSeq( Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR );
+    for ( PartialAttribute attribute : this.attributes )
+    {
+      attribute.encode( aEncoder );
+    }
+    aEncoder.endSeq();
+    aEncoder.endSeq();
+  }
+}
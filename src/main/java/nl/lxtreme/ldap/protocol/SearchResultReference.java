@@ -0,0 +1,82 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import java.util.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * SearchResultReference refers the client to other servers for (part of) the
+ * search.
+ *
+ * <pre>
+ * SearchResultReference ::= [APPLICATION 19] SEQUENCE SIZE (1..MAX) OF uri URI
+ * </pre>
+ */
+public final class SearchResultReference extends LdapOperation
+{
+  // VARIABLES
+
+  private final List<String> uris;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new SearchResultReference object.
+   *
+   * @param aURIs
+   *          the URIs to continue the search with, cannot be <code>null</code>
+   *          or empty.
+   */
+  public SearchResultReference( final List<String> aURIs )
+  {
+    super( SEARCH_RESULT_REFERENCE );
+    if ( ( aURIs == null ) || aURIs.isEmpty() )
+    {
+      throw new IllegalArgumentException( "URIs cannot be null or empty!" );
+    }
+    this.uris = Collections.unmodifiableList( new ArrayList<String>( aURIs ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the URIs to continue the search with.
+   *
+   * @return the URIs, never <code>null</code>.
+   */
+  public List<String> getURIs()
+  {
+    return this.uris;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "SearchResultReference(" + this.uris + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.beginSeq( SEARCH_RESULT_REFERENCE );
+    for ( String uri : this.uris )
+    {
+      aEncoder.encodeString( uri, true );
+    }
+    aEncoder.endSeq();
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * UnbindRequest terminates a LDAP session.
+ *
+ * <pre>
+ * UnbindRequest ::= [APPLICATION 2] NULL
+ * </pre>
+ */
+public final class UnbindRequest extends LdapOperation
+{
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new UnbindRequest object.
+   */
+  public UnbindRequest()
+  {
+    super( UNBIND_REQUEST );
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "UnbindRequest";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.encodeByte( UNBIND_REQUEST );
+    aEncoder.encodeByte( 0 );
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+import nl.lxtreme.ldap.extension.impl.encoding.Ber.*;
+
+
+/**
+ * UnknownOperation represents a protocol operation that is not known to the
+ * {@link LdapMessageCodec}, for example one defined by a later extension of
+ * RFC 4511.
+ * <p>
+ * The contents of such an operation are retained undecoded, so that it can be
+ * skipped without failing the message it is carried in.
+ * </p>
+ */
+public final class UnknownOperation extends LdapOperation
+{
+  // VARIABLES
+
+  private final byte[] contents;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new UnknownOperation object.
+   *
+   * @param aType
+   *          the type (application tag) of the operation;
+   * @param aContents
+   *          the undecoded contents of the operation, cannot be
+   *          <code>null</code>.
+   */
+  public UnknownOperation( final int aType, final byte[] aContents )
+  {
+    super( aType );
+    if ( aContents == null )
+    {
+      throw new IllegalArgumentException( "Contents cannot be null!" );
+    }
+    this.contents = aContents;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the undecoded contents of the operation.
+   *
+   * @return the contents, never <code>null</code>.
+   */
+  public byte[] getContents()
+  {
+    return this.contents;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "UnknownOperation(" + Integer.toHexString( getType() ) + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  void encode( final BerEncoder aEncoder ) throws EncodeException
+  {
+    aEncoder.encodeOctetString( this.contents, getType() );
+  }
+}
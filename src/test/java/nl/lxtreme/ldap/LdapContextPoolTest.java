@@ -0,0 +1,248 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap;
+
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.naming.*;
+import javax.naming.directory.*;
+import javax.naming.ldap.*;
+import javax.naming.spi.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link LdapContextPool}.
+ */
+public class LdapContextPoolTest
+{
+  // CONSTANTS
+
+  private static final int MAX_SIZE = 3;
+  private static final int THREADS = 8;
+  private static final int ITERATIONS = 200;
+
+  // INNER TYPES
+
+  /**
+   * Provides stub LDAP contexts that keep track of the number of open
+   * contexts, instead of connecting to an LDAP server.
+   */
+  public static final class StubContextFactory implements InitialContextFactory
+  {
+    static final AtomicInteger OPEN = new AtomicInteger();
+    static final AtomicInteger MAX_OPEN = new AtomicInteger();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Context getInitialContext( final Hashtable<?, ?> aEnvironment ) throws NamingException
+    {
+      final int open = OPEN.incrementAndGet();
+      int max;
+      while ( ( max = MAX_OPEN.get() ) < open )
+      {
+        MAX_OPEN.compareAndSet( max, open );
+      }
+
+      return ( Context )Proxy.newProxyInstance( getClass().getClassLoader(), new Class<?>[] { LdapContext.class },
+          new InvocationHandler()
+          {
+            private final AtomicBoolean closed = new AtomicBoolean();
+
+            @Override
+            public Object invoke( final Object aProxy, final Method aMethod, final Object[] aArgs )
+            {
+              final String name = aMethod.getName();
+              if ( "close".equals( name ) )
+              {
+                if ( this.closed.compareAndSet( false, true ) )
+                {
+                  OPEN.decrementAndGet();
+                }
+                return null;
+              }
+              if ( "getAttributes".equals( name ) )
+              {
+                return new BasicAttributes( true /* ignoreCase */);
+              }
+              if ( "hashCode".equals( name ) )
+              {
+                return Integer.valueOf( System.identityHashCode( aProxy ) );
+              }
+              if ( "equals".equals( name ) )
+              {
+                return Boolean.valueOf( aProxy == aArgs[0] );
+              }
+              return null;
+            }
+          } );
+    }
+  }
+
+  // VARIABLES
+
+  private LdapContextPool pool;
+
+  // METHODS
+
+  /**
+   * Creates the pool under test.
+   */
+  @Before
+  public void setUp()
+  {
+    StubContextFactory.OPEN.set( 0 );
+    StubContextFactory.MAX_OPEN.set( 0 );
+
+    final Map<String, String> env = new HashMap<String, String>();
+    env.put( Context.PROVIDER_URL, "ldap://localhost:389" );
+    env.put( Context.INITIAL_CONTEXT_FACTORY, StubContextFactory.class.getName() );
+
+    this.pool = new LdapContextPool( env, MAX_SIZE );
+    // Validate each context on checkout...
+    this.pool.setValidationInterval( 0L, TimeUnit.NANOSECONDS );
+  }
+
+  /**
+   * Closes the pool under test.
+   */
+  @After
+  public void tearDown()
+  {
+    this.pool.close();
+  }
+
+  /**
+   * Tests that the pool never holds more than its maximum number of contexts,
+   * not even when it is prewarmed while many threads use it concurrently.
+   */
+  @Test
+  public void testMaxSizeIsNeverExceeded() throws Exception
+  {
+    this.pool.setMinIdle( MAX_SIZE );
+
+    final AtomicInteger checkedOut = new AtomicInteger();
+    final AtomicInteger maxCheckedOut = new AtomicInteger();
+    final AtomicInteger maxTotal = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch( 1 );
+
+    final ExecutorService executor = Executors.newFixedThreadPool( THREADS + 1 );
+    try
+    {
+      final List<Future<?>> futures = new ArrayList<Future<?>>();
+      for ( int i = 0; i < THREADS; i++ )
+      {
+        futures.add( executor.submit( new Callable<Void>()
+        {
+          @Override
+          public Void call() throws Exception
+          {
+            start.await();
+            for ( int j = 0; j < ITERATIONS; j++ )
+            {
+              final LdapContext ctx = LdapContextPoolTest.this.pool.getContext();
+              try
+              {
+                updateMax( maxCheckedOut, checkedOut.incrementAndGet() );
+                updateMax( maxTotal, LdapContextPoolTest.this.pool.getTotalCount() );
+                Thread.yield();
+              }
+              finally
+              {
+                checkedOut.decrementAndGet();
+                LdapContextPoolTest.this.pool.releaseContext( ctx );
+              }
+            }
+            return null;
+          }
+        } ) );
+      }
+      futures.add( executor.submit( new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          start.await();
+          for ( int j = 0; j < ITERATIONS; j++ )
+          {
+            LdapContextPoolTest.this.pool.prewarm();
+            updateMax( maxTotal, LdapContextPoolTest.this.pool.getTotalCount() );
+          }
+          return null;
+        }
+      } ) );
+
+      start.countDown();
+      for ( Future<?> future : futures )
+      {
+        future.get( 30L, TimeUnit.SECONDS );
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    assertTrue( "Checked out " + maxCheckedOut.get(), maxCheckedOut.get() <= MAX_SIZE );
+    assertTrue( "Total count " + maxTotal.get(), maxTotal.get() <= MAX_SIZE );
+    assertTrue( "Opened " + StubContextFactory.MAX_OPEN.get(), StubContextFactory.MAX_OPEN.get() <= MAX_SIZE );
+    assertEquals( 0, this.pool.getActiveCount() );
+    assertEquals( this.pool.getTotalCount(), this.pool.getIdleCount() );
+  }
+
+  /**
+   * Tests that checking out more contexts than the maximum size times out.
+   */
+  @Test
+  public void testCheckoutBeyondMaxSizeTimesOut() throws Exception
+  {
+    this.pool.setCheckoutTimeout( 50L, TimeUnit.MILLISECONDS );
+
+    final List<LdapContext> contexts = new ArrayList<LdapContext>();
+    for ( int i = 0; i < MAX_SIZE; i++ )
+    {
+      contexts.add( this.pool.getContext() );
+    }
+
+    try
+    {
+      this.pool.getContext();
+      fail( "NamingException expected!" );
+    }
+    catch ( NamingException exception )
+    {
+      // Ok; expected...
+    }
+
+    for ( LdapContext ctx : contexts )
+    {
+      this.pool.releaseContext( ctx );
+    }
+    assertEquals( MAX_SIZE, this.pool.getTotalCount() );
+    assertEquals( MAX_SIZE, StubContextFactory.OPEN.get() );
+  }
+
+  /**
+   * Raises the given maximum to the given value, if larger.
+   */
+  static void updateMax( final AtomicInteger aMax, final int aValue )
+  {
+    int max;
+    while ( ( max = aMax.get() ) < aValue )
+    {
+      aMax.compareAndSet( max, aValue );
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link LdapFilterEvaluator}.
+ */
+public class LdapFilterEvaluatorTest
+{
+  // METHODS
+
+  /**
+   * Tests that extensible matches with an unknown matching rule are undefined,
+   * and do not match, not even when negated.
+   */
+  @Test
+  public void testUnknownMatchingRuleIsUndefined() throws Exception
+  {
+    assertFalse( matches( "(cn:1.2.3.4:=a)", "cn", "a" ) );
+    assertFalse( matches( "(!(cn:1.2.3.4:=a))", "cn", "a" ) );
+  }
+
+  /**
+   * Tests that equality ignores case and insignificant spaces.
+   */
+  @Test
+  public void testEqualityIgnoresCaseAndSpaces() throws Exception
+  {
+    assertTrue( matches( "(cn=John Smith)", "cn", "  john   SMITH " ) );
+    assertFalse( matches( "(cn=John Smith)", "cn", "John Smyth" ) );
+  }
+
+  /**
+   * Tests that equality compares integers as strings, so leading zeroes are
+   * significant.
+   */
+  @Test
+  public void testEqualityIsNotNumeric() throws Exception
+  {
+    assertTrue( matches( "(n=7)", "n", "7" ) );
+    assertFalse( matches( "(n=007)", "n", "7" ) );
+    assertFalse( matches( "(n=7)", "n", "007" ) );
+    assertFalse( matches( "(n~=007)", "n", "7" ) );
+  }
+
+  /**
+   * Tests that attribute IDs are matched case-insensitively.
+   */
+  @Test
+  public void testAttributeIDsIgnoreCase() throws Exception
+  {
+    assertTrue( matches( "(CN=a)", "cn", "a" ) );
+    assertFalse( matches( "(sn=a)", "cn", "a" ) );
+  }
+
+  /**
+   * Tests that ordering is numeric in case both values are integers, and
+   * lexicographical otherwise.
+   */
+  @Test
+  public void testOrdering() throws Exception
+  {
+    assertTrue( matches( "(n>=10)", "n", "10" ) );
+    assertTrue( matches( "(n>=9)", "n", "10" ) );
+    assertFalse( matches( "(n>=10)", "n", "9" ) );
+    assertTrue( matches( "(n<=010)", "n", "9" ) );
+    assertTrue( matches( "(n<=b)", "n", "A" ) );
+    assertFalse( matches( "(n>=b)", "n", "A" ) );
+  }
+
+  /**
+   * Tests substring matches.
+   */
+  @Test
+  public void testSubstrings() throws Exception
+  {
+    assertTrue( matches( "(cn=J*n*th)", "cn", "John Smith" ) );
+    assertFalse( matches( "(cn=J*x*th)", "cn", "John Smith" ) );
+    assertTrue( matches( "(mail=*)", "mail", "x" ) );
+    assertFalse( matches( "(mail=*)", "cn", "x" ) );
+  }
+
+  /**
+   * Matches the given filter against an entry with a single attribute value.
+   */
+  private static boolean matches( final String aFilter, final String aAttributeID, final String aValue )
+      throws Exception
+  {
+    final Map<String, List<String>> attributes = new HashMap<String, List<String>>();
+    attributes.put( aAttributeID, Collections.singletonList( aValue ) );
+    return new LdapFilterEvaluator( LdapFilter.parse( aFilter ) ).matches( attributes );
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import static org.junit.Assert.*;
+
+import java.nio.*;
+
+import javax.naming.directory.*;
+
+import nl.lxtreme.ldap.extension.impl.encoding.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link LdapFilter}.
+ */
+public class LdapFilterTest
+{
+  // METHODS
+
+  /**
+   * Tests that bound parameters are escaped, and cannot alter the structure of
+   * the filter.
+   */
+  @Test
+  public void testBindEscapesParameters() throws Exception
+  {
+    final LdapFilter filter = LdapFilter.compile( "(&(objectClass=user)(cn={0}))" );
+    assertEquals( 1, filter.getParameterCount() );
+
+    assertEquals( "(&(objectClass=user)(cn=\\2a\\29\\28uid=\\2a))", filter.format( "*)(uid=*" ) );
+  }
+
+  /**
+   * Tests that binding too few parameters fails.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testBindWithTooFewParametersFails() throws Exception
+  {
+    LdapFilter.compile( "(&(cn={0})(sn={1}))" ).bind( "a" );
+  }
+
+  /**
+   * Tests that a filter survives a round trip through its BER encoding.
+   */
+  @Test
+  public void testEncodeAndDecodeRoundTrip() throws Exception
+  {
+    final String[] filters = { "(cn=John Smith)", "(&(objectClass=person)(|(uid=jsmith)(mail=j*@example.com)))",
+        "(!(cn=a\\2ab))", "(age>=21)", "(age<=65)", "(cn~=smith)", "(mail=*)", "(cn:caseExactMatch:=Smith)",
+        "(:dn:2.5.13.5:=x)" };
+    for ( String filter : filters )
+    {
+      final BerEncoder encoder = new BerEncoder();
+      LdapFilter.parse( filter ).encode( encoder );
+
+      final byte[] data = encoder.getTrimmedBuf();
+      final LdapFilter decoded = LdapFilter.decode( new BerBufferDecoder( ByteBuffer.wrap( data ) ) );
+      assertEquals( filter, decoded.toString() );
+    }
+  }
+
+  /**
+   * Tests that the outer parentheses of a filter can be omitted.
+   */
+  @Test
+  public void testParseWithoutOuterParentheses() throws Exception
+  {
+    assertEquals( "(cn=x)", LdapFilter.parse( "cn=x" ).toString() );
+  }
+
+  /**
+   * Tests that an unescaped opening parenthesis in a value is accepted, as
+   * JNDI does, and escaped when the filter is formatted again.
+   */
+  @Test
+  public void testParseAcceptsUnescapedOpeningParenthesisInValue() throws Exception
+  {
+    final LdapFilter filter = LdapFilter.parse( "(cn=a(b)" );
+
+    assertEquals( LdapFilter.EQUALITY_MATCH, filter.getType() );
+    assertArrayEquals( "a(b".getBytes( "UTF-8" ), filter.getAssertionValue() );
+    assertEquals( "(cn=a\\28b)", filter.toString() );
+  }
+
+  /**
+   * Tests that whitespace between the children of a filter is rejected.
+   */
+  @Test( expected = InvalidSearchFilterException.class )
+  public void testParseRejectsWhitespaceBetweenChildren() throws Exception
+  {
+    LdapFilter.parse( "(&(a=1) (b=2))" );
+  }
+
+  /**
+   * Tests that characters after the filter are rejected.
+   */
+  @Test( expected = InvalidSearchFilterException.class )
+  public void testParseRejectsTrailingCharacters() throws Exception
+  {
+    LdapFilter.parse( "(cn=a)b" );
+  }
+
+  /**
+   * Tests that escaped values are decoded.
+   */
+  @Test
+  public void testParseUnescapesValues() throws Exception
+  {
+    final LdapFilter filter = LdapFilter.parse( "(cn=a\\2a\\28\\29\\5cb)" );
+
+    assertArrayEquals( "a*()\\b".getBytes( "UTF-8" ), filter.getAssertionValue() );
+  }
+}
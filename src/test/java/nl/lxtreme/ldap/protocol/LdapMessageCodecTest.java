@@ -0,0 +1,185 @@
+/*
+ * LibLDAP - Small LDAP library for Java.
+ *
+ * (C) Copyright 2010-2017, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.ldap.protocol;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link LdapMessageCodec}.
+ */
+public class LdapMessageCodecTest
+{
+  // METHODS
+
+  /**
+   * Tests that a simple bind request survives a round trip.
+   */
+  @Test
+  public void testBindRequestRoundTrip() throws Exception
+  {
+    final BindRequest request = roundTrip( new LdapMessage( 1, BindRequest.simple( "cn=admin", "secret" ) ) )
+        .getOperation( BindRequest.class );
+
+    assertTrue( request.isSimple() );
+    assertEquals( LdapProtocol.VERSION, request.getVersion() );
+    assertEquals( "cn=admin", request.getName() );
+    assertArrayEquals( "secret".getBytes( "UTF-8" ), request.getCredentials() );
+  }
+
+  /**
+   * Tests that a search request survives a round trip.
+   */
+  @Test
+  public void testSearchRequestRoundTrip() throws Exception
+  {
+    final LdapFilter filter = LdapFilter.parse( "(&(objectClass=person)(cn=J*))" );
+    final LdapMessage message = roundTrip( new LdapMessage( 2, new SearchRequest( "dc=example,dc=com",
+        SearchRequest.SCOPE_WHOLE_SUBTREE, filter, "cn", "mail" ) ) );
+
+    assertEquals( 2, message.getMessageId() );
+    final SearchRequest request = message.getOperation( SearchRequest.class );
+    assertEquals( "dc=example,dc=com", request.getBaseObject() );
+    assertEquals( SearchRequest.SCOPE_WHOLE_SUBTREE, request.getScope() );
+    assertEquals( SearchRequest.DEREF_NEVER, request.getDerefAliases() );
+    assertEquals( filter.toString(), request.getFilter().toString() );
+    assertEquals( Arrays.asList( "cn", "mail" ), request.getAttributes() );
+  }
+
+  /**
+   * Tests that a search result entry survives a round trip, including values
+   * with non-ASCII characters.
+   */
+  @Test
+  public void testSearchResultEntryRoundTrip() throws Exception
+  {
+    final List<PartialAttribute> attributes = new ArrayList<PartialAttribute>();
+    attributes.add( PartialAttribute.valueOf( "cn", "J\u00f6rg", "Jorg" ) );
+    attributes.add( PartialAttribute.valueOf( "mail" ) );
+
+    final SearchResultEntry entry = roundTrip( new LdapMessage( 3, new SearchResultEntry( "cn=J\u00f6rg",
+        attributes ) ) ).getOperation( SearchResultEntry.class );
+
+    assertEquals( "cn=J\u00f6rg", entry.getObjectName() );
+    assertEquals( 2, entry.getAttributes().size() );
+    assertEquals( "cn", entry.getAttributes().get( 0 ).getType() );
+    assertEquals( Arrays.asList( "J\u00f6rg", "Jorg" ), entry.getAttributes().get( 0 ).getStringValues() );
+    assertEquals( "mail", entry.getAttributes().get( 1 ).getType() );
+    assertTrue( entry.getAttributes().get( 1 ).getValues().isEmpty() );
+  }
+
+  /**
+   * Tests that a response survives a round trip.
+   */
+  @Test
+  public void testResponseRoundTrip() throws Exception
+  {
+    final LdapResponse response = roundTrip( new LdapMessage( 4, new LdapResponse( LdapProtocol.SEARCH_RESULT_DONE,
+        new LdapResult( 32, "dc=com", "no such object" ) ) ) ).getOperation( LdapResponse.class );
+
+    assertEquals( LdapProtocol.SEARCH_RESULT_DONE, response.getType() );
+    assertEquals( 32, response.getResult().getResultCode() );
+    assertEquals( "dc=com", response.getResult().getMatchedDN() );
+    assertEquals( "no such object", response.getResult().getDiagnosticMessage() );
+  }
+
+  /**
+   * Tests that an extended response survives a round trip.
+   */
+  @Test
+  public void testExtendedResponseRoundTrip() throws Exception
+  {
+    final ExtendedOperationResponse response = roundTrip( new LdapMessage( 0, new ExtendedOperationResponse(
+        new LdapResult( 52, "", "shutting down" ), "1.3.6.1.4.1.1466.20036", null ) ) )
+        .getOperation( ExtendedOperationResponse.class );
+
+    assertEquals( 52, response.getResult().getResultCode() );
+    assertEquals( "1.3.6.1.4.1.1466.20036", response.getResponseName() );
+    assertNull( response.getResponseValue() );
+  }
+
+  /**
+   * Tests that an intermediate response survives a round trip.
+   */
+  @Test
+  public void testIntermediateResponseRoundTrip() throws Exception
+  {
+    final IntermediateResponse response = roundTrip( new LdapMessage( 5, new IntermediateResponse( "1.2.3",
+        new byte[] { 1, 2, 3 } ) ) ).getOperation( IntermediateResponse.class );
+
+    assertEquals( "1.2.3", response.getResponseName() );
+    assertArrayEquals( new byte[] { 1, 2, 3 }, response.getResponseValue() );
+  }
+
+  /**
+   * Tests that an unknown operation is retained undecoded, rather than failing
+   * the message.
+   */
+  @Test
+  public void testUnknownOperationRoundTrip() throws Exception
+  {
+    final UnknownOperation operation = roundTrip( new LdapMessage( 6, new UnknownOperation( 0x7a, new byte[] {
+        0x04, 0x01, 0x41 } ) ) ).getOperation( UnknownOperation.class );
+
+    assertEquals( 0x7a, operation.getType() );
+    assertArrayEquals( new byte[] { 0x04, 0x01, 0x41 }, operation.getContents() );
+  }
+
+  /**
+   * Tests that controls survive a round trip.
+   */
+  @Test
+  public void testControlsRoundTrip() throws Exception
+  {
+    final List<LdapControl> controls = new ArrayList<LdapControl>();
+    controls.add( new LdapControl( "1.2.840.113556.1.4.319", true, new byte[] { 0x30, 0x00 } ) );
+    controls.add( new LdapControl( "2.16.840.1.113730.3.4.2", false, null ) );
+
+    final LdapMessage message = roundTrip( new LdapMessage( 7, new DeleteRequest( "cn=x" ), controls ) );
+
+    assertEquals( "cn=x", message.getOperation( DeleteRequest.class ).getName() );
+    assertEquals( 2, message.getControls().size() );
+
+    final LdapControl first = message.getControl( "1.2.840.113556.1.4.319" );
+    assertTrue( first.isCritical() );
+    assertArrayEquals( new byte[] { 0x30, 0x00 }, first.getValue() );
+
+    final LdapControl second = message.getControl( "2.16.840.1.113730.3.4.2" );
+    assertFalse( second.isCritical() );
+    assertNull( second.getValue() );
+  }
+
+  /**
+   * Tests that decoding honours the given offset and length.
+   */
+  @Test
+  public void testDecodeWithOffset() throws Exception
+  {
+    final byte[] encoded = LdapMessageCodec.encode( new LdapMessage( 8, new AbandonRequest( 3 ) ) );
+    final byte[] buf = new byte[encoded.length + 4];
+    System.arraycopy( encoded, 0, buf, 2, encoded.length );
+
+    final LdapMessage message = LdapMessageCodec.decode( buf, 2, encoded.length );
+    assertEquals( 8, message.getMessageId() );
+    assertEquals( 3, message.getOperation( AbandonRequest.class ).getAbandonId() );
+  }
+
+  /**
+   * Encodes and decodes the given message.
+   */
+  private static LdapMessage roundTrip( final LdapMessage aMessage ) throws Exception
+  {
+    final byte[] encoded = LdapMessageCodec.encode( aMessage );
+    final LdapMessage result = LdapMessageCodec.decode( encoded, 0, encoded.length );
+    assertEquals( aMessage.getMessageId(), result.getMessageId() );
+    return result;
+  }
+}